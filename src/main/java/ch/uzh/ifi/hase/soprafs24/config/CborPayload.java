@@ -0,0 +1,36 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+import java.util.function.Supplier;
+
+/**
+ * CBOR Payload
+ * The object behind an outgoing JSON message, carried in the message header
+ * HEADER so the sessions that chose CBOR (see PayloadEncodingInterceptor) get
+ * it encoded from the object instead of parsing the JSON again. The broker
+ * copies the header to the message of every subscriber, so a broadcast is
+ * encoded at most once, and only if a CBOR session receives it.
+ */
+public final class CborPayload {
+
+    public static final String HEADER = "cborPayload";
+
+    private static final ObjectMapper CBOR_MAPPER = CBORMapper.builder().findAndAddModules().build();
+
+    private final Supplier<?> payload;
+    private byte[] encoded;
+
+    public CborPayload(Supplier<?> payload) {
+        this.payload = payload;
+    }
+
+    synchronized byte[] encode() throws JsonProcessingException {
+        if (encoded == null) {
+            encoded = CBOR_MAPPER.writeValueAsBytes(payload.get());
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,107 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Payload Encoding Interceptor
+ * Lets a STOMP session choose a compact CBOR encoding for the frames it
+ * receives, JSON stays the default. The client sends the header
+ * "payload-encoding: cbor" with CONNECT, every MESSAGE frame for that
+ * session that carries its object (see CborPayload) is then sent as CBOR and
+ * marked with the same header, other frames stay JSON. Binary frames only
+ * pass the native WebSocket endpoint (SockJS is text only), CBOR requested
+ * on other endpoints is ignored.
+ */
+public class PayloadEncodingInterceptor implements ChannelInterceptor {
+
+    public static final String ENCODING_HEADER = "payload-encoding";
+    public static final String CBOR = "cbor";
+    // set by the handshake of the native endpoint
+    public static final String NATIVE_SESSION_ATTRIBUTE = "nativeWebSocket";
+
+    private static final Logger logger = LoggerFactory.getLogger(PayloadEncodingInterceptor.class);
+
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (messageType == null || sessionId == null) {
+            return message;
+        }
+
+        switch (messageType) {
+            case CONNECT:
+                registerSession(message, sessionId);
+                return message;
+            case DISCONNECT:
+                cborSessions.remove(sessionId);
+                return message;
+            case MESSAGE:
+                return cborSessions.contains(sessionId) ? toCbor(message) : message;
+            default:
+                return message;
+        }
+    }
+
+    boolean isCborSession(String sessionId) {
+        return cborSessions.contains(sessionId);
+    }
+
+    private void registerSession(Message<?> message, String sessionId) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null
+                || (accessor.getCommand() != StompCommand.CONNECT && accessor.getCommand() != StompCommand.STOMP)
+                || !CBOR.equalsIgnoreCase(accessor.getFirstNativeHeader(ENCODING_HEADER))) {
+            return;
+        }
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes != null && Boolean.TRUE.equals(attributes.get(NATIVE_SESSION_ATTRIBUTE))) {
+            cborSessions.add(sessionId);
+        }
+    }
+
+    /*
+     * Replaces the JSON payload of a MESSAGE frame with the CBOR encoding of
+     * its object
+     *      content-type -> application/octet-stream, the STOMP handler only
+     *                      sends binary WebSocket frames for this type
+     *      payload-encoding -> cbor
+     */
+    private Message<?> toCbor(Message<?> message) {
+        if (!(message.getHeaders().get(CborPayload.HEADER) instanceof CborPayload cborPayload)) {
+            return message;
+        }
+
+        byte[] cbor;
+        try {
+            cbor = cborPayload.encode();
+        } catch (JsonProcessingException e) {
+            logger.warn("Could not encode frame as CBOR, sending JSON: {}", e.getMessage());
+            return message;
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.setNativeHeader(ENCODING_HEADER, CBOR);
+        accessor.removeHeader(CborPayload.HEADER);
+        return MessageBuilder.createMessage(cbor, accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,60 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+
+import java.security.Principal;
+
+/**
+ * User Principal Interceptor
+ * Authenticates a STOMP session at CONNECT with the token of its user, sent
+ * in the "Authorization" header like on the frames to /app. The session then
+ * belongs to a principal named after the user id, so a message sent with
+ * convertAndSendToUser(userId, ...) reaches every session of the user on
+ * /user/queue/..., whether or not it joined a group. Sessions without a
+ * valid token stay anonymous.
+ */
+public class UserPrincipalInterceptor implements ChannelInterceptor {
+
+    public static final String AUTHORIZATION_HEADER = "Authorization";
+
+    private final UserRepository userRepository;
+
+    public UserPrincipalInterceptor(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null
+                || (accessor.getCommand() != StompCommand.CONNECT && accessor.getCommand() != StompCommand.STOMP)) {
+            return message;
+        }
+
+        String token = accessor.getFirstNativeHeader(AUTHORIZATION_HEADER);
+        if (token == null) {
+            return message;
+        }
+        User user = userRepository.findByToken(token);
+        if (user != null) {
+            accessor.setUser(new UserPrincipal(user.getId().toString()));
+        }
+        return message;
+    }
+
+    // the name is the user id, see WebSocketService.sendGoalReached
+    record UserPrincipal(String name) implements Principal {
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -1,7 +1,17 @@
 package ch.uzh.ifi.hase.soprafs24.config;
 
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.util.MimeType;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
@@ -9,6 +19,10 @@ import org.springframework.beans.factory.annotation.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -19,9 +33,19 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Value("${WEBSOCKET_ALLOWED_ORIGINS:http://localhost:3000,https://sopra-fs25-group-11-client.vercel.app}")
     private String allowedOrigins;
 
+    private final PayloadEncodingInterceptor payloadEncodingInterceptor = new PayloadEncodingInterceptor();
+    private final UserPrincipalInterceptor userPrincipalInterceptor;
+
+    public WebSocketConfig(@Qualifier("userRepository") UserRepository userRepository) {
+        this.userPrincipalInterceptor = new UserPrincipalInterceptor(userRepository);
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic");
+        // /queue carries the messages to a single session (/user/queue/...)
+        config.enableSimpleBroker("/topic", "/queue");
+        // deltas of the group timer must reach every session in version order
+        config.setPreservePublishOrder(true);
 
         config.setApplicationDestinationPrefixes("/app");
 
@@ -36,7 +60,50 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOrigins(allowedOrigins.split(","))
                 .withSockJS(); // Enable SockJS fallback
 
+        // plain WebSocket endpoint, the only one that can carry binary (CBOR) frames
+        registry.addEndpoint("/ws-native")
+                .setAllowedOrigins(allowedOrigins.split(","))
+                .addInterceptors(new NativeSessionInterceptor());
+
         logger.info("WebSocket STOMP endpoints registered with allowed origins: {}", allowedOrigins);
 
     }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // records the user and the payload encoding of the session at CONNECT
+        registration.interceptors(userPrincipalInterceptor, payloadEncodingInterceptor);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(payloadEncodingInterceptor);
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // accept application/cbor payloads sent to /app, next to the default converters
+        MappingJackson2MessageConverter cborConverter = new MappingJackson2MessageConverter(
+                new MimeType("application", "cbor"));
+        cborConverter.setObjectMapper(new CBORMapper());
+        messageConverters.add(cborConverter);
+        return true;
+    }
+
+    // marks the sessions of the native endpoint, see PayloadEncodingInterceptor
+    private static class NativeSessionInterceptor implements HandshakeInterceptor {
+
+        @Override
+        public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                WebSocketHandler wsHandler, Map<String, Object> attributes) {
+            attributes.put(PayloadEncodingInterceptor.NATIVE_SESSION_ATTRIBUTE, Boolean.TRUE);
+            return true;
+        }
+
+        @Override
+        public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                WebSocketHandler wsHandler, Exception exception) {
+            // nothing to do
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package ch.uzh.ifi.hase.soprafs24.constant;
+
+/**
+ * Sliding windows of the group leaderboard, each ending today
+ */
+public enum LeaderboardWindow {
+    DAY(1), WEEK(7), MONTH(30);
+
+    private final int days;
+
+    LeaderboardWindow(int days) {
+        this.days = days;
+    }
+
+    public int getDays() {
+        return days;
+    }
+}
@@ -1,20 +1,38 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
+import ch.uzh.ifi.hase.soprafs24.constant.ExportFormat;
+import ch.uzh.ifi.hase.soprafs24.constant.LeaderboardWindow;
+import ch.uzh.ifi.hase.soprafs24.constant.StatisticsGranularity;
 import ch.uzh.ifi.hase.soprafs24.entity.Activity;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityAggregateDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityBatchResultGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.LeaderboardEntryGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.SessionStatisticsGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.StudyHeatmapGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.DailyGoalGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.DailyGoalPutDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.StudyStreakGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.WeeklySummaryGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.service.ActivityExportService;
 import ch.uzh.ifi.hase.soprafs24.service.ActivityService;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Activity Controller
@@ -28,10 +46,19 @@ public class ActivityController {
 
     private final ActivityService activityService;
     private final UserService userService;
+    private final ActivityExportService activityExportService;
 
-    ActivityController(ActivityService activityService, UserService userService) {
+    private static final String INVALID_PAGINATION = "Pagination requires limit and cannot be combined with startDate, endDate, aggregate or granularity";
+    private static final String INVALID_GRANULARITY = "Invalid granularity, expected day, week, month, year or auto";
+    private static final String INVALID_WINDOW = "Invalid window, expected day, week or month";
+    private static final String INVALID_AGGREGATE = "Invalid aggregate, expected true, false or group";
+    private static final String AGGREGATE_GROUP = "group";
+
+    ActivityController(ActivityService activityService, UserService userService,
+            ActivityExportService activityExportService) {
         this.activityService = activityService;
         this.userService = userService;
+        this.activityExportService = activityExportService;
     }
 
     @PostMapping("/users/{userId}/statistics")
@@ -44,6 +71,23 @@ public class ActivityController {
         return DTOMapper.INSTANCE.convertEntityToActivityGetDTO(createdActivity);
     }
 
+    /*
+     * Store several activities at once (e.g. the sessions queued by an offline client)
+     * Returns the result of every activity in the order of the request:
+     *      status = 201 -> the activity was stored, id is set
+     *      status = 400 -> the activity was rejected, message contains the reason
+     */
+    @PostMapping("/users/{userId}/statistics/batch")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public List<ActivityBatchResultGetDTO> createActivities(@PathVariable Long userId, @RequestBody List<ActivityPostDTO> activityPostDTOs, @RequestHeader("Authorization") String token) {
+        List<Activity> activityInputs = new ArrayList<>();
+        for (ActivityPostDTO activityPostDTO : activityPostDTOs) {
+            activityInputs.add(DTOMapper.INSTANCE.convertActivityPostDTOtoEntity(activityPostDTO));
+        }
+        return activityService.createActivities(activityInputs, userId, token);
+    }
+
     /*
      * Get all activities for a user
      * Can be filtered by date range: 
@@ -52,6 +96,11 @@ public class ActivityController {
      *      endDate only -> returns all activities from today to endDate
      * Can be aggregated by date
      *      aggregate = true -> returns the aggregated activities by date (total duration per day)
+     *      granularity = day|week|month|year -> total duration per period, date is the first day of the period
+     *      granularity = auto -> the granularity is chosen from the span between startDate and endDate
+     * Can be paginated (newest first, cannot be combined with the date range, aggregate or granularity)
+     *      limit -> returns at most limit activities and the nextCursor of the following page
+     *      limit and after -> returns the page following the cursor
      */
     @GetMapping("/users/{userId}/statistics")
     @ResponseStatus(HttpStatus.OK)
@@ -61,10 +110,21 @@ public class ActivityController {
             @RequestHeader("Authorization") String token,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
-            @RequestParam(required = false, defaultValue = "false") boolean aggregate) {
+            @RequestParam(required = false, defaultValue = "false") boolean aggregate,
+            @RequestParam(required = false) String granularity,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after) {
+
+        if (limit != null || after != null) {
+            if (limit == null || aggregate || granularity != null || startDate != null || endDate != null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, INVALID_PAGINATION);
+            }
+            return activityService.getActivityPage(userId, token, limit, after);
+        }
         
-        if (aggregate) {
-            return activityService.getAggregatedActivities(userId, token, startDate, endDate);
+        if (aggregate || granularity != null) {
+            return activityService.getAggregatedActivities(userId, token, startDate, endDate,
+                    parseGranularity(granularity));
         }
         
         List<Activity> activities = activityService.getActivitiesByDateRange(userId, token, startDate, endDate);
@@ -75,6 +135,100 @@ public class ActivityController {
         return activityGetDTOs;
     }
 
+    /*
+     * Export the full activity history of a user
+     *      format = ndjson -> one activity JSON object per line (default)
+     *      format = csv -> header line followed by one activity per line
+     * The activities are streamed to the client while they are read from the database
+     */
+    @GetMapping("/users/{userId}/statistics/export")
+    public ResponseEntity<StreamingResponseBody> exportActivities(
+            @PathVariable Long userId,
+            @RequestHeader("Authorization") String token,
+            @RequestParam(required = false, defaultValue = "ndjson") String format) {
+
+        ExportFormat exportFormat = activityExportService.validateExport(userId, token, format);
+        StreamingResponseBody body = outputStream -> activityExportService.writeActivities(userId, exportFormat,
+                outputStream);
+
+        MediaType contentType = exportFormat == ExportFormat.CSV
+                ? new MediaType("text", "csv")
+                : new MediaType("application", "x-ndjson");
+        String fileName = "activities-" + userId + "." + exportFormat.name().toLowerCase();
+
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
+    }
+
+    /*
+     * Get the current and longest run of consecutive study days of a user
+     * The current streak is 0 if the user studied neither today nor yesterday
+     */
+    @GetMapping("/users/{userId}/statistics/streak")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public StudyStreakGetDTO getStudyStreak(@PathVariable Long userId, @RequestHeader("Authorization") String token) {
+        return activityService.getStudyStreak(userId, token);
+    }
+
+    /*
+     * Set the daily study goal of a user in minutes
+     */
+    @PutMapping("/users/{userId}/goal")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public DailyGoalGetDTO setDailyGoal(@PathVariable Long userId, @RequestHeader("Authorization") String token,
+            @RequestBody DailyGoalPutDTO dailyGoalPutDTO) {
+        return activityService.setDailyGoal(userId, token, dailyGoalPutDTO.getTargetMinutes());
+    }
+
+    /*
+     * Get the daily study goal of a user and the minutes studied today,
+     * including the running session
+     */
+    @GetMapping("/users/{userId}/goal")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public DailyGoalGetDTO getDailyGoal(@PathVariable Long userId, @RequestHeader("Authorization") String token) {
+        return activityService.getDailyGoal(userId, token);
+    }
+
+    /*
+     * Get the weekly summary (total minutes, best day, group rank) of a user
+     * written by the weekly report, the latest one if no week is given
+     */
+    @GetMapping("/users/{userId}/statistics/weekly-summary")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public WeeklySummaryGetDTO getWeeklySummary(@PathVariable Long userId,
+            @RequestHeader("Authorization") String token,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate weekStart) {
+        return activityService.getWeeklySummary(userId, token, weekStart);
+    }
+
+    /*
+     * Get the median, p90 and p99 session length of a user in seconds
+     */
+    @GetMapping("/users/{userId}/statistics/sessions")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public SessionStatisticsGetDTO getSessionStatistics(@PathVariable Long userId, @RequestHeader("Authorization") String token) {
+        return activityService.getSessionStatistics(userId, token);
+    }
+
+    /*
+     * Get the study minutes of a user per day of the week and hour of the day
+     *      minutes[0][9] -> minutes studied on Mondays between 9:00 and 10:00
+     */
+    @GetMapping("/users/{userId}/statistics/heatmap")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public StudyHeatmapGetDTO getStudyHeatmap(@PathVariable Long userId, @RequestHeader("Authorization") String token) {
+        return activityService.getStudyHeatmap(userId, token);
+    }
+
     /*
      * Get all activities for a group: for all users in the group it will return the activities of the user
      * user 1
@@ -89,6 +243,9 @@ public class ActivityController {
      *      endDate only -> returns all activities from today to endDate
      * Can be aggregated by date
      *      aggregate = true -> returns the aggregated activities by date (total duration per day)
+     *      aggregate = group -> returns one series for the whole group (date, totalMinutes, activeMembers)
+     *      granularity = day|week|month|year -> total duration per period, date is the first day of the period
+     *      granularity = auto -> the granularity is chosen from the span between startDate and endDate
      */
     @GetMapping("/groups/{groupId}/statistics")
     @ResponseStatus(HttpStatus.OK)
@@ -98,14 +255,92 @@ public class ActivityController {
             @RequestHeader("Authorization") String token,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
-            @RequestParam(required = false, defaultValue = "false") boolean aggregate) {
+            @RequestParam(required = false, defaultValue = "false") String aggregate,
+            @RequestParam(required = false) String granularity) {
         
         User authenticatedUser = userService.findByToken(token);
         
-        if (aggregate) {
-            return activityService.getGroupUsersAggregatedActivities(authenticatedUser.getId(), token, groupId, startDate, endDate);
+        if (AGGREGATE_GROUP.equalsIgnoreCase(aggregate)) {
+            return activityService.getGroupAggregatedActivities(authenticatedUser.getId(), token, groupId,
+                    startDate, endDate, parseGranularity(granularity));
+        }
+        if (parseAggregate(aggregate) || granularity != null) {
+            return activityService.getGroupUsersAggregatedActivities(authenticatedUser.getId(), token, groupId,
+                    startDate, endDate, parseGranularity(granularity));
         }
         
         return activityService.getGroupUsersActivities(authenticatedUser.getId(), token, groupId, startDate, endDate);
     }
-} 
\ No newline at end of file
+
+    /*
+     * Get the median, p90 and p99 session length of all active members of a group in seconds
+     */
+    @GetMapping("/groups/{groupId}/statistics/sessions")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public SessionStatisticsGetDTO getGroupSessionStatistics(@PathVariable Long groupId, @RequestHeader("Authorization") String token) {
+        User authenticatedUser = userService.findByToken(token);
+        return activityService.getGroupSessionStatistics(authenticatedUser.getId(), token, groupId);
+    }
+
+    /*
+     * Get the study minutes of all active members of a group per day of the week and hour of the day
+     */
+    @GetMapping("/groups/{groupId}/statistics/heatmap")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public StudyHeatmapGetDTO getGroupStudyHeatmap(@PathVariable Long groupId, @RequestHeader("Authorization") String token) {
+        User authenticatedUser = userService.findByToken(token);
+        return activityService.getGroupStudyHeatmap(authenticatedUser.getId(), token, groupId);
+    }
+
+    /*
+     * Get the members of a group with the most study time, highest first
+     *      window = day|week|month -> study time of the last 1, 7 or 30 days (default week)
+     *      limit -> number of returned members (default 10)
+     */
+    @GetMapping("/groups/{groupId}/leaderboard")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public List<LeaderboardEntryGetDTO> getGroupLeaderboard(
+            @PathVariable Long groupId,
+            @RequestHeader("Authorization") String token,
+            @RequestParam(required = false, defaultValue = "week") String window,
+            @RequestParam(required = false, defaultValue = "10") int limit) {
+
+        LeaderboardWindow leaderboardWindow;
+        try {
+            leaderboardWindow = LeaderboardWindow.valueOf(window.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, INVALID_WINDOW);
+        }
+
+        User authenticatedUser = userService.findByToken(token);
+        return activityService.getGroupLeaderboard(authenticatedUser.getId(), token, groupId, leaderboardWindow,
+                limit);
+    }
+
+    /*
+     * Without a granularity the aggregation stays per day
+     */
+    private boolean parseAggregate(String aggregate) {
+        if ("true".equalsIgnoreCase(aggregate)) {
+            return true;
+        }
+        if ("false".equalsIgnoreCase(aggregate)) {
+            return false;
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, INVALID_AGGREGATE);
+    }
+
+    private StatisticsGranularity parseGranularity(String granularity) {
+        if (granularity == null) {
+            return StatisticsGranularity.DAY;
+        }
+        try {
+            return StatisticsGranularity.valueOf(granularity.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, INVALID_GRANULARITY);
+        }
+    }
+}
@@ -1,13 +1,17 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
 import ch.uzh.ifi.hase.soprafs24.entity.CalendarEntries;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.CalendarAttendanceGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.CalendarEntriesGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.CalendarEntriesPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.service.CalendarAttendanceService;
 import ch.uzh.ifi.hase.soprafs24.service.CalendarEntryService;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -15,9 +19,11 @@ import java.util.stream.Collectors;
 public class CalendarEntriesController {
 
   private final CalendarEntryService calendarEntryService;
+  private final CalendarAttendanceService calendarAttendanceService;
 
-  public CalendarEntriesController(CalendarEntryService calendarEntryService) {
+  public CalendarEntriesController(CalendarEntryService calendarEntryService, CalendarAttendanceService calendarAttendanceService) {
     this.calendarEntryService = calendarEntryService;
+    this.calendarAttendanceService = calendarAttendanceService;
   }
 
   @PostMapping("/groups/{groupId}/calendar-entries")
@@ -40,4 +46,13 @@ public class CalendarEntriesController {
             .collect(Collectors.toList());
   }
 
+  @GetMapping("/groups/{groupId}/calendar-entries/attendance")
+  @ResponseStatus(HttpStatus.OK)
+  public List<CalendarAttendanceGetDTO> getCalendarAttendance(@PathVariable Long groupId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+      @RequestHeader("Authorization") String token) {
+    return calendarAttendanceService.getAttendance(groupId, token, startDate, endDate);
+  }
+
 }
@@ -0,0 +1,54 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.rest.dto.TimerUpdateMetricsGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.WeeklyReportProgressGetDTO;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import ch.uzh.ifi.hase.soprafs24.service.WebSocketService;
+import ch.uzh.ifi.hase.soprafs24.service.WeeklySummaryService;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Monitoring Controller
+ * This class is responsible for handling the REST requests that report the
+ * state of the background jobs of the server. Every request needs a valid
+ * token, the reported values are not specific to the user.
+ */
+@RestController
+public class MonitoringController {
+
+    private final UserService userService;
+    private final WeeklySummaryService weeklySummaryService;
+    private final WebSocketService webSocketService;
+
+    MonitoringController(UserService userService, WeeklySummaryService weeklySummaryService,
+            WebSocketService webSocketService) {
+        this.userService = userService;
+        this.weeklySummaryService = weeklySummaryService;
+        this.webSocketService = webSocketService;
+    }
+
+    /*
+     * Get the progress of the running weekly report, or of the last one once
+     * it has finished (processed users and chunks, duration)
+     */
+    @GetMapping("/monitoring/weekly-report")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public WeeklyReportProgressGetDTO getWeeklyReportProgress(@RequestHeader("Authorization") String token) {
+        userService.validateToken(token);
+        return weeklySummaryService.getProgress();
+    }
+
+    /*
+     * Get the counters of the outbound timer updates: offered, merged by the
+     * coalescing buffer, sent, pending and the highest buffering latency
+     */
+    @GetMapping("/monitoring/timer-updates")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public TimerUpdateMetricsGetDTO getTimerUpdateMetrics(@RequestHeader("Authorization") String token) {
+        userService.validateToken(token);
+        return webSocketService.getTimerUpdateMetrics();
+    }
+}
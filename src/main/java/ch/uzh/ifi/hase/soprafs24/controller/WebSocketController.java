@@ -13,6 +13,8 @@ import org.springframework.transaction.annotation.Transactional;
 import ch.uzh.ifi.hase.soprafs24.service.WebSocketService;
 import ch.uzh.ifi.hase.soprafs24.service.AuthService;
 import ch.uzh.ifi.hase.soprafs24.service.GroupService;
+import ch.uzh.ifi.hase.soprafs24.service.GroupTimerService;
+import ch.uzh.ifi.hase.soprafs24.service.MembershipService;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.entity.ChatMessage;
@@ -29,6 +31,8 @@ public class WebSocketController {
     private final GroupService groupService;
     private final UserService userService;
     private final AuthService authService;
+    private final GroupTimerService groupTimerService;
+    private final MembershipService membershipService;
 
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
@@ -37,16 +41,22 @@ public class WebSocketController {
     public WebSocketController(WebSocketService webSocketService, 
                              GroupService groupService,
                              UserService userService,
-                             AuthService authService) {
+                             AuthService authService,
+                             GroupTimerService groupTimerService,
+                             MembershipService membershipService) {
         this.webSocketService = webSocketService;
         this.groupService = groupService;
         this.userService = userService;
         this.authService = authService;
+        this.groupTimerService = groupTimerService;
+        this.membershipService = membershipService;
     }
 
     /**
      * Handles a user joining a group
      * This method is called when a user is added to a group in the database
+     * The session gets the status and timer of all members in one frame on
+     * /user/queue/group.presence, the client subscribes to it before joining.
      * 
      * @param payload Contains userId and groupId
      */
@@ -62,6 +72,8 @@ public class WebSocketController {
         
         try {
             webSocketService.addUserToGroup(groupId, sessionId, userId);
+            webSocketService.sendPresenceSnapshot(groupId, sessionId,
+                    () -> membershipService.getActiveUsersInGroup(groupService.findById(Long.parseLong(groupId))));
             return String.format("User with ID %s joined group %s", userId, groupId);
         } catch (Exception e) {
             return String.format("Error handling group join: %s", e.getMessage());
@@ -123,8 +135,19 @@ public class WebSocketController {
         }
     }
 
+    /**
+     * Handles a change of the shared timer of a group
+     * The client sends only the changed fields (startTime, duration,
+     * secondDuration, originalDuration) and the version it has seen
+     * (baseVersion), the server broadcasts the versioned delta and sends
+     * the full state to the client if its version is stale.
+     *
+     * @param payload Contains senderId, groupId, baseVersion and the changed fields
+     */
     @MessageMapping("group.sync")
-    public String handleGroupSync(@Payload Map<String, Object> payload, @Header("Authorization") String token) {
+    public String handleGroupSync(@Payload Map<String, Object> payload,
+                                SimpMessageHeaderAccessor headerAccessor,
+                                @Header("Authorization") String token) {
         
         String senderId = payload.get("senderId").toString();
         String groupId = payload.get("groupId").toString();
@@ -133,25 +156,12 @@ public class WebSocketController {
 
         try{
             User user = userService.findById(Long.parseLong(senderId));
-            String senderName = user.getUsername();
-            String startTime = payload.get("startTime").toString();
-            String duration = payload.get("duration").toString();
-            String secondDuration = payload.get("secondDuration").toString();
-            String status = user.getStatus().toString();
-            String originalDuration = payload.get("originalDuration").toString();
-
+            Object baseVersion = payload.get("baseVersion");
 
-            webSocketService.sendMessageToGroup(groupId, Map.of(
-                "type", "SYNC",
-                "senderId", senderId,
-                "senderName", senderName,
-                "startTime", startTime,
-                "duration", duration,
-                "secondDuration", secondDuration,
-                "status", status,
-                    "originalDuration", originalDuration
-            ));
-            return String.format("Message sent to topic /topic/group.%s", groupId);
+            long version = groupTimerService.sync(groupId, headerAccessor.getSessionId(), senderId,
+                    user.getUsername(), user.getStatus().toString(), payload,
+                    baseVersion != null ? Long.valueOf(baseVersion.toString()) : null);
+            return String.format("Timer of group %s is at version %d", groupId, version);
         } catch (Exception e) {
             System.err.println("Error sending message to: " + e.getMessage());
             return String.format("Error sending sync: %s", e.getMessage());
@@ -7,15 +7,18 @@ import lombok.Getter;
 import lombok.Setter;
 
 @Entity
-@Table(name = "ACTIVITIES")
+@Table(name = "ACTIVITIES", indexes = @Index(name = "idx_activities_user_start", columnList = "user_id, start_date_time, id"))
 @Getter
 @Setter
 public class Activity implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    // ids are reserved 50 at a time (pooled optimizer), so bulk inserts do not
+    // need a sequence call per row
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "activity_seq")
+    @SequenceGenerator(name = "activity_seq", sequenceName = "ACTIVITY_SEQ", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,32 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Archive Epoch
+ * Random id created once per database and written next to the activity
+ * archive, archive files with another epoch belong to a database that no
+ * longer exists (in-memory or recreated schema) and are never read.
+ */
+@Entity
+@Table(name = "ARCHIVE_EPOCH")
+@Getter
+@Setter
+public class ArchiveEpoch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Column(nullable = false, unique = true)
+    private String epoch;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
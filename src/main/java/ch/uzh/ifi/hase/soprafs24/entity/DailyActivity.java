@@ -0,0 +1,38 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Daily Activity Rollup
+ * Pre-aggregated total study time of one user on one day. The row is updated
+ * incrementally every time an Activity is stored, so the aggregated statistics
+ * do not need to load the raw ACTIVITIES rows.
+ * - duration -> total minutes of that day, every activity rounded to the
+ * nearest minute before being added
+ */
+@Entity
+@Table(name = "DAILY_ACTIVITIES", uniqueConstraints = @UniqueConstraint(columnNames = { "user_id", "activity_date" }))
+@Getter
+@Setter
+public class DailyActivity implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(name = "activity_date", nullable = false)
+    private LocalDate date;
+
+    @Column(nullable = false)
+    private long duration;
+}
@@ -0,0 +1,44 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Daily Goal
+ * Daily study target of one user with the progress of the last day a
+ * session was stored on, updated every time an Activity is stored so the
+ * progress never has to be summed from the activities.
+ * - progressMinutes -> study time of progressDate
+ * - reachedDate -> last day the goal was reached (notified once per day)
+ */
+@Entity
+@Table(name = "DAILY_GOALS")
+@Getter
+@Setter
+public class DailyGoal implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false, unique = true)
+    private User user;
+
+    @Column(nullable = false)
+    private int targetMinutes;
+
+    @Column
+    private LocalDate progressDate;
+
+    @Column(nullable = false)
+    private long progressMinutes;
+
+    @Column
+    private LocalDate reachedDate;
+}
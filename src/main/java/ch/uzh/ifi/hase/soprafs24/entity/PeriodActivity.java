@@ -0,0 +1,45 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import ch.uzh.ifi.hase.soprafs24.constant.StatisticsGranularity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Period Activity Rollup
+ * Pre-aggregated total study time of one user in one week, month or year,
+ * maintained next to the DailyActivity rollup so long statistic ranges read a
+ * handful of rows.
+ * - periodStart -> first day of the period (monday for weeks)
+ * - duration -> total minutes of the period, rounded like the daily rollup
+ */
+@Entity
+@Table(name = "PERIOD_ACTIVITIES", uniqueConstraints = @UniqueConstraint(columnNames = { "user_id", "granularity",
+        "period_start" }))
+@Getter
+@Setter
+public class PeriodActivity implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private StatisticsGranularity granularity;
+
+    @Column(name = "period_start", nullable = false)
+    private LocalDate periodStart;
+
+    @Column(nullable = false)
+    private long duration;
+}
@@ -0,0 +1,40 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Study Streak
+ * Consecutive study days of one user, updated every time an Activity is
+ * stored so the streak never has to be computed from the whole history.
+ * - currentStreak -> consecutive days ending on lastActiveDate
+ * - longestStreak -> longest run of consecutive days so far
+ */
+@Entity
+@Table(name = "STUDY_STREAKS")
+@Getter
+@Setter
+public class StudyStreak implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false, unique = true)
+    private User user;
+
+    @Column(nullable = false)
+    private int currentStreak;
+
+    @Column(nullable = false)
+    private int longestStreak;
+
+    @Column
+    private LocalDate lastActiveDate;
+}
@@ -1,24 +1,30 @@
 package ch.uzh.ifi.hase.soprafs24.entity;
 
 import java.io.Serializable;
-import lombok.Getter;
-import lombok.Setter;
-import lombok.NoArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.ToString;
 
 /**
  * Represents a timer update message sent through WebSocket
+ * The event is immutable and does not contain the group, it is serialized
+ * once and sent to every group of the user (see WebSocketService).
  */
 @Getter
-@Setter
-@NoArgsConstructor
 @AllArgsConstructor
 @ToString
+@JsonPropertyOrder({ "type", "userId", "username", "status", "duration", "startTime" })
 public class TimerUpdate implements Serializable {
-    private String userId;
-    private String username; 
-    private String status;
-    private long duration;
-    private String startTime;
-}
\ No newline at end of file
+    public static final String TYPE = "TIMER_UPDATE";
+
+    private final String userId;
+    private final String username;
+    private final String status;
+    private final String duration;
+    private final String startTime;
+
+    public String getType() {
+        return TYPE;
+    }
+}
@@ -0,0 +1,51 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Weekly Summary
+ * Snapshot of the study week of one user, written by the weekly report job
+ * so the summary is never computed on request.
+ * - totalMinutes -> study time of the week (monday to sunday)
+ * - bestDay, bestDayMinutes -> day with the most study time, null without activities
+ * - groupId, groupRank -> best rank of the user among the active members of
+ *                         one of its groups, null without a group
+ */
+@Entity
+@Table(name = "WEEKLY_SUMMARIES", uniqueConstraints = @UniqueConstraint(columnNames = { "user_id", "week_start" }))
+@Getter
+@Setter
+public class WeeklySummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(nullable = false)
+    private LocalDate weekStart;
+
+    @Column(nullable = false)
+    private long totalMinutes;
+
+    @Column
+    private LocalDate bestDay;
+
+    @Column(nullable = false)
+    private long bestDayMinutes;
+
+    @Column
+    private Long groupId;
+
+    @Column
+    private Integer groupRank;
+}
@@ -2,15 +2,156 @@ package ch.uzh.ifi.hase.soprafs24.repository;
 
 import ch.uzh.ifi.hase.soprafs24.entity.Activity;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository("activityRepository")
 public interface ActivityRepository extends JpaRepository<Activity, Long> {
     List<Activity> findByUserId(Long userId);
     
     List<Activity> findByUserAndStartDateTimeBetweenOrderByStartDateTimeAsc(User user, LocalDateTime startDateTime, LocalDateTime endDateTime);
-}
\ No newline at end of file
+
+    /*
+     * Keyset pagination, newest activities first ordered by (startDateTime, id)
+     *      first page -> findByUserIdOrderByStartDateTimeDescIdDesc
+     *      next pages -> findPageAfter with the last (startDateTime, id) of the previous page
+     * Only the page size is read from the pageable, the offset is always 0
+     */
+    List<Activity> findByUserIdOrderByStartDateTimeDescIdDesc(Long userId, Pageable pageable);
+
+    @Query("SELECT a FROM Activity a WHERE a.user.id = :userId "
+            + "AND (a.startDateTime < :startDateTime OR (a.startDateTime = :startDateTime AND a.id < :id)) "
+            + "ORDER BY a.startDateTime DESC, a.id DESC")
+    List<Activity> findPageAfter(@Param("userId") Long userId, @Param("startDateTime") LocalDateTime startDateTime,
+            @Param("id") Long id, Pageable pageable);
+
+    // rows are fetched from the database in chunks while the stream is consumed,
+    // the stream must be read inside a transaction
+    @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+    Stream<Activity> streamByUserIdOrderByStartDateTimeAsc(Long userId);
+
+    // only the start and end of the sessions of the users, used to load the in-memory
+    // activity indexes with one query
+    @Query("SELECT a.user.id AS userId, a.startDateTime AS startDateTime, a.endDateTime AS endDateTime "
+            + "FROM Activity a WHERE a.user.id IN :userIds ORDER BY a.startDateTime ASC")
+    List<UserSessionBounds> findSessionBoundsOfUsers(@Param("userIds") Collection<Long> userIds);
+
+    // start and end of all sessions, used to rebuild the in-memory statistics,
+    // the stream must be read inside a transaction
+    @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+    @Query("SELECT a.user.id AS userId, a.startDateTime AS startDateTime, a.endDateTime AS endDateTime "
+            + "FROM Activity a ORDER BY a.startDateTime ASC")
+    Stream<UserSessionBounds> streamAllSessionBounds();
+
+    // start and end of all sessions grouped by user, in chronological order within a user,
+    // read by the rollup backfill, the stream must be read inside a transaction
+    @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+    @Query("SELECT a.user.id AS userId, a.startDateTime AS startDateTime, a.endDateTime AS endDateTime "
+            + "FROM Activity a ORDER BY a.user.id ASC, a.startDateTime ASC")
+    Stream<UserSessionBounds> streamAllSessionBoundsByUser();
+
+    // start and end of the sessions of the user overlapping [startDateTime, endDateTime)
+    @Query("SELECT a.startDateTime AS startDateTime, a.endDateTime AS endDateTime FROM Activity a "
+            + "WHERE a.user.id = :userId AND a.startDateTime < :endDateTime AND a.endDateTime > :startDateTime")
+    List<SessionBounds> findOverlappingSessionBounds(@Param("userId") Long userId,
+            @Param("startDateTime") LocalDateTime startDateTime, @Param("endDateTime") LocalDateTime endDateTime);
+
+    // same as above except the given activities, which must not be empty
+    // (NOT IN with an empty list is invalid on several databases)
+    @Query("SELECT a.startDateTime AS startDateTime, a.endDateTime AS endDateTime FROM Activity a "
+            + "WHERE a.user.id = :userId AND a.startDateTime < :endDateTime AND a.endDateTime > :startDateTime "
+            + "AND a.id NOT IN :excludedIds")
+    List<SessionBounds> findOverlappingSessionBounds(@Param("userId") Long userId,
+            @Param("startDateTime") LocalDateTime startDateTime, @Param("endDateTime") LocalDateTime endDateTime,
+            @Param("excludedIds") Collection<Long> excludedIds);
+
+    // start and end of the sessions of the users overlapping [startDateTime, endDateTime),
+    // read by the calendar attendance report
+    @Query("SELECT a.user.id AS userId, a.startDateTime AS startDateTime, a.endDateTime AS endDateTime "
+            + "FROM Activity a WHERE a.user.id IN :userIds "
+            + "AND a.startDateTime < :endDateTime AND a.endDateTime > :startDateTime")
+    List<UserSessionBounds> findOverlappingSessionBoundsOfUsers(@Param("userIds") Collection<Long> userIds,
+            @Param("startDateTime") LocalDateTime startDateTime, @Param("endDateTime") LocalDateTime endDateTime);
+
+    // sessions started before the given time grouped by user, in chronological order,
+    // read by the archival job, the stream must be read inside a transaction
+    @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+    @Query("SELECT a.id AS id, a.user.id AS userId, a.startDateTime AS startDateTime, a.endDateTime AS endDateTime "
+            + "FROM Activity a WHERE a.startDateTime < :before ORDER BY a.user.id ASC, a.startDateTime ASC, a.id ASC")
+    Stream<SessionRecord> streamSessionsStartedBefore(@Param("before") LocalDateTime before);
+
+    List<Activity> findByUserIdInOrderByStartDateTimeAsc(Collection<Long> userIds);
+
+    List<Activity> findByUserIdInAndStartDateTimeBetweenOrderByStartDateTimeAsc(Collection<Long> userIds, LocalDateTime startDateTime, LocalDateTime endDateTime);
+
+    /*
+     * Study time per user and day summed by the database, credited like the
+     * rollup: a session only counts the time after the end of the sessions of
+     * its user that started before it (studiedUntil), on the day it started
+     *      totalSeconds -> exact sum of the credited time of the day
+     *      duration -> sum in minutes, every session rounded to the nearest minute
+     *                  (same rounding as ActivityAggregateDTO.duration)
+     */
+    @Query(value = "SELECT c.user_id AS userId, CAST(c.start_date_time AS DATE) AS activityDate, "
+            + "SUM(c.credited) / 1000 AS totalSeconds, SUM((c.credited + 30000) / 60000) AS duration "
+            + "FROM (SELECT w.user_id, w.start_date_time, "
+            + "CASE WHEN w.studied_until IS NULL OR w.studied_until <= w.start_date_time "
+            + "THEN DATEDIFF(MILLISECOND, w.start_date_time, w.end_date_time) "
+            + "WHEN w.studied_until >= w.end_date_time THEN 0 "
+            + "ELSE DATEDIFF(MILLISECOND, w.studied_until, w.end_date_time) END AS credited "
+            + "FROM (SELECT a.user_id, a.start_date_time, a.end_date_time, MAX(a.end_date_time) OVER ("
+            + "PARTITION BY a.user_id ORDER BY a.start_date_time, a.id "
+            + "ROWS BETWEEN UNBOUNDED PRECEDING AND 1 PRECEDING) AS studied_until FROM ACTIVITIES a) w) c "
+            + "GROUP BY c.user_id, CAST(c.start_date_time AS DATE)", nativeQuery = true)
+    List<DailyDuration> sumDurationsByUserAndDay();
+
+    // every (user, day) with at least one session, read by the study streak backfill
+    @Query(value = "SELECT DISTINCT a.user_id AS userId, CAST(a.start_date_time AS DATE) AS activityDate "
+            + "FROM ACTIVITIES a", nativeQuery = true)
+    List<ActiveDay> findActiveDays();
+
+    interface DailyDuration {
+        Long getUserId();
+
+        LocalDate getActivityDate();
+
+        Long getTotalSeconds();
+
+        Long getDuration();
+    }
+
+    interface ActiveDay {
+        Long getUserId();
+
+        LocalDate getActivityDate();
+    }
+
+    interface SessionBounds {
+        LocalDateTime getStartDateTime();
+
+        LocalDateTime getEndDateTime();
+    }
+
+    interface UserSessionBounds extends SessionBounds {
+        Long getUserId();
+    }
+
+    interface SessionRecord extends UserSessionBounds {
+        Long getId();
+    }
+}
@@ -0,0 +1,12 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.ArchiveEpoch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository("archiveEpochRepository")
+public interface ArchiveEpochRepository extends JpaRepository<ArchiveEpoch, Long> {
+    Optional<ArchiveEpoch> findFirstByOrderByIdAsc();
+}
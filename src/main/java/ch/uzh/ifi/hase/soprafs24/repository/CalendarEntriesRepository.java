@@ -1,11 +1,20 @@
 package ch.uzh.ifi.hase.soprafs24.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ch.uzh.ifi.hase.soprafs24.entity.CalendarEntries;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository("calendarEntriesRepository")
 public interface CalendarEntriesRepository extends JpaRepository<CalendarEntries, Long> {
     List<CalendarEntries> findByGroupId(Long groupId);
+
+    // entries of the group overlapping [startTime, endTime), in chronological order
+    @Query("SELECT c FROM CalendarEntries c WHERE c.group.id = :groupId "
+            + "AND c.startTime < :endTime AND c.endTime > :startTime ORDER BY c.startTime ASC")
+    List<CalendarEntries> findOverlapping(@Param("groupId") Long groupId,
+            @Param("startTime") LocalDateTime startTime, @Param("endTime") LocalDateTime endTime);
 }
@@ -0,0 +1,75 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.DailyActivity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository("dailyActivityRepository")
+public interface DailyActivityRepository extends JpaRepository<DailyActivity, Long> {
+    Optional<DailyActivity> findByUserIdAndDate(Long userId, LocalDate date);
+
+    List<DailyActivity> findByUserIdOrderByDateAsc(Long userId);
+
+    // the duration of a stored row is only changed with this update, concurrent stores never lose minutes
+    // (0 -> no row for that day yet)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE DailyActivity d SET d.duration = d.duration + :minutes "
+            + "WHERE d.user.id = :userId AND d.date = :date")
+    int addDuration(@Param("userId") Long userId, @Param("date") LocalDate date, @Param("minutes") long minutes);
+
+    List<DailyActivity> findByUserIdAndDateLessThanEqualOrderByDateAsc(Long userId, LocalDate endDate);
+
+    List<DailyActivity> findByUserIdAndDateBetweenOrderByDateAsc(Long userId, LocalDate startDate, LocalDate endDate);
+
+    List<DailyActivity> findByUserIdInOrderByDateAsc(Collection<Long> userIds);
+
+    List<DailyActivity> findByUserIdInAndDateLessThanEqualOrderByDateAsc(Collection<Long> userIds, LocalDate endDate);
+
+    List<DailyActivity> findByUserIdInAndDateBetweenOrderByDateAsc(Collection<Long> userIds, LocalDate startDate, LocalDate endDate);
+
+    // (user id, date, duration) of the days of several users sorted by date, without loading
+    // DailyActivity entities
+    @Query("SELECT d.user.id AS userId, d.date AS date, d.duration AS duration FROM DailyActivity d "
+            + "WHERE d.user.id IN :userIds AND d.date BETWEEN :startDate AND :endDate ORDER BY d.date ASC")
+    List<UserDay> findUserDays(@Param("userIds") Collection<Long> userIds, @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate);
+
+    /*
+     * Total study time per day of all members of a group with the given status,
+     * summed by the database
+     *      activeMembers -> number of members who studied on that day
+     * startDate and endDate are optional (null -> no bound)
+     */
+    @Query("SELECT d.date AS date, SUM(d.duration) AS totalMinutes, COUNT(d) AS activeMembers "
+            + "FROM DailyActivity d WHERE d.duration > 0 "
+            + "AND d.user.id IN (SELECT m.user.id FROM GroupMembership m WHERE m.group.id = :groupId AND m.status = :status) "
+            + "AND (:startDate IS NULL OR d.date >= :startDate) AND (:endDate IS NULL OR d.date <= :endDate) "
+            + "GROUP BY d.date ORDER BY d.date ASC")
+    List<GroupTotal> sumByGroup(@Param("groupId") Long groupId, @Param("status") MembershipStatus status,
+            @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    interface UserDay {
+        Long getUserId();
+
+        LocalDate getDate();
+
+        Long getDuration();
+    }
+
+    interface GroupTotal {
+        LocalDate getDate();
+
+        Long getTotalMinutes();
+
+        Long getActiveMembers();
+    }
+}
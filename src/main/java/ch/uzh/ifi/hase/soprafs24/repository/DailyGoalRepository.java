@@ -0,0 +1,44 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.DailyGoal;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository("dailyGoalRepository")
+public interface DailyGoalRepository extends JpaRepository<DailyGoal, Long> {
+    Optional<DailyGoal> findByUserId(Long userId);
+
+    // the progress is only changed with these updates, concurrent sessions of a user never lose minutes
+    @Modifying
+    @Query("UPDATE DailyGoal g SET g.progressDate = :date, g.progressMinutes = 0 "
+            + "WHERE g.user.id = :userId AND (g.progressDate IS NULL OR g.progressDate < :date)")
+    int startProgress(@Param("userId") Long userId, @Param("date") LocalDate date);
+
+    @Modifying
+    @Query("UPDATE DailyGoal g SET g.progressMinutes = g.progressMinutes + :minutes "
+            + "WHERE g.user.id = :userId AND g.progressDate = :date")
+    int addProgress(@Param("userId") Long userId, @Param("date") LocalDate date, @Param("minutes") long minutes);
+
+    // 1 for the one update that reaches the goal of the day, 0 afterwards
+    @Modifying
+    @Query("UPDATE DailyGoal g SET g.reachedDate = g.progressDate "
+            + "WHERE g.user.id = :userId AND g.progressDate = :date AND g.progressMinutes >= g.targetMinutes "
+            + "AND (g.reachedDate IS NULL OR g.reachedDate <> g.progressDate)")
+    int markReached(@Param("userId") Long userId, @Param("date") LocalDate date);
+
+    @Query("SELECT g.targetMinutes AS targetMinutes, g.progressMinutes AS progressMinutes "
+            + "FROM DailyGoal g WHERE g.user.id = :userId")
+    Optional<GoalProgress> findProgressByUserId(@Param("userId") Long userId);
+
+    interface GoalProgress {
+        int getTargetMinutes();
+
+        long getProgressMinutes();
+    }
+}
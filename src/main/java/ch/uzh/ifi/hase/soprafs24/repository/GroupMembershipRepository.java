@@ -4,7 +4,10 @@ import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.Group;
 import ch.uzh.ifi.hase.soprafs24.entity.GroupMembership;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -15,6 +18,22 @@ public interface GroupMembershipRepository extends JpaRepository<GroupMembership
     List<GroupMembership> findByUser(User user);
     List<GroupMembership> findByGroup(Group group);
     List<GroupMembership> findByUserAndStatus(User user, MembershipStatus status);
+    // fetch the users in the same query, the group statistics read all of them
+    @EntityGraph(attributePaths = "user")
     List<GroupMembership> findByGroupAndStatus(Group group, MembershipStatus status);
     Optional<GroupMembership> findByGroupAndUser(Group group, User user);
+    @Query("SELECT m.user.id FROM GroupMembership m WHERE m.group.id = :groupId AND m.status = :status")
+    List<Long> findUserIdsByGroupIdAndStatus(@Param("groupId") Long groupId, @Param("status") MembershipStatus status);
+    @Query("SELECT m.group.id FROM GroupMembership m WHERE m.user.id = :userId AND m.status = :status")
+    List<Long> findGroupIdsByUserIdAndStatus(@Param("userId") Long userId, @Param("status") MembershipStatus status);
+
+    // (group id, user id) of all memberships with the status, used by the weekly report ranks
+    @Query("SELECT m.group.id AS groupId, m.user.id AS userId FROM GroupMembership m WHERE m.status = :status")
+    List<GroupMember> findGroupMembersByStatus(@Param("status") MembershipStatus status);
+
+    interface GroupMember {
+        Long getGroupId();
+
+        Long getUserId();
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,47 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
+import ch.uzh.ifi.hase.soprafs24.constant.StatisticsGranularity;
+import ch.uzh.ifi.hase.soprafs24.entity.PeriodActivity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+@Repository("periodActivityRepository")
+public interface PeriodActivityRepository extends JpaRepository<PeriodActivity, Long> {
+
+    // same as DailyActivityRepository.addDuration for a week, month or year
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE PeriodActivity p SET p.duration = p.duration + :minutes "
+            + "WHERE p.user.id = :userId AND p.granularity = :granularity AND p.periodStart = :periodStart")
+    int addDuration(@Param("userId") Long userId, @Param("granularity") StatisticsGranularity granularity,
+            @Param("periodStart") LocalDate periodStart, @Param("minutes") long minutes);
+
+    List<PeriodActivity> findByUserIdAndGranularityOrderByPeriodStartAsc(Long userId, StatisticsGranularity granularity);
+
+    List<PeriodActivity> findByUserIdAndGranularityAndPeriodStartLessThanEqualOrderByPeriodStartAsc(Long userId, StatisticsGranularity granularity, LocalDate endDate);
+
+    List<PeriodActivity> findByUserIdAndGranularityAndPeriodStartBetweenOrderByPeriodStartAsc(Long userId, StatisticsGranularity granularity, LocalDate startDate, LocalDate endDate);
+
+    List<PeriodActivity> findByUserIdInAndGranularityOrderByPeriodStartAsc(Collection<Long> userIds, StatisticsGranularity granularity);
+
+    List<PeriodActivity> findByUserIdInAndGranularityAndPeriodStartLessThanEqualOrderByPeriodStartAsc(Collection<Long> userIds, StatisticsGranularity granularity, LocalDate endDate);
+
+    List<PeriodActivity> findByUserIdInAndGranularityAndPeriodStartBetweenOrderByPeriodStartAsc(Collection<Long> userIds, StatisticsGranularity granularity, LocalDate startDate, LocalDate endDate);
+
+    // same as DailyActivityRepository.sumByGroup per week, month or year (date -> first day of the period)
+    @Query("SELECT p.periodStart AS date, SUM(p.duration) AS totalMinutes, COUNT(p) AS activeMembers "
+            + "FROM PeriodActivity p WHERE p.granularity = :granularity AND p.duration > 0 "
+            + "AND p.user.id IN (SELECT m.user.id FROM GroupMembership m WHERE m.group.id = :groupId AND m.status = :status) "
+            + "AND (:startDate IS NULL OR p.periodStart >= :startDate) AND (:endDate IS NULL OR p.periodStart <= :endDate) "
+            + "GROUP BY p.periodStart ORDER BY p.periodStart ASC")
+    List<DailyActivityRepository.GroupTotal> sumByGroup(@Param("groupId") Long groupId,
+            @Param("status") MembershipStatus status, @Param("granularity") StatisticsGranularity granularity,
+            @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+}
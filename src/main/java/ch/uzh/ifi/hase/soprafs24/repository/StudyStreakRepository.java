@@ -0,0 +1,34 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.StudyStreak;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository("studyStreakRepository")
+public interface StudyStreakRepository extends JpaRepository<StudyStreak, Long> {
+    Optional<StudyStreak> findByUserId(Long userId);
+
+    /*
+     * Moves the streak of the user forward to the day in one atomic update, like
+     * StudyStreakService.addActiveDay (previousDate -> the day before date)
+     * 0 if the user has no streak yet or the day lies before the last active day
+     * Every expression reads the values before the update, longestStreak is set
+     * first so databases assigning from left to right give the same result
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE StudyStreak s SET "
+            + "s.longestStreak = CASE WHEN s.lastActiveDate = :previousDate AND s.currentStreak >= s.longestStreak "
+            + "THEN s.currentStreak + 1 WHEN s.longestStreak = 0 THEN 1 ELSE s.longestStreak END, "
+            + "s.currentStreak = CASE WHEN s.lastActiveDate = :date THEN s.currentStreak "
+            + "WHEN s.lastActiveDate = :previousDate THEN s.currentStreak + 1 ELSE 1 END, "
+            + "s.lastActiveDate = :date "
+            + "WHERE s.user.id = :userId AND (s.lastActiveDate IS NULL OR s.lastActiveDate <= :date)")
+    int addActiveDay(@Param("userId") Long userId, @Param("date") LocalDate date,
+            @Param("previousDate") LocalDate previousDate);
+}
@@ -2,12 +2,28 @@ package ch.uzh.ifi.hase.soprafs24.repository;
 
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import java.util.List;
+import java.util.Optional;
+
 @Repository("userRepository")
 public interface UserRepository extends JpaRepository<User, Long> {
   User findByUsername(String username);
   User findByToken(String token);
 
   boolean existsByToken(String token);
+
+  @Query("SELECT u.id FROM User u ORDER BY u.id")
+  List<Long> findAllIds();
+
+  // locks the row of the user until the transaction ends, the stores of the sessions
+  // of a user take it first so their statistics rows are inserted once
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT u FROM User u WHERE u.id = :userId")
+  Optional<User> lockById(@Param("userId") Long userId);
 }
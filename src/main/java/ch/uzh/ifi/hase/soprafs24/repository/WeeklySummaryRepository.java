@@ -0,0 +1,23 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.WeeklySummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository("weeklySummaryRepository")
+public interface WeeklySummaryRepository extends JpaRepository<WeeklySummary, Long> {
+    Optional<WeeklySummary> findByUserIdAndWeekStart(Long userId, LocalDate weekStart);
+
+    Optional<WeeklySummary> findFirstByUserIdOrderByWeekStartDesc(Long userId);
+
+    // a new report of a week replaces the previous one
+    @Modifying
+    @Query("DELETE FROM WeeklySummary s WHERE s.weekStart = :weekStart")
+    int deleteByWeekStart(@Param("weekStart") LocalDate weekStart);
+}
@@ -0,0 +1,13 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class ActivityBatchResultGetDTO {
+    private int index;
+    private int status;
+    private Long id;
+    private String message;
+}
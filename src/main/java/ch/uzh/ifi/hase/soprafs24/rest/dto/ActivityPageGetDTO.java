@@ -0,0 +1,12 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class ActivityPageGetDTO {
+    private List<ActivityGetDTO> activities;
+    private String nextCursor;
+}
@@ -0,0 +1,12 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class AttendeeGetDTO {
+    private Long userId;
+    private String username;
+    private long overlapMinutes;
+}
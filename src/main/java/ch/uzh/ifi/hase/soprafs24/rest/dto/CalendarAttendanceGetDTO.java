@@ -0,0 +1,19 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class CalendarAttendanceGetDTO {
+    private Long entryId;
+    private String title;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+    private long plannedMinutes;
+    private int attendedMembers;
+    private int activeMembers;
+    private List<AttendeeGetDTO> attendees;
+}
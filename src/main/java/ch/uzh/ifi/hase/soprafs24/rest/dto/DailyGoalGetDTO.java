@@ -0,0 +1,14 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import java.time.LocalDate;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class DailyGoalGetDTO {
+    private int targetMinutes;
+    private LocalDate date;
+    private long minutes;
+    private boolean reached;
+}
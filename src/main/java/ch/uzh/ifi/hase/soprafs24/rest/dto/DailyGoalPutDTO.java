@@ -0,0 +1,10 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class DailyGoalPutDTO {
+    private Integer targetMinutes;
+}
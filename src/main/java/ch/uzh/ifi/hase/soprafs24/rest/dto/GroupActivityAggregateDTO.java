@@ -0,0 +1,13 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import java.time.LocalDate;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class GroupActivityAggregateDTO {
+    private LocalDate date;
+    private long totalMinutes;
+    private long activeMembers;
+}
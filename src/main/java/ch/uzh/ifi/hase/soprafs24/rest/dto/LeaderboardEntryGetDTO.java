@@ -0,0 +1,15 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class LeaderboardEntryGetDTO {
+    private int rank;
+    private Long userId;
+    private String username;
+    private String name;
+    private String profilePicture;
+    private long duration;
+}
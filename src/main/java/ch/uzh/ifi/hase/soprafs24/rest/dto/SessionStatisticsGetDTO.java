@@ -0,0 +1,13 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class SessionStatisticsGetDTO {
+    private long sessionCount;
+    private long medianSeconds;
+    private long p90Seconds;
+    private long p99Seconds;
+}
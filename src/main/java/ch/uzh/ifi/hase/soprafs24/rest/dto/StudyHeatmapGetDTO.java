@@ -0,0 +1,11 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class StudyHeatmapGetDTO {
+    private long[][] minutes;
+    private long totalMinutes;
+}
@@ -0,0 +1,13 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import java.time.LocalDate;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class StudyStreakGetDTO {
+    private int currentStreak;
+    private int longestStreak;
+    private LocalDate lastActiveDate;
+}
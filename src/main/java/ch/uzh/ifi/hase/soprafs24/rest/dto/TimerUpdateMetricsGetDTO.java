@@ -0,0 +1,16 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class TimerUpdateMetricsGetDTO {
+    private boolean coalescing;
+    private long flushIntervalMillis;
+    private long offered;
+    private long merged;
+    private long sent;
+    private int pending;
+    private long maxLatencyMillis;
+}
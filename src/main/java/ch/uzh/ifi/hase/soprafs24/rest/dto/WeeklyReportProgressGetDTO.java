@@ -0,0 +1,21 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class WeeklyReportProgressGetDTO {
+    private LocalDate weekStart;
+    private boolean running;
+    private int parallelism;
+    private int totalUsers;
+    private int processedUsers;
+    private int totalChunks;
+    private int completedChunks;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private long durationMillis;
+}
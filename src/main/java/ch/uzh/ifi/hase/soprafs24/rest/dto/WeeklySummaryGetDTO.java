@@ -0,0 +1,16 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import java.time.LocalDate;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class WeeklySummaryGetDTO {
+    private LocalDate weekStart;
+    private long totalMinutes;
+    private LocalDate bestDay;
+    private long bestDayMinutes;
+    private Long groupId;
+    private Integer groupRank;
+}
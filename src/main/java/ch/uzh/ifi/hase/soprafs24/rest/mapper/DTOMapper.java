@@ -3,8 +3,10 @@ package ch.uzh.ifi.hase.soprafs24.rest.mapper;
 import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.Activity;
 import ch.uzh.ifi.hase.soprafs24.entity.CalendarEntries;
+import ch.uzh.ifi.hase.soprafs24.entity.DailyActivity;
 import ch.uzh.ifi.hase.soprafs24.entity.Group;
 import ch.uzh.ifi.hase.soprafs24.entity.GroupMembership;
+import ch.uzh.ifi.hase.soprafs24.entity.PeriodActivity;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.*;
 import org.mapstruct.*;
@@ -162,6 +164,14 @@ public interface DTOMapper {
   @Mapping(source = "endDateTime", target = "endDateTime")
   ActivityGetDTO convertEntityToActivityGetDTO(Activity activity);
 
+  @Mapping(source = "date", target = "date")
+  @Mapping(source = "duration", target = "duration")
+  ActivityAggregateDTO convertEntityToActivityAggregateDTO(DailyActivity dailyActivity);
+
+  @Mapping(source = "periodStart", target = "date")
+  @Mapping(source = "duration", target = "duration")
+  ActivityAggregateDTO convertPeriodActivityToActivityAggregateDTO(PeriodActivity periodActivity);
+
 
   @Mapping(target = "group", expression = "java(mapGroupId(calendarEntryPostDTO.getGroupId()))")
   @Mapping(source = "title", target = "title")
@@ -0,0 +1,637 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.entity.ArchiveEpoch;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.ArchiveEpochRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Activity Archive Service
+ * This class moves old sessions out of the ACTIVITIES table into compressed,
+ * append-only files on local disk (one file per user), enabled with
+ * activity.archive.enabled=true. The daily and period rollups are not
+ * touched, so the statistics stay the same. Every run of the archival job
+ * appends one gzip block per user with the sessions that started more than
+ * activity.archive.horizon-days ago, then deletes them from the table.
+ * Reads for ranges before the archive horizon are served from the files, the
+ * sessions of a user are read from the file once per committed run and kept
+ * for the most recently read users (activity.archive.cached-users). While the
+ * archive is disabled nothing is read, written or deleted.
+ * The watermark file stores the epoch of the database (ARCHIVE_EPOCH), files
+ * written for another database (in-memory or recreated schema) are deleted
+ * before they could be read, their user ids no longer mean the same users.
+ * Files without a watermark were not written by this service, they are left
+ * alone and the archive stays unused until they are moved away.
+ * Every run numbers its blocks and is only committed in the watermark once
+ * the deletion of its rows has committed, the reads skip the blocks of runs
+ * that are not committed. So a session is either read from the archive or
+ * from the table, never from both. A run that stopped in between is
+ * finished by the next run (or on startup).
+ */
+@Service
+public class ActivityArchiveService {
+    private final Logger log = LoggerFactory.getLogger(ActivityArchiveService.class);
+
+    private final ActivityRepository activityRepository;
+    private final ArchiveEpochRepository archiveEpochRepository;
+
+    @Value("${activity.archive.enabled:false}")
+    private boolean enabled = false;
+
+    @Value("${activity.archive.directory:activity-archive}")
+    private String directory = "activity-archive";
+
+    @Value("${activity.archive.horizon-days:365}")
+    private int horizonDays = 365;
+
+    @Value("${activity.archive.cached-users:1000}")
+    private int cachedUsers = 1000;
+
+    // sessions started before this day are archived, null until the first run
+    private LocalDate archivedBefore;
+    // number of the last committed run, 0 until the first run
+    private int committedRun = 0;
+    // run that wrote blocks but is not committed yet, 0 if none
+    private int pendingRun = 0;
+    private LocalDate pendingBefore;
+    private boolean watermarkLoaded = false;
+    // the directory holds archive files this service did not write
+    private boolean foreignFiles = false;
+    // epoch of the database, read (or created) the first time it is needed
+    private String databaseEpoch;
+
+    private static final String WATERMARK_FILE = "archived-before";
+    private static final String FILE_PREFIX = "user-";
+    private static final String FILE_SUFFIX = ".csv.gz";
+    private static final String RUN_PREFIX = "#";
+    private static final String NONE = "-";
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    // sorted sessions of the most recently read users, valid as long as no other run is committed
+    private final Map<Long, CachedSessions> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, CachedSessions> eldest) {
+            return size() > cachedUsers;
+        }
+    };
+
+    public ActivityArchiveService(@Qualifier("activityRepository") ActivityRepository activityRepository,
+            @Qualifier("archiveEpochRepository") ArchiveEpochRepository archiveEpochRepository) {
+        this.activityRepository = activityRepository;
+        this.archiveEpochRepository = archiveEpochRepository;
+    }
+
+    /**
+     * A session as stored in the archive, with the same accessors as the
+     * session projections of ActivityRepository
+     */
+    record ArchivedSession(Long id, Long userId, LocalDateTime startDateTime, LocalDateTime endDateTime)
+            implements ActivityRepository.UserSessionBounds {
+
+        @Override
+        public Long getUserId() {
+            return userId;
+        }
+
+        @Override
+        public LocalDateTime getStartDateTime() {
+            return startDateTime;
+        }
+
+        @Override
+        public LocalDateTime getEndDateTime() {
+            return endDateTime;
+        }
+    }
+
+    private record CachedSessions(int run, List<ArchivedSession> sessions) {
+    }
+
+    /**
+     * Nightly archival job (activity.archive.cron), does nothing unless the
+     * archive is enabled
+     */
+    @Scheduled(cron = "${activity.archive.cron:0 30 3 * * *}")
+    @Transactional
+    public void archiveOnSchedule() {
+        if (enabled) {
+            archive(LocalDate.now().minusDays(horizonDays));
+        }
+    }
+
+    /**
+     * Finishes a run that stopped after writing its blocks, so its sessions
+     * do not stay hidden until the next nightly run
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void recoverOnStartup() {
+        if (enabled && pendingRun() != 0) {
+            recover();
+        }
+    }
+
+    /**
+     * Moves all sessions that started before the given day to the archive.
+     * The files are written and synced before the rows are deleted, the run
+     * is committed in the watermark after the deletion has committed. If the
+     * previous run did not commit, this call only finishes that run. Does
+     * nothing while the archive is disabled or holds files it did not write.
+     *
+     * @return the number of archived sessions
+     */
+    @Transactional
+    public int archive(LocalDate before) {
+        if (!enabled) {
+            return 0;
+        }
+        // drops the files of another database before appending to them
+        if (pendingRun() != 0) {
+            return recover();
+        }
+        if (hasForeignFiles()) {
+            log.warn("Archive directory {} holds files without a watermark, nothing is archived", archiveDirectory());
+            return 0;
+        }
+        int run = committedRun() + 1;
+        writeWatermark(archivedBefore(), run - 1, run, before);
+
+        List<Long> archivedIds = new ArrayList<>();
+        try (Stream<ActivityRepository.SessionRecord> sessions = activityRepository
+                .streamSessionsStartedBefore(before.atStartOfDay())) {
+            // the sessions arrive grouped by user, every user gets one block
+            List<ArchivedSession> userSessions = new ArrayList<>();
+            Iterator<ActivityRepository.SessionRecord> iterator = sessions.iterator();
+            while (iterator.hasNext()) {
+                ActivityRepository.SessionRecord session = iterator.next();
+                if (!userSessions.isEmpty() && !userSessions.get(0).userId().equals(session.getUserId())) {
+                    append(run, userSessions);
+                    userSessions.clear();
+                }
+                userSessions.add(new ArchivedSession(session.getId(), session.getUserId(),
+                        session.getStartDateTime(), session.getEndDateTime()));
+                archivedIds.add(session.getId());
+            }
+            if (!userSessions.isEmpty()) {
+                append(run, userSessions);
+            }
+        }
+
+        deleteRows(archivedIds);
+        TransactionCallbacks.afterCommit(() -> commit(run, before));
+
+        log.info("Archived {} sessions started before {}", archivedIds.size(), before);
+        return archivedIds.size();
+    }
+
+    /*
+     * Finishes the pending run: the sessions of its blocks are deleted from
+     * the table (those still there) and the run is committed once the
+     * deletion has committed
+     */
+    private int recover() {
+        int run = pendingRun;
+        LocalDate before = pendingBefore;
+        List<Long> archivedIds = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(archiveDirectory(),
+                FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                readFile(file, null, blockRun -> blockRun == run, session -> archivedIds.add(session.id()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        deleteRows(archivedIds);
+        TransactionCallbacks.afterCommit(() -> commit(run, before));
+
+        log.info("Finished archival run {} with {} sessions started before {}", run, archivedIds.size(), before);
+        return archivedIds.size();
+    }
+
+    private void deleteRows(List<Long> ids) {
+        for (int i = 0; i < ids.size(); i += DELETE_BATCH_SIZE) {
+            activityRepository.deleteAllByIdInBatch(ids.subList(i, Math.min(i + DELETE_BATCH_SIZE, ids.size())));
+        }
+    }
+
+    private synchronized void commit(int run, LocalDate before) {
+        LocalDate watermark = archivedBefore == null || before.isAfter(archivedBefore) ? before : archivedBefore;
+        writeWatermark(watermark, run, 0, null);
+    }
+
+    /**
+     * True if sessions starting at or after the given time may be archived
+     * (from = null -> any time), always false while the archive is disabled
+     */
+    public boolean covers(LocalDateTime from) {
+        if (!enabled) {
+            return false;
+        }
+        LocalDate watermark = archivedBefore();
+        return watermark != null && (from == null || from.isBefore(watermark.atStartOfDay()));
+    }
+
+    /**
+     * Archived sessions of the user that started in [from, to], as detached
+     * activities sorted by start (null -> unbounded)
+     */
+    public List<Activity> findActivities(User user, LocalDateTime from, LocalDateTime to) {
+        if (!covers(from)) {
+            return new ArrayList<>();
+        }
+        List<ArchivedSession> sessions = read(user.getId());
+        int first = from == null ? 0 : indexOfFirstStart(sessions, from, false);
+        int end = to == null ? sessions.size() : indexOfFirstStart(sessions, to, true);
+        return sessions.subList(first, Math.max(first, end)).stream()
+                .map(session -> toActivity(user, session))
+                .toList();
+    }
+
+    /**
+     * Passes the archived sessions of the user to the consumer as detached
+     * activities, reading the file line by line. The sessions come in the
+     * order they were archived: by run, and by start within a run.
+     */
+    public void forEachArchivedActivity(User user, Consumer<Activity> consumer) {
+        if (!covers(null)) {
+            return;
+        }
+        Path file = userFile(user.getId());
+        if (Files.exists(file)) {
+            int run = committedRun();
+            readFile(file, user.getId(), blockRun -> blockRun <= run, session -> consumer.accept(
+                    toActivity(user, session)));
+        }
+    }
+
+    /**
+     * Archived sessions of the user ordered newest first by (startDateTime, id)
+     * that come after the given cursor, at most limit (see
+     * ActivityRepository.findPageAfter)
+     */
+    public List<Activity> findPageAfter(User user, LocalDateTime startDateTime, Long id, int limit) {
+        if (!covers(null)) {
+            return new ArrayList<>();
+        }
+        List<ArchivedSession> sessions = read(user.getId());
+        List<Activity> page = new ArrayList<>();
+        for (int i = sessions.size() - 1; i >= 0 && page.size() < limit; i--) {
+            ArchivedSession session = sessions.get(i);
+            if (startDateTime == null || session.startDateTime().isBefore(startDateTime)
+                    || (session.startDateTime().equals(startDateTime) && session.id() < id)) {
+                page.add(toActivity(user, session));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Start and end of the archived sessions of the user overlapping
+     * [startDateTime, endDateTime)
+     */
+    public List<ActivityRepository.SessionBounds> findOverlappingSessionBounds(Long userId,
+            LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        if (!covers(startDateTime)) {
+            return new ArrayList<>();
+        }
+        List<ArchivedSession> sessions = read(userId);
+        // only the sessions starting before the end can overlap
+        return sessions.subList(0, indexOfFirstStart(sessions, endDateTime, false)).stream()
+                .filter(session -> session.endDateTime().isAfter(startDateTime))
+                .map(ActivityRepository.SessionBounds.class::cast)
+                .toList();
+    }
+
+    /**
+     * Start and end of all archived sessions of the user, sorted by start
+     */
+    public List<ActivityRepository.SessionBounds> findSessionBounds(Long userId) {
+        if (!covers(null)) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(read(userId));
+    }
+
+    /**
+     * Ids of the users with archived sessions
+     */
+    public List<Long> findArchivedUserIds() {
+        List<Long> userIds = new ArrayList<>();
+        if (!covers(null)) {
+            return userIds;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(archiveDirectory(),
+                FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                userIds.add(Long.valueOf(fileName.substring(FILE_PREFIX.length(),
+                        fileName.length() - FILE_SUFFIX.length())));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return userIds;
+    }
+
+    /**
+     * Passes every archived session to the consumer, user by user and sorted
+     * by start within a user, used by the rebuilds of the statistics. The
+     * files are read without filling the cache of the recently read users.
+     */
+    public void forEachArchivedSession(Consumer<ActivityRepository.UserSessionBounds> consumer) {
+        List<Long> userIds = findArchivedUserIds();
+        if (userIds.isEmpty()) {
+            return;
+        }
+        int run = committedRun();
+        for (Long userId : userIds) {
+            readSorted(userId, run).forEach(consumer);
+        }
+    }
+
+    private Activity toActivity(User user, ArchivedSession session) {
+        Activity activity = new Activity();
+        activity.setId(session.id());
+        activity.setUser(user);
+        activity.setStartDateTime(session.startDateTime());
+        activity.setEndDateTime(session.endDateTime());
+        return activity;
+    }
+
+    private Path archiveDirectory() {
+        return Paths.get(directory);
+    }
+
+    private Path userFile(Long userId) {
+        return archiveDirectory().resolve(FILE_PREFIX + userId + FILE_SUFFIX);
+    }
+
+    /*
+     * Appends the sessions of one user as a new gzip block, gzip readers treat
+     * concatenated blocks as one stream
+     *      first line -> #run
+     *      one line per session -> id,startDateTime,endDateTime
+     */
+    private void append(int run, List<ArchivedSession> sessions) {
+        try {
+            Files.createDirectories(archiveDirectory());
+            try (FileChannel channel = FileChannel.open(userFile(sessions.get(0).userId()),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel));
+                Writer writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8));
+                writer.write(RUN_PREFIX + run + "\n");
+                for (ArchivedSession session : sessions) {
+                    writer.write(session.id() + "," + session.startDateTime() + "," + session.endDateTime() + "\n");
+                }
+                writer.flush();
+                gzip.finish();
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * All archived sessions of the committed runs of the user sorted by
+     * (startDateTime, id), read from the cache while no other run has been
+     * committed (the blocks of a run are only read once it is committed, so
+     * the sessions of a committed run never change). The list is unmodifiable.
+     */
+    private List<ArchivedSession> read(Long userId) {
+        int run = committedRun();
+        synchronized (cache) {
+            CachedSessions cached = cache.get(userId);
+            if (cached != null && cached.run() == run) {
+                return cached.sessions();
+            }
+        }
+
+        List<ArchivedSession> sessions = List.copyOf(readSorted(userId, run));
+        synchronized (cache) {
+            cache.put(userId, new CachedSessions(run, sessions));
+        }
+        return sessions;
+    }
+
+    // a session archived twice is returned once
+    private List<ArchivedSession> readSorted(Long userId, int run) {
+        Path file = userFile(userId);
+        if (!Files.exists(file)) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, ArchivedSession> sessions = new LinkedHashMap<>();
+        readFile(file, userId, blockRun -> blockRun <= run, session -> sessions.put(session.id(), session));
+
+        List<ArchivedSession> sorted = new ArrayList<>(sessions.values());
+        sorted.sort(Comparator.comparing(ArchivedSession::startDateTime).thenComparing(ArchivedSession::id));
+        return sorted;
+    }
+
+    /*
+     * Index of the first session starting at or after the given time (strictly
+     * after if strictlyAfter is set), binary search in sessions sorted by start
+     */
+    private static int indexOfFirstStart(List<ArchivedSession> sessions, LocalDateTime time,
+            boolean strictlyAfter) {
+        int low = 0;
+        int high = sessions.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            LocalDateTime start = sessions.get(middle).startDateTime();
+            if (start.isBefore(time) || (strictlyAfter && start.equals(time))) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /*
+     * Reads a user file line by line and passes the sessions of the blocks
+     * of the accepted runs to the consumer
+     *      userId -> user of the sessions, null if the caller only needs ids
+     */
+    private void readFile(Path file, Long userId, IntPredicate runs, Consumer<ArchivedSession> consumer) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            boolean accepted = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RUN_PREFIX)) {
+                    accepted = runs.test(Integer.parseInt(line.substring(RUN_PREFIX.length())));
+                } else if (accepted) {
+                    String[] fields = line.split(",");
+                    consumer.accept(new ArchivedSession(Long.valueOf(fields[0]), userId,
+                            LocalDateTime.parse(fields[1]), LocalDateTime.parse(fields[2])));
+                }
+            }
+        } catch (EOFException e) {
+            // a run stopped while writing, it is not committed and its rows were not deleted
+            log.warn("Archive {} ends with an incomplete block", file.getFileName());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * State of the archive, read once from the watermark file
+     *      line 1 -> epoch of the database
+     *      line 2 -> archivedBefore day, - before the first committed run
+     *      line 3 -> number of the last committed run
+     *      line 4 -> pending run and its day (run,day), - if none
+     *      other epoch -> the files are deleted, they were written by this
+     *                     service for a database that no longer exists
+     *      files without watermark -> not written by this service, kept and
+     *                                 never read or appended to
+     */
+    private synchronized void loadWatermark() {
+        if (watermarkLoaded) {
+            return;
+        }
+        Path file = archiveDirectory().resolve(WATERMARK_FILE);
+        archivedBefore = null;
+        committedRun = 0;
+        pendingRun = 0;
+        pendingBefore = null;
+        try {
+            if (Files.exists(file)) {
+                List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                if (lines.size() == 4 && lines.get(0).trim().equals(databaseEpoch())) {
+                    archivedBefore = NONE.equals(lines.get(1).trim()) ? null : LocalDate.parse(lines.get(1).trim());
+                    committedRun = Integer.parseInt(lines.get(2).trim());
+                    if (!NONE.equals(lines.get(3).trim())) {
+                        String[] pending = lines.get(3).trim().split(",");
+                        pendingRun = Integer.parseInt(pending[0]);
+                        pendingBefore = LocalDate.parse(pending[1]);
+                    }
+                } else {
+                    log.warn("Archive in {} belongs to another database, deleting it", archiveDirectory());
+                    purge();
+                }
+            } else if (Files.isDirectory(archiveDirectory())) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(archiveDirectory(),
+                        FILE_PREFIX + "*" + FILE_SUFFIX)) {
+                    foreignFiles = files.iterator().hasNext();
+                }
+                if (foreignFiles) {
+                    log.warn("Archive directory {} holds files without a watermark, the archive is not used",
+                            archiveDirectory());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        watermarkLoaded = true;
+    }
+
+    private synchronized LocalDate archivedBefore() {
+        loadWatermark();
+        return foreignFiles ? null : archivedBefore;
+    }
+
+    private synchronized boolean hasForeignFiles() {
+        loadWatermark();
+        return foreignFiles;
+    }
+
+    private synchronized int committedRun() {
+        loadWatermark();
+        return committedRun;
+    }
+
+    private synchronized int pendingRun() {
+        loadWatermark();
+        return pendingRun;
+    }
+
+    private synchronized void writeWatermark(LocalDate before, int run, int pending, LocalDate pendingDay) {
+        try {
+            Files.createDirectories(archiveDirectory());
+            Path temporary = archiveDirectory().resolve(WATERMARK_FILE + ".tmp");
+            Files.writeString(temporary, databaseEpoch() + "\n"
+                    + (before != null ? before : NONE) + "\n"
+                    + run + "\n"
+                    + (pending != 0 ? pending + "," + pendingDay : NONE) + "\n");
+            Files.move(temporary, archiveDirectory().resolve(WATERMARK_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            archivedBefore = before;
+            committedRun = run;
+            pendingRun = pending;
+            pendingBefore = pendingDay;
+            watermarkLoaded = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // deletes the user files and the watermark
+    private void purge() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(archiveDirectory(),
+                FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.deleteIfExists(archiveDirectory().resolve(WATERMARK_FILE));
+    }
+
+    private synchronized String databaseEpoch() {
+        if (databaseEpoch == null) {
+            databaseEpoch = archiveEpochRepository.findFirstByOrderByIdAsc()
+                    .orElseGet(() -> {
+                        ArchiveEpoch archiveEpoch = new ArchiveEpoch();
+                        archiveEpoch.setEpoch(UUID.randomUUID().toString());
+                        archiveEpoch.setCreatedAt(LocalDateTime.now());
+                        return archiveEpochRepository.saveAndFlush(archiveEpoch);
+                    })
+                    .getEpoch();
+        }
+        return databaseEpoch;
+    }
+}
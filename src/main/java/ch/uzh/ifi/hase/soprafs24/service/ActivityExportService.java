@@ -0,0 +1,138 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.ExportFormat;
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Activity Export Service
+ * This class writes the full activity history of a user as NDJSON (one
+ * ActivityGetDTO per line) or CSV. The activities are streamed from the
+ * database and written one by one, so the memory used does not depend on the
+ * size of the history. Archived activities (see ActivityArchiveService) are
+ * written first, read line by line from the archive file.
+ */
+@Service
+public class ActivityExportService {
+    private final Logger log = LoggerFactory.getLogger(ActivityExportService.class);
+
+    private final ActivityRepository activityRepository;
+    private final UserRepository userRepository;
+    private final ObjectMapper objectMapper;
+    private final ActivityArchiveService activityArchiveService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private static final String UNAUTHORIZED = "Invalid token";
+    private static final String FORBIDDEN = "User is not authorized to perform this action";
+    private static final String INVALID_FORMAT = "Export format %s is not supported";
+    private static final String CSV_HEADER = "id,userId,startDateTime,endDateTime\n";
+
+    public ActivityExportService(ActivityRepository activityRepository,
+            @Qualifier("userRepository") UserRepository userRepository,
+            ObjectMapper objectMapper,
+            ActivityArchiveService activityArchiveService) {
+        this.activityRepository = activityRepository;
+        this.userRepository = userRepository;
+        this.objectMapper = objectMapper;
+        this.activityArchiveService = activityArchiveService;
+    }
+
+    /**
+     * Checks the token and the requested format before the response is started,
+     * so that errors can still be returned with the right status code
+     */
+    public ExportFormat validateExport(Long userId, String token, String format) {
+        log.info("Validating token from ActivityExportService: {}", token);
+        User authenticatedUser = userRepository.findByToken(token);
+        if (authenticatedUser == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, UNAUTHORIZED);
+        }
+        if (!authenticatedUser.getId().equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        }
+
+        try {
+            return ExportFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format(INVALID_FORMAT, format));
+        }
+    }
+
+    /**
+     * Writes all activities of the user: the archived ones in archive order,
+     * then the ones in the table, oldest first. Every activity is detached
+     * from the persistence context once it has been written. The archive
+     * only reads committed runs, whose rows are deleted from the table, so
+     * no activity is written twice.
+     */
+    @Transactional(readOnly = true)
+    public void writeActivities(Long userId, ExportFormat format, OutputStream outputStream) throws IOException {
+        Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+        }
+
+        try {
+            activityArchiveService.forEachArchivedActivity(userRepository.getReferenceById(userId), activity -> {
+                try {
+                    write(writer, DTOMapper.INSTANCE.convertEntityToActivityGetDTO(activity), format);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        try (Stream<Activity> activities = activityRepository.streamByUserIdOrderByStartDateTimeAsc(userId)) {
+            Iterator<Activity> iterator = activities.iterator();
+            while (iterator.hasNext()) {
+                Activity activity = iterator.next();
+                ActivityGetDTO activityGetDTO = DTOMapper.INSTANCE.convertEntityToActivityGetDTO(activity);
+                entityManager.detach(activity);
+                write(writer, activityGetDTO, format);
+            }
+        }
+        writer.flush();
+    }
+
+    private void write(Writer writer, ActivityGetDTO activityGetDTO, ExportFormat format) throws IOException {
+        if (format == ExportFormat.CSV) {
+            writer.write(toCsvLine(activityGetDTO));
+        } else {
+            writer.write(objectMapper.writeValueAsString(activityGetDTO));
+            writer.write('\n');
+        }
+    }
+
+    private String toCsvLine(ActivityGetDTO activityGetDTO) {
+        return activityGetDTO.getId() + "," + activityGetDTO.getUserId() + ","
+                + activityGetDTO.getStartDateTime() + "," + activityGetDTO.getEndDateTime() + "\n";
+    }
+}
@@ -0,0 +1,144 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Activity Index
+ * The sessions of one user as two primitive arrays (start and end in epoch
+ * milliseconds, UTC) sorted by start. Range lookups are binary searches on
+ * the starts and the sums are plain loops over the arrays, no object is
+ * allocated per session.
+ * A third array holds the latest end of all sessions up to each position, so
+ * the sums skip the part of a session that is already covered by the sessions
+ * before it (same counting as the rollup, see StudyIntervals).
+ * Milliseconds (instead of seconds) keep the per session rounding identical
+ * to DailyActivityService.roundedMinutes and the database rollup.
+ */
+final class ActivityIndex {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private long[] starts;
+    private long[] ends;
+    private long[] maxEnds;
+    private int size;
+
+    ActivityIndex(int capacity) {
+        starts = new long[Math.max(capacity, INITIAL_CAPACITY)];
+        ends = new long[starts.length];
+        maxEnds = new long[starts.length];
+    }
+
+    static long toEpochMilli(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Inserts a session at its position, sessions arriving in chronological
+     * order are appended without moving the others
+     */
+    synchronized void add(long start, long end) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            maxEnds = Arrays.copyOf(maxEnds, size * 2);
+        }
+
+        int position = firstStartAfter(start);
+        System.arraycopy(starts, position, starts, position + 1, size - position);
+        System.arraycopy(ends, position, ends, position + 1, size - position);
+        starts[position] = start;
+        ends[position] = end;
+        size++;
+
+        for (int i = position; i < size; i++) {
+            maxEnds[i] = Math.max(ends[i], i > 0 ? maxEnds[i - 1] : Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * Total study time in milliseconds of the sessions starting in [from, to)
+     */
+    synchronized long sumMillis(long from, long to) {
+        long total = 0;
+        for (int i = firstStartAtOrAfter(from), last = firstStartAtOrAfter(to); i < last; i++) {
+            total += uncoveredMillis(i);
+        }
+        return total;
+    }
+
+    /**
+     * Study time in minutes per day of the sessions starting in [from, to),
+     * the uncovered part of every session is rounded to the nearest minute and counted on the day it
+     * started. The consumer is called once per day with sessions, in
+     * chronological order.
+     */
+    synchronized void sumMinutesPerDay(long from, long to, DayTotalConsumer consumer) {
+        int i = firstStartAtOrAfter(from);
+        int last = firstStartAtOrAfter(to);
+        if (i >= last) {
+            return;
+        }
+
+        long day = Math.floorDiv(starts[i], MILLIS_PER_DAY);
+        long minutes = 0;
+        for (; i < last; i++) {
+            long sessionDay = Math.floorDiv(starts[i], MILLIS_PER_DAY);
+            if (sessionDay != day) {
+                consumer.accept(day, minutes);
+                day = sessionDay;
+                minutes = 0;
+            }
+            minutes += (uncoveredMillis(i) + MILLIS_PER_MINUTE / 2) / MILLIS_PER_MINUTE;
+        }
+        consumer.accept(day, minutes);
+    }
+
+    // part of the session not covered by the sessions before it
+    private long uncoveredMillis(int i) {
+        long coveredUntil = i > 0 ? maxEnds[i - 1] : Long.MIN_VALUE;
+        return Math.max(0, ends[i] - Math.max(starts[i], coveredUntil));
+    }
+
+    // index of the first session starting at or after the time (size if there is none)
+    private int firstStartAtOrAfter(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // index of the first session starting after the time (size if there is none)
+    private int firstStartAfter(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] <= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @FunctionalInterface
+    interface DayTotalConsumer {
+        void accept(long epochDay, long minutes);
+    }
+}
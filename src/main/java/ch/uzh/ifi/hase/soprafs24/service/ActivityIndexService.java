@@ -0,0 +1,148 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityAggregateDTO;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Activity Index Service
+ * Optional in-memory index of the sessions of every user (see ActivityIndex),
+ * enabled with activity.index.enabled=true. The index of a user is loaded on
+ * its first read and kept in sync with every stored activity afterwards. When enabled,
+ * the daily statistics are summed from the index instead of being read from
+ * the DAILY_ACTIVITIES rollup. The indexes are kept in a StatisticsCache, so
+ * a load runs without holding a lock and a load that overlaps a stored
+ * session of its user is done again instead of indexing the session twice.
+ */
+@Service
+public class ActivityIndexService {
+
+    private final ActivityRepository activityRepository;
+    private final ActivityArchiveService activityArchiveService;
+
+    @Value("${activity.index.enabled:false}")
+    private boolean enabled = false;
+
+    private final StatisticsCache<Long, ActivityIndex> indexes = new StatisticsCache<>();
+
+    public ActivityIndexService(@Qualifier("activityRepository") ActivityRepository activityRepository,
+            ActivityArchiveService activityArchiveService) {
+        this.activityRepository = activityRepository;
+        this.activityArchiveService = activityArchiveService;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds the stored activities to the indexes (see ActivityStoredEvent)
+     */
+    @EventListener
+    public void onActivityStored(ActivityStoredEvent event) {
+        event.getActivities().forEach(this::addActivity);
+    }
+
+    /**
+     * Adds a stored activity to the index of its user once the transaction has
+     * committed, indexes that are not loaded yet will read it from the database
+     */
+    public void addActivity(Activity activity) {
+        if (!enabled) {
+            return;
+        }
+        Long userId = activity.getUser().getId();
+        long start = ActivityIndex.toEpochMilli(activity.getStartDateTime());
+        long end = ActivityIndex.toEpochMilli(activity.getEndDateTime());
+
+        indexes.update(userId, index -> {
+            index.add(start, end);
+            return index;
+        });
+    }
+
+    /*
+     * Returns the total duration per day, sorted by date (same result as
+     * DailyActivityService.getDailyActivities)
+     *      startDate and endDate -> all days between startDate and endDate
+     *      endDate only -> all days up to endDate
+     *      no dates -> all days
+     */
+    public List<ActivityAggregateDTO> getDailyActivities(Long userId, LocalDate startDate, LocalDate endDate) {
+        return sumMinutesPerDay(indexes.get(userId, id -> load(Set.of(id)).get(id)), startDate, endDate);
+    }
+
+    /**
+     * Same as getDailyActivities, but for several users, the indexes that are
+     * not loaded yet are read with one query
+     *
+     * @return the daily totals per user id, users without activities are missing
+     */
+    public Map<Long, List<ActivityAggregateDTO>> getDailyActivitiesForUsers(Collection<Long> userIds,
+            LocalDate startDate, LocalDate endDate) {
+        Map<Long, ActivityIndex> userIndexes = indexes.getAll(userIds, this::load);
+
+        Map<Long, List<ActivityAggregateDTO>> dailyActivitiesByUser = new HashMap<>();
+        userIndexes.forEach((userId, index) -> {
+            List<ActivityAggregateDTO> dailyActivities = sumMinutesPerDay(index, startDate, endDate);
+            if (!dailyActivities.isEmpty()) {
+                dailyActivitiesByUser.put(userId, dailyActivities);
+            }
+        });
+        return dailyActivitiesByUser;
+    }
+
+    private static List<ActivityAggregateDTO> sumMinutesPerDay(ActivityIndex index, LocalDate startDate,
+            LocalDate endDate) {
+        long from = startDate != null ? ActivityIndex.toEpochMilli(startDate.atStartOfDay()) : Long.MIN_VALUE;
+        long to = endDate != null ? ActivityIndex.toEpochMilli(endDate.plusDays(1).atStartOfDay()) : Long.MAX_VALUE;
+
+        List<ActivityAggregateDTO> dailyActivities = new ArrayList<>();
+        index.sumMinutesPerDay(from, to, (epochDay, minutes) -> {
+            ActivityAggregateDTO aggregateDTO = new ActivityAggregateDTO();
+            aggregateDTO.setDate(LocalDate.ofEpochDay(epochDay));
+            aggregateDTO.setDuration(minutes);
+            dailyActivities.add(aggregateDTO);
+        });
+        return dailyActivities;
+    }
+
+    /*
+     * Loads the indexes of the users, the archived sessions are older than
+     * most sessions in the table, so they are added first and the indexes
+     * mostly append
+     *      result -> an index for every user, empty if the user has no sessions
+     */
+    private Map<Long, ActivityIndex> load(Set<Long> userIds) {
+        Map<Long, List<ActivityRepository.SessionBounds>> sessionsByUser = new HashMap<>();
+        for (Long userId : userIds) {
+            sessionsByUser.put(userId, new ArrayList<>(activityArchiveService.findSessionBounds(userId)));
+        }
+        for (ActivityRepository.UserSessionBounds session : activityRepository.findSessionBoundsOfUsers(userIds)) {
+            sessionsByUser.get(session.getUserId()).add(session);
+        }
+
+        Map<Long, ActivityIndex> userIndexes = new HashMap<>();
+        sessionsByUser.forEach((userId, sessions) -> {
+            ActivityIndex index = new ActivityIndex(sessions.size());
+            for (ActivityRepository.SessionBounds session : sessions) {
+                index.add(ActivityIndex.toEpochMilli(session.getStartDateTime()),
+                        ActivityIndex.toEpochMilli(session.getEndDateTime()));
+            }
+            userIndexes.put(userId, index);
+        });
+        return userIndexes;
+    }
+}
@@ -7,24 +7,43 @@ import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.GroupRepository;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityAggregateDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityBatchResultGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserActivitiesGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityPageGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.DailyGoalGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.GroupActivityAggregateDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserAggregatedActivitiesGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.LeaderboardEntryGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.SessionStatisticsGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.StudyHeatmapGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.StudyStreakGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.WeeklySummaryGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.constant.LeaderboardWindow;
 import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
+import ch.uzh.ifi.hase.soprafs24.constant.StatisticsGranularity;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.time.Duration;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -36,18 +55,53 @@ public class ActivityService {
     private final UserRepository userRepository;
     private final GroupRepository groupRepository;
     private final MembershipService membershipService;
+    private final DailyActivityService dailyActivityService;
+    private final LeaderboardService leaderboardService;
+    private final ActivityIndexService activityIndexService;
+    private final SessionHistogramService sessionHistogramService;
+    private final StudyStreakService studyStreakService;
+    private final StudyHeatmapService studyHeatmapService;
+    private final ActivityArchiveService activityArchiveService;
+    private final WeeklySummaryService weeklySummaryService;
+    private final DailyGoalService dailyGoalService;
+    private final ApplicationEventPublisher eventPublisher;
 
     private static final String UNAUTHORIZED = "Invalid token";
     private static final String FORBIDDEN = "User is not authorized to perform this action";
     private static final String NOT_FOUND = "%s with ID %s was not found";
     private static final String INVALID_DATES = "Start date must be before or equal to end date";
+    private static final String INVALID_LIMIT = "Limit must be between 1 and %d";
+    private static final String INVALID_CURSOR = "Invalid cursor";
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_LEADERBOARD_SIZE = 100;
+    private static final String INVALID_BATCH_SIZE = "A batch must contain between 1 and %d activities";
+    private static final String MISSING_DATES = "startDateTime and endDateTime are required";
+    private static final String END_BEFORE_START = "endDateTime must not be before startDateTime";
+    private static final String INVALID_GOAL = "targetMinutes must be between 1 and %d";
+    private static final int MAX_GOAL_MINUTES = 24 * 60;
+    private static final int MAX_BATCH_SIZE = 500;
 
     public ActivityService(ActivityRepository activityRepository, UserRepository userRepository,
-            GroupRepository groupRepository, MembershipService membershipService) {
+            GroupRepository groupRepository, MembershipService membershipService,
+            DailyActivityService dailyActivityService, LeaderboardService leaderboardService,
+            ActivityIndexService activityIndexService, SessionHistogramService sessionHistogramService,
+            StudyStreakService studyStreakService, StudyHeatmapService studyHeatmapService,
+            ActivityArchiveService activityArchiveService, WeeklySummaryService weeklySummaryService,
+            DailyGoalService dailyGoalService, ApplicationEventPublisher eventPublisher) {
         this.activityRepository = activityRepository;
         this.userRepository = userRepository;
         this.groupRepository = groupRepository;
         this.membershipService = membershipService;
+        this.dailyActivityService = dailyActivityService;
+        this.leaderboardService = leaderboardService;
+        this.activityIndexService = activityIndexService;
+        this.sessionHistogramService = sessionHistogramService;
+        this.studyStreakService = studyStreakService;
+        this.studyHeatmapService = studyHeatmapService;
+        this.activityArchiveService = activityArchiveService;
+        this.weeklySummaryService = weeklySummaryService;
+        this.dailyGoalService = dailyGoalService;
+        this.eventPublisher = eventPublisher;
     }
 
     public Activity createActivity(Activity newActivity, Long userId, String token) {
@@ -61,9 +115,79 @@ public class ActivityService {
 
         newActivity = activityRepository.save(newActivity);
         activityRepository.flush();
+
+        // keep the daily rollup in sync, this also covers the WORK sessions closed
+        // by UserService.updateStatus and UserService.logoutUser (the other statistics
+        // listen to the ActivityStoredEvent)
+        Map<LocalDate, Long> addedMinutesByDay = dailyActivityService.addActivity(newActivity);
+        eventPublisher.publishEvent(new ActivityStoredEvent(authenticatedUser, List.of(newActivity),
+                addedMinutesByDay));
         return newActivity;
     }
 
+    /*
+     * Stores the sessions queued by an offline client in one request
+     * Every activity is validated on its own, the valid ones are inserted with
+     * JDBC batches and the result of each item is returned in the order of the request
+     */
+    public List<ActivityBatchResultGetDTO> createActivities(List<Activity> newActivities, Long userId,
+            String token) {
+        User authenticatedUser = validateTokenAndGetUser(token);
+
+        if (!authenticatedUser.getId().equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        }
+        if (newActivities == null || newActivities.isEmpty() || newActivities.size() > MAX_BATCH_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format(INVALID_BATCH_SIZE, MAX_BATCH_SIZE));
+        }
+
+        List<ActivityBatchResultGetDTO> results = new ArrayList<>();
+        List<Activity> validActivities = new ArrayList<>();
+        List<ActivityBatchResultGetDTO> createdResults = new ArrayList<>();
+        for (int i = 0; i < newActivities.size(); i++) {
+            Activity newActivity = newActivities.get(i);
+            ActivityBatchResultGetDTO result = new ActivityBatchResultGetDTO();
+            result.setIndex(i);
+
+            String error = validateActivity(newActivity);
+            if (error != null) {
+                result.setStatus(HttpStatus.BAD_REQUEST.value());
+                result.setMessage(error);
+            } else {
+                newActivity.setUser(authenticatedUser);
+                validActivities.add(newActivity);
+                createdResults.add(result);
+                result.setStatus(HttpStatus.CREATED.value());
+            }
+            results.add(result);
+        }
+
+        if (!validActivities.isEmpty()) {
+            activityRepository.saveAll(validActivities);
+            activityRepository.flush();
+
+            Map<LocalDate, Long> addedMinutesByDay = dailyActivityService.addActivities(validActivities);
+            eventPublisher.publishEvent(new ActivityStoredEvent(authenticatedUser, validActivities,
+                    addedMinutesByDay));
+
+            for (int i = 0; i < validActivities.size(); i++) {
+                createdResults.get(i).setId(validActivities.get(i).getId());
+            }
+        }
+        log.debug("Stored {} of {} activities of user {}", validActivities.size(), newActivities.size(), userId);
+        return results;
+    }
+
+    private String validateActivity(Activity activity) {
+        if (activity == null || activity.getStartDateTime() == null || activity.getEndDateTime() == null) {
+            return MISSING_DATES;
+        }
+        if (activity.getEndDateTime().isBefore(activity.getStartDateTime())) {
+            return END_BEFORE_START;
+        }
+        return null;
+    }
+
     public List<Activity> getActivitiesByDateRange(Long userId, String token, LocalDate startDate, LocalDate endDate) {
         User authenticatedUser = validateTokenAndGetUser(token);
         if (!authenticatedUser.getId().equals(userId)) {
@@ -72,7 +196,8 @@ public class ActivityService {
 
         // If no dates were provided, return all activities
         if (startDate == null && endDate == null) {
-            return activityRepository.findByUserId(userId);
+            return withArchived(activityRepository.findByUserId(userId),
+                    activityArchiveService.findActivities(authenticatedUser, null, null));
         }
 
         // Handle different date range scenarios
@@ -84,75 +209,226 @@ public class ActivityService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, INVALID_DATES);
         }
 
-        return activityRepository.findByUserAndStartDateTimeBetweenOrderByStartDateTimeAsc(
-                authenticatedUser, effectiveStartDateTime, effectiveEndDateTime);
+        return withArchived(activityRepository.findByUserAndStartDateTimeBetweenOrderByStartDateTimeAsc(
+                authenticatedUser, effectiveStartDateTime, effectiveEndDateTime),
+                activityArchiveService.findActivities(authenticatedUser, effectiveStartDateTime,
+                        effectiveEndDateTime));
+    }
+
+    /*
+     * Adds the archived activities of a range to the activities read from the
+     * table, sorted by start. An activity can be in both after a failed
+     * archival run, the archived copy is skipped then.
+     */
+    private List<Activity> withArchived(List<Activity> activities, List<Activity> archivedActivities) {
+        if (archivedActivities.isEmpty()) {
+            return activities;
+        }
+        Set<Long> activityIds = activities.stream().map(Activity::getId).collect(Collectors.toSet());
+
+        List<Activity> merged = new ArrayList<>(activities);
+        archivedActivities.stream()
+                .filter(activity -> !activityIds.contains(activity.getId()))
+                .forEach(merged::add);
+        merged.sort(Comparator.comparing(Activity::getStartDateTime));
+        return merged;
+    }
+
+    /*
+     * Returns one page of the activities of a user, newest first
+     *      after = null -> first page
+     *      after = nextCursor of the previous page -> the following page
+     * The cursor encodes the (startDateTime, id) of the last activity of the page,
+     * so every page is a single index range scan no matter how deep the client scrolls
+     */
+    public ActivityPageGetDTO getActivityPage(Long userId, String token, int limit, String after) {
+        User authenticatedUser = validateTokenAndGetUser(token);
+        if (!authenticatedUser.getId().equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        }
+
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format(INVALID_LIMIT, MAX_PAGE_SIZE));
+        }
+
+        // one more activity than requested is read to know if there is a next page
+        PageRequest pageRequest = PageRequest.of(0, limit + 1);
+        List<Activity> activities;
+        LocalDateTime cursorStartDateTime = null;
+        Long cursorId = null;
+        if (after == null) {
+            activities = activityRepository.findByUserIdOrderByStartDateTimeDescIdDesc(userId, pageRequest);
+        } else {
+            String[] cursor = decodeCursor(after);
+            cursorStartDateTime = LocalDateTime.parse(cursor[0]);
+            cursorId = Long.parseLong(cursor[1]);
+            activities = activityRepository.findPageAfter(userId, cursorStartDateTime, cursorId, pageRequest);
+        }
+
+        // once the page reaches back before the archive horizon, the archived
+        // activities after the same cursor are merged in (same order)
+        LocalDateTime oldestStartDateTime = activities.size() > limit
+                ? activities.get(limit).getStartDateTime() : null;
+        if (activityArchiveService.covers(oldestStartDateTime)) {
+            List<Activity> archivedActivities = activityArchiveService.findPageAfter(authenticatedUser,
+                    cursorStartDateTime, cursorId, limit + 1);
+            activities = withArchived(activities, archivedActivities).stream()
+                    .sorted(Comparator.comparing(Activity::getStartDateTime).thenComparing(Activity::getId)
+                            .reversed())
+                    .limit(limit + 1L)
+                    .toList();
+        }
+
+        boolean hasNext = activities.size() > limit;
+        if (hasNext) {
+            activities = activities.subList(0, limit);
+        }
+
+        ActivityPageGetDTO activityPage = new ActivityPageGetDTO();
+        activityPage.setActivities(activities.stream()
+                .map(DTOMapper.INSTANCE::convertEntityToActivityGetDTO)
+                .collect(Collectors.toList()));
+        if (hasNext) {
+            Activity last = activities.get(activities.size() - 1);
+            activityPage.setNextCursor(encodeCursor(last.getStartDateTime(), last.getId()));
+        }
+        return activityPage;
     }
 
     public List<ActivityAggregateDTO> getAggregatedActivities(Long userId, String token, LocalDate startDate,
             LocalDate endDate) {
-        // Get the activities first & checks if the user is authorized
-        List<Activity> activities = getActivitiesByDateRange(userId, token, startDate, endDate);
+        return getAggregatedActivities(userId, token, startDate, endDate, StatisticsGranularity.DAY);
+    }
 
-        Map<LocalDate, List<Activity>> groupedByDate = activities.stream()
-                .collect(Collectors.groupingBy(activity -> activity.getStartDateTime().toLocalDate()));
+    /*
+     * Returns the total duration per day, week, month or year
+     *      granularity = AUTO -> the granularity is chosen from the span between startDate and endDate
+     * A running WORK session of the user is included (see withRunningSession)
+     */
+    public List<ActivityAggregateDTO> getAggregatedActivities(Long userId, String token, LocalDate startDate,
+            LocalDate endDate, StatisticsGranularity granularity) {
+        User authenticatedUser = validateTokenAndGetUser(token);
+        if (!authenticatedUser.getId().equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        }
 
-        List<ActivityAggregateDTO> aggregatedResults = new ArrayList<>();
-        groupedByDate.forEach((date, dailyActivities) -> {
-            ActivityAggregateDTO aggregateDTO = new ActivityAggregateDTO();
-            aggregateDTO.setDate(date);
+        StatisticsGranularity effectiveGranularity = resolveGranularity(granularity, startDate, endDate);
 
-            // Calculate total duration in minutes for all activities on this date
-            long duration = dailyActivities.stream()
-                .mapToLong(activity -> {
-                    Duration d = Duration.between(activity.getStartDateTime(), activity.getEndDateTime());
-                    long minutes = d.toMinutes();
-                    long seconds = d.minusMinutes(minutes).getSeconds();
-                    return seconds >= 30 ? minutes + 1 : minutes;
-                })
-                .sum();
+        // If no dates were provided, return all periods
+        if (startDate == null && endDate == null) {
+            return withRunningSession(getAggregates(userId, null, null, effectiveGranularity), authenticatedUser,
+                    null, null, effectiveGranularity);
+        }
 
-            aggregateDTO.setDuration(duration);
-            aggregatedResults.add(aggregateDTO);
-        });
+        LocalDate effectiveEndDate = endDate != null ? endDate : LocalDate.now();
 
-        // Sort by date
-        aggregatedResults.sort((a1, a2) -> a1.getDate().compareTo(a2.getDate()));
+        // validate date range
+        if (startDate != null && startDate.isAfter(effectiveEndDate)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, INVALID_DATES);
+        }
 
-        return aggregatedResults;
+        // The totals are read from the precomputed rollups (or the activity index)
+        // instead of grouping every activity of the range
+        return withRunningSession(getAggregates(userId, startDate, effectiveEndDate, effectiveGranularity),
+                authenticatedUser, startDate, effectiveEndDate, effectiveGranularity);
     }
 
+    /**
+     * Adds the WORK session the user is currently in to the totals, computed
+     * from the timer state of the already loaded user. It is counted like the
+     * Activity written when the session is closed: rounded to the nearest
+     * minute, on the period of the day it started. No query is run, the
+     * totals come from the rollups and the session from the user row.
+     */
+    private List<ActivityAggregateDTO> withRunningSession(List<ActivityAggregateDTO> aggregates, User user,
+            LocalDate startDate, LocalDate endDate, StatisticsGranularity granularity) {
+        LocalDateTime now = LocalDateTime.now();
+        if (user.getStatus() != UserStatus.WORK || user.getStartTime() == null || !user.getStartTime().isBefore(now)) {
+            return aggregates;
+        }
+
+        LocalDate period = DailyActivityService.periodStart(user.getStartTime().toLocalDate(), granularity);
+        if ((startDate != null && period.isBefore(DailyActivityService.periodStart(startDate, granularity)))
+                || (endDate != null && period.isAfter(endDate))) {
+            return aggregates;
+        }
+        long minutes = DailyActivityService.roundedMinutes(user.getStartTime(), now);
+
+        List<ActivityAggregateDTO> withSession = new ArrayList<>(aggregates);
+        int position = 0;
+        while (position < withSession.size() && withSession.get(position).getDate().isBefore(period)) {
+            position++;
+        }
+        ActivityAggregateDTO aggregateDTO = new ActivityAggregateDTO();
+        aggregateDTO.setDate(period);
+        if (position < withSession.size() && withSession.get(position).getDate().equals(period)) {
+            aggregateDTO.setDuration(withSession.get(position).getDuration() + minutes);
+            withSession.set(position, aggregateDTO);
+        } else {
+            aggregateDTO.setDuration(minutes);
+            withSession.add(position, aggregateDTO);
+        }
+        return withSession;
+    }
+
+    private List<ActivityAggregateDTO> getAggregates(Long userId, LocalDate startDate, LocalDate endDate,
+            StatisticsGranularity granularity) {
+        if (granularity == StatisticsGranularity.DAY && activityIndexService.isEnabled()) {
+            return activityIndexService.getDailyActivities(userId, startDate, endDate);
+        }
+        return dailyActivityService.getActivities(userId, startDate, endDate, granularity);
+    }
+
+    /*
+     * All activities of the active group members are fetched in one query
+     * (user_id IN (...)) and grouped in memory, instead of one token lookup and
+     * one activity query per member
+     */
     public List<UserActivitiesGetDTO> getGroupUsersActivities(Long userId, String token, Long groupId,
             LocalDate startDate, LocalDate endDate) {
-        User authenticatedUser = validateTokenAndGetUser(token);
-        if (!authenticatedUser.getId().equals(userId)) {
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        List<User> groupUsers = getActiveGroupUsers(userId, token, groupId);
+        List<Long> userIds = groupUsers.stream().map(User::getId).toList();
+
+        List<Activity> activities;
+        if (startDate == null && endDate == null) {
+            activities = activityRepository.findByUserIdInOrderByStartDateTimeAsc(userIds);
+        } else {
+            LocalDateTime effectiveStartDateTime = startDate != null ? startDate.atStartOfDay() : LocalDateTime.MIN;
+            LocalDateTime effectiveEndDateTime = endDate != null ? endDate.plusDays(1).atStartOfDay()
+                    : LocalDateTime.now();
+
+            // validate date range
+            if (effectiveStartDateTime.isAfter(effectiveEndDateTime)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, INVALID_DATES);
+            }
+
+            activities = activityRepository.findByUserIdInAndStartDateTimeBetweenOrderByStartDateTimeAsc(
+                    userIds, effectiveStartDateTime, effectiveEndDateTime);
         }
 
-        Group group = groupRepository.findById(groupId).orElseThrow(
-                () -> new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(NOT_FOUND, "Group", groupId)));
-        if (!membershipService.findByUserAndGroup(authenticatedUser, group).getStatus()
-                .equals(MembershipStatus.ACTIVE)) {
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        // archived activities of the members, only read when the range reaches back before the archive horizon
+        LocalDateTime archiveFrom = startDate != null ? startDate.atStartOfDay() : null;
+        if (activityArchiveService.covers(archiveFrom)) {
+            LocalDateTime archiveTo = endDate != null ? endDate.plusDays(1).atStartOfDay() : null;
+            List<Activity> archivedActivities = new ArrayList<>();
+            for (User user : groupUsers) {
+                archivedActivities.addAll(activityArchiveService.findActivities(user, archiveFrom, archiveTo));
+            }
+            activities = withArchived(activities, archivedActivities);
         }
 
-        List<User> groupUsers = membershipService.getActiveUsersInGroup(group);
-        List<UserActivitiesGetDTO> userActivitiesList = new ArrayList<>();
+        Map<Long, List<ActivityGetDTO>> activitiesByUser = activities.stream()
+                .map(DTOMapper.INSTANCE::convertEntityToActivityGetDTO)
+                .collect(Collectors.groupingBy(ActivityGetDTO::getUserId));
 
+        List<UserActivitiesGetDTO> userActivitiesList = new ArrayList<>();
         for (User user : groupUsers) {
             UserActivitiesGetDTO userActivities = new UserActivitiesGetDTO();
             userActivities.setUserId(user.getId());
             userActivities.setUsername(user.getUsername());
             userActivities.setName(user.getName());
             userActivities.setProfilePicture(user.getProfilePicture());
-
-            // To get the activities of the user it makes use of the
-            // getActivitiesByDateRange function for the single user
-            List<Activity> activities = getActivitiesByDateRange(user.getId(), user.getToken(), startDate, endDate);
-            List<ActivityGetDTO> activityDTOs = activities.stream()
-                    .map(activity -> DTOMapper.INSTANCE.convertEntityToActivityGetDTO(activity))
-                    .collect(Collectors.toList());
-
-            userActivities.setActivities(activityDTOs);
+            userActivities.setActivities(activitiesByUser.getOrDefault(user.getId(), new ArrayList<>()));
             userActivitiesList.add(userActivities);
         }
 
@@ -161,33 +437,49 @@ public class ActivityService {
 
     public List<UserAggregatedActivitiesGetDTO> getGroupUsersAggregatedActivities(Long userId, String token,
             Long groupId, LocalDate startDate, LocalDate endDate) {
-        User authenticatedUser = validateTokenAndGetUser(token);
-        if (!authenticatedUser.getId().equals(userId)) {
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        return getGroupUsersAggregatedActivities(userId, token, groupId, startDate, endDate,
+                StatisticsGranularity.DAY);
+    }
+
+    /*
+     * The totals of all active group members are read from the rollups in
+     * one query and grouped in memory, running WORK sessions of the members
+     * are added from their loaded timer state
+     */
+    public List<UserAggregatedActivitiesGetDTO> getGroupUsersAggregatedActivities(Long userId, String token,
+            Long groupId, LocalDate startDate, LocalDate endDate, StatisticsGranularity granularity) {
+        List<User> groupUsers = getActiveGroupUsers(userId, token, groupId);
+        List<Long> userIds = groupUsers.stream().map(User::getId).toList();
+
+        LocalDate effectiveEndDate = endDate;
+        if (startDate != null || endDate != null) {
+            effectiveEndDate = endDate != null ? endDate : LocalDate.now();
+
+            // validate date range
+            if (startDate != null && startDate.isAfter(effectiveEndDate)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, INVALID_DATES);
+            }
         }
 
-        Group group = groupRepository.findById(groupId).orElseThrow(
-                () -> new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(NOT_FOUND, "Group", groupId)));
-        if (!membershipService.findByUserAndGroup(authenticatedUser, group).getStatus()
-                .equals(MembershipStatus.ACTIVE)) {
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        StatisticsGranularity effectiveGranularity = resolveGranularity(granularity, startDate, endDate);
+        Map<Long, List<ActivityAggregateDTO>> aggregatedByUser;
+        if (effectiveGranularity == StatisticsGranularity.DAY && activityIndexService.isEnabled()) {
+            aggregatedByUser = activityIndexService.getDailyActivitiesForUsers(userIds, startDate, effectiveEndDate);
+        } else {
+            aggregatedByUser = dailyActivityService.getActivitiesForUsers(userIds, startDate, effectiveEndDate,
+                    effectiveGranularity);
         }
 
-        List<User> groupUsers = membershipService.getActiveUsersInGroup(group);
         List<UserAggregatedActivitiesGetDTO> userAggregatedActivitiesList = new ArrayList<>();
-
         for (User user : groupUsers) {
             UserAggregatedActivitiesGetDTO userAggregatedActivities = new UserAggregatedActivitiesGetDTO();
             userAggregatedActivities.setUserId(user.getId());
             userAggregatedActivities.setUsername(user.getUsername());
             userAggregatedActivities.setName(user.getName());
             userAggregatedActivities.setProfilePicture(user.getProfilePicture());
-
-            // To get the activities of the user it makes use of the getAggregatedActivities
-            // function for the single user
-            List<ActivityAggregateDTO> aggregatedActivities = getAggregatedActivities(user.getId(), user.getToken(),
-                    startDate, endDate);
-            userAggregatedActivities.setAggregatedActivities(aggregatedActivities);
+            userAggregatedActivities.setAggregatedActivities(withRunningSession(
+                    aggregatedByUser.getOrDefault(user.getId(), new ArrayList<>()), user, startDate,
+                    effectiveEndDate, effectiveGranularity));
 
             userAggregatedActivitiesList.add(userAggregatedActivities);
         }
@@ -195,6 +487,223 @@ public class ActivityService {
         return userAggregatedActivitiesList;
     }
 
+    /*
+     * One series for the whole group instead of one per member: the total
+     * duration of all active members and the number of members who studied,
+     * per period. Summed by the database in one query, so the size of the
+     * response does not depend on the size of the group.
+     */
+    public List<GroupActivityAggregateDTO> getGroupAggregatedActivities(Long userId, String token, Long groupId,
+            LocalDate startDate, LocalDate endDate, StatisticsGranularity granularity) {
+        getGroupOfActiveMember(userId, token, groupId);
+
+        LocalDate effectiveEndDate = endDate;
+        if (startDate != null || endDate != null) {
+            effectiveEndDate = endDate != null ? endDate : LocalDate.now();
+
+            // validate date range
+            if (startDate != null && startDate.isAfter(effectiveEndDate)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, INVALID_DATES);
+            }
+        }
+
+        return dailyActivityService.getGroupActivities(groupId, startDate, effectiveEndDate,
+                resolveGranularity(granularity, startDate, endDate));
+    }
+
+    /*
+     * Returns the members of the group with the most study time in the window,
+     * read from the in-memory leaderboard instead of the activities of every member
+     */
+    public List<LeaderboardEntryGetDTO> getGroupLeaderboard(Long userId, String token, Long groupId,
+            LeaderboardWindow window, int limit) {
+        getGroupOfActiveMember(userId, token, groupId);
+        if (limit < 1 || limit > MAX_LEADERBOARD_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format(INVALID_LIMIT, MAX_LEADERBOARD_SIZE));
+        }
+
+        List<LeaderboardEntryGetDTO> entries = leaderboardService.getTopEntries(groupId, window, limit);
+
+        // the user details are only loaded for the returned entries
+        Map<Long, User> users = userRepository.findAllById(
+                entries.stream().map(LeaderboardEntryGetDTO::getUserId).toList())
+                .stream()
+                .collect(Collectors.toMap(User::getId, user -> user));
+        for (LeaderboardEntryGetDTO entry : entries) {
+            User user = users.get(entry.getUserId());
+            if (user != null) {
+                entry.setUsername(user.getUsername());
+                entry.setName(user.getName());
+                entry.setProfilePicture(user.getProfilePicture());
+            }
+        }
+        return entries;
+    }
+
+    /*
+     * Current and longest run of consecutive study days of the user
+     */
+    public StudyStreakGetDTO getStudyStreak(Long userId, String token) {
+        User authenticatedUser = validateTokenAndGetUser(token);
+        if (!authenticatedUser.getId().equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        }
+        return studyStreakService.getStudyStreak(userId);
+    }
+
+    /*
+     * Sets the daily study goal of the user
+     */
+    public DailyGoalGetDTO setDailyGoal(Long userId, String token, Integer targetMinutes) {
+        User authenticatedUser = validateTokenAndGetUser(token);
+        if (!authenticatedUser.getId().equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        }
+        if (targetMinutes == null || targetMinutes < 1 || targetMinutes > MAX_GOAL_MINUTES) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format(INVALID_GOAL, MAX_GOAL_MINUTES));
+        }
+        dailyGoalService.setGoal(authenticatedUser, targetMinutes);
+        return dailyGoalService.getProgress(authenticatedUser);
+    }
+
+    /*
+     * Daily goal of the user and the minutes studied today, read from the goal
+     * row (no activities are summed)
+     */
+    public DailyGoalGetDTO getDailyGoal(Long userId, String token) {
+        User authenticatedUser = validateTokenAndGetUser(token);
+        if (!authenticatedUser.getId().equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        }
+        return dailyGoalService.getProgress(authenticatedUser);
+    }
+
+    /*
+     * Weekly summary of the user, read from the snapshot written by the weekly report
+     *      weekStart = null -> latest summary
+     */
+    public WeeklySummaryGetDTO getWeeklySummary(Long userId, String token, LocalDate weekStart) {
+        User authenticatedUser = validateTokenAndGetUser(token);
+        if (!authenticatedUser.getId().equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        }
+        return weeklySummaryService.getWeeklySummary(userId, weekStart);
+    }
+
+    /*
+     * Median, p90 and p99 session length of the user, read from the in-memory histogram
+     */
+    public SessionStatisticsGetDTO getSessionStatistics(Long userId, String token) {
+        User authenticatedUser = validateTokenAndGetUser(token);
+        if (!authenticatedUser.getId().equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        }
+        return sessionHistogramService.getUserStatistics(userId);
+    }
+
+    /*
+     * Median, p90 and p99 session length of all active members of the group
+     */
+    public SessionStatisticsGetDTO getGroupSessionStatistics(Long userId, String token, Long groupId) {
+        getGroupOfActiveMember(userId, token, groupId);
+        return sessionHistogramService.getGroupStatistics(groupId);
+    }
+
+    /*
+     * Study minutes of the user per day of the week and hour of the day
+     */
+    public StudyHeatmapGetDTO getStudyHeatmap(Long userId, String token) {
+        User authenticatedUser = validateTokenAndGetUser(token);
+        if (!authenticatedUser.getId().equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        }
+        return studyHeatmapService.getUserHeatmap(userId);
+    }
+
+    /*
+     * Study minutes of all active members of the group per day of the week and hour of the day
+     */
+    public StudyHeatmapGetDTO getGroupStudyHeatmap(Long userId, String token, Long groupId) {
+        getGroupOfActiveMember(userId, token, groupId);
+        return studyHeatmapService.getGroupHeatmap(groupId);
+    }
+
+    /**
+     * Checks that the token belongs to the user and that the user is an active
+     * member of the group, then returns all active members of the group
+     */
+    private List<User> getActiveGroupUsers(Long userId, String token, Long groupId) {
+        return membershipService.getActiveUsersInGroup(getGroupOfActiveMember(userId, token, groupId));
+    }
+
+    /**
+     * Checks that the token belongs to the user and that the user is an active
+     * member of the group
+     */
+    private Group getGroupOfActiveMember(Long userId, String token, Long groupId) {
+        User authenticatedUser = validateTokenAndGetUser(token);
+        if (!authenticatedUser.getId().equals(userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        }
+
+        Group group = groupRepository.findById(groupId).orElseThrow(
+                () -> new ResponseStatusException(HttpStatus.NOT_FOUND, String.format(NOT_FOUND, "Group", groupId)));
+        if (!membershipService.findByUserAndGroup(authenticatedUser, group).getStatus()
+                .equals(MembershipStatus.ACTIVE)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, FORBIDDEN);
+        }
+
+        return group;
+    }
+
+    /*
+     * AUTO picks the granularity from the span of the requested range
+     *      up to 31 days -> DAY
+     *      up to 26 weeks -> WEEK
+     *      up to 3 years -> MONTH
+     *      longer or no start date -> YEAR, without any date -> MONTH
+     */
+    private StatisticsGranularity resolveGranularity(StatisticsGranularity granularity, LocalDate startDate,
+            LocalDate endDate) {
+        if (granularity != StatisticsGranularity.AUTO) {
+            return granularity;
+        }
+        if (startDate == null) {
+            return endDate == null ? StatisticsGranularity.MONTH : StatisticsGranularity.YEAR;
+        }
+
+        long days = ChronoUnit.DAYS.between(startDate, endDate != null ? endDate : LocalDate.now()) + 1;
+        if (days <= 31) {
+            return StatisticsGranularity.DAY;
+        } else if (days <= 26 * 7) {
+            return StatisticsGranularity.WEEK;
+        } else if (days <= 3 * 366) {
+            return StatisticsGranularity.MONTH;
+        }
+        return StatisticsGranularity.YEAR;
+    }
+
+    private String encodeCursor(LocalDateTime startDateTime, Long id) {
+        String cursor = startDateTime + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String[] decodeCursor(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException(cursor);
+            }
+            // validate both parts before querying
+            LocalDateTime.parse(parts[0]);
+            Long.parseLong(parts[1]);
+            return parts;
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, INVALID_CURSOR);
+        }
+    }
+
     private User validateTokenAndGetUser(String token) {
         log.info("Validating token from ActivityService: {}", token);
         User user = userRepository.findByToken(token);
@@ -0,0 +1,42 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Activity Stored Event
+ * Published by ActivityService inside the transaction that stored new
+ * activities of a user, once they are added to the daily rollup. Every
+ * statistic kept up to date with the stored sessions handles it in its own
+ * service (streaks, leaderboards, activity index, histograms, heatmaps, daily
+ * goals and the group stats topics), in the same transaction.
+ */
+public class ActivityStoredEvent {
+
+    private final User user;
+    private final List<Activity> activities;
+    // see DailyActivityService.addActivities
+    private final Map<LocalDate, Long> addedMinutesByDay;
+
+    public ActivityStoredEvent(User user, List<Activity> activities, Map<LocalDate, Long> addedMinutesByDay) {
+        this.user = user;
+        this.activities = activities;
+        this.addedMinutesByDay = addedMinutesByDay;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public List<Activity> getActivities() {
+        return activities;
+    }
+
+    public Map<LocalDate, Long> getAddedMinutesByDay() {
+        return addedMinutesByDay;
+    }
+}
@@ -0,0 +1,208 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.CalendarEntries;
+import ch.uzh.ifi.hase.soprafs24.entity.Group;
+import ch.uzh.ifi.hase.soprafs24.entity.GroupMembership;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.CalendarEntriesRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.GroupMembershipRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.AttendeeGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.CalendarAttendanceGetDTO;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calendar Attendance Service
+ * This class compares the planned study sessions (calendar entries) of a
+ * group with the sessions its active members actually stored. The sessions of
+ * every member are merged first, so parallel sessions are counted once, then
+ * the entries and the merged sessions are joined with a sort-and-sweep (see
+ * IntervalJoin) instead of comparing every entry with every session.
+ */
+@Service
+@Transactional(readOnly = true)
+public class CalendarAttendanceService {
+
+    private static final String UNAUTHORIZED = "Invalid token";
+
+    private final CalendarEntriesRepository calendarEntriesRepository;
+    private final GroupMembershipRepository groupMembershipRepository;
+    private final ActivityRepository activityRepository;
+    private final UserRepository userRepository;
+    private final GroupService groupService;
+    private final ActivityArchiveService activityArchiveService;
+
+    public CalendarAttendanceService(
+            @Qualifier("calendarEntriesRepository") CalendarEntriesRepository calendarEntriesRepository,
+            @Qualifier("groupMembershipRepository") GroupMembershipRepository groupMembershipRepository,
+            @Qualifier("activityRepository") ActivityRepository activityRepository,
+            @Qualifier("userRepository") UserRepository userRepository,
+            GroupService groupService,
+            ActivityArchiveService activityArchiveService) {
+        this.calendarEntriesRepository = calendarEntriesRepository;
+        this.groupMembershipRepository = groupMembershipRepository;
+        this.activityRepository = activityRepository;
+        this.userRepository = userRepository;
+        this.groupService = groupService;
+        this.activityArchiveService = activityArchiveService;
+    }
+
+    /*
+     * Attendance of the calendar entries of the group overlapping the days
+     * [startDate, endDate], in chronological order
+     *      attendees -> active members who studied during the entry, most minutes first
+     *      overlapMinutes -> time studied during the entry, rounded to the nearest minute
+     */
+    public List<CalendarAttendanceGetDTO> getAttendance(Long groupId, String token, LocalDate startDate,
+            LocalDate endDate) {
+        User authenticatedUser = userRepository.findByToken(token);
+        if (authenticatedUser == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, UNAUTHORIZED);
+        }
+
+        Group group = groupService.findById(groupId);
+        if (groupMembershipRepository.findByGroupAndUser(group, authenticatedUser).isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, UNAUTHORIZED);
+        }
+
+        if (startDate.isAfter(endDate)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "startDate must not be after endDate");
+        }
+        LocalDateTime from = startDate.atStartOfDay();
+        LocalDateTime to = endDate.plusDays(1).atStartOfDay();
+
+        List<CalendarEntries> entries = calendarEntriesRepository.findOverlapping(groupId, from, to).stream()
+                .filter(entry -> entry.getStartTime() != null && entry.getEndTime() != null
+                        && entry.getStartTime().isBefore(entry.getEndTime()))
+                .toList();
+
+        Map<Long, User> members = new LinkedHashMap<>();
+        for (GroupMembership membership : groupMembershipRepository.findByGroupAndStatus(group,
+                MembershipStatus.ACTIVE)) {
+            members.put(membership.getUser().getId(), membership.getUser());
+        }
+
+        List<Map<Long, Long>> overlaps = join(entries, mergedSessions(members.keySet(), from, to));
+
+        List<CalendarAttendanceGetDTO> attendance = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            CalendarEntries entry = entries.get(i);
+            List<AttendeeGetDTO> attendees = new ArrayList<>();
+            overlaps.get(i).forEach((userId, millis) -> {
+                AttendeeGetDTO attendee = new AttendeeGetDTO();
+                attendee.setUserId(userId);
+                attendee.setUsername(members.get(userId).getUsername());
+                attendee.setOverlapMinutes(DailyActivityService.roundedMinutes(millis));
+                attendees.add(attendee);
+            });
+            attendees.sort(Comparator.comparingLong(AttendeeGetDTO::getOverlapMinutes).reversed()
+                    .thenComparing(AttendeeGetDTO::getUserId));
+
+            CalendarAttendanceGetDTO attendanceGetDTO = new CalendarAttendanceGetDTO();
+            attendanceGetDTO.setEntryId(entry.getId());
+            attendanceGetDTO.setTitle(entry.getTitle());
+            attendanceGetDTO.setStartTime(entry.getStartTime());
+            attendanceGetDTO.setEndTime(entry.getEndTime());
+            attendanceGetDTO.setPlannedMinutes(DailyActivityService.roundedMinutes(entry.getStartTime(),
+                    entry.getEndTime()));
+            attendanceGetDTO.setAttendedMembers(attendees.size());
+            attendanceGetDTO.setActiveMembers(members.size());
+            attendanceGetDTO.setAttendees(attendees);
+            attendance.add(attendanceGetDTO);
+        }
+        return attendance;
+    }
+
+    /*
+     * Sessions of the members overlapping [from, to) (stored and archived),
+     * merged per member into disjoint intervals
+     *      result -> [userId, start, end] in epoch millis
+     */
+    private List<long[]> mergedSessions(Iterable<Long> userIds, LocalDateTime from, LocalDateTime to) {
+        Map<Long, List<long[]>> sessionsByUser = new HashMap<>();
+        List<Long> ids = new ArrayList<>();
+        for (Long userId : userIds) {
+            ids.add(userId);
+            List<long[]> sessions = new ArrayList<>();
+            for (ActivityRepository.SessionBounds session : activityArchiveService.findOverlappingSessionBounds(
+                    userId, from, to)) {
+                addSession(sessions, userId, session);
+            }
+            sessionsByUser.put(userId, sessions);
+        }
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        for (ActivityRepository.UserSessionBounds session : activityRepository
+                .findOverlappingSessionBoundsOfUsers(ids, from, to)) {
+            List<long[]> sessions = sessionsByUser.get(session.getUserId());
+            if (sessions != null) {
+                addSession(sessions, session.getUserId(), session);
+            }
+        }
+
+        List<long[]> merged = new ArrayList<>();
+        for (List<long[]> sessions : sessionsByUser.values()) {
+            sessions.sort(Comparator.comparingLong(session -> session[1]));
+            long[] current = null;
+            for (long[] session : sessions) {
+                if (current != null && session[1] <= current[2]) {
+                    current[2] = Math.max(current[2], session[2]);
+                } else {
+                    current = session;
+                    merged.add(current);
+                }
+            }
+        }
+        return merged;
+    }
+
+    private static void addSession(List<long[]> sessions, Long userId, ActivityRepository.SessionBounds session) {
+        if (session.getStartDateTime() != null && session.getEndDateTime() != null
+                && session.getStartDateTime().isBefore(session.getEndDateTime())) {
+            sessions.add(new long[] { userId, ActivityIndex.toEpochMilli(session.getStartDateTime()),
+                    ActivityIndex.toEpochMilli(session.getEndDateTime()) });
+        }
+    }
+
+    /*
+     * Time every member studied during every entry
+     *      result.get(i) -> userId -> overlap in millis with entries.get(i)
+     */
+    private static List<Map<Long, Long>> join(List<CalendarEntries> entries, List<long[]> sessions) {
+        long[] entryStarts = new long[entries.size()];
+        long[] entryEnds = new long[entries.size()];
+        List<Map<Long, Long>> overlaps = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            entryStarts[i] = ActivityIndex.toEpochMilli(entries.get(i).getStartTime());
+            entryEnds[i] = ActivityIndex.toEpochMilli(entries.get(i).getEndTime());
+            overlaps.add(new HashMap<>());
+        }
+
+        long[] sessionStarts = new long[sessions.size()];
+        long[] sessionEnds = new long[sessions.size()];
+        for (int j = 0; j < sessions.size(); j++) {
+            sessionStarts[j] = sessions.get(j)[1];
+            sessionEnds[j] = sessions.get(j)[2];
+        }
+
+        IntervalJoin.join(entryStarts, entryEnds, sessionStarts, sessionEnds,
+                (entry, session, overlap) -> overlaps.get(entry).merge(sessions.get(session)[0], overlap, Long::sum));
+        return overlaps;
+    }
+}
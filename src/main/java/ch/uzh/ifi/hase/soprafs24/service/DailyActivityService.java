@@ -0,0 +1,526 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
+import ch.uzh.ifi.hase.soprafs24.constant.StatisticsGranularity;
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.entity.DailyActivity;
+import ch.uzh.ifi.hase.soprafs24.entity.PeriodActivity;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.DailyActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.PeriodActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityAggregateDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.GroupActivityAggregateDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Daily Activity Service
+ * This class maintains the DAILY_ACTIVITIES rollup: one row per user and day
+ * holding the total study time of that day, and the coarser PERIOD_ACTIVITIES
+ * rollup with one row per user and week, month and year. Both are updated
+ * whenever an activity is stored and are read by the aggregated statistics
+ * instead of the raw activities.
+ * Overlapping sessions of a user are counted once: a session only adds the
+ * time not already covered by the sessions that started before it, on the
+ * day it started.
+ */
+@Service
+@Transactional
+public class DailyActivityService {
+    private final Logger log = LoggerFactory.getLogger(DailyActivityService.class);
+
+    private final DailyActivityRepository dailyActivityRepository;
+    private final PeriodActivityRepository periodActivityRepository;
+    private final ActivityRepository activityRepository;
+    private final UserRepository userRepository;
+    private final ActivityArchiveService activityArchiveService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${activity.rollup.backfill-on-startup:true}")
+    private boolean backfillOnStartup = true;
+
+    private static final List<StatisticsGranularity> PERIODS = List.of(StatisticsGranularity.WEEK,
+            StatisticsGranularity.MONTH, StatisticsGranularity.YEAR);
+
+    public DailyActivityService(DailyActivityRepository dailyActivityRepository,
+            PeriodActivityRepository periodActivityRepository,
+            ActivityRepository activityRepository,
+            @Qualifier("userRepository") UserRepository userRepository,
+            ActivityArchiveService activityArchiveService) {
+        this.dailyActivityRepository = dailyActivityRepository;
+        this.periodActivityRepository = periodActivityRepository;
+        this.activityRepository = activityRepository;
+        this.userRepository = userRepository;
+        this.activityArchiveService = activityArchiveService;
+    }
+
+    /**
+     * Duration of a session in minutes, rounded to the nearest minute
+     * (30 seconds and more are rounded up)
+     */
+    public static long roundedMinutes(LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        Duration d = Duration.between(startDateTime, endDateTime);
+        long minutes = d.toMinutes();
+        long seconds = d.minusMinutes(minutes).getSeconds();
+        return seconds >= 30 ? minutes + 1 : minutes;
+    }
+
+    /**
+     * Same rounding as roundedMinutes for a duration in milliseconds
+     */
+    public static long roundedMinutes(long millis) {
+        return (millis + 30_000) / 60_000;
+    }
+
+    /**
+     * First day of the period the date belongs to (weeks start on monday)
+     */
+    public static LocalDate periodStart(LocalDate date, StatisticsGranularity granularity) {
+        return switch (granularity) {
+            case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> date.withDayOfMonth(1);
+            case YEAR -> date.withDayOfYear(1);
+            default -> date;
+        };
+    }
+
+    /**
+     * Adds a stored activity to the rollups of the days, weeks, months and
+     * years it changes
+     *
+     * @return the minutes added per day, without the time already covered by
+     *         other sessions of the user (see addActivities)
+     */
+    public Map<LocalDate, Long> addActivity(Activity activity) {
+        return addActivities(List.of(activity));
+    }
+
+    /**
+     * Adds several stored activities of one user to the rollups, every touched
+     * day, week, month and year row is changed with one atomic update (or
+     * inserted once). The stores of a user are serialized on the row of the
+     * user, so two of them never insert the same row or miss each other.
+     * The rollups are changed like a rebuild would change them: every instant
+     * is counted once, on the start day of the earliest session covering it.
+     * The stored sessions overlapping the new ones are swept with and without
+     * the new ones, so a session stored after a later one that overlaps it
+     * takes the covered time from the day of the later one.
+     *
+     * @return the minutes added per day, negative for days that lost time to
+     *         an earlier day
+     */
+    public Map<LocalDate, Long> addActivities(Collection<Activity> activities) {
+        if (activities.isEmpty()) {
+            return new TreeMap<>();
+        }
+        User user = activities.iterator().next().getUser();
+        // concurrent stores of the user wait here until this transaction ends
+        userRepository.lockById(user.getId());
+
+        // only sessions overlapping the new ones can change, see creditedMillis
+        List<SweptSession> stored = new ArrayList<>();
+        loadOverlappingSessions(user.getId(), activities).forEach(session -> stored.add(
+                new SweptSession(session.getStartDateTime(), session.getEndDateTime())));
+        List<SweptSession> withNew = new ArrayList<>(stored);
+        activities.forEach(activity -> withNew.add(
+                new SweptSession(activity.getStartDateTime(), activity.getEndDateTime())));
+
+        Map<LocalDate, Long> minutesBefore = sweep(stored);
+        Map<LocalDate, Long> minutesByDate = new TreeMap<>();
+        sweep(withNew).forEach((date, minutes) -> {
+            long addedMinutes = minutes - minutesBefore.getOrDefault(date, 0L);
+            if (addedMinutes != 0) {
+                minutesByDate.put(date, addedMinutes);
+            }
+        });
+        // the start day of a new session gets its row even if the session is fully covered
+        activities.forEach(activity -> minutesByDate.putIfAbsent(activity.getStartDateTime().toLocalDate(), 0L));
+
+        minutesByDate.forEach((date, minutes) -> addDailyMinutes(user, date, minutes));
+
+        for (StatisticsGranularity granularity : PERIODS) {
+            Map<LocalDate, Long> minutesByPeriod = new TreeMap<>();
+            minutesByDate.forEach((date, minutes) -> minutesByPeriod.merge(periodStart(date, granularity),
+                    minutes, Long::sum));
+            minutesByPeriod.forEach((periodStart, minutes) -> addPeriodMinutes(user, granularity, periodStart,
+                    minutes));
+        }
+        return minutesByDate;
+    }
+
+    /**
+     * Milliseconds a session [start, end) counts when the sessions that
+     * started before it were studied until studiedUntil. Sessions are swept in
+     * chronological order, so a session can only be changed by a session that
+     * overlaps it.
+     */
+    private static long creditedMillis(long start, long end, long studiedUntil) {
+        return Math.max(0, end - Math.max(start, studiedUntil));
+    }
+
+    private record SweptSession(long start, long end, LocalDate startDate) {
+        SweptSession(LocalDateTime startDateTime, LocalDateTime endDateTime) {
+            this(ActivityIndex.toEpochMilli(startDateTime), ActivityIndex.toEpochMilli(endDateTime),
+                    startDateTime.toLocalDate());
+        }
+    }
+
+    // minutes per start day of the sessions of one user, counted like in rebuild
+    // (sessions starting at the same time are on the same day, their order does not matter)
+    private static Map<LocalDate, Long> sweep(List<SweptSession> sessions) {
+        sessions.sort(Comparator.comparingLong(SweptSession::start));
+        Map<LocalDate, Long> minutesByDate = new TreeMap<>();
+        long studiedUntil = Long.MIN_VALUE;
+        for (SweptSession session : sessions) {
+            minutesByDate.merge(session.startDate(),
+                    roundedMinutes(creditedMillis(session.start(), session.end(), studiedUntil)), Long::sum);
+            studiedUntil = Math.max(studiedUntil, session.end());
+        }
+        return minutesByDate;
+    }
+
+    // the already stored sessions of the user overlapping the new activities, one query
+    // (and one archive read when the activities reach back before the archive horizon)
+    private List<ActivityRepository.SessionBounds> loadOverlappingSessions(Long userId,
+            Collection<Activity> activities) {
+        LocalDateTime from = activities.stream().map(Activity::getStartDateTime).min(Comparator.naturalOrder())
+                .orElseThrow();
+        LocalDateTime to = activities.stream().map(Activity::getEndDateTime).max(Comparator.naturalOrder())
+                .orElseThrow();
+        List<Long> activityIds = activities.stream().map(Activity::getId).filter(Objects::nonNull).toList();
+        return loadOverlappingSessions(userId, from, to, activityIds);
+    }
+
+    private List<ActivityRepository.SessionBounds> loadOverlappingSessions(Long userId, LocalDateTime from,
+            LocalDateTime to, List<Long> activityIds) {
+        List<ActivityRepository.SessionBounds> sessions = new ArrayList<>(activityIds.isEmpty()
+                ? activityRepository.findOverlappingSessionBounds(userId, from, to)
+                : activityRepository.findOverlappingSessionBounds(userId, from, to, activityIds));
+        sessions.addAll(activityArchiveService.findOverlappingSessionBounds(userId, from, to));
+        return sessions;
+    }
+
+    // a missing row is inserted, the lock of the user (see addActivities) keeps a concurrent
+    // store from inserting it too. The inserted row is detached, so later reads of the same
+    // transaction load the duration changed by addDuration instead of the stale entity
+    private void addDailyMinutes(User user, LocalDate date, long minutes) {
+        if (dailyActivityRepository.addDuration(user.getId(), date, minutes) == 0) {
+            DailyActivity dailyActivity = new DailyActivity();
+            dailyActivity.setUser(user);
+            dailyActivity.setDate(date);
+            dailyActivity.setDuration(minutes);
+            dailyActivityRepository.saveAndFlush(dailyActivity);
+            entityManager.detach(dailyActivity);
+        }
+    }
+
+    private void addPeriodMinutes(User user, StatisticsGranularity granularity, LocalDate periodStart,
+            long minutes) {
+        if (periodActivityRepository.addDuration(user.getId(), granularity, periodStart, minutes) == 0) {
+            PeriodActivity periodActivity = newPeriodActivity(user, granularity, periodStart);
+            periodActivity.setDuration(minutes);
+            periodActivityRepository.saveAndFlush(periodActivity);
+            entityManager.detach(periodActivity);
+        }
+    }
+
+    /*
+     * Returns the total duration per period, sorted by date. For weeks, months and
+     * years the date is the first day of the period and every period that overlaps
+     * the range is returned with its full total.
+     */
+    public List<ActivityAggregateDTO> getActivities(Long userId, LocalDate startDate, LocalDate endDate,
+            StatisticsGranularity granularity) {
+        if (granularity == StatisticsGranularity.DAY) {
+            return getDailyActivities(userId, startDate, endDate);
+        }
+
+        List<PeriodActivity> periodActivities;
+        if (startDate == null && endDate == null) {
+            periodActivities = periodActivityRepository.findByUserIdAndGranularityOrderByPeriodStartAsc(userId,
+                    granularity);
+        } else if (startDate == null) {
+            periodActivities = periodActivityRepository
+                    .findByUserIdAndGranularityAndPeriodStartLessThanEqualOrderByPeriodStartAsc(userId, granularity,
+                            endDate);
+        } else {
+            periodActivities = periodActivityRepository
+                    .findByUserIdAndGranularityAndPeriodStartBetweenOrderByPeriodStartAsc(userId, granularity,
+                            periodStart(startDate, granularity), endDate);
+        }
+
+        return periodActivities.stream()
+                .map(DTOMapper.INSTANCE::convertPeriodActivityToActivityAggregateDTO)
+                .toList();
+    }
+
+    /**
+     * Same as getActivities, but for several users with a single query
+     * 
+     * @return the totals per user id, users without activities are missing
+     */
+    public Map<Long, List<ActivityAggregateDTO>> getActivitiesForUsers(Collection<Long> userIds,
+            LocalDate startDate, LocalDate endDate, StatisticsGranularity granularity) {
+        if (granularity == StatisticsGranularity.DAY) {
+            return getDailyActivitiesForUsers(userIds, startDate, endDate);
+        }
+        if (userIds.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        List<PeriodActivity> periodActivities;
+        if (startDate == null && endDate == null) {
+            periodActivities = periodActivityRepository.findByUserIdInAndGranularityOrderByPeriodStartAsc(userIds,
+                    granularity);
+        } else if (startDate == null) {
+            periodActivities = periodActivityRepository
+                    .findByUserIdInAndGranularityAndPeriodStartLessThanEqualOrderByPeriodStartAsc(userIds,
+                            granularity, endDate);
+        } else {
+            periodActivities = periodActivityRepository
+                    .findByUserIdInAndGranularityAndPeriodStartBetweenOrderByPeriodStartAsc(userIds, granularity,
+                            periodStart(startDate, granularity), endDate);
+        }
+
+        return periodActivities.stream()
+                .collect(Collectors.groupingBy(periodActivity -> periodActivity.getUser().getId(),
+                        Collectors.mapping(DTOMapper.INSTANCE::convertPeriodActivityToActivityAggregateDTO,
+                                Collectors.toList())));
+    }
+
+    /**
+     * Total duration per period of all active members of the group, summed by
+     * the database in one query, sorted by date. The periods are selected like
+     * in getActivities.
+     */
+    public List<GroupActivityAggregateDTO> getGroupActivities(Long groupId, LocalDate startDate,
+            LocalDate endDate, StatisticsGranularity granularity) {
+        List<DailyActivityRepository.GroupTotal> groupTotals;
+        if (granularity == StatisticsGranularity.DAY) {
+            groupTotals = dailyActivityRepository.sumByGroup(groupId, MembershipStatus.ACTIVE, startDate, endDate);
+        } else {
+            groupTotals = periodActivityRepository.sumByGroup(groupId, MembershipStatus.ACTIVE, granularity,
+                    startDate != null ? periodStart(startDate, granularity) : null, endDate);
+        }
+
+        return groupTotals.stream().map(groupTotal -> {
+            GroupActivityAggregateDTO aggregateDTO = new GroupActivityAggregateDTO();
+            aggregateDTO.setDate(groupTotal.getDate());
+            aggregateDTO.setTotalMinutes(groupTotal.getTotalMinutes());
+            aggregateDTO.setActiveMembers(groupTotal.getActiveMembers());
+            return aggregateDTO;
+        }).toList();
+    }
+
+    /*
+     * Returns the total duration per day, sorted by date
+     *      startDate and endDate -> all days between startDate and endDate
+     *      endDate only -> all days up to endDate
+     *      no dates -> all days
+     */
+    public List<ActivityAggregateDTO> getDailyActivities(Long userId, LocalDate startDate, LocalDate endDate) {
+        List<DailyActivity> dailyActivities;
+        if (startDate == null && endDate == null) {
+            dailyActivities = dailyActivityRepository.findByUserIdOrderByDateAsc(userId);
+        } else if (startDate == null) {
+            dailyActivities = dailyActivityRepository.findByUserIdAndDateLessThanEqualOrderByDateAsc(userId, endDate);
+        } else {
+            dailyActivities = dailyActivityRepository.findByUserIdAndDateBetweenOrderByDateAsc(userId, startDate,
+                    endDate);
+        }
+
+        return dailyActivities.stream()
+                .map(DTOMapper.INSTANCE::convertEntityToActivityAggregateDTO)
+                .toList();
+    }
+
+    /**
+     * Same as getDailyActivities, but for several users with a single query
+     * 
+     * @return the daily totals per user id, users without activities are missing
+     */
+    public Map<Long, List<ActivityAggregateDTO>> getDailyActivitiesForUsers(Collection<Long> userIds,
+            LocalDate startDate, LocalDate endDate) {
+        if (userIds.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        List<DailyActivity> dailyActivities;
+        if (startDate == null && endDate == null) {
+            dailyActivities = dailyActivityRepository.findByUserIdInOrderByDateAsc(userIds);
+        } else if (startDate == null) {
+            dailyActivities = dailyActivityRepository.findByUserIdInAndDateLessThanEqualOrderByDateAsc(userIds,
+                    endDate);
+        } else {
+            dailyActivities = dailyActivityRepository.findByUserIdInAndDateBetweenOrderByDateAsc(userIds, startDate,
+                    endDate);
+        }
+
+        return dailyActivities.stream()
+                .collect(Collectors.groupingBy(dailyActivity -> dailyActivity.getUser().getId(),
+                        Collectors.mapping(DTOMapper.INSTANCE::convertEntityToActivityAggregateDTO,
+                                Collectors.toList())));
+    }
+
+    /**
+     * Backfill job: drops the rollup and rebuilds it from the archived sessions
+     * and the ACTIVITIES table
+     * 
+     * @return the number of rollup rows written
+     */
+    public int rebuild() {
+        dailyActivityRepository.deleteAllInBatch();
+        periodActivityRepository.deleteAllInBatch();
+
+        // without archived sessions the database sums the credited time per user and day,
+        // only one row per day reaches the heap
+        List<Long> archivedUserIds = activityArchiveService.findArchivedUserIds();
+        Map<Long, Map<LocalDate, Long>> minutesByUserAndDate = archivedUserIds.isEmpty()
+                ? sumMinutesByUserAndDate()
+                : sweepMinutesByUserAndDate(new HashSet<>(archivedUserIds));
+
+        // the weeks, months and years are summed from the daily totals
+        List<DailyActivity> dailyActivities = new ArrayList<>();
+        Map<Long, Map<StatisticsGranularity, Map<LocalDate, PeriodActivity>>> periods = new HashMap<>();
+        minutesByUserAndDate.forEach((userId, minutesByDate) -> {
+            User user = userRepository.getReferenceById(userId);
+            minutesByDate.forEach((date, minutes) -> {
+                DailyActivity dailyActivity = new DailyActivity();
+                dailyActivity.setUser(user);
+                dailyActivity.setDate(date);
+                dailyActivity.setDuration(minutes);
+                dailyActivities.add(dailyActivity);
+
+                for (StatisticsGranularity granularity : PERIODS) {
+                    PeriodActivity periodActivity = periods
+                            .computeIfAbsent(userId, k -> new HashMap<>())
+                            .computeIfAbsent(granularity, k -> new HashMap<>())
+                            .computeIfAbsent(periodStart(date, granularity),
+                                    periodStart -> newPeriodActivity(user, granularity, periodStart));
+                    periodActivity.setDuration(periodActivity.getDuration() + minutes);
+                }
+            });
+        });
+
+        List<PeriodActivity> periodActivities = periods.values().stream()
+                .flatMap(byGranularity -> byGranularity.values().stream())
+                .flatMap(byPeriod -> byPeriod.values().stream())
+                .toList();
+
+        dailyActivityRepository.saveAll(dailyActivities);
+        periodActivityRepository.saveAll(periodActivities);
+        dailyActivityRepository.flush();
+
+        log.info("Rebuilt {} daily and {} period activity rollups", dailyActivities.size(),
+                periodActivities.size());
+        return dailyActivities.size();
+    }
+
+    private Map<Long, Map<LocalDate, Long>> sumMinutesByUserAndDate() {
+        Map<Long, Map<LocalDate, Long>> minutesByUserAndDate = new HashMap<>();
+        for (ActivityRepository.DailyDuration dailyDuration : activityRepository.sumDurationsByUserAndDay()) {
+            minutesByUserAndDate.computeIfAbsent(dailyDuration.getUserId(), k -> new TreeMap<>())
+                    .put(dailyDuration.getActivityDate(), dailyDuration.getDuration());
+        }
+        return minutesByUserAndDate;
+    }
+
+    private Map<Long, Map<LocalDate, Long>> sweepMinutesByUserAndDate(Set<Long> archivedUserIds) {
+        // the sessions are read user by user in chronological order without loading Activity
+        // entities, every session only counts the time after the end of the previous sessions
+        // of its user. The archived sessions of a user are merged in by start, a session stored
+        // late can be older than sessions archived before it was stored.
+        Map<Long, Map<LocalDate, Long>> minutesByUserAndDate = new HashMap<>();
+        try (Stream<ActivityRepository.UserSessionBounds> sessions = activityRepository
+                .streamAllSessionBoundsByUser()) {
+            Iterator<ActivityRepository.UserSessionBounds> iterator = sessions.iterator();
+            ActivityRepository.UserSessionBounds session = iterator.hasNext() ? iterator.next() : null;
+            while (session != null) {
+                Long userId = session.getUserId();
+                List<ActivityRepository.SessionBounds> archived = archivedUserIds.remove(userId)
+                        ? activityArchiveService.findSessionBounds(userId)
+                        : List.of();
+                RollupSweep sweep = new RollupSweep();
+                int next = 0;
+                while (session != null && session.getUserId().equals(userId)) {
+                    while (next < archived.size()
+                            && !archived.get(next).getStartDateTime().isAfter(session.getStartDateTime())) {
+                        sweep.add(archived.get(next++));
+                    }
+                    sweep.add(session);
+                    session = iterator.hasNext() ? iterator.next() : null;
+                }
+                archived.subList(next, archived.size()).forEach(sweep::add);
+                minutesByUserAndDate.put(userId, sweep.minutesByDate);
+            }
+        }
+        // users whose sessions are all archived
+        for (Long userId : archivedUserIds) {
+            RollupSweep sweep = new RollupSweep();
+            activityArchiveService.findSessionBounds(userId).forEach(sweep::add);
+            minutesByUserAndDate.put(userId, sweep.minutesByDate);
+        }
+        return minutesByUserAndDate;
+    }
+
+    // minutes per start day of the sessions of one user, added in chronological order
+    private static final class RollupSweep {
+        private final Map<LocalDate, Long> minutesByDate = new TreeMap<>();
+        private long studiedUntil = Long.MIN_VALUE;
+
+        private void add(ActivityRepository.SessionBounds session) {
+            long start = ActivityIndex.toEpochMilli(session.getStartDateTime());
+            long end = ActivityIndex.toEpochMilli(session.getEndDateTime());
+            minutesByDate.merge(session.getStartDateTime().toLocalDate(),
+                    roundedMinutes(creditedMillis(start, end, studiedUntil)), Long::sum);
+            studiedUntil = Math.max(studiedUntil, end);
+        }
+    }
+
+    private PeriodActivity newPeriodActivity(User user, StatisticsGranularity granularity, LocalDate periodStart) {
+        PeriodActivity periodActivity = new PeriodActivity();
+        periodActivity.setUser(user);
+        periodActivity.setGranularity(granularity);
+        periodActivity.setPeriodStart(periodStart);
+        return periodActivity;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (backfillOnStartup) {
+            rebuild();
+        }
+    }
+}
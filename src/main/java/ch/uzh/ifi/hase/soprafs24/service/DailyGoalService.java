@@ -0,0 +1,130 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.DailyActivity;
+import ch.uzh.ifi.hase.soprafs24.entity.DailyGoal;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.DailyActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.DailyGoalRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.DailyGoalGetDTO;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Daily Goal Service
+ * This class maintains the DAILY_GOALS table: the daily study target of a
+ * user and the minutes studied on the last day a session was stored on. A
+ * stored session adds the minutes it added to the daily rollup in O(1), the
+ * progress of today is read from the goal row (plus the running session)
+ * without summing activities. When the progress reaches the target a
+ * GOAL_REACHED event is sent to the user once per day.
+ */
+@Service
+@Transactional
+public class DailyGoalService {
+
+    private final DailyGoalRepository dailyGoalRepository;
+    private final DailyActivityRepository dailyActivityRepository;
+    private final WebSocketService webSocketService;
+
+    public DailyGoalService(@Qualifier("dailyGoalRepository") DailyGoalRepository dailyGoalRepository,
+            @Qualifier("dailyActivityRepository") DailyActivityRepository dailyActivityRepository,
+            WebSocketService webSocketService) {
+        this.dailyGoalRepository = dailyGoalRepository;
+        this.dailyActivityRepository = dailyActivityRepository;
+        this.webSocketService = webSocketService;
+    }
+
+    /**
+     * Sets the daily target of the user, a new goal starts with the minutes
+     * already studied today (read from the daily rollup)
+     */
+    public DailyGoal setGoal(User user, int targetMinutes) {
+        DailyGoal goal = dailyGoalRepository.findByUserId(user.getId()).orElseGet(() -> {
+            LocalDate today = LocalDate.now();
+            DailyGoal newGoal = new DailyGoal();
+            newGoal.setUser(user);
+            newGoal.setProgressDate(today);
+            newGoal.setProgressMinutes(dailyActivityRepository.findByUserIdAndDate(user.getId(), today)
+                    .map(DailyActivity::getDuration)
+                    .orElse(0L));
+            return newGoal;
+        });
+        goal.setTargetMinutes(targetMinutes);
+        return dailyGoalRepository.save(goal);
+    }
+
+    /**
+     * Adds the minutes of the stored activities to the progress, in the
+     * transaction that stored them (see ActivityStoredEvent)
+     */
+    @EventListener
+    public void onActivityStored(ActivityStoredEvent event) {
+        addMinutes(event.getUser(), event.getAddedMinutesByDay());
+    }
+
+    /**
+     * Adds the minutes stored sessions added per day (see
+     * DailyActivityService.addActivities) to the progress of the user. Only the
+     * latest day is tracked, minutes of earlier days are ignored. The row is
+     * changed with atomic updates, so sessions stored at the same time by
+     * another transaction are not overwritten.
+     */
+    public void addMinutes(User user, Map<LocalDate, Long> minutesByDay) {
+        if (minutesByDay.values().stream().allMatch(minutes -> minutes == 0)) {
+            return;
+        }
+        TreeMap<LocalDate, Long> sortedMinutes = new TreeMap<>(minutesByDay);
+        sortedMinutes.forEach((date, minutes) -> {
+            dailyGoalRepository.startProgress(user.getId(), date);
+            dailyGoalRepository.addProgress(user.getId(), date, minutes);
+        });
+
+        LocalDate date = sortedMinutes.lastKey();
+        if (dailyGoalRepository.markReached(user.getId(), date) == 0) {
+            return;
+        }
+        dailyGoalRepository.findProgressByUserId(user.getId()).ifPresent(progress -> {
+            String userId = user.getId().toString();
+            long targetMinutes = progress.getTargetMinutes();
+            long progressMinutes = progress.getProgressMinutes();
+            TransactionCallbacks.afterCommit(() -> webSocketService.sendGoalReached(userId, date, targetMinutes,
+                    progressMinutes));
+        });
+    }
+
+    /*
+     * Returns the goal and the progress of today, including the running WORK
+     * session of the user if it started today (from the timer state of the
+     * user, no query besides the goal row)
+     *      no goal -> targetMinutes = 0
+     */
+    @Transactional(readOnly = true)
+    public DailyGoalGetDTO getProgress(User user) {
+        LocalDate today = LocalDate.now();
+        DailyGoalGetDTO goalGetDTO = new DailyGoalGetDTO();
+        goalGetDTO.setDate(today);
+
+        dailyGoalRepository.findByUserId(user.getId()).ifPresent(goal -> {
+            long minutes = today.equals(goal.getProgressDate()) ? goal.getProgressMinutes() : 0;
+
+            LocalDateTime now = LocalDateTime.now();
+            if (user.getStatus() == UserStatus.WORK && user.getStartTime() != null
+                    && user.getStartTime().isBefore(now) && user.getStartTime().toLocalDate().equals(today)) {
+                minutes += DailyActivityService.roundedMinutes(user.getStartTime(), now);
+            }
+
+            goalGetDTO.setTargetMinutes(goal.getTargetMinutes());
+            goalGetDTO.setMinutes(minutes);
+            goalGetDTO.setReached(minutes >= goal.getTargetMinutes());
+        });
+        return goalGetDTO;
+    }
+}
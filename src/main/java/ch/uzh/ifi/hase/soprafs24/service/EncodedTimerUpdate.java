@@ -0,0 +1,71 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.TimerUpdate;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encoded Timer Update
+ * A timer update serialized to JSON once. The frame of a group is the
+ * serialized event with the groupId field put in front of the other fields,
+ * so fanning out to n groups costs one serialization and n array copies.
+ * Sessions that receive CBOR get the frame encoded from frameForGroup.
+ */
+final class EncodedTimerUpdate {
+
+    private static final byte[] GROUP_ID_PREFIX = "{\"groupId\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] GROUP_ID_SUFFIX = "\",".getBytes(StandardCharsets.UTF_8);
+
+    private final TimerUpdate update;
+    private final byte[] json;
+
+    private EncodedTimerUpdate(TimerUpdate update, byte[] json) {
+        this.update = update;
+        this.json = json;
+    }
+
+    static EncodedTimerUpdate encode(ObjectMapper objectMapper, TimerUpdate update) throws JsonProcessingException {
+        return new EncodedTimerUpdate(update, objectMapper.writeValueAsBytes(update));
+    }
+
+    /**
+     * The frame of the update for the group as object, with the fields in the
+     * order of the JSON frame
+     */
+    Map<String, Object> frameForGroup(String groupId) {
+        Map<String, Object> frame = new LinkedHashMap<>();
+        frame.put("groupId", groupId);
+        frame.put("type", update.getType());
+        frame.put("userId", update.getUserId());
+        frame.put("username", update.getUsername());
+        frame.put("status", update.getStatus());
+        frame.put("duration", update.getDuration());
+        frame.put("startTime", update.getStartTime());
+        return frame;
+    }
+
+    /**
+     * JSON frame of the update for the group:
+     * {"groupId":"<groupId>","type":"TIMER_UPDATE",...}
+     */
+    byte[] forGroup(String groupId) {
+        byte[] quotedGroupId = JsonStringEncoder.getInstance().quoteAsUTF8(groupId);
+        // the serialized event starts with '{', which the prefix replaces
+        byte[] frame = new byte[GROUP_ID_PREFIX.length + quotedGroupId.length + GROUP_ID_SUFFIX.length
+                + json.length - 1];
+        int position = 0;
+        System.arraycopy(GROUP_ID_PREFIX, 0, frame, position, GROUP_ID_PREFIX.length);
+        position += GROUP_ID_PREFIX.length;
+        System.arraycopy(quotedGroupId, 0, frame, position, quotedGroupId.length);
+        position += quotedGroupId.length;
+        System.arraycopy(GROUP_ID_SUFFIX, 0, frame, position, GROUP_ID_SUFFIX.length);
+        position += GROUP_ID_SUFFIX.length;
+        System.arraycopy(json, 1, frame, position, json.length - 1);
+        return frame;
+    }
+}
@@ -0,0 +1,160 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Group Timer Service
+ * Keeps the authoritative state of the shared timer of every group in memory.
+ * Clients send only the timer fields they changed (group.sync), the server
+ * applies them, increments the version of the group and broadcasts the
+ * versioned delta. A client whose base version differs from the version of
+ * the server (late joiner, missed delta, server restart) gets the full state
+ * on its session instead of waiting for the next sync.
+ */
+@Service
+public class GroupTimerService {
+
+    // the client subscribes to /user/queue/group.sync
+    static final String SNAPSHOT_DESTINATION = "/queue/group.sync";
+
+    static final List<String> TIMER_FIELDS = List.of("startTime", "duration", "secondDuration", "originalDuration");
+
+    private final WebSocketService webSocketService;
+
+    private final Map<String, GroupTimerState> states = new ConcurrentHashMap<>();
+
+    public GroupTimerService(WebSocketService webSocketService) {
+        this.webSocketService = webSocketService;
+    }
+
+    private static final class GroupTimerState {
+        private long version;
+        private final Map<String, String> fields = new LinkedHashMap<>();
+        // frames built under the lock, in version order, sent after releasing it
+        private final Queue<Runnable> outbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+    }
+
+    /*
+     * Applies a sync message of a group member
+     *      changes -> timer fields sent by the client, other keys are ignored
+     *      status -> status of the sender, read from the user (not from the client)
+     *      baseVersion -> version the client has seen, null if it has none
+     * A delta is broadcast if a field changed, the sender gets a snapshot if
+     * its base version is stale. Returns the version after the sync.
+     */
+    public long sync(String groupId, String sessionId, String senderId, String senderName, String status,
+            Map<String, Object> changes, Long baseVersion) {
+        GroupTimerState state = states.computeIfAbsent(groupId, id -> new GroupTimerState());
+
+        long version;
+        synchronized (state) {
+            long previousVersion = state.version;
+
+            Map<String, String> changed = new LinkedHashMap<>();
+            for (String field : TIMER_FIELDS) {
+                Object value = changes.get(field);
+                if (value != null && !value.toString().equals(state.fields.get(field))) {
+                    changed.put(field, value.toString());
+                }
+            }
+            if (status != null && !status.equals(state.fields.get("status"))) {
+                changed.put("status", status);
+            }
+
+            if (!changed.isEmpty()) {
+                state.fields.putAll(changed);
+                state.version++;
+                Map<String, Object> delta = message("SYNC", groupId, state.version);
+                delta.put("senderId", senderId);
+                delta.put("senderName", senderName);
+                delta.putAll(changed);
+                state.outbox.add(() -> webSocketService.sendMessageToGroup(groupId, delta));
+            }
+            if (sessionId != null && (baseVersion == null || baseVersion != previousVersion)) {
+                Map<String, Object> snapshot = snapshot(groupId, state);
+                state.outbox.add(() -> webSocketService.sendToSession(sessionId, SNAPSHOT_DESTINATION, snapshot));
+            }
+            version = state.version;
+        }
+        send(state);
+        return version;
+    }
+
+    /*
+     * Sends the queued frames of a group outside of its lock. Only one thread
+     * sends at a time, so the broker still gets the deltas in version order;
+     * frames queued while another thread is sending are sent by that thread.
+     */
+    private static void send(GroupTimerState state) {
+        while (state.sending.compareAndSet(false, true)) {
+            try {
+                Runnable frame;
+                while ((frame = state.outbox.poll()) != null) {
+                    frame.run();
+                }
+            } finally {
+                state.sending.set(false);
+            }
+            if (state.outbox.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Current version of the timer of the group, 0 if nothing was synced yet
+     */
+    long getVersion(String groupId) {
+        GroupTimerState state = states.get(groupId);
+        if (state == null) {
+            return 0;
+        }
+        synchronized (state) {
+            return state.version;
+        }
+    }
+
+    /**
+     * Full timer state of the group (type SYNC_SNAPSHOT)
+     */
+    Map<String, Object> getSnapshot(String groupId) {
+        GroupTimerState state = states.get(groupId);
+        if (state == null) {
+            return message("SYNC_SNAPSHOT", groupId, 0);
+        }
+        synchronized (state) {
+            return snapshot(groupId, state);
+        }
+    }
+
+    /**
+     * Drops the timer state of the group once the current transaction has
+     * committed, called when the group has no active member left
+     */
+    public void evict(String groupId) {
+        TransactionCallbacks.afterCommit(() -> states.remove(groupId));
+    }
+
+    private static Map<String, Object> snapshot(String groupId, GroupTimerState state) {
+        Map<String, Object> snapshot = message("SYNC_SNAPSHOT", groupId, state.version);
+        snapshot.putAll(state.fields);
+        return snapshot;
+    }
+
+    private static Map<String, Object> message(String type, String groupId, long version) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", type);
+        message.put("groupId", groupId);
+        message.put("version", version);
+        return message;
+    }
+}
@@ -0,0 +1,76 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Interval Join
+ * Finds every overlapping pair of two lists of half-open intervals [start, end)
+ * with a sort-and-sweep: both lists are sorted by start and walked together,
+ * each side keeps the intervals that are still open in a heap ordered by end.
+ * When an interval starts, the closed intervals of the other side are dropped
+ * and it overlaps all the others, so every pair is reported once, by the
+ * interval that starts later. O((n + m) log(n + m) + k) for k reported pairs.
+ */
+final class IntervalJoin {
+
+    @FunctionalInterface
+    interface OverlapConsumer {
+        /**
+         * Called once per overlapping pair with the overlap in the unit of
+         * the intervals
+         */
+        void accept(int left, int right, long overlap);
+    }
+
+    private IntervalJoin() {
+    }
+
+    static void join(long[] leftStarts, long[] leftEnds, long[] rightStarts, long[] rightEnds,
+            OverlapConsumer consumer) {
+        Integer[] left = sortedByStart(leftStarts, leftEnds);
+        Integer[] right = sortedByStart(rightStarts, rightEnds);
+
+        PriorityQueue<Integer> openLeft = new PriorityQueue<>(Comparator.comparingLong(i -> leftEnds[i]));
+        PriorityQueue<Integer> openRight = new PriorityQueue<>(Comparator.comparingLong(i -> rightEnds[i]));
+
+        int l = 0;
+        int r = 0;
+        while (l < left.length || r < right.length) {
+            boolean leftNext = r == right.length
+                    || (l < left.length && leftStarts[left[l]] <= rightStarts[right[r]]);
+            if (leftNext) {
+                int i = left[l++];
+                close(openRight, rightEnds, leftStarts[i]);
+                for (int j : openRight) {
+                    consumer.accept(i, j, Math.min(leftEnds[i], rightEnds[j]) - leftStarts[i]);
+                }
+                openLeft.add(i);
+            } else {
+                int j = right[r++];
+                close(openLeft, leftEnds, rightStarts[j]);
+                for (int i : openLeft) {
+                    consumer.accept(i, j, Math.min(leftEnds[i], rightEnds[j]) - rightStarts[j]);
+                }
+                openRight.add(j);
+            }
+        }
+    }
+
+    // drops the intervals that end at or before the given time
+    private static void close(PriorityQueue<Integer> open, long[] ends, long time) {
+        while (!open.isEmpty() && ends[open.peek()] <= time) {
+            open.poll();
+        }
+    }
+
+    // indexes of the non-empty intervals sorted by start
+    private static Integer[] sortedByStart(long[] starts, long[] ends) {
+        return IntStream.range(0, starts.length)
+                .filter(i -> ends[i] > starts[i])
+                .boxed()
+                .sorted(Comparator.comparingLong(i -> starts[i]))
+                .toArray(Integer[]::new);
+    }
+}
@@ -0,0 +1,194 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.LeaderboardWindow;
+import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
+import ch.uzh.ifi.hase.soprafs24.repository.GroupMembershipRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityAggregateDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.LeaderboardEntryGetDTO;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Leaderboard Service
+ * This class keeps an in-memory ranking of the active members of every group
+ * by their study time in the last day, week and month. A group is loaded from
+ * the daily rollup on its first read (and again on the first read of a new
+ * day), afterwards stored activities and membership changes update the
+ * ranking directly, so a read only walks the first entries of the ranking.
+ * The rankings are kept in a StatisticsCache, a load that overlaps a stored
+ * activity of the group is done again instead of counting the activity twice.
+ */
+@Service
+public class LeaderboardService {
+
+    private final GroupMembershipRepository membershipRepository;
+    private final DailyActivityService dailyActivityService;
+
+    private final StatisticsCache<Long, GroupLeaderboard> leaderboards = new StatisticsCache<>();
+
+    public LeaderboardService(
+            @Qualifier("groupMembershipRepository") GroupMembershipRepository membershipRepository,
+            DailyActivityService dailyActivityService) {
+        this.membershipRepository = membershipRepository;
+        this.dailyActivityService = dailyActivityService;
+    }
+
+    /**
+     * Returns the first entries of the group ranking, members with the same
+     * duration share a rank. Only rank, userId and duration are set.
+     */
+    public List<LeaderboardEntryGetDTO> getTopEntries(Long groupId, LeaderboardWindow window, int limit) {
+        LocalDate today = LocalDate.now();
+        GroupLeaderboard leaderboard = leaderboards.get(groupId, id -> load(id, today));
+        if (!leaderboard.day.equals(today)) {
+            leaderboards.discard(groupId, leaderboard);
+            leaderboard = leaderboards.get(groupId, id -> load(id, today));
+        }
+
+        List<LeaderboardEntryGetDTO> entries = new ArrayList<>();
+        Iterator<Score> ranking = leaderboard.rankings.get(window).iterator();
+        while (ranking.hasNext() && entries.size() < limit) {
+            Score score = ranking.next();
+            LeaderboardEntryGetDTO entry = new LeaderboardEntryGetDTO();
+            entry.setUserId(score.userId());
+            entry.setDuration(score.duration());
+
+            LeaderboardEntryGetDTO previous = entries.isEmpty() ? null : entries.get(entries.size() - 1);
+            entry.setRank(previous != null && previous.getDuration() == score.duration()
+                    ? previous.getRank()
+                    : entries.size() + 1);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Adds the minutes of the stored activities to the rankings (see
+     * ActivityStoredEvent)
+     */
+    @EventListener
+    public void onActivityStored(ActivityStoredEvent event) {
+        addMinutes(event.getUser().getId(), event.getAddedMinutesByDay());
+    }
+
+    /**
+     * Adds the minutes stored sessions added per day to the daily rollup (see
+     * DailyActivityService.addActivities) to the rankings of the groups the
+     * user is an active member of, once the surrounding transaction has
+     * committed
+     */
+    public void addMinutes(Long userId, Map<LocalDate, Long> minutesByDay) {
+        for (Long groupId : membershipRepository.findGroupIdsByUserIdAndStatus(userId, MembershipStatus.ACTIVE)) {
+            leaderboards.update(groupId, leaderboard -> {
+                minutesByDay.forEach((date, minutes) -> leaderboard.addDuration(userId, date, minutes));
+                return leaderboard;
+            });
+        }
+    }
+
+    /**
+     * A new active member is ranked by reloading the group on its next read
+     */
+    public void addMember(Long groupId) {
+        leaderboards.invalidate(groupId);
+    }
+
+    public void removeMember(Long groupId, Long userId) {
+        leaderboards.update(groupId, leaderboard -> {
+            leaderboard.removeMember(userId);
+            return leaderboard;
+        });
+    }
+
+    private GroupLeaderboard load(Long groupId, LocalDate today) {
+        List<Long> userIds = membershipRepository.findUserIdsByGroupIdAndStatus(groupId, MembershipStatus.ACTIVE);
+        Map<Long, List<ActivityAggregateDTO>> dailyActivities = dailyActivityService.getDailyActivitiesForUsers(
+                userIds, today.minusDays(LeaderboardWindow.MONTH.getDays() - 1L), today);
+
+        GroupLeaderboard leaderboard = new GroupLeaderboard(today);
+        for (Long userId : userIds) {
+            List<ActivityAggregateDTO> days = dailyActivities.getOrDefault(userId, List.of());
+            for (LeaderboardWindow window : LeaderboardWindow.values()) {
+                long duration = days.stream()
+                        .filter(day -> leaderboard.inWindow(day.getDate(), window))
+                        .mapToLong(ActivityAggregateDTO::getDuration)
+                        .sum();
+                leaderboard.putScore(window, userId, duration);
+            }
+        }
+        return leaderboard;
+    }
+
+    private record Score(long userId, long duration) {
+    }
+
+    /*
+     * Rankings of one group, valid for a single day. Every window keeps the
+     * score of each member and a skip list of the scores ordered by duration
+     * (highest first), updating a member removes its old score and inserts
+     * the new one.
+     */
+    private static final class GroupLeaderboard {
+        private static final Comparator<Score> BY_DURATION = Comparator.comparingLong(Score::duration).reversed()
+                .thenComparingLong(Score::userId);
+
+        private final LocalDate day;
+        private final Map<LeaderboardWindow, Map<Long, Score>> scores = new EnumMap<>(LeaderboardWindow.class);
+        private final Map<LeaderboardWindow, NavigableSet<Score>> rankings = new EnumMap<>(LeaderboardWindow.class);
+
+        GroupLeaderboard(LocalDate day) {
+            this.day = day;
+            for (LeaderboardWindow window : LeaderboardWindow.values()) {
+                scores.put(window, new ConcurrentHashMap<>());
+                rankings.put(window, new ConcurrentSkipListSet<>(BY_DURATION));
+            }
+        }
+
+        boolean inWindow(LocalDate date, LeaderboardWindow window) {
+            return !date.isAfter(day) && date.isAfter(day.minusDays(window.getDays()));
+        }
+
+        synchronized void putScore(LeaderboardWindow window, Long userId, long duration) {
+            Score score = new Score(userId, duration);
+            Score previous = scores.get(window).put(userId, score);
+            if (previous != null) {
+                rankings.get(window).remove(previous);
+            }
+            rankings.get(window).add(score);
+        }
+
+        synchronized void addDuration(Long userId, LocalDate date, long minutes) {
+            for (LeaderboardWindow window : LeaderboardWindow.values()) {
+                Score score = scores.get(window).get(userId);
+                // only members of the group are ranked
+                if (score == null) {
+                    return;
+                }
+                if (inWindow(date, window)) {
+                    putScore(window, userId, score.duration() + minutes);
+                }
+            }
+        }
+
+        synchronized void removeMember(Long userId) {
+            for (LeaderboardWindow window : LeaderboardWindow.values()) {
+                Score score = scores.get(window).remove(userId);
+                if (score != null) {
+                    rankings.get(window).remove(score);
+                }
+            }
+        }
+    }
+}
@@ -9,13 +9,17 @@ import ch.uzh.ifi.hase.soprafs24.repository.GroupRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
 /**
  * Membership Service Implementation
@@ -29,15 +33,30 @@ public class MembershipServiceImpl implements MembershipService {
     private final GroupMembershipRepository membershipRepository;
     private final GroupRepository groupRepository;
     private final UserRepository userRepository;
+    private final LeaderboardService leaderboardService;
+    private final SessionHistogramService sessionHistogramService;
+    private final StudyHeatmapService studyHeatmapService;
+    private final WebSocketService webSocketService;
+    private final GroupTimerService groupTimerService;
 
     @Autowired
     public MembershipServiceImpl(
             @Qualifier("groupMembershipRepository") GroupMembershipRepository membershipRepository,
             @Qualifier("groupRepository") GroupRepository groupRepository,
-            @Qualifier("userRepository") UserRepository userRepository) {
+            @Qualifier("userRepository") UserRepository userRepository,
+            LeaderboardService leaderboardService,
+            SessionHistogramService sessionHistogramService,
+            StudyHeatmapService studyHeatmapService,
+            WebSocketService webSocketService,
+            GroupTimerService groupTimerService) {
         this.membershipRepository = membershipRepository;
         this.groupRepository = groupRepository;
         this.userRepository = userRepository;
+        this.leaderboardService = leaderboardService;
+        this.sessionHistogramService = sessionHistogramService;
+        this.studyHeatmapService = studyHeatmapService;
+        this.webSocketService = webSocketService;
+        this.groupTimerService = groupTimerService;
     }
 
     @Override
@@ -47,6 +66,7 @@ public class MembershipServiceImpl implements MembershipService {
         if (existingMembership.isPresent()) {
             GroupMembership membership = existingMembership.get();
             membership.setStatus(status);
+            updateGroupStatistics(membership);
             return membershipRepository.save(membership);
         }
 
@@ -76,6 +96,7 @@ public class MembershipServiceImpl implements MembershipService {
         groupRepository.save(group);
         userRepository.save(user);
 
+        updateGroupStatistics(membership);
         return membership;
     }
 
@@ -91,6 +112,11 @@ public class MembershipServiceImpl implements MembershipService {
 
             // Delete the membership
             membershipRepository.delete(membership);
+            leaderboardService.removeMember(group.getId(), user.getId());
+            sessionHistogramService.evictGroup(group.getId());
+            studyHeatmapService.evictGroup(group.getId());
+            evictPresence(group.getId());
+            evictTimerIfEmpty(group.getId());
 
             // Save the updated entities
             groupRepository.save(group);
@@ -122,6 +148,65 @@ public class MembershipServiceImpl implements MembershipService {
     @Override
     public GroupMembership updateMembershipStatus(GroupMembership membership, MembershipStatus status) {
         membership.setStatus(status);
+        updateGroupStatistics(membership);
         return membershipRepository.save(membership);
     }
+
+    /*
+     * Sends the minutes stored activities added per day to the stats topic of
+     * every active group of the user, once they are committed (see
+     * ActivityStoredEvent)
+     *      negative minutes -> the day lost time to an earlier session
+     *      no minutes added (fully overlapped sessions) -> nothing is sent
+     */
+    @EventListener
+    public void onActivityStored(ActivityStoredEvent event) {
+        Map<LocalDate, Long> deltas = new TreeMap<>();
+        event.getAddedMinutesByDay().forEach((date, minutes) -> {
+            if (minutes != 0) {
+                deltas.put(date, minutes);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        Long userId = event.getUser().getId();
+        List<Long> groupIds = membershipRepository.findGroupIdsByUserIdAndStatus(userId, MembershipStatus.ACTIVE);
+        TransactionCallbacks.afterCommit(() -> {
+            for (Long groupId : groupIds) {
+                deltas.forEach((date, minutes) -> webSocketService.sendStatisticsDelta(userId.toString(),
+                        groupId.toString(), date, minutes));
+            }
+        });
+    }
+
+    /*
+     * Only active members are counted in the group leaderboard, histogram and heatmap
+     */
+    private void updateGroupStatistics(GroupMembership membership) {
+        sessionHistogramService.evictGroup(membership.getGroup().getId());
+        studyHeatmapService.evictGroup(membership.getGroup().getId());
+        evictPresence(membership.getGroup().getId());
+        if (membership.getStatus() == MembershipStatus.ACTIVE) {
+            leaderboardService.addMember(membership.getGroup().getId());
+        } else {
+            leaderboardService.removeMember(membership.getGroup().getId(), membership.getUser().getId());
+            evictTimerIfEmpty(membership.getGroup().getId());
+        }
+    }
+
+    // the histogram, heatmap and leaderboard caches drop the group once the
+    // change has committed, the presence is dropped then as well, otherwise a
+    // snapshot in between would load the old members again and keep them
+    private void evictPresence(Long groupId) {
+        TransactionCallbacks.afterCommit(() -> webSocketService.evictPresence(groupId.toString()));
+    }
+
+    // the shared timer of a group is kept while it has active members
+    private void evictTimerIfEmpty(Long groupId) {
+        if (membershipRepository.findUserIdsByGroupIdAndStatus(groupId, MembershipStatus.ACTIVE).isEmpty()) {
+            groupTimerService.evict(groupId.toString());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+/**
+ * Session Histogram
+ * Counts session lengths (in seconds) in fixed log-scale buckets, similar to
+ * HdrHistogram: lengths below 16 seconds have a bucket each, above that every
+ * power of two is split into 8 buckets, so a bucket is at most 12.5% wide.
+ * Lengths from about 12 days on are counted in the last bucket.
+ * Recording and merging never allocate, percentiles walk the buckets once.
+ */
+final class SessionHistogram {
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 19;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    static final int BUCKET_COUNT = LINEAR_BUCKETS + (MAX_EXPONENT - 3) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+
+    static int bucketIndex(long seconds) {
+        long value = Math.min(Math.max(seconds, 0), MAX_VALUE);
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    // smallest length counted in the bucket
+    static long lowerBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int exponent = 4 + (index - LINEAR_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    // number of lengths counted in the bucket
+    static long width(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return 1;
+        }
+        return 1L << (4 + (index - LINEAR_BUCKETS) / SUB_BUCKETS - SUB_BUCKET_BITS);
+    }
+
+    synchronized void record(long seconds) {
+        counts[bucketIndex(seconds)]++;
+        totalCount++;
+    }
+
+    synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Adds the counts of the other histogram to this one
+     */
+    void add(SessionHistogram other) {
+        long[] otherCounts;
+        synchronized (other) {
+            otherCounts = other.counts.clone();
+        }
+        synchronized (this) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += otherCounts[i];
+                totalCount += otherCounts[i];
+            }
+        }
+    }
+
+    /**
+     * Length in seconds below or at which the given percentage of the sessions
+     * lie, as the middle of its bucket (0 if nothing was recorded)
+     */
+    synchronized long valueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return lowerBound(i) + width(i) / 2;
+            }
+        }
+        return lowerBound(BUCKET_COUNT - 1);
+    }
+}
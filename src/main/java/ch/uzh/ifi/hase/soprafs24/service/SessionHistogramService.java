@@ -0,0 +1,106 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.GroupMembershipRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.SessionStatisticsGetDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Session Histogram Service
+ * This class keeps a histogram of the session lengths of every user and of
+ * every group (see SessionHistogram), maintained as SessionSketches: rebuilt
+ * on startup, merged per group on its first read and updated whenever a
+ * session is stored, so the percentiles are read without touching the
+ * ACTIVITIES table.
+ */
+@Service
+public class SessionHistogramService {
+    private final Logger log = LoggerFactory.getLogger(SessionHistogramService.class);
+
+    private final SessionSketches<SessionHistogram> histograms;
+
+    public SessionHistogramService(@Qualifier("activityRepository") ActivityRepository activityRepository,
+            @Qualifier("groupMembershipRepository") GroupMembershipRepository membershipRepository,
+            ActivityArchiveService activityArchiveService) {
+        this.histograms = new SessionSketches<>(activityRepository, membershipRepository, activityArchiveService,
+                SessionHistogram::new,
+                (histogram, startDateTime, endDateTime) -> histogram.record(
+                        lengthInSeconds(startDateTime, endDateTime)),
+                SessionHistogram::add);
+    }
+
+    static long lengthInSeconds(LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        return Duration.between(startDateTime, endDateTime).getSeconds();
+    }
+
+    /**
+     * Records the stored activities (see ActivityStoredEvent)
+     */
+    @EventListener
+    public void onActivityStored(ActivityStoredEvent event) {
+        event.getActivities().forEach(this::addActivity);
+    }
+
+    /**
+     * Records a stored session for its user and all loaded groups of the user,
+     * once the surrounding transaction has committed
+     */
+    public void addActivity(Activity activity) {
+        histograms.addActivity(activity);
+    }
+
+    /**
+     * The histogram of a group is merged again on its next read after a member
+     * joined or left
+     */
+    public void evictGroup(Long groupId) {
+        histograms.evictGroup(groupId);
+    }
+
+    public SessionStatisticsGetDTO getUserStatistics(Long userId) {
+        return toStatistics(histograms.getUser(userId));
+    }
+
+    public SessionStatisticsGetDTO getGroupStatistics(Long groupId) {
+        return toStatistics(histograms.getGroup(groupId));
+    }
+
+    /**
+     * Rebuilds the histograms of all users from the archived sessions and the
+     * ACTIVITIES table
+     *
+     * @return the number of recorded sessions
+     */
+    @Transactional(readOnly = true)
+    public long rebuild() {
+        long sessionCount = histograms.rebuild();
+        log.info("Rebuilt the session histograms of {} users from {} sessions", histograms.userCount(),
+                sessionCount);
+        return sessionCount;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuildOnStartup() {
+        rebuild();
+    }
+
+    private SessionStatisticsGetDTO toStatistics(SessionHistogram histogram) {
+        SessionStatisticsGetDTO statistics = new SessionStatisticsGetDTO();
+        statistics.setSessionCount(histogram.getTotalCount());
+        statistics.setMedianSeconds(histogram.valueAtPercentile(50));
+        statistics.setP90Seconds(histogram.valueAtPercentile(90));
+        statistics.setP99Seconds(histogram.valueAtPercentile(99));
+        return statistics;
+    }
+}
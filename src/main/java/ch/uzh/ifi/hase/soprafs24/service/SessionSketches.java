@@ -0,0 +1,136 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.GroupMembershipRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Session Sketches
+ * A sketch of the stored sessions (session histogram, study heatmap, ...) of
+ * every user and of every group. The user sketches are rebuilt from the
+ * archived sessions and the ACTIVITIES table, a group sketch is merged from
+ * the sketches of its active members on its first read, and both are updated
+ * whenever a session is stored.
+ * The group sketches are kept in a StatisticsCache: a stored session is a
+ * change of every group of its user, so a merge that runs while the session
+ * commits is done again instead of missing it.
+ */
+final class SessionSketches<S> {
+
+    /**
+     * Records one session in a sketch
+     */
+    interface Recorder<S> {
+        void record(S sketch, LocalDateTime startDateTime, LocalDateTime endDateTime);
+    }
+
+    private final ActivityRepository activityRepository;
+    private final GroupMembershipRepository membershipRepository;
+    private final ActivityArchiveService activityArchiveService;
+    private final Supplier<S> factory;
+    private final Recorder<S> recorder;
+    // adds the second sketch to the first
+    private final BiConsumer<S, S> merger;
+
+    private final Map<Long, S> userSketches = new ConcurrentHashMap<>();
+    private final StatisticsCache<Long, S> groupSketches = new StatisticsCache<>();
+
+    SessionSketches(ActivityRepository activityRepository, GroupMembershipRepository membershipRepository,
+            ActivityArchiveService activityArchiveService, Supplier<S> factory, Recorder<S> recorder,
+            BiConsumer<S, S> merger) {
+        this.activityRepository = activityRepository;
+        this.membershipRepository = membershipRepository;
+        this.activityArchiveService = activityArchiveService;
+        this.factory = factory;
+        this.recorder = recorder;
+        this.merger = merger;
+    }
+
+    /**
+     * Records a stored session for its user and the loaded groups of the user,
+     * once the surrounding transaction has committed
+     */
+    void addActivity(Activity activity) {
+        Long userId = activity.getUser().getId();
+        LocalDateTime startDateTime = activity.getStartDateTime();
+        LocalDateTime endDateTime = activity.getEndDateTime();
+
+        // registered first, so the user sketch has the session before its group changes finish
+        TransactionCallbacks.afterCommit(() -> recorder.record(
+                userSketches.computeIfAbsent(userId, id -> factory.get()), startDateTime, endDateTime));
+        for (Long groupId : membershipRepository.findGroupIdsByUserIdAndStatus(userId, MembershipStatus.ACTIVE)) {
+            groupSketches.update(groupId, sketch -> {
+                recorder.record(sketch, startDateTime, endDateTime);
+                return sketch;
+            });
+        }
+    }
+
+    /**
+     * The sketch of a group is merged again on its next read after a member
+     * joined or left
+     */
+    void evictGroup(Long groupId) {
+        groupSketches.invalidate(groupId);
+    }
+
+    S getUser(Long userId) {
+        return userSketches.getOrDefault(userId, factory.get());
+    }
+
+    S getGroup(Long groupId) {
+        return groupSketches.get(groupId, this::loadGroup);
+    }
+
+    /*
+     * Rebuilds the sketches of all users, must run inside a transaction
+     * (the sessions are streamed)
+     *      returns the number of recorded sessions
+     */
+    long rebuild() {
+        Map<Long, S> sketches = new ConcurrentHashMap<>();
+        AtomicLong sessionCount = new AtomicLong();
+        Consumer<ActivityRepository.UserSessionBounds> record = session -> {
+            recorder.record(sketches.computeIfAbsent(session.getUserId(), id -> factory.get()),
+                    session.getStartDateTime(), session.getEndDateTime());
+            sessionCount.incrementAndGet();
+        };
+        activityArchiveService.forEachArchivedSession(record);
+        try (Stream<ActivityRepository.UserSessionBounds> sessions = activityRepository.streamAllSessionBounds()) {
+            sessions.forEach(record);
+        }
+
+        userSketches.clear();
+        userSketches.putAll(sketches);
+        groupSketches.clear();
+        return sessionCount.get();
+    }
+
+    int userCount() {
+        return userSketches.size();
+    }
+
+    private S loadGroup(Long groupId) {
+        List<Long> memberIds = membershipRepository.findUserIdsByGroupIdAndStatus(groupId, MembershipStatus.ACTIVE);
+
+        S groupSketch = factory.get();
+        for (Long memberId : memberIds) {
+            S userSketch = userSketches.get(memberId);
+            if (userSketch != null) {
+                merger.accept(groupSketch, userSketch);
+            }
+        }
+        return groupSketch;
+    }
+}
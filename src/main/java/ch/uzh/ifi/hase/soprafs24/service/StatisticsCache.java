@@ -0,0 +1,145 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Statistics Cache
+ * In-memory statistics loaded from the database on their first read and
+ * updated by the stored changes afterwards. A load runs without holding a
+ * lock, so a change can commit while it reads: the load may or may not see
+ * it, and applying the change to the loaded entry could count it twice.
+ * Every key therefore counts its started and finished changes, a change
+ * starts inside its transaction and finishes once it committed (or rolled
+ * back). A load is only kept if no change of its key was running while it
+ * read, otherwise it is done again.
+ */
+final class StatisticsCache<K, V> {
+
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    private static final class Changes {
+        private final AtomicLong started = new AtomicLong();
+        private final AtomicLong finished = new AtomicLong();
+    }
+
+    private final Map<K, V> entries = new ConcurrentHashMap<>();
+    private final Map<K, Changes> changes = new ConcurrentHashMap<>();
+
+    V getIfPresent(K key) {
+        return entries.get(key);
+    }
+
+    /*
+     * Returns the entry of the key, loading it if it is missing
+     *      change running during every attempt -> the last load is returned
+     *                                             without being kept
+     */
+    V get(K key, Function<? super K, ? extends V> loader) {
+        V value = entries.get(key);
+        if (value != null) {
+            return value;
+        }
+        return getAll(Set.of(key), keys -> Map.of(key, loader.apply(key))).get(key);
+    }
+
+    /*
+     * Returns the entries of the keys, the missing ones are loaded together
+     * with one call of the loader
+     *      loader -> an entry for every given key
+     */
+    Map<K, V> getAll(Collection<K> keys, Function<? super Set<K>, ? extends Map<K, ? extends V>> loader) {
+        Map<K, V> values = new HashMap<>();
+        Set<K> missing = new LinkedHashSet<>();
+        for (K key : keys) {
+            V value = entries.get(key);
+            if (value != null) {
+                values.put(key, value);
+            } else {
+                missing.add(key);
+            }
+        }
+
+        for (int attempt = 1; !missing.isEmpty() && attempt <= MAX_LOAD_ATTEMPTS; attempt++) {
+            // started changes per key, null if one was still running
+            Map<K, Long> settled = new HashMap<>();
+            for (K key : missing) {
+                Changes keyChanges = changes(key);
+                long started = keyChanges.started.get();
+                settled.put(key, keyChanges.finished.get() == started ? started : null);
+            }
+
+            Map<K, ? extends V> loaded = loader.apply(Set.copyOf(missing));
+            for (Iterator<K> iterator = missing.iterator(); iterator.hasNext();) {
+                K key = iterator.next();
+                V value = keep(key, loaded.get(key), settled.get(key));
+                if (value == null && attempt == MAX_LOAD_ATTEMPTS) {
+                    value = loaded.get(key);
+                }
+                if (value != null) {
+                    values.put(key, value);
+                    iterator.remove();
+                }
+            }
+        }
+        return values;
+    }
+
+    // stores the loaded entry unless a change of the key started since the load began
+    private V keep(K key, V loaded, Long started) {
+        if (started == null) {
+            return null;
+        }
+        Changes keyChanges = changes(key);
+        return entries.compute(key, (k, current) -> {
+            if (current != null) {
+                return current;
+            }
+            return keyChanges.started.get() == started ? loaded : null;
+        });
+    }
+
+    /**
+     * Applies the update to the entry of the key once the current transaction
+     * has committed, missing entries are left to their next load. The update
+     * may change the entry in place, returning null removes it.
+     */
+    void update(K key, UnaryOperator<V> update) {
+        Changes keyChanges = changes(key);
+        keyChanges.started.incrementAndGet();
+        TransactionCallbacks.afterCompletion(
+                () -> entries.computeIfPresent(key, (k, value) -> update.apply(value)),
+                keyChanges.finished::incrementAndGet);
+    }
+
+    /**
+     * Removes the entry of the key once the current transaction has committed
+     */
+    void invalidate(K key) {
+        update(key, value -> null);
+    }
+
+    /**
+     * Removes the entry right away if it is still the given one (e.g. an
+     * entry that has expired), the next read loads it again
+     */
+    void discard(K key, V value) {
+        entries.remove(key, value);
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private Changes changes(K key) {
+        return changes.computeIfAbsent(key, k -> new Changes());
+    }
+}
@@ -0,0 +1,76 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Study Heatmap
+ * Study time (in seconds) per day of the week and hour of the day, kept in a
+ * fixed array of 7 x 24 counters (Monday 0:00 is the first cell). A session is
+ * split at every full hour and each part is added to the cell it lies in, so
+ * reading the heatmap never depends on the number of recorded sessions.
+ */
+final class StudyHeatmap {
+    static final int DAYS = 7;
+    static final int HOURS = 24;
+
+    private static final long SECONDS_PER_HOUR = 3600;
+
+    private final long[] seconds = new long[DAYS * HOURS];
+
+    static int cellIndex(LocalDateTime dateTime) {
+        return (dateTime.getDayOfWeek().getValue() - 1) * HOURS + dateTime.getHour();
+    }
+
+    synchronized void record(LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        if (!startDateTime.isBefore(endDateTime)) {
+            return;
+        }
+
+        // every full week covers each cell for a whole hour
+        long weeks = ChronoUnit.WEEKS.between(startDateTime, endDateTime);
+        if (weeks > 0) {
+            for (int i = 0; i < seconds.length; i++) {
+                seconds[i] += weeks * SECONDS_PER_HOUR;
+            }
+        }
+
+        LocalDateTime cursor = startDateTime.plusWeeks(weeks);
+        while (cursor.isBefore(endDateTime)) {
+            LocalDateTime nextHour = cursor.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            LocalDateTime partEnd = nextHour.isBefore(endDateTime) ? nextHour : endDateTime;
+            seconds[cellIndex(cursor)] += Duration.between(cursor, partEnd).getSeconds();
+            cursor = partEnd;
+        }
+    }
+
+    /**
+     * Adds the counters of the other heatmap to this one
+     */
+    void add(StudyHeatmap other) {
+        long[] otherSeconds;
+        synchronized (other) {
+            otherSeconds = other.seconds.clone();
+        }
+        synchronized (this) {
+            for (int i = 0; i < seconds.length; i++) {
+                seconds[i] += otherSeconds[i];
+            }
+        }
+    }
+
+    /**
+     * Study time in minutes (rounded), indexed by day of the week (0 = Monday)
+     * and hour of the day
+     */
+    synchronized long[][] toMinutes() {
+        long[][] minutes = new long[DAYS][HOURS];
+        for (int day = 0; day < DAYS; day++) {
+            for (int hour = 0; hour < HOURS; hour++) {
+                minutes[day][hour] = (seconds[day * HOURS + hour] + 30) / 60;
+            }
+        }
+        return minutes;
+    }
+}
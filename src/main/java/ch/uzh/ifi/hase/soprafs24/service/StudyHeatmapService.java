@@ -0,0 +1,95 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.GroupMembershipRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.StudyHeatmapGetDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+
+/**
+ * Study Heatmap Service
+ * This class keeps a day-of-week x hour-of-day heatmap of the study time of
+ * every user and of every group (see StudyHeatmap), maintained as
+ * SessionSketches like the session histograms.
+ */
+@Service
+public class StudyHeatmapService {
+    private final Logger log = LoggerFactory.getLogger(StudyHeatmapService.class);
+
+    private final SessionSketches<StudyHeatmap> heatmaps;
+
+    public StudyHeatmapService(@Qualifier("activityRepository") ActivityRepository activityRepository,
+            @Qualifier("groupMembershipRepository") GroupMembershipRepository membershipRepository,
+            ActivityArchiveService activityArchiveService) {
+        this.heatmaps = new SessionSketches<>(activityRepository, membershipRepository, activityArchiveService,
+                StudyHeatmap::new, StudyHeatmap::record, StudyHeatmap::add);
+    }
+
+    /**
+     * Records the stored activities (see ActivityStoredEvent)
+     */
+    @EventListener
+    public void onActivityStored(ActivityStoredEvent event) {
+        event.getActivities().forEach(this::addActivity);
+    }
+
+    /**
+     * Records a stored session for its user and all loaded groups of the user,
+     * once the surrounding transaction has committed
+     */
+    public void addActivity(Activity activity) {
+        heatmaps.addActivity(activity);
+    }
+
+    /**
+     * The heatmap of a group is merged again on its next read after a member
+     * joined or left
+     */
+    public void evictGroup(Long groupId) {
+        heatmaps.evictGroup(groupId);
+    }
+
+    public StudyHeatmapGetDTO getUserHeatmap(Long userId) {
+        return toHeatmap(heatmaps.getUser(userId));
+    }
+
+    public StudyHeatmapGetDTO getGroupHeatmap(Long groupId) {
+        return toHeatmap(heatmaps.getGroup(groupId));
+    }
+
+    /**
+     * Rebuilds the heatmaps of all users from the archived sessions and the
+     * ACTIVITIES table
+     *
+     * @return the number of recorded sessions
+     */
+    @Transactional(readOnly = true)
+    public long rebuild() {
+        long sessionCount = heatmaps.rebuild();
+        log.info("Rebuilt the study heatmaps of {} users from {} sessions", heatmaps.userCount(), sessionCount);
+        return sessionCount;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuildOnStartup() {
+        rebuild();
+    }
+
+    private StudyHeatmapGetDTO toHeatmap(StudyHeatmap heatmap) {
+        long[][] minutes = heatmap.toMinutes();
+
+        StudyHeatmapGetDTO heatmapGetDTO = new StudyHeatmapGetDTO();
+        heatmapGetDTO.setMinutes(minutes);
+        heatmapGetDTO.setTotalMinutes(Arrays.stream(minutes).flatMapToLong(Arrays::stream).sum());
+        return heatmapGetDTO;
+    }
+}
@@ -0,0 +1,61 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Study Intervals
+ * The wall-clock time covered by the sessions of one user, as disjoint
+ * intervals (epoch milliseconds) in a tree sorted by start. Adding a session
+ * merges it with every interval it overlaps or touches and returns the time
+ * that was not covered before, so overlapping or duplicate sessions are only
+ * counted once. An add is O(log n) plus the number of merged intervals.
+ */
+final class StudyIntervals {
+    private final TreeMap<Long, Long> intervals = new TreeMap<>();
+
+    /**
+     * Adds the session [start, end) and returns the newly covered milliseconds
+     */
+    long add(long start, long end) {
+        if (end <= start) {
+            return 0;
+        }
+
+        long mergedStart = start;
+        long mergedEnd = end;
+        long covered = 0;
+
+        Map.Entry<Long, Long> previous = intervals.floorEntry(start);
+        if (previous != null && previous.getValue() >= start) {
+            covered += Math.min(end, previous.getValue()) - start;
+            mergedStart = previous.getKey();
+            mergedEnd = Math.max(mergedEnd, previous.getValue());
+            intervals.remove(previous.getKey());
+        }
+
+        Map.Entry<Long, Long> next = intervals.ceilingEntry(start);
+        while (next != null && next.getKey() <= end) {
+            covered += Math.min(end, next.getValue()) - next.getKey();
+            mergedEnd = Math.max(mergedEnd, next.getValue());
+            intervals.remove(next.getKey());
+            next = intervals.ceilingEntry(start);
+        }
+
+        intervals.put(mergedStart, mergedEnd);
+        return end - start - covered;
+    }
+
+    // number of disjoint intervals
+    int size() {
+        return intervals.size();
+    }
+
+    long totalMillis() {
+        long total = 0;
+        for (Map.Entry<Long, Long> interval : intervals.entrySet()) {
+            total += interval.getValue() - interval.getKey();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,228 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.entity.DailyActivity;
+import ch.uzh.ifi.hase.soprafs24.entity.StudyStreak;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.DailyActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.StudyStreakRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.StudyStreakGetDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Study Streak Service
+ * This class maintains the STUDY_STREAKS table: the current and longest run
+ * of consecutive study days of every user. A stored activity moves the
+ * streak of its user forward in O(1) with one atomic update, only the first
+ * session of a user and a session on a day before the last active day
+ * (which recomputes the streak from the DAILY_ACTIVITIES rollup) write the
+ * whole row.
+ */
+@Service
+@Transactional
+public class StudyStreakService {
+    private final Logger log = LoggerFactory.getLogger(StudyStreakService.class);
+
+    private final StudyStreakRepository studyStreakRepository;
+    private final DailyActivityRepository dailyActivityRepository;
+    private final ActivityRepository activityRepository;
+    private final UserRepository userRepository;
+    private final ActivityArchiveService activityArchiveService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${activity.rollup.backfill-on-startup:true}")
+    private boolean backfillOnStartup = true;
+
+    public StudyStreakService(@Qualifier("studyStreakRepository") StudyStreakRepository studyStreakRepository,
+            @Qualifier("dailyActivityRepository") DailyActivityRepository dailyActivityRepository,
+            @Qualifier("activityRepository") ActivityRepository activityRepository,
+            @Qualifier("userRepository") UserRepository userRepository,
+            ActivityArchiveService activityArchiveService) {
+        this.studyStreakRepository = studyStreakRepository;
+        this.dailyActivityRepository = dailyActivityRepository;
+        this.activityRepository = activityRepository;
+        this.userRepository = userRepository;
+        this.activityArchiveService = activityArchiveService;
+    }
+
+    /**
+     * Moves the streak forward to the day, returns false if the day lies before
+     * the last active day (the streak then has to be recomputed)
+     */
+    static boolean addActiveDay(StudyStreak streak, LocalDate date) {
+        LocalDate lastActiveDate = streak.getLastActiveDate();
+        if (lastActiveDate != null && date.isBefore(lastActiveDate)) {
+            return false;
+        }
+        if (date.equals(lastActiveDate)) {
+            return true;
+        }
+
+        if (lastActiveDate != null && date.equals(lastActiveDate.plusDays(1))) {
+            streak.setCurrentStreak(streak.getCurrentStreak() + 1);
+        } else {
+            streak.setCurrentStreak(1);
+        }
+        streak.setLastActiveDate(date);
+        streak.setLongestStreak(Math.max(streak.getLongestStreak(), streak.getCurrentStreak()));
+        return true;
+    }
+
+    /**
+     * Adds the stored activities to the streaks, in the transaction that
+     * stored them (see ActivityStoredEvent)
+     */
+    @EventListener
+    public void onActivityStored(ActivityStoredEvent event) {
+        addActivities(event.getActivities());
+    }
+
+    /**
+     * Adds the day a stored activity started on to the streak of its user, the
+     * activity must already be added to the daily rollup
+     */
+    public void addActivity(Activity activity) {
+        addActivities(List.of(activity));
+    }
+
+    /**
+     * Same as addActivity for several activities, the days of every user are
+     * added in order with one atomic update each. Concurrent stores of a user
+     * never lose a day: the update reads the stored streak, and the row is
+     * only written as a whole while the user row is locked (see
+     * DailyActivityService.addActivities).
+     */
+    public void addActivities(Collection<Activity> activities) {
+        Map<Long, User> users = new HashMap<>();
+        Map<Long, SortedSet<LocalDate>> activeDaysByUser = new HashMap<>();
+        for (Activity activity : activities) {
+            users.putIfAbsent(activity.getUser().getId(), activity.getUser());
+            activeDaysByUser.computeIfAbsent(activity.getUser().getId(), k -> new TreeSet<>())
+                    .add(activity.getStartDateTime().toLocalDate());
+        }
+
+        activeDaysByUser.forEach((userId, activeDays) -> {
+            for (LocalDate activeDay : activeDays) {
+                if (studyStreakRepository.addActiveDay(userId, activeDay, activeDay.minusDays(1)) == 0) {
+                    writeStreak(users.get(userId), activeDays.tailSet(activeDay));
+                    return;
+                }
+            }
+        });
+    }
+
+    // no streak yet or a day before the last active day: the row is written as a whole while
+    // the user is locked, then detached so later reads of the transaction see the atomic updates
+    private void writeStreak(User user, SortedSet<LocalDate> activeDays) {
+        userRepository.lockById(user.getId());
+        StudyStreak streak = studyStreakRepository.findByUserId(user.getId())
+                .orElseGet(() -> newStudyStreak(user));
+
+        boolean inOrder = true;
+        for (LocalDate activeDay : activeDays) {
+            inOrder = inOrder && addActiveDay(streak, activeDay);
+        }
+        if (!inOrder) {
+            recompute(streak, dailyActivityRepository.findByUserIdOrderByDateAsc(user.getId())
+                    .stream()
+                    .map(DailyActivity::getDate)
+                    .toList());
+        }
+        studyStreakRepository.saveAndFlush(streak);
+        entityManager.detach(streak);
+    }
+
+    /*
+     * Returns the streak of the user, the current streak is 0 once a whole day
+     * without studying has passed
+     */
+    public StudyStreakGetDTO getStudyStreak(Long userId) {
+        StudyStreakGetDTO studyStreakGetDTO = new StudyStreakGetDTO();
+        studyStreakRepository.findByUserId(userId).ifPresent(streak -> {
+            LocalDate yesterday = LocalDate.now().minusDays(1);
+            boolean ongoing = streak.getLastActiveDate() != null && !streak.getLastActiveDate().isBefore(yesterday);
+
+            studyStreakGetDTO.setCurrentStreak(ongoing ? streak.getCurrentStreak() : 0);
+            studyStreakGetDTO.setLongestStreak(streak.getLongestStreak());
+            studyStreakGetDTO.setLastActiveDate(streak.getLastActiveDate());
+        });
+        return studyStreakGetDTO;
+    }
+
+    /**
+     * Backfill job: drops all streaks and recomputes them from the days with
+     * activities (distinct days read by the database) and the days of the
+     * archived sessions
+     *
+     * @return the number of streaks written
+     */
+    public int rebuild() {
+        studyStreakRepository.deleteAllInBatch();
+
+        Map<Long, SortedSet<LocalDate>> activeDaysByUser = new HashMap<>();
+        for (ActivityRepository.ActiveDay activeDay : activityRepository.findActiveDays()) {
+            activeDaysByUser.computeIfAbsent(activeDay.getUserId(), k -> new TreeSet<>())
+                    .add(activeDay.getActivityDate());
+        }
+        activityArchiveService.forEachArchivedSession(session -> activeDaysByUser
+                .computeIfAbsent(session.getUserId(), k -> new TreeSet<>())
+                .add(session.getStartDateTime().toLocalDate()));
+
+        List<StudyStreak> streaks = new ArrayList<>();
+        activeDaysByUser.forEach((userId, activeDays) -> {
+            StudyStreak streak = newStudyStreak(userRepository.getReferenceById(userId));
+            recompute(streak, activeDays);
+            streaks.add(streak);
+        });
+        studyStreakRepository.saveAll(streaks);
+        studyStreakRepository.flush();
+
+        log.info("Rebuilt {} study streaks", streaks.size());
+        return streaks.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (backfillOnStartup) {
+            rebuild();
+        }
+    }
+
+    // activeDays must be sorted
+    private void recompute(StudyStreak streak, Collection<LocalDate> activeDays) {
+        streak.setCurrentStreak(0);
+        streak.setLongestStreak(0);
+        streak.setLastActiveDate(null);
+        for (LocalDate activeDay : activeDays) {
+            addActiveDay(streak, activeDay);
+        }
+    }
+
+    private StudyStreak newStudyStreak(User user) {
+        StudyStreak streak = new StudyStreak();
+        streak.setUser(user);
+        return streak;
+    }
+}
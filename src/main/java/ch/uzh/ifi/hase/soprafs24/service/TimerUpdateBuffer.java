@@ -0,0 +1,86 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Timer Update Buffer
+ * Latest-wins buffer for outbound timer updates: an update replaces the
+ * pending update with the same key (user and group), so a client switching
+ * between WORK and BREAK several times within one tick causes one broadcast
+ * per group. The pending update keeps the time its oldest merged update was
+ * offered, so the measured latency covers everything it replaced.
+ */
+final class TimerUpdateBuffer<K, V> {
+
+    private static final class Pending<V> {
+        private final V value;
+        private final long offeredAt;
+
+        private Pending(V value, long offeredAt) {
+            this.value = value;
+            this.offeredAt = offeredAt;
+        }
+    }
+
+    private final Map<K, Pending<V>> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+    /**
+     * Stores the update, replacing the pending update with the same key
+     */
+    void offer(K key, V value, long now) {
+        offered.incrementAndGet();
+        pending.merge(key, new Pending<>(value, now), (previous, next) -> {
+            merged.incrementAndGet();
+            return new Pending<>(next.value, previous.offeredAt);
+        });
+    }
+
+    /**
+     * Removes every pending update and passes it to the consumer, updates
+     * offered while draining are sent now or on the next drain
+     *
+     * @return number of updates passed to the consumer
+     */
+    int drain(long now, BiConsumer<K, V> consumer) {
+        int count = 0;
+        for (K key : pending.keySet()) {
+            Pending<V> update = pending.remove(key);
+            if (update == null) {
+                continue;
+            }
+            consumer.accept(key, update.value);
+            maxLatencyMillis.accumulateAndGet(now - update.offeredAt, Math::max);
+            count++;
+        }
+        flushed.addAndGet(count);
+        return count;
+    }
+
+    int size() {
+        return pending.size();
+    }
+
+    long getOffered() {
+        return offered.get();
+    }
+
+    long getMerged() {
+        return merged.get();
+    }
+
+    long getFlushed() {
+        return flushed.get();
+    }
+
+    long getMaxLatencyMillis() {
+        return maxLatencyMillis.get();
+    }
+}
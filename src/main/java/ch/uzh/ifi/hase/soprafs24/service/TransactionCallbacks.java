@@ -0,0 +1,61 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Transaction Callbacks
+ * The in-memory statistics (leaderboards, activity index, ...) must not see
+ * changes that are rolled back, so they are updated once the surrounding
+ * transaction has committed.
+ */
+final class TransactionCallbacks {
+
+    private TransactionCallbacks() {
+    }
+
+    /**
+     * Runs the update after the current transaction commits, or right away
+     * when there is no transaction
+     */
+    static void afterCommit(Runnable update) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update.run();
+            }
+        });
+    }
+
+    /**
+     * Runs the update after the current transaction commits and the
+     * completion once it has committed or rolled back, both right away when
+     * there is no transaction
+     */
+    static void afterCompletion(Runnable update, Runnable completion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                update.run();
+            } finally {
+                completion.run();
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if (status == STATUS_COMMITTED) {
+                        update.run();
+                    }
+                } finally {
+                    completion.run();
+                }
+            }
+        });
+    }
+}
@@ -102,16 +102,16 @@ public class UserService {
     userRepository.flush();
 
     // send status update to all groups the user is in with websocket
-    List<Group> groupIds = membershipService.getActiveGroupsForUser(userByUsername);
-    for (Group group : groupIds) {
-      webSocketService.sendTimerUpdate(
-          userByUsername.getId().toString(),
-          userByUsername.getUsername(),
-          group.getId().toString(),
-          userByUsername.getStatus().toString(),
-          "0",
-          LocalDateTime.now().toString());
-    }
+    List<String> groupIds = membershipService.getActiveGroupsForUser(userByUsername).stream()
+        .map(group -> group.getId().toString())
+        .toList();
+    webSocketService.sendTimerUpdate(
+        userByUsername.getId().toString(),
+        userByUsername.getUsername(),
+        groupIds,
+        userByUsername.getStatus().toString(),
+        "0",
+        LocalDateTime.now().toString());
 
     return userByUsername;
   }
@@ -161,16 +161,16 @@ public class UserService {
     userRepository.flush();
 
     // send status update to all groups the user is in with websocket
-    List<Group> groupIds = membershipService.getActiveGroupsForUser(user);
-    for (Group group : groupIds) {
-      webSocketService.sendTimerUpdate(
-          user.getId().toString(),
-          user.getUsername(),
-          group.getId().toString(),
-          user.getStatus().toString(),
-          "0",
-          LocalDateTime.now().toString());
-    }
+    List<String> groupIds = membershipService.getActiveGroupsForUser(user).stream()
+        .map(group -> group.getId().toString())
+        .toList();
+    webSocketService.sendTimerUpdate(
+        user.getId().toString(),
+        user.getUsername(),
+        groupIds,
+        user.getStatus().toString(),
+        "0",
+        LocalDateTime.now().toString());
 
     return user;
   }
@@ -256,16 +256,16 @@ public class UserService {
     user = userRepository.save(user);
     userRepository.flush();
 
-    List<Group> groupIds = membershipService.getActiveGroupsForUser(user);
-    for (Group group : groupIds) {
-      webSocketService.sendTimerUpdate(
-          user.getId().toString(),
-          user.getUsername(),
-          group.getId().toString(),
-          user.getStatus().toString(),
-          user.getDuration().toString(),
-          user.getStartTime().toString());
-    }
+    List<String> groupIds = membershipService.getActiveGroupsForUser(user).stream()
+        .map(group -> group.getId().toString())
+        .toList();
+    webSocketService.sendTimerUpdate(
+        user.getId().toString(),
+        user.getUsername(),
+        groupIds,
+        user.getStatus().toString(),
+        user.getDuration().toString(),
+        user.getStartTime().toString());
 
     return user;
   }
@@ -1,29 +1,73 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
+import ch.uzh.ifi.hase.soprafs24.config.CborPayload;
+import ch.uzh.ifi.hase.soprafs24.entity.TimerUpdate;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.TimerUpdateMetricsGetDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.function.Supplier;
 
 @Service
 public class WebSocketService {
+    private final Logger log = LoggerFactory.getLogger(WebSocketService.class);
+
     private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
 
     private final Map<String, Map<String, String>> groupSessions = new ConcurrentHashMap<>();
     private final Map<String, String> userSessions = new ConcurrentHashMap<>();
-    
+
+    // latest pending timer update per user and group, sent on the next flush
+    private final TimerUpdateBuffer<TimerUpdateKey, EncodedTimerUpdate> timerUpdates = new TimerUpdateBuffer<>();
+
+    @Value("${websocket.timer.coalesce:true}")
+    private boolean coalesceTimerUpdates = true;
+
+    // also the bound on the delay a coalesced update adds
+    @Value("${websocket.timer.flush-interval-ms:100}")
+    private long timerFlushIntervalMillis = 100;
+
+    private record TimerUpdateKey(String userId, String groupId) {
+    }
+
+    // timer state of the members per group, kept up to date by sendTimerUpdate
+    private final Map<String, Map<String, Presence>> groupPresence = new ConcurrentHashMap<>();
+    // groups whose members were loaded from the database once
+    private final Set<String> seededGroups = ConcurrentHashMap.newKeySet();
+
+    private record Presence(String username, String status, String startTime, String duration) {
+    }
 
     @Autowired
-    public WebSocketService(SimpMessagingTemplate messagingTemplate) {
+    public WebSocketService(SimpMessagingTemplate messagingTemplate, ObjectMapper objectMapper) {
         this.messagingTemplate = messagingTemplate;
-
+        this.objectMapper = objectMapper;
     }
 
     public void addUserToGroup(String groupId, String sessionId, String userId) {
@@ -58,17 +102,121 @@ public class WebSocketService {
     }
     
     public void sendTimerUpdate(String userId, String username, String groupId, String status, String duration, String startTime) {
+        sendTimerUpdate(userId, username, List.of(groupId), status, duration, startTime);
+    }
+
+    /**
+     * Sends the timer state of the user to all the given groups, the event is
+     * serialized once and the frames of the groups only differ in the groupId
+     */
+    public void sendTimerUpdate(String userId, String username, Collection<String> groupIds, String status,
+            String duration, String startTime) {
+        if (groupIds.isEmpty()) {
+            return;
+        }
+        Presence presence = new Presence(username, status, startTime, duration);
+        for (String groupId : groupIds) {
+            groupPresence.computeIfAbsent(groupId, k -> new ConcurrentHashMap<>()).put(userId, presence);
+        }
+
+        EncodedTimerUpdate update;
+        try {
+            update = EncodedTimerUpdate.encode(objectMapper,
+                    new TimerUpdate(userId, username, status, duration, startTime));
+        } catch (JsonProcessingException e) {
+            log.error("Error encoding timer update of user {}: {}", userId, e.getMessage());
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (String groupId : groupIds) {
+            if (coalesceTimerUpdates) {
+                timerUpdates.offer(new TimerUpdateKey(userId, groupId), update, now);
+            } else {
+                sendTimerFrame(groupId, update);
+            }
+        }
+    }
+
+    /**
+     * Sends the pending timer updates, only the newest state per user and
+     * group is sent, the updates it replaced are counted as merged
+     */
+    @Scheduled(fixedDelayString = "${websocket.timer.flush-interval-ms:100}")
+    public void flushTimerUpdates() {
+        int sent = timerUpdates.drain(System.currentTimeMillis(), (key, update) -> sendTimerFrame(key.groupId(), update));
+        if (sent > 0) {
+            log.debug("Sent {} timer updates, {} merged so far", sent, timerUpdates.getMerged());
+        }
+    }
+
+    // sends the already encoded JSON, the message converters are skipped
+    private void sendTimerFrame(String groupId, EncodedTimerUpdate update) {
+        String destination = "/topic/group." + groupId;
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setHeader(CborPayload.HEADER, new CborPayload(() -> update.frameForGroup(groupId)));
+        accessor.setLeaveMutable(true);
+        try {
+            messagingTemplate.send(destination,
+                    MessageBuilder.createMessage(update.forGroup(groupId), accessor.getMessageHeaders()));
+        } catch (Exception e) {
+            log.error("Error sending timer update to {}: {}", destination, e.getMessage());
+        }
+    }
+
+    /**
+     * Counters of the timer update buffer since the start of the server
+     * (GET /monitoring/timer-updates)
+     */
+    public TimerUpdateMetricsGetDTO getTimerUpdateMetrics() {
+        TimerUpdateMetricsGetDTO metricsGetDTO = new TimerUpdateMetricsGetDTO();
+        metricsGetDTO.setCoalescing(coalesceTimerUpdates);
+        metricsGetDTO.setFlushIntervalMillis(timerFlushIntervalMillis);
+        metricsGetDTO.setOffered(timerUpdates.getOffered());
+        metricsGetDTO.setMerged(timerUpdates.getMerged());
+        metricsGetDTO.setSent(timerUpdates.getFlushed());
+        metricsGetDTO.setPending(timerUpdates.size());
+        metricsGetDTO.setMaxLatencyMillis(timerUpdates.getMaxLatencyMillis());
+        return metricsGetDTO;
+    }
+
+    /**
+     * Publishes the minutes a stored session added to the statistics of a user
+     * on the stats topic of the group, so dashboards can update their charts
+     * instead of fetching the statistics again
+     */
+    public void sendStatisticsDelta(String userId, String groupId, LocalDate date, long addedMinutes) {
         Map<String, Object> data = new HashMap<>();
-        data.put("type", "TIMER_UPDATE");
+        data.put("type", "STATS_DELTA");
         data.put("userId", userId);
-        data.put("username", username);
         data.put("groupId", groupId);
-        data.put("status", status);
-        data.put("duration", duration);
-        data.put("startTime", startTime);
-        
-        String destination = "/topic/group." + groupId;
-        messagingTemplate.convertAndSend(destination, data);
+        data.put("date", date.toString());
+        data.put("addedMinutes", addedMinutes);
+
+        String destination = "/topic/group." + groupId + ".stats";
+        messagingTemplate.convertAndSend(destination, data, messageHeaders(() -> data));
+    }
+
+    /**
+     * Tells the user that the study time of the day reached the daily goal,
+     * sent to every session of the user (/user/queue/goal). The sessions are
+     * found by the user id set as principal at CONNECT (see
+     * UserPrincipalInterceptor), the user does not need to have joined a group.
+     */
+    public void sendGoalReached(String userId, LocalDate date, long targetMinutes, long minutes) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("type", "GOAL_REACHED");
+        data.put("userId", userId);
+        data.put("date", date.toString());
+        data.put("targetMinutes", targetMinutes);
+        data.put("minutes", minutes);
+
+        try {
+            messagingTemplate.convertAndSendToUser(userId, "/queue/goal", data, messageHeaders(() -> data));
+        } catch (Exception e) {
+            log.error("Error sending goal reached to user {}: {}", userId, e.getMessage());
+        }
     }
 
     public void sendMessageToGroup(String groupId, Map<String, Object> message) {
@@ -78,7 +226,7 @@ public class WebSocketService {
         
         String destination = "/topic/group." + groupId;
         try {
-            messagingTemplate.convertAndSend(destination, message);
+            messagingTemplate.convertAndSend(destination, message, messageHeaders(() -> message));
             System.out.println("Successfully sent message to " + destination);
         } catch (Exception e) {
             System.err.println("Error sending message to " + destination + ": " + e.getMessage());
@@ -86,6 +234,76 @@ public class WebSocketService {
         }
     }
 
+    /**
+     * Sends the status and timer of all members of the group to the session
+     * in one frame (type PRESENCE_SNAPSHOT on /user/queue/group.presence).
+     * The members are loaded once per group, later changes come from
+     * sendTimerUpdate, a member already known is not overwritten by the
+     * (possibly older) database state.
+     */
+    public void sendPresenceSnapshot(String groupId, String sessionId, Supplier<List<User>> members) {
+        Map<String, Presence> presences = groupPresence.computeIfAbsent(groupId, k -> new ConcurrentHashMap<>());
+        if (!seededGroups.contains(groupId)) {
+            for (User member : members.get()) {
+                presences.putIfAbsent(member.getId().toString(), new Presence(member.getUsername(),
+                        member.getStatus() != null ? member.getStatus().toString() : null,
+                        member.getStartTime() != null ? member.getStartTime().toString() : null,
+                        member.getDuration() != null ? member.getDuration().toString() : "0"));
+            }
+            seededGroups.add(groupId);
+        }
+
+        List<Map<String, Object>> memberStates = new ArrayList<>(presences.size());
+        presences.forEach((userId, presence) -> {
+            Map<String, Object> memberState = new LinkedHashMap<>();
+            memberState.put("userId", userId);
+            memberState.put("username", presence.username());
+            memberState.put("status", presence.status());
+            memberState.put("startTime", presence.startTime());
+            memberState.put("duration", presence.duration());
+            memberStates.add(memberState);
+        });
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("type", "PRESENCE_SNAPSHOT");
+        snapshot.put("groupId", groupId);
+        snapshot.put("members", memberStates);
+        sendToSession(sessionId, "/queue/group.presence", snapshot);
+    }
+
+    /**
+     * Drops the presence of the group after its members changed, the next
+     * snapshot loads the members again
+     */
+    public void evictPresence(String groupId) {
+        seededGroups.remove(groupId);
+        groupPresence.remove(groupId);
+    }
+
+    /**
+     * Sends a message to a single STOMP session, the client receives it on
+     * /user{destination}
+     */
+    public void sendToSession(String sessionId, String destination, Object payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setHeader(CborPayload.HEADER, new CborPayload(() -> payload));
+        accessor.setLeaveMutable(true);
+        try {
+            messagingTemplate.convertAndSendToUser(sessionId, destination, payload, accessor.getMessageHeaders());
+        } catch (Exception e) {
+            log.error("Error sending message to session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    // headers of a message to a topic, with its object for the CBOR sessions (see CborPayload)
+    private MessageHeaders messageHeaders(Supplier<?> payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setHeader(CborPayload.HEADER, new CborPayload(payload));
+        accessor.setLeaveMutable(true);
+        return accessor.getMessageHeaders();
+    }
+
     /**
      * Gets all groups a user is a member of
      * 
@@ -0,0 +1,43 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.StatisticsGranularity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+
+/**
+ * Weekly Summary Job
+ * This class starts the weekly report (report.weekly.cron). It is not
+ * transactional: runs are serialized here, around the transaction of
+ * WeeklySummaryService.generate, so a second run only starts once the first
+ * one has committed (or rolled back) and never deletes or reads the
+ * summaries of a run that is still open.
+ */
+@Service
+public class WeeklySummaryJob {
+
+    private final WeeklySummaryService weeklySummaryService;
+
+    public WeeklySummaryJob(WeeklySummaryService weeklySummaryService) {
+        this.weeklySummaryService = weeklySummaryService;
+    }
+
+    /**
+     * Writes the summaries of the week that ended yesterday
+     */
+    @Scheduled(cron = "${report.weekly.cron:0 0 4 * * MON}")
+    public void generateOnSchedule() {
+        generate(DailyActivityService.periodStart(LocalDate.now().minusWeeks(1), StatisticsGranularity.WEEK));
+    }
+
+    /**
+     * Writes the summaries of the week starting on the given monday, waits
+     * for a run that is still in progress
+     *
+     * @return the number of summaries written
+     */
+    public synchronized int generate(LocalDate weekStart) {
+        return weeklySummaryService.generate(weekStart);
+    }
+}
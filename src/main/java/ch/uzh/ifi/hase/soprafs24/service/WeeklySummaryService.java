@@ -0,0 +1,322 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
+import ch.uzh.ifi.hase.soprafs24.constant.StatisticsGranularity;
+import ch.uzh.ifi.hase.soprafs24.entity.WeeklySummary;
+import ch.uzh.ifi.hase.soprafs24.repository.DailyActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.GroupMembershipRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.WeeklySummaryRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.WeeklyReportProgressGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.WeeklySummaryGetDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Weekly Summary Service
+ * This class writes the WEEKLY_SUMMARIES snapshot: total study time, best day
+ * and group rank of every user for one week. The users are split into chunks
+ * that are summarised in parallel on a dedicated ForkJoinPool, every chunk
+ * reads the daily rollup of its users with one query. The group ranks are
+ * computed from the totals of all users once the chunks are joined.
+ * The report is started by WeeklySummaryJob (report.weekly.cron).
+ * The parallelism (report.weekly.parallelism, 0 -> number of processors) and
+ * the chunk size (report.weekly.chunk-size) are configurable, the progress of
+ * the current or last run is available from getProgress
+ * (GET /monitoring/weekly-report).
+ */
+@Service
+public class WeeklySummaryService {
+    private final Logger log = LoggerFactory.getLogger(WeeklySummaryService.class);
+
+    private final WeeklySummaryRepository weeklySummaryRepository;
+    private final DailyActivityRepository dailyActivityRepository;
+    private final GroupMembershipRepository membershipRepository;
+    private final UserRepository userRepository;
+
+    @Value("${report.weekly.parallelism:0}")
+    private int parallelism = 0;
+
+    @Value("${report.weekly.chunk-size:500}")
+    private int chunkSize = 500;
+
+    private final Progress progress = new Progress();
+
+    public WeeklySummaryService(@Qualifier("weeklySummaryRepository") WeeklySummaryRepository weeklySummaryRepository,
+            @Qualifier("dailyActivityRepository") DailyActivityRepository dailyActivityRepository,
+            @Qualifier("groupMembershipRepository") GroupMembershipRepository membershipRepository,
+            @Qualifier("userRepository") UserRepository userRepository) {
+        this.weeklySummaryRepository = weeklySummaryRepository;
+        this.dailyActivityRepository = dailyActivityRepository;
+        this.membershipRepository = membershipRepository;
+        this.userRepository = userRepository;
+    }
+
+    // totals of one user in the week, computed by the chunk tasks
+    private static final class UserWeek {
+        private final Long userId;
+        private long totalMinutes;
+        private LocalDate bestDay;
+        private long bestDayMinutes;
+
+        private UserWeek(Long userId) {
+            this.userId = userId;
+        }
+    }
+
+    /*
+     * Progress of a run, written by the chunk tasks
+     *      processedUsers / totalUsers -> users summarised so far
+     *      completedChunks / totalChunks -> chunks read and summarised so far
+     */
+    private static final class Progress {
+        private volatile LocalDate weekStart;
+        private volatile boolean running;
+        private volatile int parallelism;
+        private volatile int totalUsers;
+        private final AtomicInteger processedUsers = new AtomicInteger();
+        private volatile int totalChunks;
+        private final AtomicInteger completedChunks = new AtomicInteger();
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+    }
+
+    /*
+     * Summarises the users of a sublist, sublists larger than the chunk size
+     * are split in two halves
+     */
+    private final class SummaryTask extends RecursiveTask<List<UserWeek>> {
+        private final List<Long> userIds;
+        private final LocalDate weekStart;
+
+        private SummaryTask(List<Long> userIds, LocalDate weekStart) {
+            this.userIds = userIds;
+            this.weekStart = weekStart;
+        }
+
+        @Override
+        protected List<UserWeek> compute() {
+            if (userIds.size() <= chunkSize) {
+                return summarise(userIds, weekStart);
+            }
+            int middle = userIds.size() / 2;
+            SummaryTask left = new SummaryTask(userIds.subList(0, middle), weekStart);
+            SummaryTask right = new SummaryTask(userIds.subList(middle, userIds.size()), weekStart);
+            left.fork();
+            List<UserWeek> userWeeks = new ArrayList<>(right.compute());
+            userWeeks.addAll(left.join());
+            return userWeeks;
+        }
+    }
+
+    /**
+     * Writes the summaries of all users for the week starting on the given
+     * monday, replacing an earlier report of the same week. Runs are started
+     * through WeeklySummaryJob, which serializes them outside this transaction.
+     *
+     * @return the number of summaries written
+     */
+    @Transactional
+    public int generate(LocalDate weekStart) {
+        List<Long> userIds = userRepository.findAllIds();
+        int effectiveParallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        startProgress(weekStart, effectiveParallelism, userIds.size());
+
+        // a failed run is reported as finished as well, not as running forever
+        try {
+            List<UserWeek> userWeeks;
+            ForkJoinPool pool = new ForkJoinPool(effectiveParallelism);
+            try {
+                userWeeks = pool.invoke(new SummaryTask(userIds, weekStart));
+            } finally {
+                pool.shutdown();
+            }
+
+            Map<Long, UserWeek> userWeeksById = new HashMap<>();
+            userWeeks.forEach(userWeek -> userWeeksById.put(userWeek.userId, userWeek));
+
+            List<WeeklySummary> summaries = new ArrayList<>();
+            Map<Long, long[]> bestRanks = rankInGroups(userWeeksById);
+            for (UserWeek userWeek : userWeeks) {
+                WeeklySummary summary = new WeeklySummary();
+                summary.setUser(userRepository.getReferenceById(userWeek.userId));
+                summary.setWeekStart(weekStart);
+                summary.setTotalMinutes(userWeek.totalMinutes);
+                summary.setBestDay(userWeek.bestDay);
+                summary.setBestDayMinutes(userWeek.bestDayMinutes);
+                long[] bestRank = bestRanks.get(userWeek.userId);
+                if (bestRank != null) {
+                    summary.setGroupId(bestRank[0]);
+                    summary.setGroupRank((int) bestRank[1]);
+                }
+                summaries.add(summary);
+            }
+
+            weeklySummaryRepository.deleteByWeekStart(weekStart);
+            weeklySummaryRepository.saveAll(summaries);
+            weeklySummaryRepository.flush();
+
+            log.info("Wrote {} weekly summaries of the week of {} in {} ms ({} chunks, parallelism {})",
+                    summaries.size(), weekStart, Duration.between(progress.startedAt, LocalDateTime.now()).toMillis(),
+                    progress.totalChunks, effectiveParallelism);
+            return summaries.size();
+        } finally {
+            progress.finishedAt = LocalDateTime.now();
+            progress.running = false;
+        }
+    }
+
+    // one rollup query per chunk, every user of the chunk gets a result
+    private List<UserWeek> summarise(List<Long> userIds, LocalDate weekStart) {
+        Map<Long, UserWeek> userWeeks = new HashMap<>();
+        userIds.forEach(userId -> userWeeks.put(userId, new UserWeek(userId)));
+
+        if (!userIds.isEmpty()) {
+            for (DailyActivityRepository.UserDay day : dailyActivityRepository.findUserDays(userIds, weekStart,
+                    weekStart.plusDays(6))) {
+                UserWeek userWeek = userWeeks.get(day.getUserId());
+                userWeek.totalMinutes += day.getDuration();
+                if (day.getDuration() > userWeek.bestDayMinutes) {
+                    userWeek.bestDay = day.getDate();
+                    userWeek.bestDayMinutes = day.getDuration();
+                }
+            }
+        }
+
+        progress.processedUsers.addAndGet(userIds.size());
+        int completedChunks = progress.completedChunks.incrementAndGet();
+        log.debug("Weekly report: {} of {} chunks, {} of {} users", completedChunks, progress.totalChunks,
+                progress.processedUsers.get(), progress.totalUsers);
+        return new ArrayList<>(userWeeks.values());
+    }
+
+    /*
+     * Best rank of every user among the active members of its groups
+     *      rank -> 1 + number of members with more minutes (ties share a rank)
+     * A lower rank wins, between equal ranks the group with the lower id
+     *
+     * @return {groupId, rank} per user id, users without a group are missing
+     */
+    private Map<Long, long[]> rankInGroups(Map<Long, UserWeek> userWeeksById) {
+        Map<Long, List<Long>> totalsByGroup = new HashMap<>();
+        Map<Long, List<Long>> membersByGroup = new HashMap<>();
+        for (GroupMembershipRepository.GroupMember member : membershipRepository
+                .findGroupMembersByStatus(MembershipStatus.ACTIVE)) {
+            UserWeek userWeek = userWeeksById.get(member.getUserId());
+            totalsByGroup.computeIfAbsent(member.getGroupId(), k -> new ArrayList<>())
+                    .add(userWeek != null ? userWeek.totalMinutes : 0);
+            membersByGroup.computeIfAbsent(member.getGroupId(), k -> new ArrayList<>()).add(member.getUserId());
+        }
+
+        Map<Long, long[]> bestRanks = new HashMap<>();
+        membersByGroup.forEach((groupId, memberIds) -> {
+            long[] totals = totalsByGroup.get(groupId).stream().mapToLong(Long::longValue).sorted().toArray();
+            for (Long memberId : memberIds) {
+                UserWeek userWeek = userWeeksById.get(memberId);
+                long minutes = userWeek != null ? userWeek.totalMinutes : 0;
+                long rank = 1 + totals.length - firstGreater(totals, minutes);
+
+                long[] bestRank = bestRanks.get(memberId);
+                if (bestRank == null || rank < bestRank[1] || (rank == bestRank[1] && groupId < bestRank[0])) {
+                    bestRanks.put(memberId, new long[] { groupId, rank });
+                }
+            }
+        });
+        return bestRanks;
+    }
+
+    // index of the first value greater than the given one in sorted values
+    private static int firstGreater(long[] sortedValues, long value) {
+        int low = 0;
+        int high = sortedValues.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedValues[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void startProgress(LocalDate weekStart, int effectiveParallelism, int totalUsers) {
+        progress.weekStart = weekStart;
+        progress.running = true;
+        progress.parallelism = effectiveParallelism;
+        progress.totalUsers = totalUsers;
+        progress.processedUsers.set(0);
+        progress.totalChunks = countChunks(totalUsers);
+        progress.completedChunks.set(0);
+        progress.startedAt = LocalDateTime.now();
+        progress.finishedAt = null;
+    }
+
+    // number of leaves of the SummaryTask tree for the given number of users
+    private int countChunks(int users) {
+        if (users <= chunkSize) {
+            return 1;
+        }
+        return countChunks(users / 2) + countChunks(users - users / 2);
+    }
+
+    /**
+     * Progress of the running report, or of the last one once it has finished
+     */
+    public WeeklyReportProgressGetDTO getProgress() {
+        WeeklyReportProgressGetDTO progressGetDTO = new WeeklyReportProgressGetDTO();
+        progressGetDTO.setWeekStart(progress.weekStart);
+        progressGetDTO.setRunning(progress.running);
+        progressGetDTO.setParallelism(progress.parallelism);
+        progressGetDTO.setTotalUsers(progress.totalUsers);
+        progressGetDTO.setProcessedUsers(progress.processedUsers.get());
+        progressGetDTO.setTotalChunks(progress.totalChunks);
+        progressGetDTO.setCompletedChunks(progress.completedChunks.get());
+        progressGetDTO.setStartedAt(progress.startedAt);
+        progressGetDTO.setFinishedAt(progress.finishedAt);
+        if (progress.startedAt != null) {
+            LocalDateTime end = progress.finishedAt != null ? progress.finishedAt : LocalDateTime.now();
+            progressGetDTO.setDurationMillis(Duration.between(progress.startedAt, end).toMillis());
+        }
+        return progressGetDTO;
+    }
+
+    /*
+     * Returns the summary of the given week, or the latest one
+     * (weekStart = null), empty if no report was written yet
+     */
+    @Transactional(readOnly = true)
+    public WeeklySummaryGetDTO getWeeklySummary(Long userId, LocalDate weekStart) {
+        Optional<WeeklySummary> summary = weekStart != null
+                ? weeklySummaryRepository.findByUserIdAndWeekStart(userId,
+                        DailyActivityService.periodStart(weekStart, StatisticsGranularity.WEEK))
+                : weeklySummaryRepository.findFirstByUserIdOrderByWeekStartDesc(userId);
+
+        WeeklySummaryGetDTO summaryGetDTO = new WeeklySummaryGetDTO();
+        summary.ifPresent(weeklySummary -> {
+            summaryGetDTO.setWeekStart(weeklySummary.getWeekStart());
+            summaryGetDTO.setTotalMinutes(weeklySummary.getTotalMinutes());
+            summaryGetDTO.setBestDay(weeklySummary.getBestDay());
+            summaryGetDTO.setBestDayMinutes(weeklySummary.getBestDayMinutes());
+            summaryGetDTO.setGroupId(weeklySummary.getGroupId());
+            summaryGetDTO.setGroupRank(weeklySummary.getGroupRank());
+        });
+        return summaryGetDTO;
+    }
+}
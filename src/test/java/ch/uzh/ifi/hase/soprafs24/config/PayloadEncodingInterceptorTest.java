@@ -0,0 +1,146 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PayloadEncodingInterceptorTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private PayloadEncodingInterceptor interceptor;
+
+    @BeforeEach
+    void setup() {
+        interceptor = new PayloadEncodingInterceptor();
+    }
+
+    @Test
+    void preSend_cborSession_messageConvertedAndSmaller() throws Exception {
+        // given
+        interceptor.preSend(connect("s1", "cbor", true), null);
+        Map<String, Object> syncMessage = syncMessage();
+        byte[] json = objectMapper.writeValueAsBytes(syncMessage);
+
+        // when
+        Message<?> sent = interceptor.preSend(message("s1", json, new CborPayload(() -> syncMessage)), null);
+
+        // then
+        byte[] cbor = (byte[]) sent.getPayload();
+        assertTrue(cbor.length < json.length);
+        assertEquals(objectMapper.readTree(json), new CBORMapper().readTree(cbor));
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(sent);
+        assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM, accessor.getContentType());
+        assertEquals("cbor", accessor.getFirstNativeHeader(PayloadEncodingInterceptor.ENCODING_HEADER));
+        assertNull(sent.getHeaders().get(CborPayload.HEADER));
+    }
+
+    @Test
+    void preSend_broadcastToCborSessions_encodedOnce() throws Exception {
+        // given: the broker copies the header of a broadcast to the message of every subscriber
+        interceptor.preSend(connect("s1", "cbor", true), null);
+        interceptor.preSend(connect("s2", "cbor", true), null);
+        AtomicInteger encoded = new AtomicInteger();
+        CborPayload cborPayload = new CborPayload(() -> {
+            encoded.incrementAndGet();
+            return syncMessage();
+        });
+        byte[] json = objectMapper.writeValueAsBytes(syncMessage());
+
+        // when
+        Message<?> first = interceptor.preSend(message("s1", json, cborPayload), null);
+        Message<?> second = interceptor.preSend(message("s2", json, cborPayload), null);
+
+        // then
+        assertEquals(1, encoded.get());
+        assertSame(first.getPayload(), second.getPayload());
+    }
+
+    @Test
+    void preSend_cborSessionWithoutObject_staysJson() throws Exception {
+        interceptor.preSend(connect("s1", "cbor", true), null);
+        byte[] json = objectMapper.writeValueAsBytes(syncMessage());
+
+        Message<?> sent = interceptor.preSend(message("s1", json, null), null);
+
+        assertSame(json, sent.getPayload());
+    }
+
+    @Test
+    void preSend_sockJsSession_staysJson() throws Exception {
+        interceptor.preSend(connect("s1", "cbor", false), null);
+        byte[] json = objectMapper.writeValueAsBytes(syncMessage());
+
+        Message<?> sent = interceptor.preSend(message("s1", json, new CborPayload(this::syncMessage)), null);
+
+        assertFalse(interceptor.isCborSession("s1"));
+        assertSame(json, sent.getPayload());
+    }
+
+    @Test
+    void preSend_disconnect_sessionRemoved() {
+        interceptor.preSend(connect("s1", "cbor", true), null);
+        assertTrue(interceptor.isCborSession("s1"));
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT);
+        accessor.setSessionId("s1");
+        interceptor.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+
+        assertFalse(interceptor.isCborSession("s1"));
+    }
+
+    private Message<byte[]> connect(String sessionId, String encoding, boolean nativeSession) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        accessor.setNativeHeader(PayloadEncodingInterceptor.ENCODING_HEADER, encoding);
+        Map<String, Object> attributes = new HashMap<>();
+        if (nativeSession) {
+            attributes.put(PayloadEncodingInterceptor.NATIVE_SESSION_ATTRIBUTE, Boolean.TRUE);
+        }
+        accessor.setSessionAttributes(attributes);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private Message<byte[]> message(String sessionId, byte[] payload, CborPayload cborPayload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination("/topic/group.10");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (cborPayload != null) {
+            accessor.setHeader(CborPayload.HEADER, cborPayload);
+        }
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    // SYNC message as sent by WebSocketController.handleGroupSync
+    private Map<String, Object> syncMessage() {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "SYNC");
+        message.put("senderId", "1");
+        message.put("senderName", "alice");
+        message.put("groupId", "10");
+        message.put("startTime", "2024-03-10T09:00:00.000Z");
+        message.put("duration", 1500000);
+        message.put("secondDuration", 300000);
+        message.put("originalDuration", 1500000);
+        message.put("status", "WORK");
+        message.put("timestamp", 1710061200000L);
+        return message;
+    }
+}
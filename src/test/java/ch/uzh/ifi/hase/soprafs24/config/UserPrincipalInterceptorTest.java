@@ -0,0 +1,71 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.security.Principal;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+class UserPrincipalInterceptorTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private UserPrincipalInterceptor interceptor;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        interceptor = new UserPrincipalInterceptor(userRepository);
+
+        User user = new User();
+        user.setId(1L);
+        when(userRepository.findByToken("token-1")).thenReturn(user);
+    }
+
+    @Test
+    void preSend_connectWithToken_principalIsUserId() {
+        Message<?> sent = interceptor.preSend(frame(StompCommand.CONNECT, "token-1"), null);
+
+        Principal principal = SimpMessageHeaderAccessor.getUser(sent.getHeaders());
+        assertNotNull(principal);
+        assertEquals("1", principal.getName());
+    }
+
+    @Test
+    void preSend_unknownToken_anonymous() {
+        Message<?> sent = interceptor.preSend(frame(StompCommand.CONNECT, "unknown"), null);
+
+        assertNull(SimpMessageHeaderAccessor.getUser(sent.getHeaders()));
+    }
+
+    @Test
+    void preSend_otherFrames_tokenNotLookedUp() {
+        Message<?> sent = interceptor.preSend(frame(StompCommand.SEND, "token-1"), null);
+
+        assertNull(SimpMessageHeaderAccessor.getUser(sent.getHeaders()));
+        Mockito.verify(userRepository, Mockito.never()).findByToken(any());
+    }
+
+    // like a decoded frame, the headers stay mutable for the interceptors
+    private Message<byte[]> frame(StompCommand command, String token) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId("s1");
+        accessor.setNativeHeader(UserPrincipalInterceptor.AUTHORIZATION_HEADER, token);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
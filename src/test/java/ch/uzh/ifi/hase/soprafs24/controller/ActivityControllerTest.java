@@ -1,12 +1,26 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
+import ch.uzh.ifi.hase.soprafs24.constant.ExportFormat;
+import ch.uzh.ifi.hase.soprafs24.constant.LeaderboardWindow;
+import ch.uzh.ifi.hase.soprafs24.constant.StatisticsGranularity;
 import ch.uzh.ifi.hase.soprafs24.entity.Activity;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityAggregateDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityBatchResultGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.LeaderboardEntryGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.GroupActivityAggregateDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.SessionStatisticsGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.StudyHeatmapGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.DailyGoalGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.DailyGoalPutDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.StudyStreakGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.WeeklySummaryGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityPageGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserActivitiesGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserAggregatedActivitiesGetDTO;
+import ch.uzh.ifi.hase.soprafs24.service.ActivityExportService;
 import ch.uzh.ifi.hase.soprafs24.service.ActivityService;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -21,19 +35,24 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import static org.hamcrest.Matchers.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -49,6 +68,9 @@ public class ActivityControllerTest {
     @MockBean
     private UserService userService;
 
+    @MockBean
+    private ActivityExportService activityExportService;
+
     private ObjectMapper mapper;
 
     @BeforeEach
@@ -87,6 +109,41 @@ public class ActivityControllerTest {
                 .andExpect(jsonPath("$.id", is(1)));
     }
 
+    @Test
+    public void createActivities_validInput_resultsReturned() throws Exception {
+        // given
+        ActivityPostDTO first = new ActivityPostDTO();
+        first.setStartDateTime(LocalDateTime.now());
+        first.setEndDateTime(LocalDateTime.now().plusHours(1));
+        ActivityPostDTO second = new ActivityPostDTO();
+        second.setStartDateTime(LocalDateTime.now());
+
+        ActivityBatchResultGetDTO created = new ActivityBatchResultGetDTO();
+        created.setIndex(0);
+        created.setStatus(201);
+        created.setId(1L);
+        ActivityBatchResultGetDTO rejected = new ActivityBatchResultGetDTO();
+        rejected.setIndex(1);
+        rejected.setStatus(400);
+        rejected.setMessage("startDateTime and endDateTime are required");
+
+        given(activityService.createActivities(any(), eq(1L), eq("test-token")))
+                .willReturn(Arrays.asList(created, rejected));
+
+        // when/then
+        MockHttpServletRequestBuilder postRequest = post("/users/1/statistics/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(Arrays.asList(first, second)))
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(postRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].status", is(201)))
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[1].status", is(400)));
+    }
+
     @Test
     public void createActivity_invalidToken_throwsException() throws Exception {
         // given
@@ -133,6 +190,41 @@ public class ActivityControllerTest {
                 .andExpect(jsonPath("$[0].id", is(1)));
     }
 
+    @Test
+    public void getActivitiesByUserId_withLimit_pageReturned() throws Exception {
+        // given
+        ActivityGetDTO activityGetDTO = new ActivityGetDTO();
+        activityGetDTO.setId(1L);
+
+        ActivityPageGetDTO page = new ActivityPageGetDTO();
+        page.setActivities(Collections.singletonList(activityGetDTO));
+        page.setNextCursor("next");
+        given(activityService.getActivityPage(1L, "test-token", 1, null)).willReturn(page);
+
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/users/1/statistics")
+                .param("limit", "1")
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.activities", hasSize(1)))
+                .andExpect(jsonPath("$.activities[0].id", is(1)))
+                .andExpect(jsonPath("$.nextCursor", is("next")));
+    }
+
+    @Test
+    public void getActivitiesByUserId_limitWithAggregate_badRequest() throws Exception {
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/users/1/statistics")
+                .param("limit", "1")
+                .param("aggregate", "true")
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void getActivitiesByUserId_withAggregation_aggregatedActivitiesReturned() throws Exception {
         // given
@@ -141,7 +233,7 @@ public class ActivityControllerTest {
         aggregateDTO.setDuration(120L); // 2 hours
 
         List<ActivityAggregateDTO> aggregatedActivities = Collections.singletonList(aggregateDTO);
-        given(activityService.getAggregatedActivities(eq(1L), eq("test-token"), any(), any()))
+        given(activityService.getAggregatedActivities(eq(1L), eq("test-token"), any(), any(), eq(StatisticsGranularity.DAY)))
                 .willReturn(aggregatedActivities);
 
         // when/then
@@ -155,6 +247,40 @@ public class ActivityControllerTest {
                 .andExpect(jsonPath("$[0].duration", is(120)));
     }
 
+    @Test
+    public void getActivitiesByUserId_withGranularity_periodTotalsReturned() throws Exception {
+        // given
+        ActivityAggregateDTO aggregateDTO = new ActivityAggregateDTO();
+        aggregateDTO.setDate(LocalDate.of(2024, 3, 4));
+        aggregateDTO.setDuration(600L);
+
+        given(activityService.getAggregatedActivities(eq(1L), eq("test-token"), any(), any(),
+                eq(StatisticsGranularity.WEEK)))
+                .willReturn(Collections.singletonList(aggregateDTO));
+
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/users/1/statistics")
+                .param("granularity", "Week")
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].date", is("2024-03-04")))
+                .andExpect(jsonPath("$[0].duration", is(600)));
+    }
+
+    @Test
+    public void getActivitiesByUserId_invalidGranularity_badRequest() throws Exception {
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/users/1/statistics")
+                .param("granularity", "hour")
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void getActivitiesByGroupId_validInput_activitiesReturned() throws Exception {
         // given
@@ -201,7 +327,8 @@ public class ActivityControllerTest {
         userAggregated.setAggregatedActivities(aggregatedActivities);
 
         List<UserAggregatedActivitiesGetDTO> groupAggregated = Collections.singletonList(userAggregated);
-        given(activityService.getGroupUsersAggregatedActivities(eq(1L), eq("test-token"), eq(1L), any(), any()))
+        given(activityService.getGroupUsersAggregatedActivities(eq(1L), eq("test-token"), eq(1L), any(), any(),
+                eq(StatisticsGranularity.DAY)))
                 .willReturn(groupAggregated);
 
         // when/then
@@ -216,6 +343,209 @@ public class ActivityControllerTest {
                 .andExpect(jsonPath("$[0].username", is("testUser")));
     }
 
+    @Test
+    public void getActivitiesByGroupId_groupAggregation_singleSeriesReturned() throws Exception {
+        // given
+        User user = new User();
+        user.setId(1L);
+        user.setToken("test-token");
+
+        given(userService.findByToken("test-token")).willReturn(user);
+
+        GroupActivityAggregateDTO groupAggregate = new GroupActivityAggregateDTO();
+        groupAggregate.setDate(LocalDate.of(2024, 3, 4));
+        groupAggregate.setTotalMinutes(540L);
+        groupAggregate.setActiveMembers(6L);
+        given(activityService.getGroupAggregatedActivities(eq(1L), eq("test-token"), eq(1L), any(), any(),
+                eq(StatisticsGranularity.WEEK)))
+                .willReturn(Collections.singletonList(groupAggregate));
+
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/groups/1/statistics")
+                .param("aggregate", "group")
+                .param("granularity", "week")
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].date", is("2024-03-04")))
+                .andExpect(jsonPath("$[0].totalMinutes", is(540)))
+                .andExpect(jsonPath("$[0].activeMembers", is(6)));
+    }
+
+    @Test
+    public void getActivitiesByGroupId_invalidAggregate_badRequest() throws Exception {
+        // given
+        User user = new User();
+        user.setId(1L);
+        user.setToken("test-token");
+
+        given(userService.findByToken("test-token")).willReturn(user);
+
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/groups/1/statistics")
+                .param("aggregate", "members")
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getSessionStatistics_validInput_percentilesReturned() throws Exception {
+        // given
+        SessionStatisticsGetDTO statistics = new SessionStatisticsGetDTO();
+        statistics.setSessionCount(12);
+        statistics.setMedianSeconds(1500);
+        statistics.setP90Seconds(3000);
+        statistics.setP99Seconds(5400);
+        given(activityService.getSessionStatistics(1L, "test-token")).willReturn(statistics);
+
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/users/1/statistics/sessions")
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sessionCount", is(12)))
+                .andExpect(jsonPath("$.medianSeconds", is(1500)))
+                .andExpect(jsonPath("$.p90Seconds", is(3000)));
+    }
+
+    @Test
+    public void getStudyHeatmap_validInput_heatmapReturned() throws Exception {
+        // given
+        long[][] minutes = new long[7][24];
+        minutes[0][9] = 45;
+        StudyHeatmapGetDTO heatmap = new StudyHeatmapGetDTO();
+        heatmap.setMinutes(minutes);
+        heatmap.setTotalMinutes(45);
+        given(activityService.getStudyHeatmap(1L, "test-token")).willReturn(heatmap);
+
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/users/1/statistics/heatmap")
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.minutes", hasSize(7)))
+                .andExpect(jsonPath("$.minutes[0]", hasSize(24)))
+                .andExpect(jsonPath("$.minutes[0][9]", is(45)))
+                .andExpect(jsonPath("$.totalMinutes", is(45)));
+    }
+
+    @Test
+    public void getStudyStreak_validInput_streakReturned() throws Exception {
+        // given
+        StudyStreakGetDTO streak = new StudyStreakGetDTO();
+        streak.setCurrentStreak(3);
+        streak.setLongestStreak(7);
+        streak.setLastActiveDate(LocalDate.of(2024, 3, 15));
+        given(activityService.getStudyStreak(1L, "test-token")).willReturn(streak);
+
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/users/1/statistics/streak")
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.currentStreak", is(3)))
+                .andExpect(jsonPath("$.longestStreak", is(7)))
+                .andExpect(jsonPath("$.lastActiveDate", is("2024-03-15")));
+    }
+
+    @Test
+    public void setDailyGoal_validInput_goalReturned() throws Exception {
+        // given
+        DailyGoalPutDTO dailyGoalPutDTO = new DailyGoalPutDTO();
+        dailyGoalPutDTO.setTargetMinutes(120);
+
+        DailyGoalGetDTO goal = new DailyGoalGetDTO();
+        goal.setTargetMinutes(120);
+        goal.setDate(LocalDate.of(2024, 3, 15));
+        goal.setMinutes(45);
+        given(activityService.setDailyGoal(1L, "test-token", 120)).willReturn(goal);
+
+        // when/then
+        MockHttpServletRequestBuilder putRequest = put("/users/1/goal")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(dailyGoalPutDTO))
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(putRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.targetMinutes", is(120)))
+                .andExpect(jsonPath("$.minutes", is(45)))
+                .andExpect(jsonPath("$.reached", is(false)));
+    }
+
+    @Test
+    public void getWeeklySummary_validInput_summaryReturned() throws Exception {
+        // given
+        WeeklySummaryGetDTO summary = new WeeklySummaryGetDTO();
+        summary.setWeekStart(LocalDate.of(2024, 3, 11));
+        summary.setTotalMinutes(420);
+        summary.setBestDay(LocalDate.of(2024, 3, 13));
+        summary.setBestDayMinutes(180);
+        summary.setGroupId(2L);
+        summary.setGroupRank(1);
+        given(activityService.getWeeklySummary(1L, "test-token", LocalDate.of(2024, 3, 11))).willReturn(summary);
+
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/users/1/statistics/weekly-summary")
+                .param("weekStart", "2024-03-11")
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalMinutes", is(420)))
+                .andExpect(jsonPath("$.bestDay", is("2024-03-13")))
+                .andExpect(jsonPath("$.groupRank", is(1)));
+    }
+
+    @Test
+    public void getGroupLeaderboard_validInput_entriesReturned() throws Exception {
+        // given
+        User user = new User();
+        user.setId(1L);
+        user.setToken("test-token");
+
+        given(userService.findByToken("test-token")).willReturn(user);
+
+        LeaderboardEntryGetDTO entry = new LeaderboardEntryGetDTO();
+        entry.setRank(1);
+        entry.setUserId(2L);
+        entry.setUsername("topUser");
+        entry.setDuration(300L);
+        given(activityService.getGroupLeaderboard(1L, "test-token", 1L, LeaderboardWindow.MONTH, 5))
+                .willReturn(Collections.singletonList(entry));
+
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/groups/1/leaderboard")
+                .param("window", "month")
+                .param("limit", "5")
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].rank", is(1)))
+                .andExpect(jsonPath("$[0].username", is("topUser")))
+                .andExpect(jsonPath("$[0].duration", is(300)));
+    }
+
+    @Test
+    public void getGroupLeaderboard_invalidWindow_badRequest() throws Exception {
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/groups/1/leaderboard")
+                .param("window", "year")
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void getActivitiesByGroupId_invalidToken_throwsException() throws Exception {
         // given
@@ -230,6 +560,41 @@ public class ActivityControllerTest {
                 .andExpect(status().isUnauthorized());
     }
 
+    @Test
+    public void exportActivities_csv_streamsActivities() throws Exception {
+        // given
+        given(activityExportService.validateExport(1L, "test-token", "csv")).willReturn(ExportFormat.CSV);
+        willAnswer(invocation -> {
+            OutputStream outputStream = invocation.getArgument(2);
+            outputStream.write("id,userId,startDateTime,endDateTime\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).given(activityExportService).writeActivities(eq(1L), eq(ExportFormat.CSV), any());
+
+        // when/then
+        MvcResult result = mockMvc.perform(get("/users/1/statistics/export")
+                .param("format", "csv")
+                .header("Authorization", "test-token"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", startsWith("text/csv")))
+                .andExpect(content().string("id,userId,startDateTime,endDateTime\n"));
+    }
+
+    @Test
+    public void exportActivities_invalidToken_throwsException() throws Exception {
+        // given
+        given(activityExportService.validateExport(1L, "invalid-token", "ndjson"))
+                .willThrow(new ResponseStatusException(HttpStatus.UNAUTHORIZED));
+
+        // when/then
+        mockMvc.perform(get("/users/1/statistics/export")
+                .header("Authorization", "invalid-token"))
+                .andExpect(status().isUnauthorized());
+    }
+
     /**
      * Helper Method to convert activityPostDTO into a JSON string such that the input
      * can be processed Input will look like this: {"name": "Test User", "username":
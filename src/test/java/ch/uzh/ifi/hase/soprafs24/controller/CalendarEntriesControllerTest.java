@@ -1,7 +1,10 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
 import ch.uzh.ifi.hase.soprafs24.entity.CalendarEntries;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.AttendeeGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.CalendarAttendanceGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.CalendarEntriesPostDTO;
+import ch.uzh.ifi.hase.soprafs24.service.CalendarAttendanceService;
 import ch.uzh.ifi.hase.soprafs24.service.CalendarEntryService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -17,6 +20,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
@@ -37,6 +41,9 @@ class CalendarEntriesControllerTest {
     @MockBean
     private CalendarEntryService calendarEntryService;
 
+    @MockBean
+    private CalendarAttendanceService calendarAttendanceService;
+
     private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
 
     @Test
@@ -155,6 +162,41 @@ class CalendarEntriesControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void getCalendarAttendance_validInput_attendanceReturned() throws Exception {
+        // given
+        AttendeeGetDTO attendee = new AttendeeGetDTO();
+        attendee.setUserId(2L);
+        attendee.setUsername("alice");
+        attendee.setOverlapMinutes(45);
+
+        CalendarAttendanceGetDTO attendance = new CalendarAttendanceGetDTO();
+        attendance.setEntryId(1L);
+        attendance.setTitle("Event 1");
+        attendance.setPlannedMinutes(60);
+        attendance.setAttendedMembers(1);
+        attendance.setActiveMembers(3);
+        attendance.setAttendees(List.of(attendee));
+
+        given(calendarAttendanceService.getAttendance(1L, "valid-token", LocalDate.of(2024, 3, 1),
+                LocalDate.of(2024, 3, 31))).willReturn(List.of(attendance));
+
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/groups/{groupId}/calendar-entries/attendance", 1L)
+                .param("startDate", "2024-03-01")
+                .param("endDate", "2024-03-31")
+                .header("Authorization", "valid-token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].entryId", is(1)))
+                .andExpect(jsonPath("$[0].attendedMembers", is(1)))
+                .andExpect(jsonPath("$[0].activeMembers", is(3)))
+                .andExpect(jsonPath("$[0].attendees[0].username", is("alice")))
+                .andExpect(jsonPath("$[0].attendees[0].overlapMinutes", is(45)));
+    }
+
     private String asJsonString(final Object object) {
         try {
             return objectMapper.writeValueAsString(object);
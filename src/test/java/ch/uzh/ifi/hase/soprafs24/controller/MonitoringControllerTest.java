@@ -0,0 +1,99 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.rest.dto.TimerUpdateMetricsGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.WeeklyReportProgressGetDTO;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import ch.uzh.ifi.hase.soprafs24.service.WebSocketService;
+import ch.uzh.ifi.hase.soprafs24.service.WeeklySummaryService;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(MonitoringController.class)
+public class MonitoringControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private UserService userService;
+
+    @MockBean
+    private WeeklySummaryService weeklySummaryService;
+
+    @MockBean
+    private WebSocketService webSocketService;
+
+    @Test
+    public void getWeeklyReportProgress_validToken_progressReturned() throws Exception {
+        // given
+        WeeklyReportProgressGetDTO progress = new WeeklyReportProgressGetDTO();
+        progress.setWeekStart(LocalDate.of(2024, 3, 11));
+        progress.setRunning(true);
+        progress.setTotalUsers(1000);
+        progress.setProcessedUsers(500);
+        given(weeklySummaryService.getProgress()).willReturn(progress);
+
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/monitoring/weekly-report")
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.running", is(true)))
+                .andExpect(jsonPath("$.totalUsers", is(1000)))
+                .andExpect(jsonPath("$.processedUsers", is(500)));
+        Mockito.verify(userService).validateToken("test-token");
+    }
+
+    @Test
+    public void getWeeklyReportProgress_invalidToken_unauthorized() throws Exception {
+        // given
+        willThrow(new ResponseStatusException(HttpStatus.UNAUTHORIZED)).given(userService)
+                .validateToken("invalid-token");
+
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/monitoring/weekly-report")
+                .header("Authorization", "invalid-token");
+
+        mockMvc.perform(getRequest).andExpect(status().isUnauthorized());
+        Mockito.verifyNoInteractions(weeklySummaryService);
+    }
+
+    @Test
+    public void getTimerUpdateMetrics_validToken_countersReturned() throws Exception {
+        // given
+        TimerUpdateMetricsGetDTO metrics = new TimerUpdateMetricsGetDTO();
+        metrics.setCoalescing(true);
+        metrics.setOffered(12);
+        metrics.setMerged(4);
+        metrics.setSent(8);
+        given(webSocketService.getTimerUpdateMetrics()).willReturn(metrics);
+
+        // when/then
+        MockHttpServletRequestBuilder getRequest = get("/monitoring/timer-updates")
+                .header("Authorization", "test-token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.coalescing", is(true)))
+                .andExpect(jsonPath("$.offered", is(12)))
+                .andExpect(jsonPath("$.merged", is(4)))
+                .andExpect(jsonPath("$.sent", is(8)));
+    }
+}
@@ -0,0 +1,105 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class ActivityRepositoryIntegrationTest {
+
+  @Autowired
+  private TestEntityManager entityManager;
+
+  @Autowired
+  private ActivityRepository activityRepository;
+
+  @Test
+  void findActiveDays_oneRowPerUserAndDay() {
+    // given
+    User user = new User();
+    user.setUsername("testUser");
+    user.setPassword("password");
+    user.setToken("testToken");
+    user.setStatus(UserStatus.ONLINE);
+    entityManager.persist(user);
+
+    LocalDate day = LocalDate.of(2024, 3, 1);
+    // three sessions on the first day, one on the next day
+    persistActivity(user, day.atTime(9, 0), day.atTime(10, 0));
+    persistActivity(user, day.atTime(11, 0), day.atTime(11, 1, 30));
+    persistActivity(user, day.atTime(12, 0), day.atTime(12, 1, 29));
+    persistActivity(user, day.plusDays(1).atTime(9, 0), day.plusDays(1).atTime(9, 30));
+    entityManager.flush();
+
+    // when
+    List<ActivityRepository.ActiveDay> found = activityRepository.findActiveDays().stream()
+        .sorted(Comparator.comparing(ActivityRepository.ActiveDay::getActivityDate))
+        .toList();
+
+    // then
+    assertEquals(2, found.size());
+    assertEquals(user.getId(), found.get(0).getUserId());
+    assertEquals(day, found.get(0).getActivityDate());
+    assertEquals(day.plusDays(1), found.get(1).getActivityDate());
+  }
+
+  @Test
+  void sumDurationsByUserAndDay_roundsEverySession() {
+    // given
+    User user = new User();
+    user.setUsername("testUser");
+    user.setPassword("password");
+    user.setToken("testToken");
+    user.setStatus(UserStatus.ONLINE);
+    entityManager.persist(user);
+
+    LocalDate day = LocalDate.of(2024, 3, 1);
+    // 60 minutes
+    persistActivity(user, day.atTime(9, 0), day.atTime(10, 0));
+    // overlaps the first session, only the last 40 seconds count -> rounded up to 1 minute
+    persistActivity(user, day.atTime(9, 30), day.atTime(10, 0, 40));
+    // 1 minute 30 seconds -> rounded up to 2 minutes
+    persistActivity(user, day.atTime(11, 0), day.atTime(11, 1, 30));
+    // 1 minute 29 seconds -> rounded down to 1 minute
+    persistActivity(user, day.atTime(12, 0), day.atTime(12, 1, 29));
+    // covered by the session before it -> 0 minutes
+    persistActivity(user, day.atTime(12, 0, 10), day.atTime(12, 1));
+    // next day, 30 minutes
+    persistActivity(user, day.plusDays(1).atTime(9, 0), day.plusDays(1).atTime(9, 30));
+    entityManager.flush();
+
+    // when
+    List<ActivityRepository.DailyDuration> found = activityRepository.sumDurationsByUserAndDay().stream()
+        .sorted(Comparator.comparing(ActivityRepository.DailyDuration::getActivityDate))
+        .toList();
+
+    // then
+    assertEquals(2, found.size());
+    assertEquals(user.getId(), found.get(0).getUserId());
+    assertEquals(day, found.get(0).getActivityDate());
+    assertEquals(3600 + 40 + 90 + 89, found.get(0).getTotalSeconds().longValue());
+    assertEquals(64, found.get(0).getDuration().longValue());
+    assertEquals(day.plusDays(1), found.get(1).getActivityDate());
+    assertEquals(1800, found.get(1).getTotalSeconds().longValue());
+    assertEquals(30, found.get(1).getDuration().longValue());
+  }
+
+  private void persistActivity(User user, LocalDateTime start, LocalDateTime end) {
+    Activity activity = new Activity();
+    activity.setUser(user);
+    activity.setStartDateTime(start);
+    activity.setEndDateTime(end);
+    entityManager.persist(activity);
+  }
+}
@@ -0,0 +1,60 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.DailyGoal;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class DailyGoalRepositoryIntegrationTest {
+
+  @Autowired
+  private TestEntityManager entityManager;
+
+  @Autowired
+  private DailyGoalRepository dailyGoalRepository;
+
+  private static final LocalDate DAY = LocalDate.of(2024, 3, 10);
+
+  @Test
+  void progressUpdates_addToStoredMinutes() {
+    // given: 100 of 120 minutes on DAY
+    User user = new User();
+    user.setUsername("testUser");
+    user.setPassword("password");
+    user.setToken("testToken");
+    user.setStatus(UserStatus.ONLINE);
+    entityManager.persist(user);
+
+    DailyGoal goal = new DailyGoal();
+    goal.setUser(user);
+    goal.setTargetMinutes(120);
+    goal.setProgressDate(DAY);
+    goal.setProgressMinutes(100);
+    entityManager.persist(goal);
+    entityManager.flush();
+
+    // when: two sessions add their minutes, an earlier day is ignored
+    assertEquals(0, dailyGoalRepository.startProgress(user.getId(), DAY));
+    assertEquals(1, dailyGoalRepository.addProgress(user.getId(), DAY, 15));
+    assertEquals(1, dailyGoalRepository.addProgress(user.getId(), DAY, 10));
+    assertEquals(0, dailyGoalRepository.addProgress(user.getId(), DAY.minusDays(1), 30));
+
+    // then
+    DailyGoalRepository.GoalProgress progress = dailyGoalRepository.findProgressByUserId(user.getId()).orElseThrow();
+    assertEquals(125, progress.getProgressMinutes());
+    assertEquals(1, dailyGoalRepository.markReached(user.getId(), DAY));
+    assertEquals(0, dailyGoalRepository.markReached(user.getId(), DAY));
+
+    // a later day starts from 0
+    assertEquals(1, dailyGoalRepository.startProgress(user.getId(), DAY.plusDays(1)));
+    assertEquals(0, dailyGoalRepository.findProgressByUserId(user.getId()).orElseThrow().getProgressMinutes());
+  }
+}
@@ -0,0 +1,91 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.StudyStreak;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class StudyStreakRepositoryIntegrationTest {
+
+  @Autowired
+  private TestEntityManager entityManager;
+
+  @Autowired
+  private StudyStreakRepository studyStreakRepository;
+
+  private static final LocalDate DAY = LocalDate.of(2024, 3, 10);
+
+  private User user;
+
+  @BeforeEach
+  void setup() {
+    // three days in a row up to DAY, longest streak four days
+    user = new User();
+    user.setUsername("testUser");
+    user.setPassword("password");
+    user.setToken("testToken");
+    user.setStatus(UserStatus.ONLINE);
+    entityManager.persist(user);
+
+    StudyStreak streak = new StudyStreak();
+    streak.setUser(user);
+    streak.setCurrentStreak(3);
+    streak.setLongestStreak(4);
+    streak.setLastActiveDate(DAY);
+    entityManager.persist(streak);
+    entityManager.flush();
+    entityManager.clear();
+  }
+
+  @Test
+  void addActiveDay_sameAndNextDays_extendStreak() {
+    assertEquals(1, addActiveDay(DAY));
+    assertStreak(3, 4, DAY);
+
+    assertEquals(1, addActiveDay(DAY.plusDays(1)));
+    assertStreak(4, 4, DAY.plusDays(1));
+
+    // the current streak passes the longest one
+    assertEquals(1, addActiveDay(DAY.plusDays(2)));
+    assertStreak(5, 5, DAY.plusDays(2));
+  }
+
+  @Test
+  void addActiveDay_afterGap_startsNewStreak() {
+    assertEquals(1, addActiveDay(DAY.plusDays(2)));
+    assertStreak(1, 4, DAY.plusDays(2));
+  }
+
+  @Test
+  void addActiveDay_earlierDay_notUpdated() {
+    assertEquals(0, addActiveDay(DAY.minusDays(1)));
+    assertStreak(3, 4, DAY);
+  }
+
+  @Test
+  void addActiveDay_noStreak_notUpdated() {
+    assertEquals(0, studyStreakRepository.addActiveDay(user.getId() + 1, DAY, DAY.minusDays(1)));
+  }
+
+  private int addActiveDay(LocalDate date) {
+    int updated = studyStreakRepository.addActiveDay(user.getId(), date, date.minusDays(1));
+    entityManager.clear();
+    return updated;
+  }
+
+  private void assertStreak(int currentStreak, int longestStreak, LocalDate lastActiveDate) {
+    StudyStreak streak = studyStreakRepository.findByUserId(user.getId()).orElseThrow();
+    assertEquals(currentStreak, streak.getCurrentStreak());
+    assertEquals(longestStreak, streak.getLongestStreak());
+    assertEquals(lastActiveDate, streak.getLastActiveDate());
+  }
+}
@@ -0,0 +1,359 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.entity.ArchiveEpoch;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.ArchiveEpochRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+class ActivityArchiveServiceTest {
+
+    @Mock
+    private ActivityRepository activityRepository;
+
+    @Mock
+    private ArchiveEpochRepository archiveEpochRepository;
+
+    @InjectMocks
+    private ActivityArchiveService activityArchiveService;
+
+    @TempDir
+    Path archiveDirectory;
+
+    private static final LocalDate HORIZON = LocalDate.of(2024, 1, 1);
+    private static final LocalDateTime START = LocalDateTime.of(2023, 6, 1, 9, 0);
+
+    private User testUser;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(activityArchiveService, "directory", archiveDirectory.toString());
+        ReflectionTestUtils.setField(activityArchiveService, "enabled", true);
+        when(archiveEpochRepository.findFirstByOrderByIdAsc()).thenReturn(Optional.of(epoch("first-database")));
+
+        testUser = new User();
+        testUser.setId(1L);
+    }
+
+    @Test
+    void covers_beforeFirstRun_false() {
+        assertFalse(activityArchiveService.covers(null));
+        assertTrue(activityArchiveService.findActivities(testUser, null, null).isEmpty());
+        Mockito.verifyNoInteractions(activityRepository);
+    }
+
+    @Test
+    void disabled_nothingReadOrWritten() throws Exception {
+        // given: an archive directory of another application
+        Path foreignFile = Files.writeString(archiveDirectory.resolve("user-1.csv.gz"), "not an archive");
+        ReflectionTestUtils.setField(activityArchiveService, "enabled", false);
+
+        // when
+        boolean covered = activityArchiveService.covers(null);
+        int archivedCount = activityArchiveService.archive(HORIZON);
+        activityArchiveService.forEachArchivedSession(session -> fail("session read while disabled"));
+
+        // then: the watermark is never loaded and the file is kept
+        assertFalse(covered);
+        assertEquals(0, archivedCount);
+        assertTrue(activityArchiveService.findOverlappingSessionBounds(1L, START, START.plusHours(1)).isEmpty());
+        assertTrue(Files.exists(foreignFile));
+        Mockito.verifyNoInteractions(activityRepository, archiveEpochRepository);
+    }
+
+    @Test
+    void filesWithoutWatermark_keptAndNeverRead() throws Exception {
+        // given
+        Path foreignFile = Files.writeString(archiveDirectory.resolve("user-1.csv.gz"), "not an archive");
+
+        // when
+        int archivedCount = activityArchiveService.archive(HORIZON);
+
+        // then
+        assertEquals(0, archivedCount);
+        assertFalse(activityArchiveService.covers(null));
+        assertTrue(activityArchiveService.findActivities(testUser, null, null).isEmpty());
+        assertEquals("not an archive", Files.readString(foreignFile));
+        Mockito.verifyNoInteractions(activityRepository);
+    }
+
+    @Test
+    void findActivities_fileReadOncePerCommittedRun() throws Exception {
+        // given: the file of user 1 is read once
+        ActivityRepository.SessionRecord first = session(10L, 1L, START);
+        ActivityRepository.SessionRecord second = session(20L, 1L, START.plusMonths(3));
+        when(activityRepository.streamSessionsStartedBefore(any()))
+                .thenReturn(Stream.of(first))
+                .thenReturn(Stream.of(second));
+        activityArchiveService.archive(HORIZON);
+        assertEquals(1, activityArchiveService.findActivities(testUser, null, null).size());
+        Path file = archiveDirectory.resolve("user-1.csv.gz");
+        byte[] content = Files.readAllBytes(file);
+
+        // when: the file can no longer be read
+        Files.delete(file);
+
+        // then: the sessions come from the cache
+        assertEquals(1, activityArchiveService.findActivities(testUser, null, null).size());
+        assertEquals(1, activityArchiveService.findOverlappingSessionBounds(1L, START, START.plusHours(1)).size());
+
+        // when: the next run is committed
+        Files.write(file, content);
+        activityArchiveService.archive(HORIZON.plusMonths(1));
+
+        // then: the file is read again
+        assertEquals(List.of(10L, 20L), activityArchiveService.findActivities(testUser, null, null).stream()
+                .map(Activity::getId).toList());
+    }
+
+    @Test
+    void findOverlappingSessionBounds_onlySessionsOverlappingRange() {
+        // given: sessions of one hour on three days
+        List<ActivityRepository.SessionRecord> sessions = List.of(
+                session(10L, 1L, START), session(11L, 1L, START.plusDays(1)), session(12L, 1L, START.plusDays(2)));
+        when(activityRepository.streamSessionsStartedBefore(any())).thenReturn(sessions.stream());
+        activityArchiveService.archive(HORIZON);
+
+        // when
+        List<ActivityRepository.SessionBounds> overlapping = activityArchiveService.findOverlappingSessionBounds(1L,
+                START.plusMinutes(30), START.plusDays(1));
+        List<Activity> range = activityArchiveService.findActivities(testUser, START.plusDays(1),
+                START.plusDays(2));
+
+        // then: the session starting at the end of the range does not overlap it
+        assertEquals(List.of(START), overlapping.stream().map(ActivityRepository.SessionBounds::getStartDateTime)
+                .toList());
+        assertEquals(List.of(11L, 12L), range.stream().map(Activity::getId).toList());
+    }
+
+    @Test
+    void archive_writesFilesAndDeletesRows() {
+        // given: two sessions of user 1 and one of user 2
+        List<ActivityRepository.SessionRecord> sessions = List.of(
+                session(10L, 1L, START), session(11L, 1L, START.plusDays(1)), session(12L, 2L, START));
+        when(activityRepository.streamSessionsStartedBefore(HORIZON.atStartOfDay())).thenReturn(sessions.stream());
+
+        // when
+        int archivedCount = activityArchiveService.archive(HORIZON);
+
+        // then
+        assertEquals(3, archivedCount);
+        assertTrue(Files.exists(archiveDirectory.resolve("user-1.csv.gz")));
+        assertTrue(Files.exists(archiveDirectory.resolve("user-2.csv.gz")));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Long>> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(activityRepository).deleteAllByIdInBatch(captor.capture());
+        assertEquals(List.of(10L, 11L, 12L), captor.getValue());
+
+        assertTrue(activityArchiveService.covers(START));
+        assertFalse(activityArchiveService.covers(HORIZON.atStartOfDay()));
+    }
+
+    @Test
+    void findActivities_afterTwoRuns_readsAllBlocksInRange() {
+        // given: two runs append two blocks to the file of user 1
+        ActivityRepository.SessionRecord first = session(10L, 1L, START);
+        ActivityRepository.SessionRecord second = session(20L, 1L, START.plusMonths(3));
+        when(activityRepository.streamSessionsStartedBefore(any()))
+                .thenReturn(Stream.of(first))
+                .thenReturn(Stream.of(second));
+        activityArchiveService.archive(HORIZON);
+        activityArchiveService.archive(HORIZON.plusMonths(1));
+
+        // when
+        List<Activity> all = activityArchiveService.findActivities(testUser, null, null);
+        List<Activity> range = activityArchiveService.findActivities(testUser, START.plusMonths(1), null);
+
+        // then
+        assertEquals(2, all.size());
+        assertEquals(10L, all.get(0).getId().longValue());
+        assertEquals(testUser, all.get(0).getUser());
+        assertEquals(START.plusHours(1), all.get(0).getEndDateTime());
+        assertEquals(1, range.size());
+        assertEquals(20L, range.get(0).getId().longValue());
+    }
+
+    @Test
+    void archive_sameSessionTwice_readOnce() {
+        // given: the rows of the first run were not deleted and are archived again
+        ActivityRepository.SessionRecord session = session(10L, 1L, START);
+        when(activityRepository.streamSessionsStartedBefore(any()))
+                .thenReturn(Stream.of(session))
+                .thenReturn(Stream.of(session));
+        activityArchiveService.archive(HORIZON);
+        activityArchiveService.archive(HORIZON);
+
+        // then
+        assertEquals(1, activityArchiveService.findActivities(testUser, null, null).size());
+    }
+
+    @Test
+    void findPageAfter_newestFirstAfterCursor() {
+        // given
+        List<ActivityRepository.SessionRecord> sessions = List.of(
+                session(10L, 1L, START), session(11L, 1L, START.plusDays(1)), session(12L, 1L, START.plusDays(2)));
+        when(activityRepository.streamSessionsStartedBefore(any())).thenReturn(sessions.stream());
+        activityArchiveService.archive(HORIZON);
+
+        // when
+        List<Activity> firstPage = activityArchiveService.findPageAfter(testUser, null, null, 2);
+        List<Activity> nextPage = activityArchiveService.findPageAfter(testUser, START.plusDays(1), 11L, 2);
+
+        // then
+        assertEquals(List.of(12L, 11L), firstPage.stream().map(Activity::getId).toList());
+        assertEquals(List.of(10L), nextPage.stream().map(Activity::getId).toList());
+    }
+
+    @Test
+    void forEachArchivedSession_allUsers() {
+        // given
+        List<ActivityRepository.SessionRecord> records = List.of(
+                session(10L, 1L, START), session(11L, 1L, START.plusDays(1)), session(12L, 2L, START));
+        when(activityRepository.streamSessionsStartedBefore(any())).thenReturn(records.stream());
+        activityArchiveService.archive(HORIZON);
+
+        // when
+        List<ActivityRepository.UserSessionBounds> sessions = new ArrayList<>();
+        activityArchiveService.forEachArchivedSession(sessions::add);
+
+        // then
+        assertEquals(3, sessions.size());
+        assertEquals(2, sessions.stream().filter(session -> session.getUserId() == 1L).count());
+        assertEquals(1, activityArchiveService.findOverlappingSessionBounds(1L, START.plusMinutes(30),
+                START.plusDays(1)).size());
+    }
+
+    @Test
+    void forEachArchivedActivity_streamsCommittedSessions() {
+        // given
+        List<ActivityRepository.SessionRecord> sessions = List.of(
+                session(10L, 1L, START), session(11L, 1L, START.plusDays(1)), session(12L, 2L, START));
+        when(activityRepository.streamSessionsStartedBefore(any())).thenReturn(sessions.stream());
+        activityArchiveService.archive(HORIZON);
+
+        // when
+        List<Activity> activities = new ArrayList<>();
+        activityArchiveService.forEachArchivedActivity(testUser, activities::add);
+
+        // then
+        assertEquals(List.of(10L, 11L), activities.stream().map(Activity::getId).toList());
+        assertEquals(testUser, activities.get(0).getUser());
+    }
+
+    @Test
+    void archive_deletionNotCommitted_blocksHiddenUntilRecovered() {
+        // given: the transaction of the first run never commits
+        ActivityRepository.SessionRecord first = session(10L, 1L, START);
+        ActivityRepository.SessionRecord second = session(20L, 1L, START.plusMonths(3));
+        when(activityRepository.streamSessionsStartedBefore(any()))
+                .thenReturn(Stream.of(first))
+                .thenReturn(Stream.of(second));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            activityArchiveService.archive(HORIZON);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // then: the rows are still in the table, the block is not read
+        assertFalse(activityArchiveService.covers(null));
+        List<Activity> activities = new ArrayList<>();
+        activityArchiveService.forEachArchivedActivity(testUser, activities::add);
+        assertTrue(activities.isEmpty());
+
+        // when: the application restarts and the next run finishes the pending one
+        ActivityArchiveService restarted = new ActivityArchiveService(activityRepository, archiveEpochRepository);
+        ReflectionTestUtils.setField(restarted, "directory", archiveDirectory.toString());
+        ReflectionTestUtils.setField(restarted, "enabled", true);
+        int archivedCount = restarted.archive(HORIZON.plusMonths(1));
+
+        // then: the pending run is committed, the new horizon waits for the next run
+        assertEquals(1, archivedCount);
+        Mockito.verify(activityRepository, Mockito.times(1)).streamSessionsStartedBefore(any());
+        Mockito.verify(activityRepository, Mockito.times(2)).deleteAllByIdInBatch(List.of(10L));
+        assertEquals(List.of(10L), restarted.findActivities(testUser, null, null).stream()
+                .map(Activity::getId).toList());
+        assertFalse(restarted.covers(HORIZON.atStartOfDay()));
+
+        restarted.archive(HORIZON.plusMonths(1));
+        assertEquals(List.of(10L, 20L), restarted.findActivities(testUser, null, null).stream()
+                .map(Activity::getId).toList());
+    }
+
+    private ActivityRepository.SessionRecord session(Long id, Long userId, LocalDateTime startDateTime) {
+        ActivityRepository.SessionRecord session = Mockito.mock(ActivityRepository.SessionRecord.class);
+        when(session.getId()).thenReturn(id);
+        when(session.getUserId()).thenReturn(userId);
+        when(session.getStartDateTime()).thenReturn(startDateTime);
+        when(session.getEndDateTime()).thenReturn(startDateTime.plusHours(1));
+        return session;
+    }
+
+    @Test
+    void restart_otherDatabase_staleFilesNeverRead() {
+        // given: sessions archived for the first database
+        ActivityRepository.SessionRecord session = session(10L, 1L, START);
+        when(activityRepository.streamSessionsStartedBefore(any())).thenReturn(Stream.of(session));
+        activityArchiveService.archive(HORIZON);
+        assertEquals(1, activityArchiveService.findActivities(testUser, null, null).size());
+
+        // when: the application restarts on a new (in-memory) database
+        ArchiveEpochRepository newDatabase = Mockito.mock(ArchiveEpochRepository.class);
+        when(newDatabase.findFirstByOrderByIdAsc()).thenReturn(Optional.of(epoch("second-database")));
+        ActivityArchiveService restarted = new ActivityArchiveService(activityRepository, newDatabase);
+        ReflectionTestUtils.setField(restarted, "directory", archiveDirectory.toString());
+        ReflectionTestUtils.setField(restarted, "enabled", true);
+
+        // then
+        assertFalse(restarted.covers(null));
+        assertTrue(restarted.findActivities(testUser, null, null).isEmpty());
+        restarted.forEachArchivedSession(archived -> fail("stale session read"));
+        assertFalse(Files.exists(archiveDirectory.resolve("user-1.csv.gz")));
+        assertFalse(Files.exists(archiveDirectory.resolve("archived-before")));
+    }
+
+    @Test
+    void restart_sameDatabase_archiveKept() {
+        ActivityRepository.SessionRecord session = session(10L, 1L, START);
+        when(activityRepository.streamSessionsStartedBefore(any())).thenReturn(Stream.of(session));
+        activityArchiveService.archive(HORIZON);
+
+        ActivityArchiveService restarted = new ActivityArchiveService(activityRepository, archiveEpochRepository);
+        ReflectionTestUtils.setField(restarted, "directory", archiveDirectory.toString());
+        ReflectionTestUtils.setField(restarted, "enabled", true);
+
+        assertTrue(restarted.covers(START));
+        assertEquals(1, restarted.findActivities(testUser, null, null).size());
+    }
+
+    private static ArchiveEpoch epoch(String value) {
+        ArchiveEpoch archiveEpoch = new ArchiveEpoch();
+        archiveEpoch.setId(1L);
+        archiveEpoch.setEpoch(value);
+        return archiveEpoch;
+    }
+}
@@ -0,0 +1,125 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityAggregateDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+class ActivityIndexServiceTest {
+
+    @Mock
+    private ActivityRepository activityRepository;
+
+    @Mock
+    private ActivityArchiveService activityArchiveService;
+
+    @InjectMocks
+    private ActivityIndexService activityIndexService;
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 11);
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(activityIndexService, "enabled", true);
+        when(activityArchiveService.findSessionBounds(anyLong())).thenReturn(List.of());
+    }
+
+    @Test
+    void getDailyActivitiesForUsers_missingIndexesLoadedWithOneQuery() {
+        // given
+        List<ActivityRepository.UserSessionBounds> sessions = List.of(
+                session(1L, DAY.atTime(9, 0), DAY.atTime(10, 0)), session(2L, DAY.atTime(9, 0), DAY.atTime(9, 30)));
+        when(activityRepository.findSessionBoundsOfUsers(anyCollection())).thenReturn(sessions);
+
+        // when
+        Map<Long, List<ActivityAggregateDTO>> dailyActivities = activityIndexService.getDailyActivitiesForUsers(
+                List.of(1L, 2L, 3L), DAY, DAY);
+
+        // then: user 3 has no sessions
+        assertEquals(60, dailyActivities.get(1L).get(0).getDuration());
+        assertEquals(30, dailyActivities.get(2L).get(0).getDuration());
+        assertFalse(dailyActivities.containsKey(3L));
+        Mockito.verify(activityRepository).findSessionBoundsOfUsers(Set.of(1L, 2L, 3L));
+
+        // the indexes stay loaded
+        activityIndexService.getDailyActivitiesForUsers(List.of(1L, 2L, 3L), DAY, DAY);
+        Mockito.verify(activityRepository, Mockito.times(1)).findSessionBoundsOfUsers(anyCollection());
+    }
+
+    @Test
+    void addActivity_committedWhileLoading_indexedOnce() {
+        // given: the session is stored while the index is loaded, the query already returns it
+        List<ActivityRepository.UserSessionBounds> sessions = List.of(
+                session(1L, DAY.atTime(9, 0), DAY.atTime(10, 0)), session(1L, DAY.atTime(9, 30), DAY.atTime(11, 0)));
+        when(activityRepository.findSessionBoundsOfUsers(anyCollection()))
+                .thenAnswer(invocation -> {
+                    activityIndexService.addActivity(activity(1L, DAY.atTime(9, 30), DAY.atTime(11, 0)));
+                    return sessions;
+                })
+                .thenReturn(sessions);
+
+        // when
+        List<ActivityAggregateDTO> dailyActivities = activityIndexService.getDailyActivities(1L, DAY, DAY);
+
+        // then: 9:00 - 11:00, the overlapping load was done again
+        assertEquals(120, dailyActivities.get(0).getDuration());
+        assertEquals(120, activityIndexService.getDailyActivities(1L, DAY, DAY).get(0).getDuration());
+        Mockito.verify(activityRepository, Mockito.times(2)).findSessionBoundsOfUsers(any());
+    }
+
+    @Test
+    void onActivityStored_addedToLoadedIndex() {
+        // given
+        List<ActivityRepository.UserSessionBounds> sessions = List.of(session(1L, DAY.atTime(9, 0), DAY.atTime(10, 0)));
+        when(activityRepository.findSessionBoundsOfUsers(anyCollection())).thenReturn(sessions);
+        activityIndexService.getDailyActivities(1L, DAY, DAY);
+        Activity activity = activity(1L, DAY.atTime(14, 0), DAY.atTime(14, 30));
+
+        // when
+        activityIndexService.onActivityStored(new ActivityStoredEvent(activity.getUser(), List.of(activity),
+                Map.of(DAY, 30L)));
+
+        // then
+        assertEquals(90, activityIndexService.getDailyActivities(1L, DAY, DAY).get(0).getDuration());
+        Mockito.verify(activityRepository, Mockito.times(1)).findSessionBoundsOfUsers(any());
+    }
+
+    private ActivityRepository.UserSessionBounds session(Long userId, LocalDateTime start, LocalDateTime end) {
+        ActivityRepository.UserSessionBounds session = Mockito.mock(ActivityRepository.UserSessionBounds.class);
+        when(session.getUserId()).thenReturn(userId);
+        when(session.getStartDateTime()).thenReturn(start);
+        when(session.getEndDateTime()).thenReturn(end);
+        return session;
+    }
+
+    private Activity activity(Long userId, LocalDateTime start, LocalDateTime end) {
+        User user = new User();
+        user.setId(userId);
+
+        Activity activity = new Activity();
+        activity.setUser(user);
+        activity.setStartDateTime(start);
+        activity.setEndDateTime(end);
+        return activity;
+    }
+}
@@ -0,0 +1,119 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActivityIndexTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+
+    @Test
+    void add_outOfOrder_keepsSessionsSortedByStart() {
+        ActivityIndex index = new ActivityIndex(0);
+        add(index, DAY.atTime(14, 0), DAY.atTime(15, 0));
+        add(index, DAY.atTime(9, 0), DAY.atTime(10, 0));
+        add(index, DAY.atTime(11, 0), DAY.atTime(11, 30));
+
+        assertEquals(3, index.size());
+        // only the sessions starting before 12:00 are summed
+        assertEquals(Duration.ofMinutes(90).toMillis(),
+                index.sumMillis(millis(DAY.atStartOfDay()), millis(DAY.atTime(12, 0))));
+        assertEquals(Duration.ofMinutes(60).toMillis(),
+                index.sumMillis(millis(DAY.atTime(14, 0)), millis(DAY.atTime(14, 0, 1))));
+        assertEquals(0, index.sumMillis(millis(DAY.atTime(16, 0)), Long.MAX_VALUE));
+    }
+
+    @Test
+    void sumMinutesPerDay_growsBeyondInitialCapacity() {
+        ActivityIndex index = new ActivityIndex(0);
+        for (int i = 0; i < 100; i++) {
+            LocalDateTime start = DAY.atStartOfDay().plusHours(i);
+            add(index, start, start.plusMinutes(30));
+        }
+
+        Map<LocalDate, Long> minutesPerDay = new TreeMap<>();
+        index.sumMinutesPerDay(Long.MIN_VALUE, Long.MAX_VALUE,
+                (epochDay, minutes) -> minutesPerDay.put(LocalDate.ofEpochDay(epochDay), minutes));
+
+        assertEquals(100, index.size());
+        assertEquals(5, minutesPerDay.size());
+        assertEquals(24 * 30L, minutesPerDay.get(DAY));
+        assertEquals(4 * 30L, minutesPerDay.get(DAY.plusDays(4)));
+    }
+
+    @Test
+    void sumMillis_overlappingSessions_countedOnce() {
+        ActivityIndex index = new ActivityIndex(0);
+        add(index, DAY.atTime(10, 0), DAY.atTime(12, 0));
+        add(index, DAY.atTime(9, 0), DAY.atTime(11, 0));
+        add(index, DAY.atTime(9, 30), DAY.atTime(10, 30));
+        add(index, DAY.atTime(13, 0), DAY.atTime(14, 0));
+
+        assertEquals(Duration.ofMinutes(240).toMillis(), index.sumMillis(Long.MIN_VALUE, Long.MAX_VALUE));
+        // 10:00 - 12:00 is only counted for the time after 11:00
+        assertEquals(Duration.ofMinutes(60).toMillis(),
+                index.sumMillis(millis(DAY.atTime(10, 0)), millis(DAY.atTime(10, 0, 1))));
+    }
+
+    /*
+     * The index must return the same daily totals as adding the sessions in
+     * chronological order to StudyIntervals, every session counting the rounded
+     * time it newly covers on the day it started
+     */
+    @Test
+    void sumMinutesPerDay_matchesStreamAggregation() {
+        Random random = new Random(42);
+        List<LocalDateTime[]> sessions = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            LocalDateTime start = DAY.atStartOfDay().plusSeconds(random.nextInt(60 * 24 * 3600))
+                    .plusNanos(random.nextInt(1000) * 1_000_000L);
+            LocalDateTime end = start.plusSeconds(random.nextInt(4 * 3600)).plusNanos(random.nextInt(1000) * 1_000_000L);
+            sessions.add(new LocalDateTime[] { start, end });
+        }
+        Collections.shuffle(sessions, random);
+
+        ActivityIndex index = new ActivityIndex(0);
+        sessions.forEach(session -> add(index, session[0], session[1]));
+
+        LocalDate from = DAY.plusDays(10);
+        LocalDate to = DAY.plusDays(40);
+        // sessions with the same start are kept in insertion order, like in the index
+        List<LocalDateTime[]> chronological = new ArrayList<>(sessions);
+        chronological.sort(Comparator.comparing(session -> session[0]));
+        StudyIntervals studied = new StudyIntervals();
+        Map<LocalDate, Long> expected = new TreeMap<>();
+        for (LocalDateTime[] session : chronological) {
+            long minutes = DailyActivityService.roundedMinutes(studied.add(millis(session[0]), millis(session[1])));
+            LocalDate date = session[0].toLocalDate();
+            if (!date.isBefore(from) && !date.isAfter(to)) {
+                expected.merge(date, minutes, Long::sum);
+            }
+        }
+
+        Map<LocalDate, Long> actual = new TreeMap<>();
+        index.sumMinutesPerDay(millis(from.atStartOfDay()), millis(to.plusDays(1).atStartOfDay()),
+                (epochDay, minutes) -> actual.put(LocalDate.ofEpochDay(epochDay), minutes));
+
+        assertEquals(expected, actual);
+    }
+
+    private void add(ActivityIndex index, LocalDateTime start, LocalDateTime end) {
+        index.add(millis(start), millis(end));
+    }
+
+    private long millis(LocalDateTime dateTime) {
+        return ActivityIndex.toEpochMilli(dateTime);
+    }
+}
@@ -0,0 +1,339 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
+import ch.uzh.ifi.hase.soprafs24.constant.StatisticsGranularity;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.entity.Group;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.GroupRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityAggregateDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.GroupActivityAggregateDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserActivitiesGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserAggregatedActivitiesGetDTO;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@WebAppConfiguration
+@SpringBootTest
+@Transactional
+class ActivityServiceIntegrationTest {
+
+    @Qualifier("userRepository")
+    @Autowired
+    private UserRepository userRepository;
+
+    @Qualifier("groupRepository")
+    @Autowired
+    private GroupRepository groupRepository;
+
+    @Autowired
+    private ActivityService activityService;
+
+    @Autowired
+    private MembershipService membershipService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcBatchCounter jdbcBatchCounter;
+
+    private Statistics statistics;
+    private User admin;
+
+    private static final LocalDate START_DATE = LocalDate.of(2024, 3, 1);
+    private static final LocalDate END_DATE = LocalDate.of(2024, 3, 31);
+
+    @BeforeEach
+    void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+
+        admin = createUser("admin");
+        createActivities(admin);
+    }
+
+    @AfterEach
+    void tearDown() {
+        statistics.setStatisticsEnabled(false);
+    }
+
+    @Test
+    void getGroupUsersActivities_queryCountIndependentOfGroupSize() {
+        // given
+        Group smallGroup = createGroupWithMembers("smallGroup", 2);
+        Group largeGroup = createGroupWithMembers("largeGroup", 8);
+
+        // when
+        long smallGroupQueries = countQueries(() -> activityService.getGroupUsersActivities(
+                admin.getId(), admin.getToken(), smallGroup.getId(), START_DATE, END_DATE));
+        long largeGroupQueries = countQueries(() -> activityService.getGroupUsersActivities(
+                admin.getId(), admin.getToken(), largeGroup.getId(), START_DATE, END_DATE));
+
+        // then
+        assertEquals(smallGroupQueries, largeGroupQueries);
+
+        List<UserActivitiesGetDTO> result = activityService.getGroupUsersActivities(
+                admin.getId(), admin.getToken(), largeGroup.getId(), START_DATE, END_DATE);
+        assertEquals(9, result.size());
+        result.forEach(userActivities -> assertEquals(2, userActivities.getActivities().size()));
+    }
+
+    @Test
+    void getGroupUsersAggregatedActivities_queryCountIndependentOfGroupSize() {
+        // given
+        Group smallGroup = createGroupWithMembers("smallGroup", 2);
+        Group largeGroup = createGroupWithMembers("largeGroup", 8);
+
+        // when
+        long smallGroupQueries = countQueries(() -> activityService.getGroupUsersAggregatedActivities(
+                admin.getId(), admin.getToken(), smallGroup.getId(), START_DATE, END_DATE));
+        long largeGroupQueries = countQueries(() -> activityService.getGroupUsersAggregatedActivities(
+                admin.getId(), admin.getToken(), largeGroup.getId(), START_DATE, END_DATE));
+
+        // then
+        assertEquals(smallGroupQueries, largeGroupQueries);
+
+        List<UserAggregatedActivitiesGetDTO> result = activityService.getGroupUsersAggregatedActivities(
+                admin.getId(), admin.getToken(), largeGroup.getId(), START_DATE, END_DATE);
+        assertEquals(9, result.size());
+        result.forEach(userAggregated -> {
+            assertEquals(1, userAggregated.getAggregatedActivities().size());
+            assertEquals(90, userAggregated.getAggregatedActivities().get(0).getDuration());
+        });
+    }
+
+    @Test
+    void getGroupAggregatedActivities_singleSeriesForWholeGroup() {
+        // given
+        Group smallGroup = createGroupWithMembers("smallGroup", 2);
+        Group largeGroup = createGroupWithMembers("largeGroup", 8);
+
+        // when
+        long smallGroupQueries = countQueries(() -> activityService.getGroupAggregatedActivities(
+                admin.getId(), admin.getToken(), smallGroup.getId(), START_DATE, END_DATE, StatisticsGranularity.DAY));
+        long largeGroupQueries = countQueries(() -> activityService.getGroupAggregatedActivities(
+                admin.getId(), admin.getToken(), largeGroup.getId(), START_DATE, END_DATE, StatisticsGranularity.DAY));
+
+        // then
+        assertEquals(smallGroupQueries, largeGroupQueries);
+
+        List<GroupActivityAggregateDTO> days = activityService.getGroupAggregatedActivities(admin.getId(),
+                admin.getToken(), largeGroup.getId(), START_DATE, END_DATE, StatisticsGranularity.DAY);
+        assertEquals(1, days.size());
+        assertEquals(START_DATE, days.get(0).getDate());
+        assertEquals(9 * 90L, days.get(0).getTotalMinutes());
+        assertEquals(9, days.get(0).getActiveMembers());
+
+        List<GroupActivityAggregateDTO> months = activityService.getGroupAggregatedActivities(admin.getId(),
+                admin.getToken(), largeGroup.getId(), null, null, StatisticsGranularity.MONTH);
+        assertEquals(1, months.size());
+        assertEquals(START_DATE.withDayOfMonth(1), months.get(0).getDate());
+        assertEquals(9 * 90L, months.get(0).getTotalMinutes());
+    }
+
+    @Test
+    void createActivities_insertsSentInJdbcBatches() {
+        // given
+        User singleUser = createUser("singleUser");
+        User batchUser = createUser("batchUser");
+        int activityCount = 40;
+
+        // when
+        long singleInsertStatements = countQueries(() -> {
+            for (Activity activity : newActivities(activityCount)) {
+                activityService.createActivity(activity, singleUser.getId(), singleUser.getToken());
+            }
+        });
+        long singleInsertBatches = jdbcBatchCounter.getExecutedBatches();
+        long batchInsertStatements = countQueries(() -> activityService.createActivities(
+                newActivities(activityCount), batchUser.getId(), batchUser.getToken()));
+        long batchedRows = jdbcBatchCounter.getAddedRows();
+        long batchInsertBatches = jdbcBatchCounter.getExecutedBatches();
+
+        // then
+        assertTrue(batchInsertStatements * 4 < singleInsertStatements,
+                batchInsertStatements + " statements for the batch, " + singleInsertStatements + " for single inserts");
+        // every activity row went through addBatch and the rows were sent in a few executeBatch calls
+        assertTrue(batchedRows >= activityCount, batchedRows + " rows added to batches");
+        assertTrue(batchInsertBatches * 4 < batchedRows, batchInsertBatches + " batches for " + batchedRows + " rows");
+        assertTrue(batchInsertBatches * 4 < singleInsertBatches,
+                batchInsertBatches + " batches for the batch, " + singleInsertBatches + " for single inserts");
+
+        List<ActivityAggregateDTO> aggregated = activityService.getAggregatedActivities(batchUser.getId(),
+                batchUser.getToken(), null, null);
+        assertEquals(1, aggregated.size());
+        assertEquals(activityCount * 5L, aggregated.get(0).getDuration());
+    }
+
+    @Test
+    void createActivity_overlappingSessions_countedOnce() {
+        // given: admin studied 9:00 - 10:00 and 14:00 - 14:30
+
+        // when: 9:30 - 10:30 overlaps the first session, the second session is posted twice
+        createActivity(admin, START_DATE.atTime(9, 30), 60);
+        createActivity(admin, START_DATE.atTime(14, 0), 30);
+
+        // then
+        List<ActivityAggregateDTO> aggregated = activityService.getAggregatedActivities(admin.getId(),
+                admin.getToken(), START_DATE, END_DATE);
+        assertEquals(1, aggregated.size());
+        assertEquals(120, aggregated.get(0).getDuration());
+    }
+
+    // sessions of 5 minutes on the same day
+    private List<Activity> newActivities(int count) {
+        List<Activity> activities = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Activity activity = new Activity();
+            activity.setStartDateTime(START_DATE.atTime(8, 0).plusMinutes(10L * i));
+            activity.setEndDateTime(activity.getStartDateTime().plusMinutes(5));
+            activities.add(activity);
+        }
+        return activities;
+    }
+
+    // statements prepared by the call, the JDBC batches it sent are in jdbcBatchCounter
+    private long countQueries(Runnable call) {
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+        jdbcBatchCounter.reset();
+        call.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private Group createGroupWithMembers(String name, int memberCount) {
+        Group group = new Group();
+        group.setName(name);
+        group.setAdminId(admin.getId());
+        group.setMemberships(new ArrayList<>());
+        group = groupRepository.save(group);
+
+        membershipService.addUserToGroup(admin, group, MembershipStatus.ACTIVE, admin.getId());
+        for (int i = 0; i < memberCount; i++) {
+            User member = createUser(name + "-member" + i);
+            membershipService.addUserToGroup(member, group, MembershipStatus.ACTIVE, admin.getId());
+            createActivities(member);
+        }
+        return group;
+    }
+
+    // two sessions of 60 and 30 minutes on the same day
+    private void createActivities(User user) {
+        createActivity(user, START_DATE.atTime(9, 0), 60);
+        createActivity(user, START_DATE.atTime(14, 0), 30);
+    }
+
+    private void createActivity(User user, LocalDateTime start, int minutes) {
+        Activity activity = new Activity();
+        activity.setStartDateTime(start);
+        activity.setEndDateTime(start.plusMinutes(minutes));
+        activityService.createActivity(activity, user.getId(), user.getToken());
+    }
+
+    private User createUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("password");
+        user.setToken(username + "-token");
+        user.setStatus(UserStatus.ONLINE);
+        return userRepository.save(user);
+    }
+
+    @TestConfiguration
+    static class JdbcBatchCounterConfiguration {
+
+        @Bean
+        static JdbcBatchCounter jdbcBatchCounter() {
+            return new JdbcBatchCounter();
+        }
+    }
+
+    /*
+     * Wraps the data source, its connections and their prepared statements to
+     * count what Hibernate sends to the database (the Hibernate statistics only
+     * count prepared statements, which does not show if rows are batched)
+     *      addBatch -> one row added to the current batch
+     *      executeBatch -> one batch sent to the database
+     */
+    static class JdbcBatchCounter implements BeanPostProcessor {
+
+        private final AtomicLong addedRows = new AtomicLong();
+        private final AtomicLong executedBatches = new AtomicLong();
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            return bean instanceof DataSource ? counting(DataSource.class, bean) : bean;
+        }
+
+        long getAddedRows() {
+            return addedRows.get();
+        }
+
+        long getExecutedBatches() {
+            return executedBatches.get();
+        }
+
+        void reset() {
+            addedRows.set(0);
+            executedBatches.set(0);
+        }
+
+        private <T> T counting(Class<T> type, Object target) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("addBatch")) {
+                            addedRows.incrementAndGet();
+                        } else if (method.getName().equals("executeBatch")) {
+                            executedBatches.incrementAndGet();
+                        }
+
+                        Object result;
+                        try {
+                            result = method.invoke(target, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                        if (method.getReturnType() == Connection.class) {
+                            return counting(Connection.class, result);
+                        }
+                        if (method.getReturnType() == PreparedStatement.class) {
+                            return counting(PreparedStatement.class, result);
+                        }
+                        return result;
+                    }));
+        }
+    }
+}
@@ -4,26 +4,38 @@ import ch.uzh.ifi.hase.soprafs24.entity.Activity;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.entity.Group;
 import ch.uzh.ifi.hase.soprafs24.entity.GroupMembership;
+import ch.uzh.ifi.hase.soprafs24.constant.LeaderboardWindow;
 import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
+import ch.uzh.ifi.hase.soprafs24.constant.StatisticsGranularity;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.GroupRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityBatchResultGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.LeaderboardEntryGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityAggregateDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityPageGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.GroupActivityAggregateDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserActivitiesGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserAggregatedActivitiesGetDTO;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -45,6 +57,36 @@ class ActivityServiceTest {
     @Mock
     private MembershipService membershipService;
 
+    @Mock
+    private DailyActivityService dailyActivityService;
+
+    @Mock
+    private LeaderboardService leaderboardService;
+
+    @Mock
+    private ActivityIndexService activityIndexService;
+
+    @Mock
+    private SessionHistogramService sessionHistogramService;
+
+    @Mock
+    private StudyStreakService studyStreakService;
+
+    @Mock
+    private StudyHeatmapService studyHeatmapService;
+
+    @Mock
+    private ActivityArchiveService activityArchiveService;
+
+    @Mock
+    private WeeklySummaryService weeklySummaryService;
+
+    @Mock
+    private DailyGoalService dailyGoalService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private ActivityService activityService;
 
@@ -128,6 +170,32 @@ class ActivityServiceTest {
         assertEquals(testActivity2.getId(), activities.get(1).getId());
     }
 
+    @Test
+    void getActivitiesByDateRange_archivedRange_mergedByStart() {
+        // given: an archived activity before testActivity1, and a copy of testActivity2
+        // still in the table after a failed archival run
+        Activity archivedActivity = new Activity();
+        archivedActivity.setId(0L);
+        archivedActivity.setUser(testUser);
+        archivedActivity.setStartDateTime(LocalDate.of(2024, 2, 28).atTime(9, 0));
+        archivedActivity.setEndDateTime(LocalDate.of(2024, 2, 28).atTime(10, 0));
+
+        when(activityRepository.findByUserAndStartDateTimeBetweenOrderByStartDateTimeAsc(any(), any(), any()))
+                .thenReturn(Arrays.asList(testActivity1, testActivity2));
+        when(activityArchiveService.findActivities(any(), any(), any()))
+                .thenReturn(Arrays.asList(archivedActivity, testActivity2));
+
+        // when
+        List<Activity> activities = activityService.getActivitiesByDateRange(testUser.getId(), validToken,
+                LocalDate.of(2024, 2, 1), LocalDate.of(2024, 3, 31));
+
+        // then
+        assertEquals(3, activities.size());
+        assertEquals(archivedActivity, activities.get(0));
+        assertEquals(testActivity1, activities.get(1));
+        assertEquals(testActivity2, activities.get(2));
+    }
+
     @Test
     void getActivitiesByDateRange_invalidDateRange_throwsException() {
         // given
@@ -183,14 +251,65 @@ class ActivityServiceTest {
         assertEquals(testActivity2.getId(), activities.get(1).getId());
     }
 
+    @Test
+    void getActivityPage_firstPage_returnsNextCursor() {
+        // given: three activities, newest first, one more than the limit of 2
+        when(activityRepository.findByUserIdOrderByStartDateTimeDescIdDesc(eq(testUser.getId()), any()))
+                .thenReturn(Arrays.asList(testActivity3, testActivity2, testActivity1));
+
+        // when
+        ActivityPageGetDTO page = activityService.getActivityPage(testUser.getId(), validToken, 2, null);
+
+        // then
+        assertEquals(2, page.getActivities().size());
+        assertEquals(testActivity3.getId(), page.getActivities().get(0).getId());
+        assertEquals(testActivity2.getId(), page.getActivities().get(1).getId());
+        assertNotNull(page.getNextCursor());
+    }
+
+    @Test
+    void getActivityPage_withCursor_readsFromLastActivity() {
+        // given
+        when(activityRepository.findByUserIdOrderByStartDateTimeDescIdDesc(eq(testUser.getId()), any()))
+                .thenReturn(Arrays.asList(testActivity3, testActivity2, testActivity1));
+        String cursor = activityService.getActivityPage(testUser.getId(), validToken, 2, null).getNextCursor();
+
+        when(activityRepository.findPageAfter(eq(testUser.getId()), eq(testActivity2.getStartDateTime()),
+                eq(testActivity2.getId()), any()))
+                .thenReturn(Collections.singletonList(testActivity1));
+
+        // when
+        ActivityPageGetDTO page = activityService.getActivityPage(testUser.getId(), validToken, 2, cursor);
+
+        // then
+        assertEquals(1, page.getActivities().size());
+        assertEquals(testActivity1.getId(), page.getActivities().get(0).getId());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void getActivityPage_invalidCursor_throwsException() {
+        assertThrows(ResponseStatusException.class, () -> {
+            activityService.getActivityPage(testUser.getId(), validToken, 2, "not-a-cursor");
+        });
+    }
+
+    @Test
+    void getActivityPage_invalidLimit_throwsException() {
+        assertThrows(ResponseStatusException.class, () -> {
+            activityService.getActivityPage(testUser.getId(), validToken, 0, null);
+        });
+    }
+
     @Test
     void getAggregatedActivities_success() {
         // given
         LocalDate startDate = LocalDate.of(2024, 3, 1);
         LocalDate endDate = LocalDate.of(2024, 3, 31);
-        
-        when(activityRepository.findByUserAndStartDateTimeBetweenOrderByStartDateTimeAsc(any(), any(), any()))
-                .thenReturn(Arrays.asList(testActivity1, testActivity2, testActivity3));
+
+        when(dailyActivityService.getActivities(testUser.getId(), startDate, endDate, StatisticsGranularity.DAY))
+                .thenReturn(Arrays.asList(aggregate(LocalDate.of(2024, 3, 1), 120),
+                        aggregate(LocalDate.of(2024, 3, 15), 90)));
 
         // when
         List<ActivityAggregateDTO> aggregatedActivities = 
@@ -208,6 +327,10 @@ class ActivityServiceTest {
         ActivityAggregateDTO march15 = aggregatedActivities.get(1);
         assertEquals(LocalDate.of(2024, 3, 15), march15.getDate());
         assertEquals(90, march15.getDuration()); // 1.5 hours
+
+        // the raw activities are not loaded anymore
+        Mockito.verify(activityRepository, Mockito.never())
+                .findByUserAndStartDateTimeBetweenOrderByStartDateTimeAsc(any(), any(), any());
     }
 
     @Test
@@ -216,7 +339,7 @@ class ActivityServiceTest {
         LocalDate startDate = LocalDate.of(2024, 3, 1);
         LocalDate endDate = LocalDate.of(2024, 3, 31);
         
-        when(activityRepository.findByUserAndStartDateTimeBetweenOrderByStartDateTimeAsc(any(), any(), any()))
+        when(dailyActivityService.getActivities(testUser.getId(), startDate, endDate, StatisticsGranularity.DAY))
                 .thenReturn(List.of());
 
         // when
@@ -227,6 +350,140 @@ class ActivityServiceTest {
         assertTrue(aggregatedActivities.isEmpty());
     }
 
+    @Test
+    void getAggregatedActivities_indexEnabled_readsIndex() {
+        // given
+        LocalDate startDate = LocalDate.of(2024, 3, 1);
+        LocalDate endDate = LocalDate.of(2024, 3, 31);
+
+        when(activityIndexService.isEnabled()).thenReturn(true);
+        when(activityIndexService.getDailyActivities(testUser.getId(), startDate, endDate))
+                .thenReturn(Collections.singletonList(aggregate(LocalDate.of(2024, 3, 1), 120)));
+
+        // when
+        List<ActivityAggregateDTO> aggregatedActivities =
+            activityService.getAggregatedActivities(testUser.getId(), validToken, startDate, endDate);
+
+        // then
+        assertEquals(1, aggregatedActivities.size());
+        assertEquals(120, aggregatedActivities.get(0).getDuration());
+        Mockito.verifyNoInteractions(dailyActivityService);
+    }
+
+    @Test
+    void getAggregatedActivities_autoGranularity_resolvedFromRange() {
+        // given
+        LocalDate startDate = LocalDate.of(2024, 1, 1);
+        LocalDate endDate = LocalDate.of(2024, 12, 31);
+
+        when(dailyActivityService.getActivities(testUser.getId(), startDate, endDate, StatisticsGranularity.MONTH))
+                .thenReturn(Collections.singletonList(aggregate(LocalDate.of(2024, 3, 1), 210)));
+
+        // when
+        List<ActivityAggregateDTO> aggregatedActivities = activityService.getAggregatedActivities(
+                testUser.getId(), validToken, startDate, endDate, StatisticsGranularity.AUTO);
+
+        // then a year is served by month
+        assertEquals(1, aggregatedActivities.size());
+        assertEquals(210, aggregatedActivities.get(0).getDuration());
+        Mockito.verify(dailyActivityService).getActivities(testUser.getId(), startDate, endDate,
+                StatisticsGranularity.MONTH);
+    }
+
+    @Test
+    void getAggregatedActivities_autoGranularity_shortRangeByDay() {
+        // given
+        LocalDate startDate = LocalDate.of(2024, 3, 1);
+        LocalDate endDate = LocalDate.of(2024, 3, 31);
+
+        // when
+        activityService.getAggregatedActivities(testUser.getId(), validToken, startDate, endDate,
+                StatisticsGranularity.AUTO);
+
+        // then
+        Mockito.verify(dailyActivityService).getActivities(testUser.getId(), startDate, endDate,
+                StatisticsGranularity.DAY);
+    }
+
+    @Test
+    void getAggregatedActivities_runningWorkSession_addedToItsDay() {
+        // given: the user is studying for 30 minutes, 60 minutes are already stored for that day
+        LocalDateTime sessionStart = LocalDateTime.now().minusMinutes(30);
+        LocalDate sessionDay = sessionStart.toLocalDate();
+        testUser.setStatus(UserStatus.WORK);
+        testUser.setStartTime(sessionStart);
+
+        when(dailyActivityService.getActivities(testUser.getId(), null, null, StatisticsGranularity.DAY))
+                .thenReturn(Arrays.asList(aggregate(sessionDay.minusDays(3), 45), aggregate(sessionDay, 60)));
+
+        // when
+        List<ActivityAggregateDTO> aggregatedActivities =
+            activityService.getAggregatedActivities(testUser.getId(), validToken, null, null);
+
+        // then
+        assertEquals(2, aggregatedActivities.size());
+        assertEquals(45, aggregatedActivities.get(0).getDuration());
+        assertEquals(sessionDay, aggregatedActivities.get(1).getDate());
+        assertEquals(90, aggregatedActivities.get(1).getDuration());
+        // the running session comes from the user row, no overlap query
+        Mockito.verify(dailyActivityService).getActivities(testUser.getId(), null, null, StatisticsGranularity.DAY);
+        Mockito.verifyNoMoreInteractions(dailyActivityService);
+    }
+
+    @Test
+    void getAggregatedActivities_runningWorkSession_newPeriodAppended() {
+        // given
+        LocalDateTime sessionStart = LocalDateTime.now().minusMinutes(20);
+        LocalDate week = DailyActivityService.periodStart(sessionStart.toLocalDate(), StatisticsGranularity.WEEK);
+        testUser.setStatus(UserStatus.WORK);
+        testUser.setStartTime(sessionStart);
+
+        when(dailyActivityService.getActivities(testUser.getId(), week.minusWeeks(2), week,
+                StatisticsGranularity.WEEK))
+                .thenReturn(Collections.singletonList(aggregate(week.minusWeeks(1), 300)));
+
+        // when
+        List<ActivityAggregateDTO> aggregatedActivities = activityService.getAggregatedActivities(
+                testUser.getId(), validToken, week.minusWeeks(2), week, StatisticsGranularity.WEEK);
+
+        // then
+        assertEquals(2, aggregatedActivities.size());
+        assertEquals(week, aggregatedActivities.get(1).getDate());
+        assertEquals(20, aggregatedActivities.get(1).getDuration());
+    }
+
+    @Test
+    void getAggregatedActivities_runningSessionOutsideRange_ignored() {
+        // given
+        testUser.setStatus(UserStatus.WORK);
+        testUser.setStartTime(LocalDateTime.now().minusMinutes(30));
+        LocalDate startDate = LocalDate.of(2024, 3, 1);
+        LocalDate endDate = LocalDate.of(2024, 3, 31);
+
+        when(dailyActivityService.getActivities(testUser.getId(), startDate, endDate, StatisticsGranularity.DAY))
+                .thenReturn(Collections.singletonList(aggregate(LocalDate.of(2024, 3, 1), 120)));
+
+        // when
+        List<ActivityAggregateDTO> aggregatedActivities =
+            activityService.getAggregatedActivities(testUser.getId(), validToken, startDate, endDate);
+
+        // then
+        assertEquals(1, aggregatedActivities.size());
+        assertEquals(120, aggregatedActivities.get(0).getDuration());
+    }
+
+    @Test
+    void getAggregatedActivities_invalidDateRange_throwsException() {
+        // given
+        LocalDate startDate = LocalDate.of(2024, 3, 31);
+        LocalDate endDate = LocalDate.of(2024, 3, 1);
+
+        // when/then
+        assertThrows(ResponseStatusException.class, () -> {
+            activityService.getAggregatedActivities(testUser.getId(), validToken, startDate, endDate);
+        });
+    }
+
     @Test
     void getAggregatedActivities_invalidToken_throwsException() {
         // given
@@ -246,10 +503,12 @@ class ActivityServiceTest {
     void createActivity_success() {
         // given
         Activity newActivity = new Activity();
-        newActivity.setStartDateTime(LocalDate.now().atTime(10, 0));
-        newActivity.setEndDateTime(LocalDate.now().atTime(11, 0));
+        newActivity.setStartDateTime(LocalDate.of(2024, 3, 1).atTime(10, 0));
+        newActivity.setEndDateTime(LocalDate.of(2024, 3, 1).atTime(11, 0));
 
+        Map<LocalDate, Long> addedMinutes = Map.of(LocalDate.of(2024, 3, 1), 60L);
         when(activityRepository.save(any(Activity.class))).thenReturn(newActivity);
+        when(dailyActivityService.addActivity(newActivity)).thenReturn(addedMinutes);
 
         // when
         Activity createdActivity = activityService.createActivity(newActivity, testUser.getId(), validToken);
@@ -257,6 +516,98 @@ class ActivityServiceTest {
         // then
         assertNotNull(createdActivity);
         assertEquals(testUser, createdActivity.getUser());
+        Mockito.verify(dailyActivityService).addActivity(newActivity);
+
+        // the other statistics are updated by the listeners of the event
+        ArgumentCaptor<ActivityStoredEvent> captor = ArgumentCaptor.forClass(ActivityStoredEvent.class);
+        Mockito.verify(eventPublisher).publishEvent(captor.capture());
+        assertEquals(testUser, captor.getValue().getUser());
+        assertEquals(List.of(newActivity), captor.getValue().getActivities());
+        assertEquals(addedMinutes, captor.getValue().getAddedMinutesByDay());
+    }
+
+    @Test
+    void createActivities_mixedBatch_perItemResults() {
+        // given
+        Activity valid1 = new Activity();
+        valid1.setStartDateTime(LocalDate.now().atTime(9, 0));
+        valid1.setEndDateTime(LocalDate.now().atTime(10, 0));
+        Activity missingEnd = new Activity();
+        missingEnd.setStartDateTime(LocalDate.now().atTime(11, 0));
+        Activity endBeforeStart = new Activity();
+        endBeforeStart.setStartDateTime(LocalDate.now().atTime(13, 0));
+        endBeforeStart.setEndDateTime(LocalDate.now().atTime(12, 0));
+        Activity valid2 = new Activity();
+        valid2.setStartDateTime(LocalDate.now().atTime(14, 0));
+        valid2.setEndDateTime(LocalDate.now().atTime(15, 0));
+
+        when(activityRepository.saveAll(any())).thenAnswer(invocation -> {
+            List<Activity> activities = invocation.getArgument(0);
+            for (int i = 0; i < activities.size(); i++) {
+                activities.get(i).setId(10L + i);
+            }
+            return activities;
+        });
+
+        // when
+        List<ActivityBatchResultGetDTO> results = activityService.createActivities(
+                Arrays.asList(valid1, missingEnd, endBeforeStart, valid2), testUser.getId(), validToken);
+
+        // then
+        assertEquals(4, results.size());
+        assertEquals(201, results.get(0).getStatus());
+        assertEquals(10L, results.get(0).getId());
+        assertEquals(400, results.get(1).getStatus());
+        assertNull(results.get(1).getId());
+        assertNotNull(results.get(1).getMessage());
+        assertEquals(400, results.get(2).getStatus());
+        assertEquals(201, results.get(3).getStatus());
+        assertEquals(11L, results.get(3).getId());
+        assertEquals(3, results.get(3).getIndex());
+
+        // the valid activities are stored together
+        Mockito.verify(activityRepository).saveAll(Arrays.asList(valid1, valid2));
+        Mockito.verify(activityRepository, Mockito.never()).save(any());
+        Mockito.verify(dailyActivityService).addActivities(Arrays.asList(valid1, valid2));
+        ArgumentCaptor<ActivityStoredEvent> captor = ArgumentCaptor.forClass(ActivityStoredEvent.class);
+        Mockito.verify(eventPublisher).publishEvent(captor.capture());
+        assertEquals(Arrays.asList(valid1, valid2), captor.getValue().getActivities());
+        assertEquals(testUser, valid2.getUser());
+    }
+
+    @Test
+    void setDailyGoal_invalidTarget_throwsException() {
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> activityService.setDailyGoal(testUser.getId(), validToken, 0));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        Mockito.verifyNoInteractions(dailyGoalService);
+    }
+
+    @Test
+    void getWeeklySummary_otherUser_throwsException() {
+        Long otherUserId = testUser2.getId();
+
+        assertThrows(ResponseStatusException.class,
+                () -> activityService.getWeeklySummary(otherUserId, validToken, null));
+        Mockito.verifyNoInteractions(weeklySummaryService);
+    }
+
+    @Test
+    void getStudyStreak_otherUser_throwsException() {
+        Long otherUserId = testUser2.getId();
+
+        assertThrows(ResponseStatusException.class,
+                () -> activityService.getStudyStreak(otherUserId, validToken));
+        Mockito.verifyNoInteractions(studyStreakService);
+    }
+
+    @Test
+    void createActivities_emptyBatch_throwsException() {
+        List<Activity> emptyBatch = List.of();
+
+        assertThrows(ResponseStatusException.class,
+                () -> activityService.createActivities(emptyBatch, testUser.getId(), validToken));
     }
 
     @Test
@@ -295,18 +646,16 @@ class ActivityServiceTest {
         when(membershipService.findByUserAndGroup(testUser, testGroup)).thenReturn(testMembership);
         when(membershipService.getActiveUsersInGroup(testGroup)).thenReturn(Arrays.asList(testUser, testUser2));
         
-        // Mock activities for both users
-        when(activityRepository.findByUserAndStartDateTimeBetweenOrderByStartDateTimeAsc(
-            eq(testUser), any(), any())).thenReturn(Arrays.asList(testActivity1, testActivity2));
-        
         Activity testUser2Activity = new Activity();
         testUser2Activity.setId(4L);
         testUser2Activity.setUser(testUser2);
         testUser2Activity.setStartDateTime(LocalDate.of(2024, 3, 1).atTime(10, 0));
         testUser2Activity.setEndDateTime(LocalDate.of(2024, 3, 1).atTime(11, 0));
-        
-        when(activityRepository.findByUserAndStartDateTimeBetweenOrderByStartDateTimeAsc(
-            eq(testUser2), any(), any())).thenReturn(Collections.singletonList(testUser2Activity));
+
+        // Activities of both users are returned by one batched query
+        when(activityRepository.findByUserIdInAndStartDateTimeBetweenOrderByStartDateTimeAsc(
+            eq(Arrays.asList(testUser.getId(), testUser2.getId())), any(), any()))
+            .thenReturn(Arrays.asList(testActivity1, testUser2Activity, testActivity2));
 
         // when
         List<UserActivitiesGetDTO> result = activityService.getGroupUsersActivities(
@@ -321,6 +670,11 @@ class ActivityServiceTest {
         UserActivitiesGetDTO secondUserActivities = result.get(1);
         assertEquals(testUser2.getId(), secondUserActivities.getUserId());
         assertEquals(1, secondUserActivities.getActivities().size());
+
+        // no per-member token lookup or activity query
+        Mockito.verify(userRepository, Mockito.never()).findByToken(testUser2.getToken());
+        Mockito.verify(activityRepository, Mockito.never())
+            .findByUserAndStartDateTimeBetweenOrderByStartDateTimeAsc(any(), any(), any());
     }
 
     @Test
@@ -346,18 +700,12 @@ class ActivityServiceTest {
         when(membershipService.findByUserAndGroup(testUser, testGroup)).thenReturn(testMembership);
         when(membershipService.getActiveUsersInGroup(testGroup)).thenReturn(Arrays.asList(testUser, testUser2));
         
-        // Mock activities for both users
-        when(activityRepository.findByUserAndStartDateTimeBetweenOrderByStartDateTimeAsc(
-            eq(testUser), any(), any())).thenReturn(Arrays.asList(testActivity1, testActivity2));
-        
-        Activity testUser2Activity = new Activity();
-        testUser2Activity.setId(4L);
-        testUser2Activity.setUser(testUser2);
-        testUser2Activity.setStartDateTime(LocalDate.of(2024, 3, 1).atTime(10, 0));
-        testUser2Activity.setEndDateTime(LocalDate.of(2024, 3, 1).atTime(11, 0));
-        
-        when(activityRepository.findByUserAndStartDateTimeBetweenOrderByStartDateTimeAsc(
-            eq(testUser2), any(), any())).thenReturn(Collections.singletonList(testUser2Activity));
+        // Daily totals of both users are returned by one batched query
+        when(dailyActivityService.getActivitiesForUsers(
+            Arrays.asList(testUser.getId(), testUser2.getId()), startDate, endDate, StatisticsGranularity.DAY))
+            .thenReturn(Map.of(
+                testUser.getId(), Collections.singletonList(aggregate(LocalDate.of(2024, 3, 1), 120)),
+                testUser2.getId(), Collections.singletonList(aggregate(LocalDate.of(2024, 3, 1), 60))));
 
         // when
         List<UserAggregatedActivitiesGetDTO> result = activityService.getGroupUsersAggregatedActivities(
@@ -391,4 +739,117 @@ class ActivityServiceTest {
                 testUser.getId(), validToken, testGroup.getId(), null, null);
         });
     }
-} 
\ No newline at end of file
+
+    @Test
+    void getGroupAggregatedActivities_autoGranularity_delegatesToRollup() {
+        // given
+        LocalDate startDate = LocalDate.of(2024, 1, 1);
+        LocalDate endDate = LocalDate.of(2024, 3, 31);
+        when(groupRepository.findById(testGroup.getId())).thenReturn(Optional.of(testGroup));
+        when(membershipService.findByUserAndGroup(testUser, testGroup)).thenReturn(testMembership);
+
+        GroupActivityAggregateDTO week = new GroupActivityAggregateDTO();
+        week.setDate(LocalDate.of(2024, 1, 1));
+        week.setTotalMinutes(300);
+        week.setActiveMembers(2);
+        when(dailyActivityService.getGroupActivities(testGroup.getId(), startDate, endDate,
+                StatisticsGranularity.WEEK)).thenReturn(Collections.singletonList(week));
+
+        // when
+        List<GroupActivityAggregateDTO> result = activityService.getGroupAggregatedActivities(testUser.getId(),
+                validToken, testGroup.getId(), startDate, endDate, StatisticsGranularity.AUTO);
+
+        // then
+        assertEquals(1, result.size());
+        assertEquals(300, result.get(0).getTotalMinutes());
+        Mockito.verify(membershipService, Mockito.never()).getActiveUsersInGroup(any());
+    }
+
+    @Test
+    void getGroupAggregatedActivities_startAfterEnd_throwsException() {
+        // given
+        when(groupRepository.findById(testGroup.getId())).thenReturn(Optional.of(testGroup));
+        when(membershipService.findByUserAndGroup(testUser, testGroup)).thenReturn(testMembership);
+        LocalDate startDate = LocalDate.of(2024, 3, 31);
+        LocalDate endDate = LocalDate.of(2024, 3, 1);
+
+        // when/then
+        assertThrows(ResponseStatusException.class, () -> activityService.getGroupAggregatedActivities(
+                testUser.getId(), validToken, testGroup.getId(), startDate, endDate, StatisticsGranularity.DAY));
+    }
+
+    @Test
+    void getGroupLeaderboard_success_addsUserDetails() {
+        // given
+        when(groupRepository.findById(testGroup.getId())).thenReturn(Optional.of(testGroup));
+        when(membershipService.findByUserAndGroup(testUser, testGroup)).thenReturn(testMembership);
+
+        LeaderboardEntryGetDTO first = new LeaderboardEntryGetDTO();
+        first.setRank(1);
+        first.setUserId(testUser2.getId());
+        first.setDuration(300);
+        LeaderboardEntryGetDTO second = new LeaderboardEntryGetDTO();
+        second.setRank(2);
+        second.setUserId(testUser.getId());
+        second.setDuration(120);
+        when(leaderboardService.getTopEntries(testGroup.getId(), LeaderboardWindow.WEEK, 2))
+                .thenReturn(Arrays.asList(first, second));
+        when(userRepository.findAllById(Arrays.asList(testUser2.getId(), testUser.getId())))
+                .thenReturn(Arrays.asList(testUser, testUser2));
+
+        // when
+        List<LeaderboardEntryGetDTO> result = activityService.getGroupLeaderboard(
+                testUser.getId(), validToken, testGroup.getId(), LeaderboardWindow.WEEK, 2);
+
+        // then
+        assertEquals(2, result.size());
+        assertEquals("testUser2", result.get(0).getUsername());
+        assertEquals(300, result.get(0).getDuration());
+        assertEquals("testUser", result.get(1).getUsername());
+
+        // the members of the group are not loaded
+        Mockito.verify(membershipService, Mockito.never()).getActiveUsersInGroup(any());
+    }
+
+    @Test
+    void getGroupLeaderboard_invalidLimit_throwsException() {
+        // given
+        when(groupRepository.findById(testGroup.getId())).thenReturn(Optional.of(testGroup));
+        when(membershipService.findByUserAndGroup(testUser, testGroup)).thenReturn(testMembership);
+
+        // when/then
+        assertThrows(ResponseStatusException.class, () -> activityService.getGroupLeaderboard(
+                testUser.getId(), validToken, testGroup.getId(), LeaderboardWindow.WEEK, 0));
+    }
+
+    @Test
+    void getGroupSessionStatistics_notGroupMember_throwsException() {
+        // given
+        when(groupRepository.findById(testGroup.getId())).thenReturn(Optional.of(testGroup));
+
+        GroupMembership inactiveMembership = new GroupMembership();
+        inactiveMembership.setStatus(MembershipStatus.PENDING);
+        when(membershipService.findByUserAndGroup(testUser, testGroup)).thenReturn(inactiveMembership);
+
+        // when/then
+        assertThrows(ResponseStatusException.class, () -> activityService.getGroupSessionStatistics(
+                testUser.getId(), validToken, testGroup.getId()));
+        Mockito.verifyNoInteractions(sessionHistogramService);
+    }
+
+    @Test
+    void getStudyHeatmap_otherUser_throwsException() {
+        Long otherUserId = testUser2.getId();
+
+        assertThrows(ResponseStatusException.class,
+                () -> activityService.getStudyHeatmap(otherUserId, validToken));
+        Mockito.verifyNoInteractions(studyHeatmapService);
+    }
+
+    private ActivityAggregateDTO aggregate(LocalDate date, long duration) {
+        ActivityAggregateDTO aggregateDTO = new ActivityAggregateDTO();
+        aggregateDTO.setDate(date);
+        aggregateDTO.setDuration(duration);
+        return aggregateDTO;
+    }
+}
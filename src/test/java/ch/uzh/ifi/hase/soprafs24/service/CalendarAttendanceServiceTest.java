@@ -0,0 +1,183 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.CalendarEntries;
+import ch.uzh.ifi.hase.soprafs24.entity.Group;
+import ch.uzh.ifi.hase.soprafs24.entity.GroupMembership;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.CalendarEntriesRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.GroupMembershipRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.CalendarAttendanceGetDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+class CalendarAttendanceServiceTest {
+
+    @Mock
+    private CalendarEntriesRepository calendarEntriesRepository;
+
+    @Mock
+    private GroupMembershipRepository groupMembershipRepository;
+
+    @Mock
+    private ActivityRepository activityRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private GroupService groupService;
+
+    @Mock
+    private ActivityArchiveService activityArchiveService;
+
+    @InjectMocks
+    private CalendarAttendanceService calendarAttendanceService;
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 10);
+    private static final LocalDateTime FROM = DAY.atStartOfDay();
+    private static final LocalDateTime TO = DAY.plusDays(1).atStartOfDay();
+
+    private Group testGroup;
+    private User alice;
+    private User bob;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+
+        testGroup = new Group();
+        testGroup.setId(5L);
+        alice = user(1L, "alice");
+        bob = user(2L, "bob");
+
+        when(userRepository.findByToken("token")).thenReturn(alice);
+        when(groupService.findById(5L)).thenReturn(testGroup);
+        when(groupMembershipRepository.findByGroupAndUser(testGroup, alice))
+                .thenReturn(Optional.of(new GroupMembership()));
+        List<GroupMembership> memberships = Arrays.asList(membership(alice), membership(bob));
+        when(groupMembershipRepository.findByGroupAndStatus(testGroup, MembershipStatus.ACTIVE))
+                .thenReturn(memberships);
+
+        // entries 9:00-10:00 and 14:00-16:00
+        List<CalendarEntries> entries = Arrays.asList(entry(10L, 9, 10), entry(11L, 14, 16));
+        when(calendarEntriesRepository.findOverlapping(5L, FROM, TO)).thenReturn(entries);
+    }
+
+    @Test
+    void getAttendance_overlappingSessions_minutesPerMember() {
+        // given: alice studies 8:30-9:30 and 9:15-9:45 (counted once), bob 15:00-17:00
+        List<ActivityRepository.UserSessionBounds> sessions = Arrays.asList(
+                session(1L, at(8, 30), at(9, 30)), session(1L, at(9, 15), at(9, 45)),
+                session(2L, at(15, 0), at(17, 0)));
+        when(activityRepository.findOverlappingSessionBoundsOfUsers(anyCollection(), eq(FROM), eq(TO)))
+                .thenReturn(sessions);
+
+        // when
+        List<CalendarAttendanceGetDTO> attendance = calendarAttendanceService.getAttendance(5L, "token", DAY, DAY);
+
+        // then
+        assertEquals(2, attendance.size());
+        assertEquals(10L, attendance.get(0).getEntryId());
+        assertEquals(60, attendance.get(0).getPlannedMinutes());
+        assertEquals(1, attendance.get(0).getAttendedMembers());
+        assertEquals(2, attendance.get(0).getActiveMembers());
+        assertEquals("alice", attendance.get(0).getAttendees().get(0).getUsername());
+        assertEquals(45, attendance.get(0).getAttendees().get(0).getOverlapMinutes());
+
+        assertEquals(120, attendance.get(1).getPlannedMinutes());
+        assertEquals(1, attendance.get(1).getAttendedMembers());
+        assertEquals(2L, attendance.get(1).getAttendees().get(0).getUserId());
+        assertEquals(60, attendance.get(1).getAttendees().get(0).getOverlapMinutes());
+    }
+
+    @Test
+    void getAttendance_archivedSessions_included() {
+        // given: bob's session 9:00-9:20 was archived
+        ActivityRepository.SessionBounds archived = session(2L, at(9, 0), at(9, 20));
+        when(activityArchiveService.findOverlappingSessionBounds(2L, FROM, TO)).thenReturn(List.of(archived));
+
+        // when
+        List<CalendarAttendanceGetDTO> attendance = calendarAttendanceService.getAttendance(5L, "token", DAY, DAY);
+
+        // then
+        assertEquals(1, attendance.get(0).getAttendedMembers());
+        assertEquals("bob", attendance.get(0).getAttendees().get(0).getUsername());
+        assertEquals(20, attendance.get(0).getAttendees().get(0).getOverlapMinutes());
+        assertTrue(attendance.get(1).getAttendees().isEmpty());
+    }
+
+    @Test
+    void getAttendance_notMember_throwsForbidden() {
+        when(groupMembershipRepository.findByGroupAndUser(testGroup, alice)).thenReturn(Optional.empty());
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> calendarAttendanceService.getAttendance(5L, "token", DAY, DAY));
+        assertEquals(HttpStatus.FORBIDDEN, exception.getStatus());
+    }
+
+    @Test
+    void getAttendance_startAfterEnd_throwsBadRequest() {
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> calendarAttendanceService.getAttendance(5L, "token", DAY, DAY.minusDays(1)));
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        Mockito.verify(calendarEntriesRepository, Mockito.never()).findOverlapping(any(), any(), any());
+    }
+
+    private static LocalDateTime at(int hour, int minute) {
+        return DAY.atTime(hour, minute);
+    }
+
+    private static User user(Long id, String username) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        return user;
+    }
+
+    private GroupMembership membership(User user) {
+        GroupMembership membership = new GroupMembership();
+        membership.setGroup(testGroup);
+        membership.setUser(user);
+        membership.setStatus(MembershipStatus.ACTIVE);
+        return membership;
+    }
+
+    private CalendarEntries entry(Long id, int startHour, int endHour) {
+        CalendarEntries entry = new CalendarEntries();
+        entry.setId(id);
+        entry.setGroup(testGroup);
+        entry.setTitle("Entry " + id);
+        entry.setStartTime(at(startHour, 0));
+        entry.setEndTime(at(endHour, 0));
+        return entry;
+    }
+
+    private ActivityRepository.UserSessionBounds session(Long userId, LocalDateTime start, LocalDateTime end) {
+        ActivityRepository.UserSessionBounds session = Mockito.mock(ActivityRepository.UserSessionBounds.class);
+        when(session.getUserId()).thenReturn(userId);
+        when(session.getStartDateTime()).thenReturn(start);
+        when(session.getEndDateTime()).thenReturn(end);
+        return session;
+    }
+}
@@ -0,0 +1,122 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.StatisticsGranularity;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.entity.DailyActivity;
+import ch.uzh.ifi.hase.soprafs24.entity.PeriodActivity;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.DailyActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.PeriodActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.StudyStreakRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Not transactional: every store runs in its own transaction, like the
+ * requests of a client, so the stores can run concurrently
+ */
+@WebAppConfiguration
+@SpringBootTest
+class DailyActivityServiceIntegrationTest {
+
+    @Qualifier("userRepository")
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ActivityRepository activityRepository;
+
+    @Autowired
+    private DailyActivityRepository dailyActivityRepository;
+
+    @Autowired
+    private PeriodActivityRepository periodActivityRepository;
+
+    @Autowired
+    private StudyStreakRepository studyStreakRepository;
+
+    @Autowired
+    private ActivityService activityService;
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 14);
+
+    @AfterEach
+    void tearDown() {
+        activityRepository.deleteAll();
+        dailyActivityRepository.deleteAll();
+        periodActivityRepository.deleteAll();
+        studyStreakRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void createActivity_concurrentStores_noMinutesLost() throws Exception {
+        // given
+        User user = new User();
+        user.setUsername("concurrentUser");
+        user.setPassword("password");
+        user.setToken("concurrentUser-token");
+        user.setStatus(UserStatus.ONLINE);
+        User storedUser = userRepository.save(user);
+
+        int threadCount = 2;
+        int activitiesPerThread = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // when: two clients store sessions of 5 minutes on the same day at the same time
+        List<Future<?>> stores = new ArrayList<>();
+        for (int thread = 0; thread < threadCount; thread++) {
+            int firstSession = thread * activitiesPerThread;
+            stores.add(executor.submit(() -> {
+                start.await();
+                for (int i = firstSession; i < firstSession + activitiesPerThread; i++) {
+                    Activity activity = new Activity();
+                    activity.setStartDateTime(DAY.atTime(8, 0).plusMinutes(10L * i));
+                    activity.setEndDateTime(activity.getStartDateTime().plusMinutes(5));
+                    activityService.createActivity(activity, storedUser.getId(), storedUser.getToken());
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> store : stores) {
+            store.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // then: one row per day and period holding every session
+        long expectedMinutes = threadCount * activitiesPerThread * 5L;
+        DailyActivity dailyActivity = dailyActivityRepository.findByUserIdAndDate(storedUser.getId(), DAY)
+                .orElseThrow();
+        assertEquals(expectedMinutes, dailyActivity.getDuration());
+        assertEquals(1, dailyActivityRepository.count());
+
+        for (StatisticsGranularity granularity : List.of(StatisticsGranularity.WEEK, StatisticsGranularity.MONTH,
+                StatisticsGranularity.YEAR)) {
+            List<PeriodActivity> periods = periodActivityRepository
+                    .findByUserIdAndGranularityAndPeriodStartBetweenOrderByPeriodStartAsc(storedUser.getId(),
+                            granularity, DAY.withDayOfYear(1), DAY);
+            assertEquals(1, periods.size());
+            assertEquals(expectedMinutes, periods.get(0).getDuration());
+        }
+    }
+}
@@ -0,0 +1,538 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.StatisticsGranularity;
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.entity.DailyActivity;
+import ch.uzh.ifi.hase.soprafs24.entity.PeriodActivity;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.DailyActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.PeriodActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityAggregateDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+class DailyActivityServiceTest {
+
+    @Mock
+    private DailyActivityRepository dailyActivityRepository;
+
+    @Mock
+    private PeriodActivityRepository periodActivityRepository;
+
+    @Mock
+    private ActivityRepository activityRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private ActivityArchiveService activityArchiveService;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @InjectMocks
+    private DailyActivityService dailyActivityService;
+
+    private User testUser;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(dailyActivityService, "entityManager", entityManager);
+
+        testUser = new User();
+        testUser.setId(1L);
+        testUser.setUsername("testUser");
+    }
+
+    @Test
+    void roundedMinutes_roundsToNearestMinute() {
+        LocalDate day = LocalDate.of(2024, 3, 1);
+
+        assertEquals(60, DailyActivityService.roundedMinutes(day.atTime(9, 0), day.atTime(10, 0)));
+        assertEquals(1, DailyActivityService.roundedMinutes(day.atTime(9, 0), day.atTime(9, 1, 29)));
+        assertEquals(2, DailyActivityService.roundedMinutes(day.atTime(9, 0), day.atTime(9, 1, 30)));
+    }
+
+    @Test
+    void periodStart_alignsToFirstDayOfPeriod() {
+        LocalDate day = LocalDate.of(2024, 3, 14); // thursday
+
+        assertEquals(day, DailyActivityService.periodStart(day, StatisticsGranularity.DAY));
+        assertEquals(LocalDate.of(2024, 3, 11), DailyActivityService.periodStart(day, StatisticsGranularity.WEEK));
+        assertEquals(LocalDate.of(2024, 3, 1), DailyActivityService.periodStart(day, StatisticsGranularity.MONTH));
+        assertEquals(LocalDate.of(2024, 1, 1), DailyActivityService.periodStart(day, StatisticsGranularity.YEAR));
+    }
+
+    @Test
+    void addActivity_newDay_createsRollup() {
+        // given
+        Activity activity = activity(LocalDate.of(2024, 3, 1), 9, 10);
+        when(dailyActivityRepository.addDuration(1L, LocalDate.of(2024, 3, 1), 60L)).thenReturn(0);
+
+        // when
+        dailyActivityService.addActivity(activity);
+
+        // then: the row is inserted while the user is locked
+        InOrder inOrder = Mockito.inOrder(userRepository, dailyActivityRepository);
+        inOrder.verify(userRepository).lockById(1L);
+        inOrder.verify(dailyActivityRepository).addDuration(1L, LocalDate.of(2024, 3, 1), 60L);
+        ArgumentCaptor<DailyActivity> captor = ArgumentCaptor.forClass(DailyActivity.class);
+        Mockito.verify(dailyActivityRepository).saveAndFlush(captor.capture());
+        assertEquals(testUser, captor.getValue().getUser());
+        assertEquals(LocalDate.of(2024, 3, 1), captor.getValue().getDate());
+        assertEquals(60, captor.getValue().getDuration());
+        Mockito.verify(entityManager).detach(captor.getValue());
+    }
+
+    @Test
+    void addActivity_existingDay_incrementsRollup() {
+        // given
+        when(dailyActivityRepository.addDuration(1L, LocalDate.of(2024, 3, 1), 60L)).thenReturn(1);
+
+        // when
+        dailyActivityService.addActivity(activity(LocalDate.of(2024, 3, 1), 14, 15));
+
+        // then: the stored row is changed by the atomic update only
+        Mockito.verify(dailyActivityRepository).addDuration(1L, LocalDate.of(2024, 3, 1), 60L);
+        Mockito.verify(dailyActivityRepository, Mockito.never()).saveAndFlush(any());
+    }
+
+    @Test
+    void addActivity_updatesWeekMonthAndYear() {
+        // given: the week is stored already
+        when(periodActivityRepository.addDuration(1L, StatisticsGranularity.WEEK, LocalDate.of(2024, 3, 11), 60L))
+                .thenReturn(1);
+
+        // when
+        dailyActivityService.addActivity(activity(LocalDate.of(2024, 3, 14), 9, 10));
+
+        // then
+        Mockito.verify(periodActivityRepository).addDuration(1L, StatisticsGranularity.WEEK,
+                LocalDate.of(2024, 3, 11), 60L);
+        ArgumentCaptor<PeriodActivity> captor = ArgumentCaptor.forClass(PeriodActivity.class);
+        Mockito.verify(periodActivityRepository, Mockito.times(2)).saveAndFlush(captor.capture());
+
+        PeriodActivity month = captor.getAllValues().get(0);
+        assertEquals(StatisticsGranularity.MONTH, month.getGranularity());
+        assertEquals(LocalDate.of(2024, 3, 1), month.getPeriodStart());
+        assertEquals(60, month.getDuration());
+
+        PeriodActivity year = captor.getAllValues().get(1);
+        assertEquals(StatisticsGranularity.YEAR, year.getGranularity());
+        assertEquals(LocalDate.of(2024, 1, 1), year.getPeriodStart());
+        assertEquals(60, year.getDuration());
+    }
+
+    @Test
+    void addActivities_sameDay_writesRollupsOnce() {
+        // given
+        LocalDate day = LocalDate.of(2024, 3, 14);
+
+        // when
+        dailyActivityService.addActivities(Arrays.asList(activity(day, 9, 10), activity(day, 11, 13),
+                activity(day.plusDays(1), 9, 10)));
+
+        // then one row per day and one per week, month and year
+        ArgumentCaptor<DailyActivity> captor = ArgumentCaptor.forClass(DailyActivity.class);
+        Mockito.verify(dailyActivityRepository, Mockito.times(2)).saveAndFlush(captor.capture());
+        assertEquals(180, captor.getAllValues().get(0).getDuration());
+        assertEquals(60, captor.getAllValues().get(1).getDuration());
+
+        ArgumentCaptor<PeriodActivity> periodCaptor = ArgumentCaptor.forClass(PeriodActivity.class);
+        Mockito.verify(periodActivityRepository, Mockito.times(3)).saveAndFlush(periodCaptor.capture());
+        periodCaptor.getAllValues().forEach(periodActivity -> assertEquals(240, periodActivity.getDuration()));
+    }
+
+    @Test
+    void getActivities_week_readsPeriodRollupFromStartOfWeek() {
+        // given
+        PeriodActivity week = new PeriodActivity();
+        week.setUser(testUser);
+        week.setGranularity(StatisticsGranularity.WEEK);
+        week.setPeriodStart(LocalDate.of(2024, 2, 26));
+        week.setDuration(300);
+        when(periodActivityRepository.findByUserIdAndGranularityAndPeriodStartBetweenOrderByPeriodStartAsc(1L,
+                StatisticsGranularity.WEEK, LocalDate.of(2024, 2, 26), LocalDate.of(2024, 3, 31)))
+                .thenReturn(List.of(week));
+
+        // when
+        List<ActivityAggregateDTO> result = dailyActivityService.getActivities(1L, LocalDate.of(2024, 3, 1),
+                LocalDate.of(2024, 3, 31), StatisticsGranularity.WEEK);
+
+        // then
+        assertEquals(1, result.size());
+        assertEquals(LocalDate.of(2024, 2, 26), result.get(0).getDate());
+        assertEquals(300, result.get(0).getDuration());
+        Mockito.verifyNoInteractions(dailyActivityRepository);
+    }
+
+    @Test
+    void getDailyActivities_mapsRollups() {
+        // given
+        DailyActivity dailyActivity = new DailyActivity();
+        dailyActivity.setUser(testUser);
+        dailyActivity.setDate(LocalDate.of(2024, 3, 1));
+        dailyActivity.setDuration(90);
+        when(dailyActivityRepository.findByUserIdAndDateBetweenOrderByDateAsc(any(), any(), any()))
+                .thenReturn(List.of(dailyActivity));
+
+        // when
+        List<ActivityAggregateDTO> result = dailyActivityService.getDailyActivities(1L,
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31));
+
+        // then
+        assertEquals(1, result.size());
+        assertEquals(LocalDate.of(2024, 3, 1), result.get(0).getDate());
+        assertEquals(90, result.get(0).getDuration());
+    }
+
+    @Test
+    void rebuild_nothingArchived_sumsInDatabase() {
+        // given: 120 minutes on two days, summed by the database
+        List<ActivityRepository.DailyDuration> durations = List.of(
+                dailyDuration(LocalDate.of(2024, 3, 1), 120), dailyDuration(LocalDate.of(2024, 3, 2), 120));
+        when(activityRepository.sumDurationsByUserAndDay()).thenReturn(durations);
+        when(userRepository.getReferenceById(1L)).thenReturn(testUser);
+
+        // when
+        int rebuilt = dailyActivityService.rebuild();
+
+        // then
+        assertEquals(2, rebuilt);
+        Mockito.verify(dailyActivityRepository).deleteAllInBatch();
+        Mockito.verify(dailyActivityRepository).saveAll(any());
+        Mockito.verify(periodActivityRepository).deleteAllInBatch();
+        Mockito.verify(activityRepository, Mockito.never()).findAll();
+        Mockito.verify(activityRepository, Mockito.never()).streamAllSessionBoundsByUser();
+
+        // both days fall into the same week, month and year
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<PeriodActivity>> captor = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(periodActivityRepository).saveAll(captor.capture());
+        assertEquals(3, captor.getValue().size());
+        captor.getValue().forEach(periodActivity -> assertEquals(240, periodActivity.getDuration()));
+    }
+
+    @Test
+    void rebuild_archivedSessions_overlapsCountedOnce() {
+        // given: 9-11 is archived, 10-12 and a duplicate of 10-12 on the same day are in the table
+        LocalDate day = LocalDate.of(2024, 3, 1);
+        List<ActivityRepository.SessionBounds> archived = List.of(session(day, 9, 11));
+        Stream<ActivityRepository.UserSessionBounds> sessions = Stream.of(
+                session(day, 10, 12), session(day, 10, 12));
+        when(activityArchiveService.findArchivedUserIds()).thenReturn(List.of(1L));
+        when(activityArchiveService.findSessionBounds(1L)).thenReturn(archived);
+        when(activityRepository.streamAllSessionBoundsByUser()).thenReturn(sessions);
+        when(userRepository.getReferenceById(1L)).thenReturn(testUser);
+
+        // when
+        dailyActivityService.rebuild();
+
+        // then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<DailyActivity>> captor = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(dailyActivityRepository).saveAll(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals(180, captor.getValue().iterator().next().getDuration());
+    }
+
+    @Test
+    void rebuild_lateSessionOlderThanArchived_mergedByStart() {
+        // given: 10-12 is archived, 9-11 was stored later and is still in the table,
+        // user 2 only has archived sessions
+        LocalDate day = LocalDate.of(2024, 3, 1);
+        User archivedUser = new User();
+        archivedUser.setId(2L);
+        List<ActivityRepository.SessionBounds> archived = List.of(session(day, 10, 12));
+        List<ActivityRepository.SessionBounds> archivedOfUser2 = List.of(session(day, 14, 15));
+        Stream<ActivityRepository.UserSessionBounds> sessions = Stream.of(session(day, 9, 11));
+        when(activityArchiveService.findArchivedUserIds()).thenReturn(List.of(1L, 2L));
+        when(activityArchiveService.findSessionBounds(1L)).thenReturn(archived);
+        when(activityArchiveService.findSessionBounds(2L)).thenReturn(archivedOfUser2);
+        when(activityRepository.streamAllSessionBoundsByUser()).thenReturn(sessions);
+        when(userRepository.getReferenceById(1L)).thenReturn(testUser);
+        when(userRepository.getReferenceById(2L)).thenReturn(archivedUser);
+
+        // when
+        dailyActivityService.rebuild();
+
+        // then: 9-11 is swept before 10-12, so 9:00 - 12:00 is counted
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<DailyActivity>> captor = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(dailyActivityRepository).saveAll(captor.capture());
+        Map<Long, Long> minutesByUser = captor.getValue().stream()
+                .collect(Collectors.toMap(dailyActivity -> dailyActivity.getUser().getId(),
+                        DailyActivity::getDuration));
+        assertEquals(Map.of(1L, 180L, 2L, 60L), minutesByUser);
+    }
+
+    @Test
+    void addActivity_overlapsStoredSession_addsUncoveredTime() {
+        // given: 9:00 - 10:00 is already stored
+        LocalDate day = LocalDate.of(2024, 3, 1);
+        Activity activity = activity(day, 9, 11);
+        activity.setId(5L);
+        List<ActivityRepository.SessionBounds> stored = List.of(session(day, 9, 10));
+        when(activityRepository.findOverlappingSessionBounds(1L, day.atTime(9, 0), day.atTime(11, 0), List.of(5L)))
+                .thenReturn(stored);
+
+        // when
+        Map<LocalDate, Long> addedMinutes = dailyActivityService.addActivity(activity);
+
+        // then
+        assertEquals(Map.of(day, 60L), addedMinutes);
+        ArgumentCaptor<DailyActivity> captor = ArgumentCaptor.forClass(DailyActivity.class);
+        Mockito.verify(dailyActivityRepository).saveAndFlush(captor.capture());
+        assertEquals(60, captor.getValue().getDuration());
+    }
+
+    @Test
+    void addActivities_overlappingEachOther_countedOnce() {
+        // given
+        LocalDate day = LocalDate.of(2024, 3, 1);
+        Activity first = activity(day, 9, 11);
+        Activity duplicate = activity(day, 9, 11);
+        Activity later = activity(day, 10, 12);
+
+        // when
+        Map<LocalDate, Long> addedMinutes = dailyActivityService.addActivities(Arrays.asList(later, duplicate, first));
+
+        // then
+        assertEquals(Map.of(day, 180L), addedMinutes);
+        ArgumentCaptor<DailyActivity> captor = ArgumentCaptor.forClass(DailyActivity.class);
+        Mockito.verify(dailyActivityRepository).saveAndFlush(captor.capture());
+        assertEquals(180, captor.getValue().getDuration());
+    }
+
+    @Test
+    void addActivity_startsDayBeforeStoredSession_timeMovedToEarlierDay() {
+        // given: 00:10 - 00:50 of the second day is stored, the new session runs
+        // from 23:00 of the first day to 01:00 and covers it
+        LocalDate day = LocalDate.of(2024, 3, 1);
+        LocalDate nextDay = day.plusDays(1);
+        Activity activity = activity(day.atTime(23, 0), nextDay.atTime(1, 0));
+        activity.setId(5L);
+        List<ActivityRepository.SessionBounds> stored = List.of(session(nextDay.atTime(0, 10), nextDay.atTime(0, 50)));
+        when(activityRepository.findOverlappingSessionBounds(1L, day.atTime(23, 0), nextDay.atTime(1, 0),
+                List.of(5L))).thenReturn(stored);
+        when(dailyActivityRepository.addDuration(1L, nextDay, -40L)).thenReturn(1);
+
+        // when
+        Map<LocalDate, Long> addedMinutes = dailyActivityService.addActivity(activity);
+
+        // then: like rebuild, the covered 40 minutes belong to the session that started first
+        assertEquals(Map.of(day, 120L, nextDay, -40L), addedMinutes);
+        Mockito.verify(dailyActivityRepository).addDuration(1L, nextDay, -40L);
+        ArgumentCaptor<DailyActivity> captor = ArgumentCaptor.forClass(DailyActivity.class);
+        Mockito.verify(dailyActivityRepository).saveAndFlush(captor.capture());
+        assertEquals(day, captor.getValue().getDate());
+        assertEquals(120, captor.getValue().getDuration());
+    }
+
+    @Test
+    void addActivity_outOfOrder_sameRollupAsRebuild() {
+        // given: overlapping sessions around midnight, stored in a shuffled order
+        LocalDate day = LocalDate.of(2024, 3, 1);
+        LocalDate nextDay = day.plusDays(1);
+        List<Activity> sessions = List.of(
+                activity(day.atTime(22, 0), nextDay.atTime(0, 30)),
+                activity(day.atTime(23, 0), nextDay.atTime(1, 0)),
+                activity(nextDay.atTime(0, 10), nextDay.atTime(0, 50)),
+                activity(nextDay.atTime(0, 40), nextDay.atTime(2, 0)),
+                activity(nextDay.atTime(23, 30), nextDay.plusDays(1).atTime(0, 20)));
+        List<ActivityRepository.UserSessionBounds> bounds = sessions.stream()
+                .map(session -> session(session.getStartDateTime(), session.getEndDateTime()))
+                .toList();
+
+        List<ActivityRepository.SessionBounds> stored = new ArrayList<>();
+        Map<LocalDate, DailyActivity> rollup = new TreeMap<>();
+        when(activityRepository.findOverlappingSessionBounds(eq(1L), any(), any())).thenAnswer(invocation -> {
+            LocalDateTime from = invocation.getArgument(1);
+            LocalDateTime to = invocation.getArgument(2);
+            return stored.stream()
+                    .filter(session -> session.getStartDateTime().isBefore(to)
+                            && session.getEndDateTime().isAfter(from))
+                    .toList();
+        });
+        when(dailyActivityRepository.addDuration(eq(1L), any(), anyLong())).thenAnswer(invocation -> {
+            DailyActivity dailyActivity = rollup.get(invocation.<LocalDate>getArgument(1));
+            if (dailyActivity == null) {
+                return 0;
+            }
+            dailyActivity.setDuration(dailyActivity.getDuration() + invocation.<Long>getArgument(2));
+            return 1;
+        });
+        when(dailyActivityRepository.saveAndFlush(any())).thenAnswer(invocation -> {
+            DailyActivity dailyActivity = invocation.getArgument(0);
+            rollup.put(dailyActivity.getDate(), dailyActivity);
+            return dailyActivity;
+        });
+
+        // when stored one by one
+        for (int i : List.of(4, 2, 0, 3, 1)) {
+            dailyActivityService.addActivity(sessions.get(i));
+            stored.add(bounds.get(i));
+        }
+        Map<LocalDate, Long> incremental = rollup.values().stream()
+                .collect(Collectors.toMap(DailyActivity::getDate, DailyActivity::getDuration));
+
+        // and rebuilt, with the first and the third session archived
+        List<ActivityRepository.SessionBounds> archived = List.of(bounds.get(0), bounds.get(2));
+        when(activityArchiveService.findArchivedUserIds()).thenReturn(List.of(1L));
+        when(activityArchiveService.findSessionBounds(1L)).thenReturn(archived);
+        when(activityRepository.streamAllSessionBoundsByUser())
+                .thenReturn(Stream.of(bounds.get(1), bounds.get(3), bounds.get(4)));
+        when(userRepository.getReferenceById(1L)).thenReturn(testUser);
+        dailyActivityService.rebuild();
+
+        // then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<DailyActivity>> captor = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(dailyActivityRepository).saveAll(captor.capture());
+        Map<LocalDate, Long> rebuilt = captor.getValue().stream()
+                .collect(Collectors.toMap(DailyActivity::getDate, DailyActivity::getDuration));
+        assertEquals(Map.of(day, 180L, nextDay, 110L), rebuilt);
+        assertEquals(rebuilt, incremental);
+    }
+
+    @Test
+    void addActivity_lateSessionOlderThanArchived_sameRollupAsRebuild() {
+        // given: 10:00 - 11:00 and 23:30 - 00:30 are stored and archived afterwards,
+        // 00:15 - 01:00 stays in the table, then two late sessions that started before
+        // the archived ones are posted
+        LocalDate day = LocalDate.of(2024, 3, 1);
+        LocalDate nextDay = day.plusDays(1);
+        Activity firstArchived = activity(day, 10, 11);
+        Activity secondArchived = activity(day.atTime(23, 30), nextDay.atTime(0, 30));
+        Activity stored = activity(nextDay.atTime(0, 15), nextDay.atTime(1, 0));
+        Activity firstLate = activity(day.atTime(9, 30), day.atTime(10, 30));
+        Activity secondLate = activity(day.atTime(23, 0), nextDay.atTime(0, 20));
+        Map<Activity, ActivityRepository.UserSessionBounds> bounds = new HashMap<>();
+        for (Activity activity : List.of(firstArchived, secondArchived, stored, firstLate, secondLate)) {
+            bounds.put(activity, session(activity.getStartDateTime(), activity.getEndDateTime()));
+        }
+
+        List<ActivityRepository.SessionBounds> table = new ArrayList<>();
+        List<ActivityRepository.SessionBounds> archive = new ArrayList<>();
+        Map<LocalDate, DailyActivity> rollup = new TreeMap<>();
+        when(activityRepository.findOverlappingSessionBounds(eq(1L), any(), any()))
+                .thenAnswer(invocation -> overlapping(table, invocation.getArgument(1), invocation.getArgument(2)));
+        when(activityArchiveService.findOverlappingSessionBounds(eq(1L), any(), any()))
+                .thenAnswer(invocation -> overlapping(archive, invocation.getArgument(1), invocation.getArgument(2)));
+        when(dailyActivityRepository.addDuration(eq(1L), any(), anyLong())).thenAnswer(invocation -> {
+            DailyActivity dailyActivity = rollup.get(invocation.<LocalDate>getArgument(1));
+            if (dailyActivity == null) {
+                return 0;
+            }
+            dailyActivity.setDuration(dailyActivity.getDuration() + invocation.<Long>getArgument(2));
+            return 1;
+        });
+        when(dailyActivityRepository.saveAndFlush(any())).thenAnswer(invocation -> {
+            DailyActivity dailyActivity = invocation.getArgument(0);
+            rollup.put(dailyActivity.getDate(), dailyActivity);
+            return dailyActivity;
+        });
+
+        // when stored one by one, archiving in between
+        for (Activity activity : List.of(firstArchived, secondArchived, stored)) {
+            dailyActivityService.addActivity(activity);
+            table.add(bounds.get(activity));
+        }
+        table.remove(bounds.get(firstArchived));
+        table.remove(bounds.get(secondArchived));
+        archive.add(bounds.get(firstArchived));
+        archive.add(bounds.get(secondArchived));
+        for (Activity activity : List.of(firstLate, secondLate)) {
+            dailyActivityService.addActivity(activity);
+            table.add(bounds.get(activity));
+        }
+        Map<LocalDate, Long> incremental = rollup.values().stream()
+                .collect(Collectors.toMap(DailyActivity::getDate, DailyActivity::getDuration));
+
+        // and rebuilt
+        when(activityArchiveService.findArchivedUserIds()).thenReturn(List.of(1L));
+        when(activityArchiveService.findSessionBounds(1L)).thenReturn(new ArrayList<>(archive));
+        when(activityRepository.streamAllSessionBoundsByUser()).thenReturn(Stream.of(
+                bounds.get(firstLate), bounds.get(secondLate), bounds.get(stored)));
+        when(userRepository.getReferenceById(1L)).thenReturn(testUser);
+        dailyActivityService.rebuild();
+
+        // then: 9:30 - 11:00 and 23:00 - 00:30 count on the first day, 00:30 - 01:00 on the next
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<DailyActivity>> captor = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(dailyActivityRepository).saveAll(captor.capture());
+        Map<LocalDate, Long> rebuilt = captor.getValue().stream()
+                .collect(Collectors.toMap(DailyActivity::getDate, DailyActivity::getDuration));
+        assertEquals(Map.of(day, 180L, nextDay, 30L), rebuilt);
+        assertEquals(rebuilt, incremental);
+    }
+
+    private static List<ActivityRepository.SessionBounds> overlapping(List<ActivityRepository.SessionBounds> sessions,
+            LocalDateTime from, LocalDateTime to) {
+        return sessions.stream()
+                .filter(session -> session.getStartDateTime().isBefore(to) && session.getEndDateTime().isAfter(from))
+                .toList();
+    }
+
+    private ActivityRepository.UserSessionBounds session(LocalDate day, int startHour, int endHour) {
+        return session(day.atTime(startHour, 0), day.atTime(endHour, 0));
+    }
+
+    private ActivityRepository.UserSessionBounds session(LocalDateTime start, LocalDateTime end) {
+        ActivityRepository.UserSessionBounds session = Mockito.mock(ActivityRepository.UserSessionBounds.class);
+        when(session.getUserId()).thenReturn(1L);
+        when(session.getStartDateTime()).thenReturn(start);
+        when(session.getEndDateTime()).thenReturn(end);
+        return session;
+    }
+
+    private ActivityRepository.DailyDuration dailyDuration(LocalDate date, long minutes) {
+        ActivityRepository.DailyDuration dailyDuration = Mockito.mock(ActivityRepository.DailyDuration.class);
+        when(dailyDuration.getUserId()).thenReturn(1L);
+        when(dailyDuration.getActivityDate()).thenReturn(date);
+        when(dailyDuration.getDuration()).thenReturn(minutes);
+        return dailyDuration;
+    }
+
+    private Activity activity(LocalDate day, int startHour, int endHour) {
+        return activity(day.atTime(startHour, 0), day.atTime(endHour, 0));
+    }
+
+    private Activity activity(LocalDateTime start, LocalDateTime end) {
+        Activity activity = new Activity();
+        activity.setUser(testUser);
+        activity.setStartDateTime(start);
+        activity.setEndDateTime(end);
+        return activity;
+    }
+}
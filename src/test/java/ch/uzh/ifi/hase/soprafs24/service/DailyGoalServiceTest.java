@@ -0,0 +1,172 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.DailyActivity;
+import ch.uzh.ifi.hase.soprafs24.entity.DailyGoal;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.DailyActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.DailyGoalRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.DailyGoalGetDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+class DailyGoalServiceTest {
+
+    @Mock
+    private DailyGoalRepository dailyGoalRepository;
+
+    @Mock
+    private DailyActivityRepository dailyActivityRepository;
+
+    @Mock
+    private WebSocketService webSocketService;
+
+    @InjectMocks
+    private DailyGoalService dailyGoalService;
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 10);
+
+    private User testUser;
+    private DailyGoal testGoal;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+
+        testUser = new User();
+        testUser.setId(1L);
+        testUser.setStatus(UserStatus.ONLINE);
+
+        // 60 of 120 minutes studied on DAY
+        testGoal = new DailyGoal();
+        testGoal.setUser(testUser);
+        testGoal.setTargetMinutes(120);
+        testGoal.setProgressDate(DAY);
+        testGoal.setProgressMinutes(60);
+
+        when(dailyGoalRepository.findByUserId(1L)).thenReturn(Optional.of(testGoal));
+    }
+
+    @Test
+    void addMinutes_sameDay_addsProgressAtomically() {
+        dailyGoalService.addMinutes(testUser, Map.of(DAY, 30L));
+
+        Mockito.verify(dailyGoalRepository).startProgress(1L, DAY);
+        Mockito.verify(dailyGoalRepository).addProgress(1L, DAY, 30L);
+        Mockito.verify(dailyGoalRepository, Mockito.never()).save(any());
+        Mockito.verifyNoInteractions(webSocketService);
+    }
+
+    @Test
+    void onActivityStored_addsMinutesOfStoredActivities() {
+        dailyGoalService.onActivityStored(new ActivityStoredEvent(testUser, List.of(), Map.of(DAY, 30L)));
+
+        Mockito.verify(dailyGoalRepository).startProgress(1L, DAY);
+        Mockito.verify(dailyGoalRepository).addProgress(1L, DAY, 30L);
+    }
+
+    @Test
+    void addMinutes_targetReached_notifiesOnce() {
+        // given: the first call reaches the goal, the second finds it reached
+        DailyGoalRepository.GoalProgress progress = Mockito.mock(DailyGoalRepository.GoalProgress.class);
+        when(progress.getTargetMinutes()).thenReturn(120);
+        when(progress.getProgressMinutes()).thenReturn(120L);
+        when(dailyGoalRepository.findProgressByUserId(1L)).thenReturn(Optional.of(progress));
+        when(dailyGoalRepository.markReached(1L, DAY)).thenReturn(1).thenReturn(0);
+
+        // when
+        dailyGoalService.addMinutes(testUser, Map.of(DAY, 60L));
+        dailyGoalService.addMinutes(testUser, Map.of(DAY, 30L));
+
+        // then
+        Mockito.verify(webSocketService, Mockito.times(1)).sendGoalReached("1", DAY, 120L, 120L);
+    }
+
+    @Test
+    void addMinutes_severalDays_latestDayLast() {
+        // when
+        dailyGoalService.addMinutes(testUser, Map.of(DAY.plusDays(1), 20L, DAY, 10L));
+
+        // then
+        InOrder inOrder = Mockito.inOrder(dailyGoalRepository);
+        inOrder.verify(dailyGoalRepository).startProgress(1L, DAY);
+        inOrder.verify(dailyGoalRepository).addProgress(1L, DAY, 10L);
+        inOrder.verify(dailyGoalRepository).startProgress(1L, DAY.plusDays(1));
+        inOrder.verify(dailyGoalRepository).addProgress(1L, DAY.plusDays(1), 20L);
+        inOrder.verify(dailyGoalRepository).markReached(1L, DAY.plusDays(1));
+    }
+
+    @Test
+    void addMinutes_nothingAdded_noUpdate() {
+        dailyGoalService.addMinutes(testUser, Map.of(DAY, 0L));
+
+        Mockito.verifyNoInteractions(dailyGoalRepository);
+        Mockito.verify(webSocketService, Mockito.never()).sendGoalReached(anyString(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void setGoal_newGoal_startsFromTodaysRollup() {
+        // given
+        DailyActivity today = new DailyActivity();
+        today.setDuration(45L);
+        when(dailyGoalRepository.findByUserId(1L)).thenReturn(Optional.empty());
+        when(dailyActivityRepository.findByUserIdAndDate(1L, LocalDate.now())).thenReturn(Optional.of(today));
+        when(dailyGoalRepository.save(any(DailyGoal.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // when
+        dailyGoalService.setGoal(testUser, 90);
+
+        // then
+        ArgumentCaptor<DailyGoal> captor = ArgumentCaptor.forClass(DailyGoal.class);
+        Mockito.verify(dailyGoalRepository).save(captor.capture());
+        assertEquals(90, captor.getValue().getTargetMinutes());
+        assertEquals(LocalDate.now(), captor.getValue().getProgressDate());
+        assertEquals(45, captor.getValue().getProgressMinutes());
+    }
+
+    @Test
+    void getProgress_today_includesRunningSession() {
+        // given: 60 minutes stored today and a session running for 30 minutes
+        LocalDateTime now = LocalDateTime.now();
+        testGoal.setProgressDate(now.toLocalDate());
+        testUser.setStatus(UserStatus.WORK);
+        testUser.setStartTime(now.minusMinutes(30).isBefore(now.toLocalDate().atStartOfDay())
+                ? now.toLocalDate().atStartOfDay() : now.minusMinutes(30));
+
+        // when
+        DailyGoalGetDTO progress = dailyGoalService.getProgress(testUser);
+        long runningMinutes = DailyActivityService.roundedMinutes(testUser.getStartTime(), LocalDateTime.now());
+
+        // then
+        assertEquals(120, progress.getTargetMinutes());
+        assertEquals(60 + runningMinutes, progress.getMinutes());
+        Mockito.verifyNoInteractions(dailyActivityRepository);
+    }
+
+    @Test
+    void getProgress_previousDay_zeroToday() {
+        DailyGoalGetDTO progress = dailyGoalService.getProgress(testUser);
+
+        assertEquals(LocalDate.now(), progress.getDate());
+        assertEquals(0, progress.getMinutes());
+        assertFalse(progress.isReached());
+    }
+}
@@ -0,0 +1,141 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+class GroupTimerServiceTest {
+
+    @Mock
+    private WebSocketService webSocketService;
+
+    @InjectMocks
+    private GroupTimerService groupTimerService;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void sync_changedFields_versionedDeltaBroadcast() {
+        // given
+        groupTimerService.sync("10", "s1", "1", "alice", "WORK",
+                Map.of("startTime", "09:00", "duration", "1500000"), 0L);
+
+        // when: only the duration changes
+        long version = groupTimerService.sync("10", "s1", "1", "alice", "WORK",
+                Map.of("startTime", "09:00", "duration", "1200000"), 1L);
+
+        // then
+        assertEquals(2, version);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Object>> deltas = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(webSocketService, Mockito.times(2)).sendMessageToGroup(eq("10"), deltas.capture());
+
+        Map<String, Object> delta = deltas.getAllValues().get(1);
+        assertEquals("SYNC", delta.get("type"));
+        assertEquals(2L, delta.get("version"));
+        assertEquals("1200000", delta.get("duration"));
+        assertFalse(delta.containsKey("startTime"));
+        assertFalse(delta.containsKey("status"));
+
+        // the sender was up to date both times
+        Mockito.verify(webSocketService, Mockito.never()).sendToSession(anyString(), anyString(), any());
+    }
+
+    @Test
+    void sync_staleVersion_snapshotSentToSession() {
+        // given
+        groupTimerService.sync("10", "s1", "1", "alice", "WORK", Map.of("startTime", "09:00"), 0L);
+        groupTimerService.sync("10", "s1", "1", "alice", "WORK", Map.of("duration", "1500000"), 1L);
+
+        // when: a late joiner without changes
+        groupTimerService.sync("10", "s2", "2", "bob", null, Map.of(), null);
+
+        // then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Object>> snapshot = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(webSocketService).sendToSession(eq("s2"), eq("/queue/group.sync"), snapshot.capture());
+        assertEquals("SYNC_SNAPSHOT", snapshot.getValue().get("type"));
+        assertEquals(2L, snapshot.getValue().get("version"));
+        assertEquals("09:00", snapshot.getValue().get("startTime"));
+        assertEquals("1500000", snapshot.getValue().get("duration"));
+        assertEquals("WORK", snapshot.getValue().get("status"));
+        Mockito.verify(webSocketService, Mockito.times(2)).sendMessageToGroup(eq("10"), anyMap());
+    }
+
+    @Test
+    void sync_unchangedState_noBroadcast() {
+        groupTimerService.sync("10", "s1", "1", "alice", "WORK", Map.of("startTime", "09:00"), 0L);
+
+        long version = groupTimerService.sync("10", "s1", "1", "alice", "WORK",
+                Map.of("startTime", "09:00", "unknown", "x"), 1L);
+
+        assertEquals(1, version);
+        assertEquals(1, groupTimerService.getVersion("10"));
+        assertFalse(groupTimerService.getSnapshot("10").containsKey("unknown"));
+        Mockito.verify(webSocketService, Mockito.times(1)).sendMessageToGroup(eq("10"), anyMap());
+    }
+
+    @Test
+    void sync_whileDeltaSent_notBlockedAndSentInVersionOrder() throws Exception {
+        // given: the first delta is held in the broker until released
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Object> versions = new CopyOnWriteArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            Map<String, Object> delta = invocation.getArgument(1);
+            versions.add(delta.get("version"));
+            if (versions.size() == 1) {
+                sending.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(webSocketService).sendMessageToGroup(eq("10"), anyMap());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Long> first = executor.submit(() -> groupTimerService.sync("10", null, "1", "alice", "WORK",
+                Map.of("duration", "1500000"), 0L));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+        // when: another member syncs while the first delta is being sent
+        long version = groupTimerService.sync("10", null, "2", "bob", "WORK", Map.of("duration", "1200000"), 1L);
+        release.countDown();
+
+        // then: it did not wait for the lock, its delta follows the first one
+        assertEquals(2, version);
+        assertEquals(1L, first.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(List.of(1L, 2L), versions);
+    }
+
+    @Test
+    void evict_stateDropped() {
+        groupTimerService.sync("10", "s1", "1", "alice", "WORK", Map.of("duration", "1500000"), 0L);
+
+        groupTimerService.evict("10");
+
+        assertEquals(0, groupTimerService.getVersion("10"));
+        assertFalse(groupTimerService.getSnapshot("10").containsKey("duration"));
+    }
+}
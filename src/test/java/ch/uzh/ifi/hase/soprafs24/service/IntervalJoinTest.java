@@ -0,0 +1,75 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntervalJoinTest {
+
+    @Test
+    void join_overlappingIntervals_reportsOverlap() {
+        Map<String, Long> pairs = join(new long[] { 0, 100 }, new long[] { 60, 200 },
+                new long[] { 30, 50, 150 }, new long[] { 120, 55, 300 });
+
+        assertEquals(4, pairs.size());
+        assertEquals(30L, pairs.get("0-0"));
+        assertEquals(5L, pairs.get("0-1"));
+        assertEquals(20L, pairs.get("1-0"));
+        assertEquals(50L, pairs.get("1-2"));
+        assertNull(pairs.get("0-2"));
+    }
+
+    @Test
+    void join_touchingOrEmptyIntervals_notReported() {
+        Map<String, Long> pairs = join(new long[] { 0, 10 }, new long[] { 10, 10 },
+                new long[] { 10, 5 }, new long[] { 20, 5 });
+
+        assertTrue(pairs.isEmpty());
+    }
+
+    /*
+     * Random intervals with many identical starts and ends, compared with
+     * checking every pair
+     */
+    @Test
+    void join_randomIntervals_matchesNestedLoops() {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            long[][] left = randomIntervals(random, random.nextInt(40));
+            long[][] right = randomIntervals(random, random.nextInt(40));
+
+            Map<String, Long> expected = new HashMap<>();
+            for (int i = 0; i < left[0].length; i++) {
+                for (int j = 0; j < right[0].length; j++) {
+                    long overlap = Math.min(left[1][i], right[1][j]) - Math.max(left[0][i], right[0][j]);
+                    if (overlap > 0) {
+                        expected.put(i + "-" + j, overlap);
+                    }
+                }
+            }
+
+            assertEquals(expected, join(left[0], left[1], right[0], right[1]));
+        }
+    }
+
+    private static long[][] randomIntervals(Random random, int count) {
+        long[][] intervals = new long[2][count];
+        for (int i = 0; i < count; i++) {
+            intervals[0][i] = random.nextInt(100);
+            intervals[1][i] = intervals[0][i] + random.nextInt(30);
+        }
+        return intervals;
+    }
+
+    private static Map<String, Long> join(long[] leftStarts, long[] leftEnds, long[] rightStarts, long[] rightEnds) {
+        Map<String, Long> pairs = new HashMap<>();
+        IntervalJoin.join(leftStarts, leftEnds, rightStarts, rightEnds, (left, right, overlap) -> {
+            assertNull(pairs.put(left + "-" + right, overlap), "pair reported twice");
+        });
+        return pairs;
+    }
+}
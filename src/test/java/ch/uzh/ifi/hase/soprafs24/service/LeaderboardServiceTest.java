@@ -0,0 +1,192 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.LeaderboardWindow;
+import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.GroupMembershipRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.ActivityAggregateDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.LeaderboardEntryGetDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+class LeaderboardServiceTest {
+
+    @Mock
+    private GroupMembershipRepository membershipRepository;
+
+    @Mock
+    private DailyActivityService dailyActivityService;
+
+    @InjectMocks
+    private LeaderboardService leaderboardService;
+
+    private final LocalDate today = LocalDate.now();
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+
+        // user 1 studied 60 minutes today and 120 minutes ten days ago,
+        // user 2 studied 90 minutes yesterday, user 3 did not study
+        when(membershipRepository.findUserIdsByGroupIdAndStatus(1L, MembershipStatus.ACTIVE))
+                .thenReturn(Arrays.asList(1L, 2L, 3L));
+        when(membershipRepository.findGroupIdsByUserIdAndStatus(3L, MembershipStatus.ACTIVE))
+                .thenReturn(List.of(1L));
+        when(dailyActivityService.getDailyActivitiesForUsers(any(), any(), any()))
+                .thenReturn(Map.of(
+                        1L, Arrays.asList(aggregate(today.minusDays(10), 120), aggregate(today, 60)),
+                        2L, List.of(aggregate(today.minusDays(1), 90))));
+    }
+
+    @Test
+    void getTopEntries_rankedPerWindow() {
+        // day
+        List<LeaderboardEntryGetDTO> day = leaderboardService.getTopEntries(1L, LeaderboardWindow.DAY, 3);
+        assertEquals(Arrays.asList(1L, 2L, 3L), day.stream().map(LeaderboardEntryGetDTO::getUserId).toList());
+        assertEquals(60, day.get(0).getDuration());
+        // users 2 and 3 share the second rank
+        assertEquals(2, day.get(1).getRank());
+        assertEquals(2, day.get(2).getRank());
+
+        // week
+        List<LeaderboardEntryGetDTO> week = leaderboardService.getTopEntries(1L, LeaderboardWindow.WEEK, 2);
+        assertEquals(2, week.size());
+        assertEquals(2L, week.get(0).getUserId());
+        assertEquals(90, week.get(0).getDuration());
+        assertEquals(1L, week.get(1).getUserId());
+        assertEquals(60, week.get(1).getDuration());
+
+        // month
+        List<LeaderboardEntryGetDTO> month = leaderboardService.getTopEntries(1L, LeaderboardWindow.MONTH, 1);
+        assertEquals(1L, month.get(0).getUserId());
+        assertEquals(180, month.get(0).getDuration());
+
+        // the group is only loaded once
+        Mockito.verify(membershipRepository, Mockito.times(1)).findUserIdsByGroupIdAndStatus(any(), any());
+    }
+
+    @Test
+    void addMinutes_updatesLoadedRanking() {
+        // given
+        leaderboardService.getTopEntries(1L, LeaderboardWindow.WEEK, 3);
+
+        // when user 3 studies for two hours today
+        leaderboardService.addMinutes(3L, Map.of(today, 120L));
+
+        // then
+        List<LeaderboardEntryGetDTO> week = leaderboardService.getTopEntries(1L, LeaderboardWindow.WEEK, 3);
+        assertEquals(3L, week.get(0).getUserId());
+        assertEquals(120, week.get(0).getDuration());
+        Mockito.verify(dailyActivityService, Mockito.times(1)).getDailyActivitiesForUsers(any(), any(), any());
+    }
+
+    @Test
+    void onActivityStored_addsMinutesOfStoredActivities() {
+        // given
+        leaderboardService.getTopEntries(1L, LeaderboardWindow.WEEK, 3);
+        User user = new User();
+        user.setId(3L);
+
+        // when
+        leaderboardService.onActivityStored(new ActivityStoredEvent(user, List.of(), Map.of(today, 120L)));
+
+        // then
+        List<LeaderboardEntryGetDTO> week = leaderboardService.getTopEntries(1L, LeaderboardWindow.WEEK, 3);
+        assertEquals(3L, week.get(0).getUserId());
+        assertEquals(120, week.get(0).getDuration());
+    }
+
+    @Test
+    void addMinutes_timeMovedToEarlierDay_everyDayChanged() {
+        // given
+        leaderboardService.getTopEntries(1L, LeaderboardWindow.DAY, 3);
+
+        // when a session of user 1 stored late takes 40 minutes of today for yesterday
+        leaderboardService.addMinutes(1L, Map.of(today.minusDays(1), 120L, today, -40L));
+
+        // then
+        assertEquals(20, leaderboardService.getTopEntries(1L, LeaderboardWindow.DAY, 1).get(0).getDuration());
+        assertEquals(140, leaderboardService.getTopEntries(1L, LeaderboardWindow.WEEK, 1).get(0).getDuration());
+    }
+
+    @Test
+    void addMinutes_nonMember_ignored() {
+        // given
+        leaderboardService.getTopEntries(1L, LeaderboardWindow.WEEK, 3);
+
+        // when
+        leaderboardService.addMinutes(4L, Map.of(today, 120L));
+
+        // then
+        List<LeaderboardEntryGetDTO> week = leaderboardService.getTopEntries(1L, LeaderboardWindow.WEEK, 10);
+        assertEquals(3, week.size());
+        assertFalse(week.stream().anyMatch(entry -> entry.getUserId().equals(4L)));
+    }
+
+    @Test
+    void addMinutes_committedWhileLoading_countedOnce() {
+        // given: user 3 stores a session while the group is read from the
+        // rollup, the rollup already contains it
+        when(dailyActivityService.getDailyActivitiesForUsers(any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    leaderboardService.addMinutes(3L, Map.of(today, 120L));
+                    return Map.of(3L, List.of(aggregate(today, 120)));
+                })
+                .thenReturn(Map.of(3L, List.of(aggregate(today, 120))));
+
+        // when
+        List<LeaderboardEntryGetDTO> week = leaderboardService.getTopEntries(1L, LeaderboardWindow.WEEK, 1);
+
+        // then: the overlapping load was done again
+        assertEquals(3L, week.get(0).getUserId());
+        assertEquals(120, week.get(0).getDuration());
+        assertEquals(120, leaderboardService.getTopEntries(1L, LeaderboardWindow.WEEK, 1).get(0).getDuration());
+        Mockito.verify(dailyActivityService, Mockito.times(2)).getDailyActivitiesForUsers(any(), any(), any());
+    }
+
+    @Test
+    void removeMember_removedFromRanking() {
+        // given
+        leaderboardService.getTopEntries(1L, LeaderboardWindow.WEEK, 3);
+
+        // when
+        leaderboardService.removeMember(1L, 2L);
+
+        // then
+        List<LeaderboardEntryGetDTO> week = leaderboardService.getTopEntries(1L, LeaderboardWindow.WEEK, 10);
+        assertEquals(Arrays.asList(1L, 3L), week.stream().map(LeaderboardEntryGetDTO::getUserId).toList());
+    }
+
+    @Test
+    void addMember_reloadsGroup() {
+        // given
+        leaderboardService.getTopEntries(1L, LeaderboardWindow.WEEK, 3);
+
+        // when
+        leaderboardService.addMember(1L);
+        leaderboardService.getTopEntries(1L, LeaderboardWindow.WEEK, 3);
+
+        // then
+        Mockito.verify(membershipRepository, Mockito.times(2)).findUserIdsByGroupIdAndStatus(any(), any());
+    }
+
+    private ActivityAggregateDTO aggregate(LocalDate date, long duration) {
+        ActivityAggregateDTO aggregateDTO = new ActivityAggregateDTO();
+        aggregateDTO.setDate(date);
+        aggregateDTO.setDuration(duration);
+        return aggregateDTO;
+    }
+}
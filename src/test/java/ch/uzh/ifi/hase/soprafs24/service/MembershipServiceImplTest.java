@@ -13,11 +13,15 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -31,6 +35,16 @@ class MembershipServiceImplTest {
     private GroupRepository groupRepository;
     @Mock
     private UserRepository userRepository;
+    @Mock
+    private LeaderboardService leaderboardService;
+    @Mock
+    private SessionHistogramService sessionHistogramService;
+    @Mock
+    private StudyHeatmapService studyHeatmapService;
+    @Mock
+    private WebSocketService webSocketService;
+    @Mock
+    private GroupTimerService groupTimerService;
 
     @InjectMocks
     private MembershipServiceImpl membershipService;
@@ -105,6 +119,7 @@ class MembershipServiceImplTest {
         assertEquals(MembershipStatus.ACTIVE, result.getStatus());
         assertNotNull(result.getInvitedAt());
         assertEquals(1L, result.getInvitedBy());
+        Mockito.verify(leaderboardService).addMember(testGroup.getId());
     }
 
     @Test
@@ -133,6 +148,46 @@ class MembershipServiceImplTest {
         Mockito.verify(membershipRepository).delete(testMembership);
         Mockito.verify(groupRepository).save(testGroup);
         Mockito.verify(userRepository).save(testUser);
+        Mockito.verify(leaderboardService).removeMember(testGroup.getId(), testUser.getId());
+        Mockito.verify(sessionHistogramService).evictGroup(testGroup.getId());
+        Mockito.verify(studyHeatmapService).evictGroup(testGroup.getId());
+        Mockito.verify(groupTimerService).evict(testGroup.getId().toString());
+    }
+
+    @Test
+    void removeUserFromGroup_activeMembersLeft_timerKept() {
+        // given
+        Mockito.when(membershipRepository.findUserIdsByGroupIdAndStatus(testGroup.getId(), MembershipStatus.ACTIVE))
+                .thenReturn(List.of(2L));
+
+        // when
+        membershipService.removeUserFromGroup(testUser, testGroup);
+
+        // then
+        Mockito.verify(groupTimerService, Mockito.never()).evict(any());
+    }
+
+    @Test
+    void removeUserFromGroup_inTransaction_presenceEvictedAfterCommit() {
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // when
+            membershipService.removeUserFromGroup(testUser, testGroup);
+
+            // then: a snapshot before the commit still sees the old members
+            Mockito.verify(webSocketService, Mockito.never()).evictPresence(any());
+
+            // when: the transaction commits
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // then
+        Mockito.verify(webSocketService).evictPresence(testGroup.getId().toString());
     }
 
     @Test
@@ -248,5 +303,47 @@ class MembershipServiceImplTest {
         assertNotNull(result);
         assertEquals(MembershipStatus.PENDING, result.getStatus());
         Mockito.verify(membershipRepository).save(testMembership);
+        Mockito.verify(leaderboardService).removeMember(testGroup.getId(), testUser.getId());
+        Mockito.verify(groupTimerService).evict(testGroup.getId().toString());
+    }
+
+    @Test
+    void onActivityStored_publishesDeltaToActiveGroups() {
+        // given
+        Mockito.when(membershipRepository.findGroupIdsByUserIdAndStatus(1L, MembershipStatus.ACTIVE))
+                .thenReturn(List.of(1L));
+
+        // when
+        membershipService.onActivityStored(new ActivityStoredEvent(testUser, List.of(),
+                Map.of(LocalDate.of(2024, 3, 1), 45L)));
+
+        // then
+        Mockito.verify(webSocketService).sendStatisticsDelta("1", "1", LocalDate.of(2024, 3, 1), 45L);
+    }
+
+    @Test
+    void onActivityStored_timeMovedToEarlierDay_publishesBothDays() {
+        // given: the session took 40 minutes of the next day
+        Mockito.when(membershipRepository.findGroupIdsByUserIdAndStatus(1L, MembershipStatus.ACTIVE))
+                .thenReturn(List.of(1L));
+
+        // when
+        membershipService.onActivityStored(new ActivityStoredEvent(testUser, List.of(),
+                Map.of(LocalDate.of(2024, 3, 1), 120L, LocalDate.of(2024, 3, 2), -40L)));
+
+        // then
+        Mockito.verify(webSocketService).sendStatisticsDelta("1", "1", LocalDate.of(2024, 3, 1), 120L);
+        Mockito.verify(webSocketService).sendStatisticsDelta("1", "1", LocalDate.of(2024, 3, 2), -40L);
+    }
+
+    @Test
+    void onActivityStored_fullyOverlapped_noDelta() {
+        // when
+        membershipService.onActivityStored(new ActivityStoredEvent(testUser, List.of(),
+                Map.of(LocalDate.of(2024, 3, 1), 0L)));
+
+        // then
+        Mockito.verify(membershipRepository, Mockito.never()).findGroupIdsByUserIdAndStatus(any(), any());
+        Mockito.verifyNoInteractions(webSocketService);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,157 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.GroupMembershipRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.SessionStatisticsGetDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+class SessionHistogramServiceTest {
+
+    @Mock
+    private ActivityRepository activityRepository;
+
+    @Mock
+    private GroupMembershipRepository membershipRepository;
+
+    @Mock
+    private ActivityArchiveService activityArchiveService;
+
+    @InjectMocks
+    private SessionHistogramService sessionHistogramService;
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 9, 0);
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+
+        // user 1: 10, 20 and 30 minutes, user 2: 60 minutes
+        Stream<ActivityRepository.UserSessionBounds> sessions = Stream.of(
+                session(1L, 10), session(1L, 20), session(1L, 30), session(2L, 60));
+        when(activityRepository.streamAllSessionBounds()).thenReturn(sessions);
+        when(membershipRepository.findUserIdsByGroupIdAndStatus(1L, MembershipStatus.ACTIVE))
+                .thenReturn(Arrays.asList(1L, 2L));
+    }
+
+    @Test
+    void rebuild_recordsAllSessions() {
+        // when
+        long sessionCount = sessionHistogramService.rebuild();
+
+        // then
+        assertEquals(4, sessionCount);
+        SessionStatisticsGetDTO statistics = sessionHistogramService.getUserStatistics(1L);
+        assertEquals(3, statistics.getSessionCount());
+        assertEquals(1200, statistics.getMedianSeconds(), 1200 / 8.0);
+        assertEquals(1800, statistics.getP90Seconds(), 1800 / 8.0);
+    }
+
+    @Test
+    void rebuild_includesArchivedSessions() {
+        // given: user 2 has an archived session of 90 minutes
+        ActivityRepository.UserSessionBounds archivedSession = session(2L, 90);
+        Mockito.doAnswer(invocation -> {
+            Consumer<ActivityRepository.UserSessionBounds> consumer = invocation.getArgument(0);
+            consumer.accept(archivedSession);
+            return null;
+        }).when(activityArchiveService).forEachArchivedSession(Mockito.any());
+
+        // when
+        long sessionCount = sessionHistogramService.rebuild();
+
+        // then
+        assertEquals(5, sessionCount);
+        assertEquals(2, sessionHistogramService.getUserStatistics(2L).getSessionCount());
+    }
+
+    @Test
+    void getGroupStatistics_mergesMembers() {
+        // given
+        sessionHistogramService.rebuild();
+
+        // when
+        SessionStatisticsGetDTO statistics = sessionHistogramService.getGroupStatistics(1L);
+
+        // then
+        assertEquals(4, statistics.getSessionCount());
+        assertEquals(3600, statistics.getP99Seconds(), 3600 / 8.0);
+        Mockito.verify(activityRepository, Mockito.times(1)).streamAllSessionBounds();
+    }
+
+    @Test
+    void addActivity_updatesUserAndLoadedGroup() {
+        // given
+        sessionHistogramService.rebuild();
+        sessionHistogramService.getGroupStatistics(1L);
+        when(membershipRepository.findGroupIdsByUserIdAndStatus(2L, MembershipStatus.ACTIVE))
+                .thenReturn(List.of(1L));
+
+        // when user 2 records a two hour session
+        User user = new User();
+        user.setId(2L);
+        Activity activity = new Activity();
+        activity.setUser(user);
+        activity.setStartDateTime(START);
+        activity.setEndDateTime(START.plusHours(2));
+        sessionHistogramService.addActivity(activity);
+
+        // then
+        assertEquals(2, sessionHistogramService.getUserStatistics(2L).getSessionCount());
+        assertEquals(5, sessionHistogramService.getGroupStatistics(1L).getSessionCount());
+        Mockito.verify(membershipRepository, Mockito.times(1)).findUserIdsByGroupIdAndStatus(1L,
+                MembershipStatus.ACTIVE);
+    }
+
+    @Test
+    void onActivityStored_recordsStoredActivities() {
+        // given
+        sessionHistogramService.rebuild();
+        User user = new User();
+        user.setId(2L);
+        Activity activity = new Activity();
+        activity.setUser(user);
+        activity.setStartDateTime(START);
+        activity.setEndDateTime(START.plusHours(2));
+
+        // when
+        sessionHistogramService.onActivityStored(new ActivityStoredEvent(user, List.of(activity),
+                Map.of(START.toLocalDate(), 120L)));
+
+        // then
+        assertEquals(2, sessionHistogramService.getUserStatistics(2L).getSessionCount());
+    }
+
+    @Test
+    void getUserStatistics_noSessions_returnsZero() {
+        SessionStatisticsGetDTO statistics = sessionHistogramService.getUserStatistics(99L);
+
+        assertEquals(0, statistics.getSessionCount());
+        assertEquals(0, statistics.getMedianSeconds());
+    }
+
+    private ActivityRepository.UserSessionBounds session(Long userId, int minutes) {
+        ActivityRepository.UserSessionBounds session = Mockito.mock(ActivityRepository.UserSessionBounds.class);
+        when(session.getUserId()).thenReturn(userId);
+        when(session.getStartDateTime()).thenReturn(START);
+        when(session.getEndDateTime()).thenReturn(START.plusMinutes(minutes));
+        return session;
+    }
+}
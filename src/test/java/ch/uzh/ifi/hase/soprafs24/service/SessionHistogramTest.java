@@ -0,0 +1,57 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionHistogramTest {
+
+    @Test
+    void bucketIndex_bucketsAreContiguousAndNarrow() {
+        for (long seconds = 0; seconds < 200_000; seconds++) {
+            int index = SessionHistogram.bucketIndex(seconds);
+            long lowerBound = SessionHistogram.lowerBound(index);
+
+            assertTrue(lowerBound <= seconds && seconds < lowerBound + SessionHistogram.width(index),
+                    "bucket of " + seconds);
+            // a bucket is at most 12.5% wide
+            assertTrue(SessionHistogram.width(index) <= Math.max(1, lowerBound / 8));
+        }
+        assertEquals(SessionHistogram.BUCKET_COUNT - 1, SessionHistogram.bucketIndex(Long.MAX_VALUE));
+        assertEquals(0, SessionHistogram.bucketIndex(-5));
+    }
+
+    @Test
+    void valueAtPercentile_withinBucketPrecision() {
+        SessionHistogram histogram = new SessionHistogram();
+        // one session of every length from 1 to 100 minutes
+        for (int minutes = 1; minutes <= 100; minutes++) {
+            histogram.record(minutes * 60L);
+        }
+
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(3000, histogram.valueAtPercentile(50), 3000 / 8.0);
+        assertEquals(5400, histogram.valueAtPercentile(90), 5400 / 8.0);
+        assertEquals(5940, histogram.valueAtPercentile(99), 5940 / 8.0);
+    }
+
+    @Test
+    void add_mergesCounts() {
+        SessionHistogram first = new SessionHistogram();
+        first.record(600);
+        SessionHistogram second = new SessionHistogram();
+        second.record(600);
+        second.record(3600);
+
+        first.add(second);
+
+        assertEquals(3, first.getTotalCount());
+        assertEquals(SessionHistogram.lowerBound(SessionHistogram.bucketIndex(600)),
+                SessionHistogram.lowerBound(SessionHistogram.bucketIndex(first.valueAtPercentile(50))));
+    }
+
+    @Test
+    void valueAtPercentile_empty_returnsZero() {
+        assertEquals(0, new SessionHistogram().valueAtPercentile(50));
+    }
+}
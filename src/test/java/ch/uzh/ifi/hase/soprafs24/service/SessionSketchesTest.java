@@ -0,0 +1,126 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.GroupMembershipRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+class SessionSketchesTest {
+
+    @Mock
+    private ActivityRepository activityRepository;
+
+    @Mock
+    private GroupMembershipRepository membershipRepository;
+
+    @Mock
+    private ActivityArchiveService activityArchiveService;
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 9, 0);
+
+    // a session stored while the next merge runs, see mergeRunsWhileSessionCommits
+    private final AtomicBoolean storeDuringMerge = new AtomicBoolean();
+    private SessionSketches<AtomicLong> sketches;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+
+        // session counts: user 1 has two sessions, user 2 one
+        ActivityRepository.UserSessionBounds first = session(1L);
+        ActivityRepository.UserSessionBounds second = session(1L);
+        ActivityRepository.UserSessionBounds third = session(2L);
+        when(activityRepository.streamAllSessionBounds()).thenReturn(Stream.of(first, second, third));
+        when(membershipRepository.findUserIdsByGroupIdAndStatus(1L, MembershipStatus.ACTIVE))
+                .thenReturn(List.of(1L, 2L));
+        when(membershipRepository.findGroupIdsByUserIdAndStatus(1L, MembershipStatus.ACTIVE))
+                .thenReturn(List.of(1L));
+
+        sketches = new SessionSketches<>(activityRepository, membershipRepository, activityArchiveService,
+                AtomicLong::new, (count, startDateTime, endDateTime) -> count.incrementAndGet(),
+                (count, other) -> {
+                    count.addAndGet(other.get());
+                    if (storeDuringMerge.compareAndSet(true, false)) {
+                        sketches.addActivity(activity(1L));
+                    }
+                });
+        sketches.rebuild();
+    }
+
+    @Test
+    void getGroup_mergesMembers() {
+        assertEquals(2, sketches.getUser(1L).get());
+        assertEquals(3, sketches.getGroup(1L).get());
+        assertEquals(0, sketches.getUser(99L).get());
+    }
+
+    @Test
+    void addActivity_updatesUserAndLoadedGroup() {
+        sketches.getGroup(1L);
+
+        sketches.addActivity(activity(1L));
+
+        assertEquals(3, sketches.getUser(1L).get());
+        assertEquals(4, sketches.getGroup(1L).get());
+        Mockito.verify(membershipRepository, Mockito.times(1)).findUserIdsByGroupIdAndStatus(1L,
+                MembershipStatus.ACTIVE);
+    }
+
+    @Test
+    void getGroup_sessionStoredDuringMerge_mergedAgain() {
+        // given: a session of user 1 commits after user 1 was merged, before the group is kept
+        storeDuringMerge.set(true);
+
+        // when
+        AtomicLong group = sketches.getGroup(1L);
+
+        // then: the merge is done again with the new session
+        assertEquals(3, sketches.getUser(1L).get());
+        assertEquals(4, group.get());
+        assertEquals(4, sketches.getGroup(1L).get());
+    }
+
+    @Test
+    void evictGroup_mergedAgainOnNextRead() {
+        sketches.getGroup(1L);
+        when(membershipRepository.findUserIdsByGroupIdAndStatus(1L, MembershipStatus.ACTIVE))
+                .thenReturn(List.of(1L));
+
+        sketches.evictGroup(1L);
+
+        assertEquals(2, sketches.getGroup(1L).get());
+    }
+
+    private ActivityRepository.UserSessionBounds session(Long userId) {
+        ActivityRepository.UserSessionBounds session = Mockito.mock(ActivityRepository.UserSessionBounds.class);
+        when(session.getUserId()).thenReturn(userId);
+        when(session.getStartDateTime()).thenReturn(START);
+        when(session.getEndDateTime()).thenReturn(START.plusMinutes(30));
+        return session;
+    }
+
+    private static Activity activity(Long userId) {
+        User user = new User();
+        user.setId(userId);
+        Activity activity = new Activity();
+        activity.setUser(user);
+        activity.setStartDateTime(START);
+        activity.setEndDateTime(START.plusMinutes(30));
+        return activity;
+    }
+}
@@ -0,0 +1,99 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatisticsCacheTest {
+
+    private final StatisticsCache<Long, long[]> cache = new StatisticsCache<>();
+
+    @AfterEach
+    void clearTransaction() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void get_loadedOnceThenCached() {
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(1L, key -> new long[] { loads.incrementAndGet() });
+        long[] value = cache.get(1L, key -> new long[] { loads.incrementAndGet() });
+
+        assertEquals(1, value[0]);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void update_appliedToLoadedEntryOnly() {
+        cache.get(1L, key -> new long[] { 10 });
+
+        cache.update(1L, value -> add(value, 5));
+        cache.update(2L, value -> add(value, 5));
+
+        assertEquals(15, cache.getIfPresent(1L)[0]);
+        assertNull(cache.getIfPresent(2L));
+    }
+
+    @Test
+    void get_changeCommittedWhileLoading_loadedAgain() {
+        // the first load already reads the change, applying it as well would count it twice
+        AtomicInteger loads = new AtomicInteger();
+        long[] value = cache.get(1L, key -> {
+            if (loads.incrementAndGet() == 1) {
+                cache.update(1L, entry -> add(entry, 5));
+            }
+            return new long[] { 15 };
+        });
+
+        assertEquals(15, value[0]);
+        assertEquals(2, loads.get());
+        assertEquals(15, cache.getIfPresent(1L)[0]);
+    }
+
+    @Test
+    void get_changeRunning_notKeptUntilFinished() {
+        // given: a change inside a transaction that has not committed yet
+        TransactionSynchronizationManager.initSynchronization();
+        cache.update(1L, entry -> add(entry, 5));
+
+        // when
+        long[] value = cache.get(1L, key -> new long[] { 10 });
+
+        // then
+        assertEquals(10, value[0]);
+        assertNull(cache.getIfPresent(1L));
+
+        // when: the transaction commits
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+
+        // then
+        assertEquals(15, cache.get(1L, key -> new long[] { 15 })[0]);
+        assertEquals(15, cache.getIfPresent(1L)[0]);
+    }
+
+    @Test
+    void invalidate_entryLoadedAgain() {
+        cache.get(1L, key -> new long[] { 10 });
+
+        cache.invalidate(1L);
+
+        assertNull(cache.getIfPresent(1L));
+        assertEquals(20, cache.get(1L, key -> new long[] { 20 })[0]);
+    }
+
+    private static long[] add(long[] value, long amount) {
+        value[0] += amount;
+        return value;
+    }
+}
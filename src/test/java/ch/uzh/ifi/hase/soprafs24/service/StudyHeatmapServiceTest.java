@@ -0,0 +1,63 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.GroupMembershipRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.StudyHeatmapGetDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StudyHeatmapServiceTest {
+
+    @Mock
+    private ActivityRepository activityRepository;
+
+    @Mock
+    private GroupMembershipRepository membershipRepository;
+
+    @Mock
+    private ActivityArchiveService activityArchiveService;
+
+    @InjectMocks
+    private StudyHeatmapService studyHeatmapService;
+
+    // a Friday
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 9, 0);
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void onActivityStored_recordsStoredActivities() {
+        // given
+        User user = new User();
+        user.setId(1L);
+        Activity activity = new Activity();
+        activity.setUser(user);
+        activity.setStartDateTime(START);
+        activity.setEndDateTime(START.plusMinutes(90));
+
+        // when
+        studyHeatmapService.onActivityStored(new ActivityStoredEvent(user, List.of(activity),
+                Map.of(START.toLocalDate(), 90L)));
+
+        // then: 60 minutes at 9:00 and 30 minutes at 10:00 on Friday
+        StudyHeatmapGetDTO heatmap = studyHeatmapService.getUserHeatmap(1L);
+        assertEquals(90, heatmap.getTotalMinutes());
+        assertEquals(60, heatmap.getMinutes()[DayOfWeek.FRIDAY.getValue() - 1][9]);
+        assertEquals(30, heatmap.getMinutes()[DayOfWeek.FRIDAY.getValue() - 1][10]);
+    }
+}
@@ -0,0 +1,85 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StudyHeatmapTest {
+
+    // a Monday
+    private static final LocalDateTime MONDAY = LocalDateTime.of(2024, 3, 4, 0, 0);
+
+    @Test
+    void record_withinOneHour_singleCell() {
+        StudyHeatmap heatmap = new StudyHeatmap();
+        heatmap.record(MONDAY.withHour(9).withMinute(10), MONDAY.withHour(9).withMinute(55));
+
+        long[][] minutes = heatmap.toMinutes();
+        assertEquals(45, minutes[0][9]);
+        assertEquals(45, total(minutes));
+    }
+
+    @Test
+    void record_acrossHours_splitAtFullHours() {
+        StudyHeatmap heatmap = new StudyHeatmap();
+        // Wednesday 9:40 - 11:15
+        heatmap.record(MONDAY.plusDays(2).withHour(9).withMinute(40), MONDAY.plusDays(2).withHour(11).withMinute(15));
+
+        long[][] minutes = heatmap.toMinutes();
+        assertEquals(20, minutes[2][9]);
+        assertEquals(60, minutes[2][10]);
+        assertEquals(15, minutes[2][11]);
+        assertEquals(95, total(minutes));
+    }
+
+    @Test
+    void record_acrossSundayMidnight_wrapsToMonday() {
+        StudyHeatmap heatmap = new StudyHeatmap();
+        // Sunday 23:30 - Monday 0:30
+        heatmap.record(MONDAY.minusMinutes(30), MONDAY.plusMinutes(30));
+
+        long[][] minutes = heatmap.toMinutes();
+        assertEquals(30, minutes[6][23]);
+        assertEquals(30, minutes[0][0]);
+    }
+
+    @Test
+    void record_longerThanAWeek_everyCellCovered() {
+        StudyHeatmap heatmap = new StudyHeatmap();
+        heatmap.record(MONDAY.withHour(10).withMinute(30), MONDAY.plusWeeks(2).withHour(11));
+
+        long[][] minutes = heatmap.toMinutes();
+        assertEquals(120, minutes[3][4]);
+        assertEquals(150, minutes[0][10]);
+        assertEquals(2 * 7 * 24 * 60 + 30, total(minutes));
+    }
+
+    @Test
+    void record_endBeforeStart_ignored() {
+        StudyHeatmap heatmap = new StudyHeatmap();
+        heatmap.record(MONDAY.plusHours(2), MONDAY.plusHours(1));
+
+        assertEquals(0, total(heatmap.toMinutes()));
+    }
+
+    @Test
+    void add_mergesCounters() {
+        StudyHeatmap first = new StudyHeatmap();
+        first.record(MONDAY.withHour(8), MONDAY.withHour(9));
+        StudyHeatmap second = new StudyHeatmap();
+        second.record(MONDAY.withHour(8).withMinute(30), MONDAY.withHour(10));
+
+        first.add(second);
+
+        long[][] minutes = first.toMinutes();
+        assertEquals(90, minutes[0][8]);
+        assertEquals(60, minutes[0][9]);
+    }
+
+    private long total(long[][] minutes) {
+        return Arrays.stream(minutes).flatMapToLong(Arrays::stream).sum();
+    }
+}
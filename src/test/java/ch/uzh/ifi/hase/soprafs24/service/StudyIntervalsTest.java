@@ -0,0 +1,98 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StudyIntervalsTest {
+
+    @Test
+    void add_disjointSessions_countedFully() {
+        StudyIntervals intervals = new StudyIntervals();
+
+        assertEquals(60, intervals.add(0, 60));
+        assertEquals(30, intervals.add(100, 130));
+
+        assertEquals(2, intervals.size());
+        assertEquals(90, intervals.totalMillis());
+    }
+
+    @Test
+    void add_overlappingSession_countsUncoveredPart() {
+        StudyIntervals intervals = new StudyIntervals();
+        intervals.add(0, 60);
+
+        assertEquals(30, intervals.add(30, 90));
+        assertEquals(0, intervals.add(10, 50));
+        assertEquals(0, intervals.add(0, 90));
+
+        assertEquals(1, intervals.size());
+        assertEquals(90, intervals.totalMillis());
+    }
+
+    @Test
+    void add_sessionSpanningSeveralIntervals_mergesThem() {
+        StudyIntervals intervals = new StudyIntervals();
+        intervals.add(10, 20);
+        intervals.add(30, 40);
+        intervals.add(50, 60);
+
+        // the gaps 0-10, 20-30, 40-50 and 60-70 are new
+        assertEquals(40, intervals.add(0, 70));
+        assertEquals(1, intervals.size());
+    }
+
+    @Test
+    void add_touchingSessions_merged() {
+        StudyIntervals intervals = new StudyIntervals();
+        intervals.add(0, 10);
+
+        assertEquals(10, intervals.add(10, 20));
+        assertEquals(1, intervals.size());
+        assertEquals(0, intervals.add(20, 20));
+    }
+
+    /*
+     * Synthetic history with many overlapping and duplicate sessions, compared
+     * with marking every covered millisecond in a bitmap
+     */
+    @Test
+    void add_randomOverlappingSessions_matchesBitmap() {
+        Random random = new Random(7);
+        StudyIntervals intervals = new StudyIntervals();
+        BitSet covered = new BitSet();
+
+        for (int i = 0; i < 5000; i++) {
+            int start = random.nextInt(1_000_000);
+            int end = start + random.nextInt(2_000);
+
+            int coveredBefore = covered.cardinality();
+            covered.set(start, end);
+
+            assertEquals(covered.cardinality() - coveredBefore, intervals.add(start, end));
+        }
+        assertEquals(covered.cardinality(), intervals.totalMillis());
+    }
+
+    /*
+     * A large history of mostly overlapping sessions: every add only touches the
+     * intervals it merges, so the whole history is added in O(n log n)
+     */
+    @Test
+    void add_largeOverlappingHistory_unionOfAllSessions() {
+        StudyIntervals intervals = new StudyIntervals();
+        long total = 0;
+
+        // 200'000 sessions of one hour, a new one every 30 minutes
+        for (long i = 0; i < 200_000; i++) {
+            total += intervals.add(i * 1_800_000, i * 1_800_000 + 3_600_000);
+        }
+
+        assertEquals(1, intervals.size());
+        assertEquals(199_999 * 1_800_000L + 3_600_000, total);
+        assertEquals(total, intervals.totalMillis());
+    }
+}
@@ -0,0 +1,236 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.entity.Activity;
+import ch.uzh.ifi.hase.soprafs24.entity.DailyActivity;
+import ch.uzh.ifi.hase.soprafs24.entity.StudyStreak;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.ActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.DailyActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.StudyStreakRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.StudyStreakGetDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+class StudyStreakServiceTest {
+
+    @Mock
+    private StudyStreakRepository studyStreakRepository;
+
+    @Mock
+    private DailyActivityRepository dailyActivityRepository;
+
+    @Mock
+    private ActivityRepository activityRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private ActivityArchiveService activityArchiveService;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @InjectMocks
+    private StudyStreakService studyStreakService;
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 10);
+
+    private User testUser;
+    private StudyStreak testStreak;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(studyStreakService, "entityManager", entityManager);
+
+        testUser = new User();
+        testUser.setId(1L);
+
+        // three days in a row up to DAY, longest streak five days
+        testStreak = new StudyStreak();
+        testStreak.setUser(testUser);
+        testStreak.setCurrentStreak(3);
+        testStreak.setLongestStreak(5);
+        testStreak.setLastActiveDate(DAY);
+
+        when(studyStreakRepository.findByUserId(1L)).thenReturn(Optional.of(testStreak));
+    }
+
+    @Test
+    void addActivity_nextDay_atomicUpdate() {
+        // given
+        when(studyStreakRepository.addActiveDay(1L, DAY.plusDays(1), DAY)).thenReturn(1);
+
+        // when
+        studyStreakService.addActivity(activity(DAY.plusDays(1)));
+
+        // then: the stored streak is moved forward by the update only
+        Mockito.verify(studyStreakRepository).addActiveDay(1L, DAY.plusDays(1), DAY);
+        Mockito.verify(studyStreakRepository, Mockito.never()).findByUserId(any());
+        Mockito.verify(studyStreakRepository, Mockito.never()).saveAndFlush(any());
+        Mockito.verifyNoInteractions(dailyActivityRepository, userRepository);
+    }
+
+    @Test
+    void onActivityStored_addsDaysOfStoredActivities() {
+        // given
+        when(studyStreakRepository.addActiveDay(1L, DAY.plusDays(1), DAY)).thenReturn(1);
+
+        // when
+        studyStreakService.onActivityStored(new ActivityStoredEvent(testUser, List.of(activity(DAY.plusDays(1))),
+                Map.of(DAY.plusDays(1), 30L)));
+
+        // then
+        Mockito.verify(studyStreakRepository).addActiveDay(1L, DAY.plusDays(1), DAY);
+    }
+
+    @Test
+    void addActivities_consecutiveDays_oneUpdatePerDayInOrder() {
+        // given
+        when(studyStreakRepository.addActiveDay(eq(1L), any(), any())).thenReturn(1);
+
+        // when
+        studyStreakService.addActivities(Arrays.asList(
+                activity(DAY.plusDays(3)), activity(DAY.plusDays(1)), activity(DAY.plusDays(2)),
+                activity(DAY.plusDays(1))));
+
+        // then
+        InOrder inOrder = Mockito.inOrder(studyStreakRepository);
+        inOrder.verify(studyStreakRepository).addActiveDay(1L, DAY.plusDays(1), DAY);
+        inOrder.verify(studyStreakRepository).addActiveDay(1L, DAY.plusDays(2), DAY.plusDays(1));
+        inOrder.verify(studyStreakRepository).addActiveDay(1L, DAY.plusDays(3), DAY.plusDays(2));
+        Mockito.verify(studyStreakRepository, Mockito.times(3)).addActiveDay(eq(1L), any(), any());
+        Mockito.verify(studyStreakRepository, Mockito.never()).saveAndFlush(any());
+    }
+
+    @Test
+    void addActivity_earlierDay_recomputesFromRollup() {
+        // given: the day before the streak fills the gap to an older run of two days
+        when(dailyActivityRepository.findByUserIdOrderByDateAsc(1L)).thenReturn(Arrays.asList(
+                dailyActivity(DAY.minusDays(5)), dailyActivity(DAY.minusDays(4)), dailyActivity(DAY.minusDays(3)),
+                dailyActivity(DAY.minusDays(2)), dailyActivity(DAY.minusDays(1)), dailyActivity(DAY)));
+
+        // when: the update does not move the streak back (returns 0)
+        studyStreakService.addActivity(activity(DAY.minusDays(3)));
+
+        // then: the streak is recomputed and written while the user is locked
+        InOrder inOrder = Mockito.inOrder(userRepository, studyStreakRepository);
+        inOrder.verify(userRepository).lockById(1L);
+        inOrder.verify(studyStreakRepository).findByUserId(1L);
+        inOrder.verify(studyStreakRepository).saveAndFlush(testStreak);
+        Mockito.verify(entityManager).detach(testStreak);
+        assertEquals(6, testStreak.getCurrentStreak());
+        assertEquals(6, testStreak.getLongestStreak());
+        assertEquals(DAY, testStreak.getLastActiveDate());
+    }
+
+    @Test
+    void addActivity_firstActivity_createsStreak() {
+        // given
+        when(studyStreakRepository.findByUserId(1L)).thenReturn(Optional.empty());
+
+        // when
+        studyStreakService.addActivity(activity(DAY));
+
+        // then
+        ArgumentCaptor<StudyStreak> captor = ArgumentCaptor.forClass(StudyStreak.class);
+        Mockito.verify(userRepository).lockById(1L);
+        Mockito.verify(studyStreakRepository).saveAndFlush(captor.capture());
+        assertEquals(testUser, captor.getValue().getUser());
+        assertEquals(1, captor.getValue().getCurrentStreak());
+        assertEquals(DAY, captor.getValue().getLastActiveDate());
+    }
+
+    @Test
+    void getStudyStreak_broken_currentStreakZero() {
+        StudyStreakGetDTO streak = studyStreakService.getStudyStreak(1L);
+
+        assertEquals(0, streak.getCurrentStreak());
+        assertEquals(5, streak.getLongestStreak());
+        assertEquals(DAY, streak.getLastActiveDate());
+    }
+
+    @Test
+    void getStudyStreak_studiedYesterday_currentStreakKept() {
+        testStreak.setLastActiveDate(LocalDate.now().minusDays(1));
+
+        StudyStreakGetDTO streak = studyStreakService.getStudyStreak(1L);
+
+        assertEquals(3, streak.getCurrentStreak());
+        Mockito.verifyNoInteractions(activityRepository, dailyActivityRepository);
+    }
+
+    @Test
+    void rebuild_recomputesFromActiveDays() {
+        // given: active on DAY-3, DAY-2 and DAY (twice)
+        List<ActivityRepository.ActiveDay> activeDays = Arrays.asList(
+                activeDay(DAY.minusDays(3)), activeDay(DAY.minusDays(2)), activeDay(DAY));
+        when(activityRepository.findActiveDays()).thenReturn(activeDays);
+        when(userRepository.getReferenceById(1L)).thenReturn(testUser);
+
+        // when
+        int streakCount = studyStreakService.rebuild();
+
+        // then
+        assertEquals(1, streakCount);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<StudyStreak>> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(studyStreakRepository).deleteAllInBatch();
+        Mockito.verify(studyStreakRepository).saveAll(captor.capture());
+        StudyStreak streak = captor.getValue().get(0);
+        assertEquals(1, streak.getCurrentStreak());
+        assertEquals(2, streak.getLongestStreak());
+        assertEquals(DAY, streak.getLastActiveDate());
+    }
+
+    @Test
+    void addActiveDay_earlierDay_returnsFalse() {
+        assertFalse(StudyStreakService.addActiveDay(testStreak, DAY.minusDays(1)));
+        assertEquals(3, testStreak.getCurrentStreak());
+        Mockito.verify(studyStreakRepository, Mockito.never()).saveAndFlush(any());
+    }
+
+    private Activity activity(LocalDate date) {
+        Activity activity = new Activity();
+        activity.setUser(testUser);
+        activity.setStartDateTime(date.atTime(10, 0));
+        activity.setEndDateTime(date.atTime(11, 0));
+        return activity;
+    }
+
+    private DailyActivity dailyActivity(LocalDate date) {
+        DailyActivity dailyActivity = new DailyActivity();
+        dailyActivity.setUser(testUser);
+        dailyActivity.setDate(date);
+        dailyActivity.setDuration(60L);
+        return dailyActivity;
+    }
+
+    private ActivityRepository.ActiveDay activeDay(LocalDate date) {
+        ActivityRepository.ActiveDay activeDay = Mockito.mock(ActivityRepository.ActiveDay.class);
+        when(activeDay.getUserId()).thenReturn(1L);
+        when(activeDay.getActivityDate()).thenReturn(date);
+        return activeDay;
+    }
+}
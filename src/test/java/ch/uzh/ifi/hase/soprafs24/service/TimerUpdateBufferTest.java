@@ -0,0 +1,50 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerUpdateBufferTest {
+
+    @Test
+    void offer_sameKey_latestWins() {
+        TimerUpdateBuffer<String, String> buffer = new TimerUpdateBuffer<>();
+        buffer.offer("1:10", "WORK", 0);
+        buffer.offer("1:10", "BREAK", 20);
+        buffer.offer("1:10", "WORK", 40);
+        buffer.offer("1:20", "WORK", 40);
+
+        Map<String, String> sent = new LinkedHashMap<>();
+        assertEquals(2, buffer.drain(100, sent::put));
+
+        assertEquals(Map.of("1:10", "WORK", "1:20", "WORK"), sent);
+        assertEquals(4, buffer.getOffered());
+        assertEquals(2, buffer.getMerged());
+        assertEquals(2, buffer.getFlushed());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void drain_mergedUpdate_latencyFromOldestOffer() {
+        TimerUpdateBuffer<String, String> buffer = new TimerUpdateBuffer<>();
+        buffer.offer("1:10", "WORK", 0);
+        buffer.offer("1:10", "BREAK", 90);
+
+        buffer.drain(100, (key, value) -> { });
+
+        assertEquals(100, buffer.getMaxLatencyMillis());
+    }
+
+    @Test
+    void drain_empty_nothingSent() {
+        TimerUpdateBuffer<String, String> buffer = new TimerUpdateBuffer<>();
+        buffer.offer("1:10", "WORK", 0);
+        buffer.drain(10, (key, value) -> { });
+
+        assertEquals(0, buffer.drain(20, (key, value) -> fail("nothing pending")));
+        assertEquals(1, buffer.getFlushed());
+    }
+}
@@ -272,16 +272,6 @@ class UserServiceTest {
         Mockito.when(userRepository.save(Mockito.any(User.class))).thenReturn(existingUser);
         Mockito.when(membershipService.getActiveGroupsForUser(existingUser)).thenReturn(Arrays.asList(group1));
         
-        // Mock the WebSocketService.sendTimerUpdate method
-        Mockito.doNothing().when(webSocketService).sendTimerUpdate(
-            Mockito.anyString(),
-            Mockito.anyString(),
-            Mockito.anyString(),
-            Mockito.anyString(),
-            Mockito.anyString(),
-            Mockito.anyString()
-        );
-        
         // when
         User updatedUser = userService.updateStatus(timerDTO, 1L, "test-token");
         
@@ -292,7 +282,7 @@ class UserServiceTest {
         Mockito.verify(webSocketService, Mockito.times(1)).sendTimerUpdate(
             Mockito.anyString(),
             Mockito.anyString(),
-            Mockito.anyString(),
+            Mockito.eq(List.of("1")),
             Mockito.anyString(),
             Mockito.anyString(),
             Mockito.anyString()
@@ -359,11 +349,11 @@ class UserServiceTest {
       Mockito.verify(userRepository).save(testUser);
       Mockito.verify(userRepository).flush();
       
-      // Verify WebSocket notifications were sent for each group
-      Mockito.verify(webSocketService, Mockito.times(2)).sendTimerUpdate(
+      // Verify one WebSocket notification was sent to all groups
+      Mockito.verify(webSocketService, Mockito.times(1)).sendTimerUpdate(
           Mockito.eq(testUser.getId().toString()),
           Mockito.eq(testUser.getUsername()),
-          Mockito.anyString(),
+          Mockito.eq(List.of("1", "2")),
           Mockito.eq(UserStatus.OFFLINE.toString()),
           Mockito.anyString(),
           Mockito.anyString()
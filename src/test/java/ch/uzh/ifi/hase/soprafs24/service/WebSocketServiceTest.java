@@ -0,0 +1,194 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.config.CborPayload;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.TimerUpdate;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+
+class WebSocketServiceTest {
+
+    @Mock
+    private SimpMessagingTemplate messagingTemplate;
+
+    private ObjectMapper objectMapper;
+
+    private WebSocketService webSocketService;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        objectMapper = Mockito.spy(new ObjectMapper());
+        webSocketService = new WebSocketService(messagingTemplate, objectMapper);
+    }
+
+    @Test
+    void sendTimerUpdate_manyGroups_serializedOnce() throws Exception {
+        // given
+        ReflectionTestUtils.setField(webSocketService, "coalesceTimerUpdates", false);
+
+        // when
+        webSocketService.sendTimerUpdate("1", "alice", List.of("10", "20", "30"), "WORK", "PT25M",
+                "2024-03-10T09:00");
+
+        // then
+        Mockito.verify(objectMapper, Mockito.times(1)).writeValueAsBytes(any());
+
+        ArgumentCaptor<String> destinations = ArgumentCaptor.forClass(String.class);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<byte[]>> messages = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(messagingTemplate, Mockito.times(3)).send(destinations.capture(), messages.capture());
+        assertEquals(List.of("/topic/group.10", "/topic/group.20", "/topic/group.30"), destinations.getAllValues());
+
+        JsonNode frame = new ObjectMapper().readTree(messages.getAllValues().get(1).getPayload());
+        assertEquals("20", frame.get("groupId").asText());
+        assertEquals("TIMER_UPDATE", frame.get("type").asText());
+        assertEquals("1", frame.get("userId").asText());
+        assertEquals("alice", frame.get("username").asText());
+        assertEquals("WORK", frame.get("status").asText());
+        assertEquals("PT25M", frame.get("duration").asText());
+        assertEquals("2024-03-10T09:00", frame.get("startTime").asText());
+        assertInstanceOf(CborPayload.class, messages.getAllValues().get(1).getHeaders().get(CborPayload.HEADER));
+    }
+
+    @Test
+    void sendTimerUpdate_coalescedForManyGroups_serializedOnce() throws Exception {
+        // when: the update is buffered for five groups and flushed
+        List<String> groupIds = List.of("10", "20", "30", "40", "50");
+        webSocketService.sendTimerUpdate("1", "alice", groupIds, "WORK", "PT25M", "2024-03-10T09:00");
+        webSocketService.flushTimerUpdates();
+
+        // then: one serialization, one frame per group
+        Mockito.verify(objectMapper, Mockito.times(1)).writeValueAsBytes(any());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<byte[]>> messages = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(messagingTemplate, Mockito.times(groupIds.size())).send(anyString(), messages.capture());
+        List<String> sentGroupIds = new ArrayList<>();
+        for (Message<byte[]> message : messages.getAllValues()) {
+            sentGroupIds.add(new ObjectMapper().readTree(message.getPayload()).get("groupId").asText());
+        }
+        assertEquals(groupIds, sentGroupIds.stream().sorted().toList());
+    }
+
+    @Test
+    void frameForGroup_sameFieldsAsJsonFrame() throws Exception {
+        EncodedTimerUpdate update = EncodedTimerUpdate.encode(objectMapper,
+                new TimerUpdate("1", "alice", "WORK", "PT25M", null));
+
+        JsonNode json = objectMapper.readTree(update.forGroup("20"));
+
+        assertEquals(json, objectMapper.valueToTree(update.frameForGroup("20")));
+        assertEquals(List.of("groupId", "type", "userId", "username", "status", "duration", "startTime"),
+                List.copyOf(update.frameForGroup("20").keySet()));
+    }
+
+    @Test
+    void sendTimerUpdate_coalesced_latestSentOnFlush() throws Exception {
+        // when
+        webSocketService.sendTimerUpdate("1", "alice", List.of("10"), "WORK", "PT25M", "2024-03-10T09:00");
+        webSocketService.sendTimerUpdate("1", "alice", List.of("10"), "BREAK", "PT5M", "2024-03-10T09:01");
+
+        // then
+        Mockito.verify(messagingTemplate, Mockito.never()).send(anyString(), any());
+        webSocketService.flushTimerUpdates();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<byte[]>> messages = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(messagingTemplate, Mockito.times(1)).send(Mockito.eq("/topic/group.10"), messages.capture());
+        assertEquals("BREAK", new ObjectMapper().readTree(messages.getValue().getPayload()).get("status").asText());
+        assertEquals(1, webSocketService.getTimerUpdateMetrics().getMerged());
+    }
+
+    @Test
+    void sendPresenceSnapshot_membersLoadedOnceThenUpdated() {
+        // given
+        User alice = member(1L, "alice", UserStatus.ONLINE);
+        User bob = member(2L, "bob", UserStatus.WORK);
+        bob.setDuration(Duration.ofMinutes(25));
+        webSocketService.sendPresenceSnapshot("10", "s1", () -> List.of(alice, bob));
+
+        // when: alice starts working, the members are not loaded again
+        webSocketService.sendTimerUpdate("1", "alice", List.of("10"), "WORK", "PT50M", "2024-03-10T09:00");
+        webSocketService.sendPresenceSnapshot("10", "s2", () -> fail("members loaded twice"));
+
+        // then
+        Map<String, Map<String, Object>> members = snapshotMembers("s2");
+        assertEquals(2, members.size());
+        assertEquals("WORK", members.get("1").get("status"));
+        assertEquals("PT50M", members.get("1").get("duration"));
+        assertEquals("2024-03-10T09:00", members.get("1").get("startTime"));
+        assertEquals("bob", members.get("2").get("username"));
+        assertEquals("PT25M", members.get("2").get("duration"));
+    }
+
+    @Test
+    void evictPresence_membersLoadedAgain() {
+        webSocketService.sendPresenceSnapshot("10", "s1", () -> List.of(member(1L, "alice", UserStatus.ONLINE)));
+
+        webSocketService.evictPresence("10");
+        webSocketService.sendPresenceSnapshot("10", "s2", () -> List.of(member(2L, "bob", UserStatus.OFFLINE)));
+
+        Map<String, Map<String, Object>> members = snapshotMembers("s2");
+        assertEquals(1, members.size());
+        assertEquals("OFFLINE", members.get("2").get("status"));
+        assertEquals("0", members.get("2").get("duration"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sendGoalReached_sentToUserWithoutJoinedGroup() {
+        // when: user 1 never joined a group over the socket
+        webSocketService.sendGoalReached("1", LocalDate.of(2024, 3, 10), 120, 125);
+
+        // then: addressed to the principal set at CONNECT
+        ArgumentCaptor<Object> frame = ArgumentCaptor.forClass(Object.class);
+        Mockito.verify(messagingTemplate).convertAndSendToUser(Mockito.eq("1"), Mockito.eq("/queue/goal"),
+                frame.capture(), anyMap());
+        Map<String, Object> goalReached = (Map<String, Object>) frame.getValue();
+        assertEquals("GOAL_REACHED", goalReached.get("type"));
+        assertEquals("2024-03-10", goalReached.get("date"));
+        assertEquals(120L, goalReached.get("targetMinutes"));
+        assertEquals(125L, goalReached.get("minutes"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Map<String, Object>> snapshotMembers(String sessionId) {
+        ArgumentCaptor<Object> snapshot = ArgumentCaptor.forClass(Object.class);
+        Mockito.verify(messagingTemplate).convertAndSendToUser(Mockito.eq(sessionId),
+                Mockito.eq("/queue/group.presence"), snapshot.capture(), anyMap());
+        Map<String, Object> frame = (Map<String, Object>) snapshot.getValue();
+        assertEquals("PRESENCE_SNAPSHOT", frame.get("type"));
+        return ((List<Map<String, Object>>) frame.get("members")).stream()
+                .collect(Collectors.toMap(member -> member.get("userId").toString(), member -> member));
+    }
+
+    private static User member(Long id, String username, UserStatus status) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setStatus(status);
+        return user;
+    }
+}
@@ -0,0 +1,73 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.StatisticsGranularity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+class WeeklySummaryJobTest {
+
+    @Mock
+    private WeeklySummaryService weeklySummaryService;
+
+    @InjectMocks
+    private WeeklySummaryJob weeklySummaryJob;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void generateOnSchedule_previousWeek() {
+        weeklySummaryJob.generateOnSchedule();
+
+        LocalDate previousWeek = DailyActivityService.periodStart(LocalDate.now().minusWeeks(1),
+                StatisticsGranularity.WEEK);
+        Mockito.verify(weeklySummaryService).generate(previousWeek);
+    }
+
+    @Test
+    void generate_concurrentRuns_oneAfterTheOther() throws Exception {
+        // given: every run takes 50 ms and counts the runs in progress
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        when(weeklySummaryService.generate(any())).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            running.decrementAndGet();
+            return 1;
+        });
+
+        // when
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<Future<Integer>> runs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            runs.add(executor.submit(() -> weeklySummaryJob.generate(LocalDate.of(2024, 3, 11))));
+        }
+        for (Future<Integer> run : runs) {
+            assertEquals(1, run.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        // then
+        assertEquals(1, maxRunning.get());
+        Mockito.verify(weeklySummaryService, Mockito.times(3)).generate(LocalDate.of(2024, 3, 11));
+    }
+}
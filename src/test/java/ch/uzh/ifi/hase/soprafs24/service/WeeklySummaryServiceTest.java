@@ -0,0 +1,203 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.MembershipStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.entity.WeeklySummary;
+import ch.uzh.ifi.hase.soprafs24.repository.DailyActivityRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.GroupMembershipRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.WeeklySummaryRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.WeeklyReportProgressGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.WeeklySummaryGetDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+class WeeklySummaryServiceTest {
+
+    @Mock
+    private WeeklySummaryRepository weeklySummaryRepository;
+
+    @Mock
+    private DailyActivityRepository dailyActivityRepository;
+
+    @Mock
+    private GroupMembershipRepository membershipRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @InjectMocks
+    private WeeklySummaryService weeklySummaryService;
+
+    // a Monday
+    private static final LocalDate WEEK = LocalDate.of(2024, 3, 11);
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(weeklySummaryService, "parallelism", 4);
+        ReflectionTestUtils.setField(weeklySummaryService, "chunkSize", 2);
+
+        // user 1: 60 + 120 minutes, user 2: 180 minutes, user 3: 30 minutes,
+        // user 4: nothing, user 5: 90 minutes
+        List<DailyActivityRepository.UserDay> days = Arrays.asList(
+                userDay(1L, WEEK, 60), userDay(1L, WEEK.plusDays(2), 120), userDay(2L, WEEK.plusDays(1), 180),
+                userDay(3L, WEEK.plusDays(4), 30), userDay(5L, WEEK.plusDays(6), 90));
+        when(userRepository.findAllIds()).thenReturn(Arrays.asList(1L, 2L, 3L, 4L, 5L));
+        when(dailyActivityRepository.findUserDays(anyCollection(), eq(WEEK), eq(WEEK.plusDays(6))))
+                .thenAnswer(invocation -> {
+                    Collection<Long> userIds = invocation.getArgument(0);
+                    return days.stream().filter(day -> userIds.contains(day.getUserId())).toList();
+                });
+
+        // group 10: users 1, 2 and 3, group 20: users 3 and 4
+        List<GroupMembershipRepository.GroupMember> members = Arrays.asList(
+                groupMember(10L, 1L), groupMember(10L, 2L), groupMember(10L, 3L),
+                groupMember(20L, 3L), groupMember(20L, 4L));
+        when(membershipRepository.findGroupMembersByStatus(MembershipStatus.ACTIVE)).thenReturn(members);
+
+        when(userRepository.getReferenceById(anyLong())).thenAnswer(invocation -> {
+            User user = new User();
+            user.setId(invocation.getArgument(0));
+            return user;
+        });
+    }
+
+    @Test
+    void generate_allUsers_totalsBestDayAndRank() {
+        // when
+        int summaryCount = weeklySummaryService.generate(WEEK);
+
+        // then
+        assertEquals(5, summaryCount);
+        Map<Long, WeeklySummary> summaries = savedSummaries();
+
+        assertEquals(180, summaries.get(1L).getTotalMinutes());
+        assertEquals(WEEK.plusDays(2), summaries.get(1L).getBestDay());
+        assertEquals(120, summaries.get(1L).getBestDayMinutes());
+        assertEquals(WEEK, summaries.get(1L).getWeekStart());
+
+        // users 1 and 2 share the first rank of group 10
+        assertEquals(10L, summaries.get(1L).getGroupId().longValue());
+        assertEquals(1, summaries.get(1L).getGroupRank().intValue());
+        assertEquals(1, summaries.get(2L).getGroupRank().intValue());
+
+        // user 3 is third in group 10 but first in group 20
+        assertEquals(20L, summaries.get(3L).getGroupId().longValue());
+        assertEquals(1, summaries.get(3L).getGroupRank().intValue());
+
+        assertEquals(0, summaries.get(4L).getTotalMinutes());
+        assertNull(summaries.get(4L).getBestDay());
+        assertEquals(2, summaries.get(4L).getGroupRank().intValue());
+
+        assertNull(summaries.get(5L).getGroupId());
+        assertNull(summaries.get(5L).getGroupRank());
+
+        Mockito.verify(weeklySummaryRepository).deleteByWeekStart(WEEK);
+    }
+
+    @Test
+    void generate_usersSplitIntoChunks_oneQueryPerChunk() {
+        // when
+        weeklySummaryService.generate(WEEK);
+
+        // then: 5 users with at most 2 per chunk -> 3 chunks
+        Mockito.verify(dailyActivityRepository, Mockito.times(3)).findUserDays(anyCollection(), eq(WEEK),
+                eq(WEEK.plusDays(6)));
+
+        WeeklyReportProgressGetDTO progress = weeklySummaryService.getProgress();
+        assertFalse(progress.isRunning());
+        assertEquals(4, progress.getParallelism());
+        assertEquals(5, progress.getTotalUsers());
+        assertEquals(5, progress.getProcessedUsers());
+        assertEquals(3, progress.getTotalChunks());
+        assertEquals(3, progress.getCompletedChunks());
+        assertNotNull(progress.getFinishedAt());
+    }
+
+    @Test
+    void generate_saveFails_progressFinished() {
+        // given
+        when(weeklySummaryRepository.saveAll(anyList())).thenThrow(new IllegalStateException("database down"));
+
+        // when
+        assertThrows(IllegalStateException.class, () -> weeklySummaryService.generate(WEEK));
+
+        // then
+        WeeklyReportProgressGetDTO progress = weeklySummaryService.getProgress();
+        assertFalse(progress.isRunning());
+        assertNotNull(progress.getFinishedAt());
+    }
+
+    @Test
+    void getProgress_beforeFirstRun_empty() {
+        WeeklyReportProgressGetDTO progress = weeklySummaryService.getProgress();
+
+        assertFalse(progress.isRunning());
+        assertNull(progress.getStartedAt());
+        assertEquals(0, progress.getTotalUsers());
+    }
+
+    @Test
+    void getWeeklySummary_dayInWeek_readsWeekOfDay() {
+        // given
+        WeeklySummary summary = new WeeklySummary();
+        summary.setWeekStart(WEEK);
+        summary.setTotalMinutes(180);
+        summary.setGroupRank(2);
+        when(weeklySummaryRepository.findByUserIdAndWeekStart(1L, WEEK)).thenReturn(Optional.of(summary));
+
+        // when
+        WeeklySummaryGetDTO summaryGetDTO = weeklySummaryService.getWeeklySummary(1L, WEEK.plusDays(3));
+
+        // then
+        assertEquals(WEEK, summaryGetDTO.getWeekStart());
+        assertEquals(180, summaryGetDTO.getTotalMinutes());
+        assertEquals(2, summaryGetDTO.getGroupRank().intValue());
+    }
+
+    private Map<Long, WeeklySummary> savedSummaries() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<WeeklySummary>> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(weeklySummaryRepository).saveAll(captor.capture());
+        return captor.getValue().stream()
+                .collect(Collectors.toMap(summary -> summary.getUser().getId(), Function.identity()));
+    }
+
+    private DailyActivityRepository.UserDay userDay(Long userId, LocalDate date, long duration) {
+        DailyActivityRepository.UserDay userDay = Mockito.mock(DailyActivityRepository.UserDay.class);
+        when(userDay.getUserId()).thenReturn(userId);
+        when(userDay.getDate()).thenReturn(date);
+        when(userDay.getDuration()).thenReturn(duration);
+        return userDay;
+    }
+
+    private GroupMembershipRepository.GroupMember groupMember(Long groupId, Long userId) {
+        GroupMembershipRepository.GroupMember member = Mockito.mock(GroupMembershipRepository.GroupMember.class);
+        when(member.getGroupId()).thenReturn(groupId);
+        when(member.getUserId()).thenReturn(userId);
+        return member;
+    }
+}